@@ -0,0 +1,79 @@
+package org.broadinstitute.hellbender;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.hellbender.engine.ReadsDataSource;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Small data sets shared by the JMH benchmarks.
+ *
+ * Benchmarks only use test data that is checked in directly (not through git lfs), and paths are relative to the
+ * project directory, which is the working directory of the gradle benchmark task.
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {}
+
+    /**
+     * ~1000bp of chr20 from NA12878, coordinate sorted and indexed.
+     */
+    public static final File SMALL_BAM = new File("src/test/resources/org/broadinstitute/hellbender/tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam");
+
+    /**
+     * Seed for all randomly generated benchmark data, so that results are comparable across runs.
+     */
+    public static final long SEED = 0xbe7c4;
+
+    /**
+     * @return the header of {@link #SMALL_BAM}
+     */
+    public static SAMFileHeader smallBamHeader() {
+        try ( final ReadsDataSource source = new ReadsDataSource(SMALL_BAM) ) {
+            return source.getHeader();
+        }
+    }
+
+    /**
+     * @return all the reads in {@link #SMALL_BAM}, in coordinate order
+     */
+    public static List<GATKRead> smallBamReads() {
+        final List<GATKRead> reads = new ArrayList<>();
+        try ( final ReadsDataSource source = new ReadsDataSource(SMALL_BAM) ) {
+            source.forEach(reads::add);
+        }
+        return reads;
+    }
+
+    /**
+     * @return {@code length} random bases drawn from ACGT
+     */
+    public static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        }
+        return bases;
+    }
+
+    /**
+     * @return a copy of {@code bases} where each base has been replaced by a different random base with probability {@code rate}
+     */
+    public static byte[] mutate(final Random random, final byte[] bases, final double rate) {
+        final byte[] result = bases.clone();
+        for (int i = 0; i < result.length; i++) {
+            if (random.nextDouble() < rate) {
+                byte base;
+                do {
+                    base = (byte) "ACGT".charAt(random.nextInt(4));
+                } while (base == result[i]);
+                result[i] = base;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+package org.broadinstitute.hellbender.engine;
+
+import org.broadinstitute.hellbender.BenchmarkData;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the reads of a small BAM through ReadsDataSource, with and without traversal bounds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ReadsDataSourceBenchmark {
+
+    private static final SimpleInterval INTERVAL = new SimpleInterval("20", 1_000_200, 1_000_800);
+
+    @Benchmark
+    public void iterateAll(final Blackhole blackhole) {
+        try ( final ReadsDataSource source = new ReadsDataSource(BenchmarkData.SMALL_BAM) ) {
+            for (final GATKRead read : source) {
+                blackhole.consume(read.getStart());
+            }
+        }
+    }
+
+    @Benchmark
+    public void iterateBounded(final Blackhole blackhole) {
+        try ( final ReadsDataSource source = new ReadsDataSource(BenchmarkData.SMALL_BAM) ) {
+            source.setTraversalBounds(Collections.singletonList(INTERVAL));
+            for (final GATKRead read : source) {
+                blackhole.consume(read.getStart());
+            }
+        }
+    }
+
+    @Benchmark
+    public void query(final Blackhole blackhole) {
+        try ( final ReadsDataSource source = new ReadsDataSource(BenchmarkData.SMALL_BAM) ) {
+            final Iterator<GATKRead> reads = source.query(INTERVAL);
+            while (reads.hasNext()) {
+                blackhole.consume(reads.next().getStart());
+            }
+        }
+    }
+}
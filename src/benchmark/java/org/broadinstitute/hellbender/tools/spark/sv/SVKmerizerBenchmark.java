@@ -0,0 +1,49 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import org.broadinstitute.hellbender.BenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kmerizing reads and contigs with SVKmerizer, with and without canonicalization.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SVKmerizerBenchmark {
+
+    @Param({"31", "51"})
+    public int kSize;
+
+    @Param({"151", "10000"})
+    public int sequenceLength;
+
+    private byte[] sequence;
+
+    @Setup
+    public void setup() {
+        sequence = BenchmarkData.randomBases(new Random(BenchmarkData.SEED), sequenceLength);
+    }
+
+    @Benchmark
+    public void kmerize(final Blackhole blackhole) {
+        final SVKmerizer kmerizer = new SVKmerizer(sequence, kSize);
+        while (kmerizer.hasNext()) {
+            blackhole.consume(kmerizer.next());
+        }
+    }
+
+    @Benchmark
+    public void kmerizeCanonical(final Blackhole blackhole) {
+        final SVKmerizer kmerizer = new SVKmerizer(sequence, kSize);
+        while (kmerizer.hasNext()) {
+            blackhole.consume(kmerizer.next().canonical(kSize));
+        }
+    }
+}
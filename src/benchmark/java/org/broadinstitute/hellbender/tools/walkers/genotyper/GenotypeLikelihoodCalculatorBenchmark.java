@@ -0,0 +1,72 @@
+package org.broadinstitute.hellbender.tools.walkers.genotyper;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeLikelihoods;
+import org.broadinstitute.hellbender.BenchmarkData;
+import org.broadinstitute.hellbender.utils.genotyper.IndexedAlleleList;
+import org.broadinstitute.hellbender.utils.genotyper.IndexedSampleList;
+import org.broadinstitute.hellbender.utils.genotyper.LikelihoodMatrix;
+import org.broadinstitute.hellbender.utils.genotyper.ReadLikelihoods;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Genotype likelihoods from a per-sample read likelihood matrix, for several ploidies and allele counts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class GenotypeLikelihoodCalculatorBenchmark {
+
+    private static final String BASES = "ACGT";
+
+    @Param({"1", "2", "4"})
+    public int ploidy;
+
+    @Param({"2", "4", "6"})
+    public int alleleCount;
+
+    @Param({"500"})
+    public int readCount;
+
+    private GenotypeLikelihoodCalculator calculator;
+    private LikelihoodMatrix<Allele> likelihoods;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(BenchmarkData.SEED);
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader(1, 1, 10_000);
+        final List<Allele> alleles = new ArrayList<>(alleleCount);
+        alleles.add(Allele.create("A", true));
+        for (int a = 1; a < alleleCount; a++) {
+            // A + one or two more bases, so that every alternative allele is distinct
+            alleles.add(Allele.create("A" + BASES.charAt(a % 4) + (a < 4 ? "" : "T")));
+        }
+        final List<GATKRead> reads = new ArrayList<>(readCount);
+        for (int r = 0; r < readCount; r++) {
+            reads.add(ArtificialReadUtils.createArtificialRead(header, "read" + r, 0, 1 + random.nextInt(1000), 100));
+        }
+        final ReadLikelihoods<Allele> readLikelihoods = new ReadLikelihoods<>(new IndexedSampleList("sample"), new IndexedAlleleList<>(alleles),
+                Collections.singletonMap("sample", reads));
+        likelihoods = readLikelihoods.sampleMatrix(0);
+        for (int a = 0; a < alleleCount; a++) {
+            for (int r = 0; r < readCount; r++) {
+                likelihoods.set(a, r, -10 * random.nextDouble());
+            }
+        }
+        calculator = new GenotypeLikelihoodCalculators().getInstance(ploidy, alleleCount);
+    }
+
+    @Benchmark
+    public GenotypeLikelihoods genotypeLikelihoods() {
+        return calculator.genotypeLikelihoods(likelihoods);
+    }
+}
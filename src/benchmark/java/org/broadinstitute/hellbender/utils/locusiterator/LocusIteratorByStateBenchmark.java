@@ -0,0 +1,49 @@
+package org.broadinstitute.hellbender.utils.locusiterator;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.hellbender.BenchmarkData;
+import org.broadinstitute.hellbender.engine.AlignmentContext;
+import org.broadinstitute.hellbender.utils.downsampling.DownsamplingMethod;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pileup iteration over the reads of a small BAM with LocusIteratorByState, as done by LocusWalkers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class LocusIteratorByStateBenchmark {
+
+    @Param({"false", "true"})
+    public boolean includeDeletions;
+
+    private SAMFileHeader header;
+    private Set<String> samples;
+    private List<GATKRead> reads;
+
+    @Setup
+    public void setup() {
+        header = BenchmarkData.smallBamHeader();
+        samples = ReadUtils.getSamplesFromHeader(header);
+        reads = BenchmarkData.smallBamReads();
+    }
+
+    @Benchmark
+    public void iterateLoci(final Blackhole blackhole) {
+        final LocusIteratorByState libs = new LocusIteratorByState(reads.iterator(), DownsamplingMethod.NONE, includeDeletions, false, samples, header);
+        while (libs.hasNext()) {
+            final AlignmentContext context = libs.next();
+            blackhole.consume(context.getBasePileup().size());
+        }
+    }
+}
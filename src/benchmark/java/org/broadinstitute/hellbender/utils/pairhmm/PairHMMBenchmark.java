@@ -0,0 +1,90 @@
+package org.broadinstitute.hellbender.utils.pairhmm;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.hellbender.BenchmarkData;
+import org.broadinstitute.hellbender.utils.genotyper.IndexedAlleleList;
+import org.broadinstitute.hellbender.utils.genotyper.IndexedSampleList;
+import org.broadinstitute.hellbender.utils.genotyper.LikelihoodMatrix;
+import org.broadinstitute.hellbender.utils.genotyper.ReadLikelihoods;
+import org.broadinstitute.hellbender.utils.haplotype.Haplotype;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Likelihoods of a HaplotypeCaller-sized active region (reads x haplotypes) with the Java PairHMM implementations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PairHMMBenchmark {
+
+    private static final int HAPLOTYPE_LENGTH = 300;
+    private static final int READ_LENGTH = 100;
+    private static final byte GCP = 10;
+
+    @Param({"ORIGINAL", "LOGLESS_CACHING", "FLOAT_LOGLESS_CACHING"})
+    public PairHMM.Implementation implementation;
+
+    @Param({"8"})
+    public int haplotypeCount;
+
+    @Param({"200"})
+    public int readCount;
+
+    private PairHMM hmm;
+    private LikelihoodMatrix<Haplotype> likelihoods;
+    private List<GATKRead> reads;
+    private Map<GATKRead, byte[]> gcp;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(BenchmarkData.SEED);
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader(1, 1, HAPLOTYPE_LENGTH * 10);
+
+        final byte[] reference = BenchmarkData.randomBases(random, HAPLOTYPE_LENGTH);
+        final List<Haplotype> haplotypes = new ArrayList<>(haplotypeCount);
+        haplotypes.add(new Haplotype(reference, true));
+        for (int h = 1; h < haplotypeCount; h++) {
+            haplotypes.add(new Haplotype(BenchmarkData.mutate(random, reference, 0.01), false));
+        }
+
+        reads = new ArrayList<>(readCount);
+        gcp = new HashMap<>(readCount * 2);
+        for (int r = 0; r < readCount; r++) {
+            final int start = random.nextInt(HAPLOTYPE_LENGTH - READ_LENGTH);
+            final byte[] haplotype = haplotypes.get(random.nextInt(haplotypeCount)).getBases();
+            final byte[] bases = BenchmarkData.mutate(random, Arrays.copyOfRange(haplotype, start, start + READ_LENGTH), 0.005);
+            final byte[] quals = new byte[READ_LENGTH];
+            for (int i = 0; i < READ_LENGTH; i++) {
+                quals[i] = (byte) (20 + random.nextInt(21));
+            }
+            final GATKRead read = ArtificialReadUtils.createArtificialRead(header, "read" + r, 0, start + 1, bases, quals, READ_LENGTH + "M");
+            reads.add(read);
+            final byte[] readGcp = new byte[READ_LENGTH];
+            Arrays.fill(readGcp, GCP);
+            gcp.put(read, readGcp);
+        }
+
+        final Map<String, List<GATKRead>> readsBySample = Collections.singletonMap("sample", reads);
+        likelihoods = new ReadLikelihoods<>(new IndexedSampleList("sample"), new IndexedAlleleList<>(haplotypes), readsBySample).sampleMatrix(0);
+        hmm = implementation.makeNewHMM();
+    }
+
+    @TearDown
+    public void tearDown() {
+        hmm.close();
+    }
+
+    @Benchmark
+    public LikelihoodMatrix<Haplotype> computeLog10Likelihoods() {
+        hmm.computeLog10Likelihoods(likelihoods, reads, gcp);
+        return likelihoods;
+    }
+}
@@ -0,0 +1,86 @@
+package org.broadinstitute.hellbender.utils.read;
+
+import org.broadinstitute.hellbender.BenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReadUtils and AlignmentUtils methods that are called per read (or per base) in the walkers' inner loops,
+ * applied to every read of a small BAM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ReadUtilsBenchmark {
+
+    private List<GATKRead> reads;
+
+    @Setup
+    public void setup() {
+        reads = BenchmarkData.smallBamReads();
+    }
+
+    @Benchmark
+    public void softClippedBounds(final Blackhole blackhole) {
+        for (final GATKRead read : reads) {
+            blackhole.consume(ReadUtils.getSoftStart(read));
+            blackhole.consume(ReadUtils.getSoftEnd(read));
+        }
+    }
+
+    @Benchmark
+    public void adaptorBoundary(final Blackhole blackhole) {
+        for (final GATKRead read : reads) {
+            blackhole.consume(ReadUtils.getAdaptorBoundary(read));
+        }
+    }
+
+    @Benchmark
+    public void readCoordinateForReferenceCoordinate(final Blackhole blackhole) {
+        for (final GATKRead read : reads) {
+            if (read.isUnmapped()) {
+                continue;
+            }
+            final int middle = (read.getStart() + read.getEnd()) / 2;
+            blackhole.consume(ReadUtils.getReadCoordinateForReferenceCoordinateUpToEndOfRead(read, middle, ReadUtils.ClippingTail.LEFT_TAIL));
+        }
+    }
+
+    @Benchmark
+    public void baseQualities(final Blackhole blackhole) {
+        for (final GATKRead read : reads) {
+            blackhole.consume(ReadUtils.getBaseInsertionQualities(read));
+            blackhole.consume(ReadUtils.getBaseDeletionQualities(read));
+        }
+    }
+
+    @Benchmark
+    public void consolidateCigar(final Blackhole blackhole) {
+        for (final GATKRead read : reads) {
+            blackhole.consume(AlignmentUtils.consolidateCigar(read.getCigar()));
+        }
+    }
+
+    @Benchmark
+    public void readToAlignmentByteArray(final Blackhole blackhole) {
+        for (final GATKRead read : reads) {
+            if (!read.isUnmapped()) {
+                blackhole.consume(AlignmentUtils.readToAlignmentByteArray(read.getCigar(), read.getBases()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void alignmentBlocks(final Blackhole blackhole) {
+        for (final GATKRead read : reads) {
+            blackhole.consume(AlignmentUtils.getNumAlignmentBlocks(read));
+            blackhole.consume(AlignmentUtils.getNumHardClippedBases(read));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.broadinstitute.hellbender.utils.recalibration;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.util.Locatable;
+import org.broadinstitute.hellbender.BenchmarkData;
+import org.broadinstitute.hellbender.engine.ReferenceDataSource;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BaseRecalibrationEngine.processRead on 100bp Illumina-like reads against an in-memory reference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class BaseRecalibrationEngineBenchmark {
+
+    private static final int CONTIG_LENGTH = 100_000;
+    private static final int READ_LENGTH = 100;
+    private static final int READ_COUNT = 1000;
+
+    @Param({"false", "true"})
+    public boolean enableBAQ;
+
+    private SAMFileHeader header;
+    private ReferenceDataSource reference;
+    private List<GATKRead> reads;
+    private List<List<Locatable>> knownSitesByRead;
+    private BaseRecalibrationEngine engine;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(BenchmarkData.SEED);
+        header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(1, 1, CONTIG_LENGTH, 1);
+        header.getReadGroups().get(0).setPlatform("ILLUMINA");
+        final String contig = header.getSequence(0).getSequenceName();
+        final String readGroup = header.getReadGroups().get(0).getId();
+
+        final byte[] bases = BenchmarkData.randomBases(random, CONTIG_LENGTH);
+        reference = ReferenceDataSource.of(new ReferenceBases(bases, new SimpleInterval(contig, 1, CONTIG_LENGTH)), header.getSequenceDictionary());
+
+        reads = new ArrayList<>(READ_COUNT);
+        for (int r = 0; r < READ_COUNT; r++) {
+            final int start = 1 + random.nextInt(CONTIG_LENGTH - READ_LENGTH);
+            final byte[] readBases = BenchmarkData.mutate(random, Arrays.copyOfRange(bases, start - 1, start - 1 + READ_LENGTH), 0.01);
+            final byte[] quals = new byte[READ_LENGTH];
+            for (int i = 0; i < READ_LENGTH; i++) {
+                quals[i] = (byte) (10 + random.nextInt(31));
+            }
+            final GATKRead read = ArtificialReadUtils.createArtificialRead(header, "read" + r, 0, start, readBases, quals, READ_LENGTH + "M");
+            read.setReadGroup(readGroup);
+            read.setIsReverseStrand(random.nextBoolean());
+            read.setMappingQuality(60);
+            reads.add(read);
+        }
+
+        // about one known site every 1000bp, looked up ahead of time so that only processRead is measured
+        final List<Locatable> knownSites = new ArrayList<>();
+        for (int i = 0; i < CONTIG_LENGTH / 1000; i++) {
+            final int position = 1 + random.nextInt(CONTIG_LENGTH);
+            knownSites.add(new SimpleInterval(contig, position, position));
+        }
+        knownSitesByRead = new ArrayList<>(READ_COUNT);
+        for (final GATKRead read : reads) {
+            final List<Locatable> overlapping = new ArrayList<>(1);
+            for (final Locatable site : knownSites) {
+                if (site.getStart() <= read.getEnd() && site.getEnd() >= read.getStart()) {
+                    overlapping.add(site);
+                }
+            }
+            knownSitesByRead.add(overlapping);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void makeEngine() {
+        final RecalibrationArgumentCollection recalArgs = new RecalibrationArgumentCollection();
+        recalArgs.enableBAQ = enableBAQ;
+        engine = new BaseRecalibrationEngine(recalArgs, header);
+    }
+
+    @TearDown
+    public void tearDown() {
+        reference.close();
+    }
+
+    @Benchmark
+    public BaseRecalibrationEngine processReads() {
+        for (int r = 0; r < READ_COUNT; r++) {
+            engine.processRead(reads.get(r), reference, knownSitesByRead.get(r));
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,49 @@
+package org.broadinstitute.hellbender.utils.smithwaterman;
+
+import org.broadinstitute.hellbender.BenchmarkData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smith-Waterman alignment of a read against a haplotype and of a haplotype against the reference,
+ * the two uses of SWPairwiseAlignment in the HaplotypeCaller.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SWPairwiseAlignmentBenchmark {
+
+    private byte[] reference;
+    private byte[] haplotype;
+    private byte[] read;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(BenchmarkData.SEED);
+        reference = BenchmarkData.randomBases(random, 400);
+
+        // haplotype with a few SNPs and a 10bp deletion
+        final byte[] mutated = BenchmarkData.mutate(random, reference, 0.01);
+        haplotype = new byte[mutated.length - 10];
+        System.arraycopy(mutated, 0, haplotype, 0, 200);
+        System.arraycopy(mutated, 210, haplotype, 200, mutated.length - 210);
+
+        read = BenchmarkData.mutate(random, Arrays.copyOfRange(haplotype, 150, 250), 0.01);
+    }
+
+    @Benchmark
+    public SWPairwiseAlignment readToHaplotype() {
+        return new SWPairwiseAlignment(haplotype, read, SWPairwiseAlignment.ORIGINAL_DEFAULT, SWPairwiseAlignment.OverhangStrategy.SOFTCLIP);
+    }
+
+    @Benchmark
+    public SWPairwiseAlignment haplotypeToReference() {
+        return new SWPairwiseAlignment(reference, haplotype, SWPairwiseAlignment.STANDARD_NGS, SWPairwiseAlignment.OverhangStrategy.SOFTCLIP);
+    }
+}
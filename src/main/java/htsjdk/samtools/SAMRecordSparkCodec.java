@@ -7,6 +7,7 @@ import htsjdk.samtools.util.SortingCollection;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.function.IntPredicate;
 
 /**
  * A class that uses a slightly adapted version of BAMRecordCodec for serialization/deserialization of SAMRecords.
@@ -61,6 +62,16 @@ public class SAMRecordSparkCodec implements SortingCollection.Codec<SAMRecord> {
      * @param alignment Record to be written.
      */
     public void encode(final SAMRecord alignment) {
+        encode(alignment, null);
+    }
+
+    /**
+     * Write object to OutputStream, keeping only some of its attributes. The record itself is not modified.
+     *
+     * @param alignment Record to be written.
+     * @param keepAttribute accepts the binary tags (see {@link SAMTagUtil}) of the attributes to write; null writes all of them
+     */
+    public void encode(final SAMRecord alignment, final IntPredicate keepAttribute) {
         // Compute block size, as it is the first element of the file representation of SAMRecord
         final int readLength = alignment.getReadLength();
 
@@ -71,14 +82,16 @@ public class SAMRecordSparkCodec implements SortingCollection.Codec<SAMRecord> {
                         (readLength + 1) / 2 + // 2 bases per byte, round up
                         readLength;
 
-        final int attributesSize = alignment.getAttributesBinarySize();
+        final int attributesSize = keepAttribute == null ? alignment.getAttributesBinarySize() : -1;
         if (attributesSize != -1) {
             // binary attribute size already known, don't need to compute.
             blockSize += attributesSize;
         } else {
             SAMBinaryTagAndValue attribute = alignment.getBinaryAttributes();
             while (attribute != null) {
-                blockSize += (BinaryTagCodec.getTagSize(attribute.value));
+                if (keepAttribute == null || keepAttribute.test(attribute.tag)) {
+                    blockSize += (BinaryTagCodec.getTagSize(attribute.value));
+                }
                 attribute = attribute.getNext();
             }
         }
@@ -97,7 +110,8 @@ public class SAMRecordSparkCodec implements SortingCollection.Codec<SAMRecord> {
         this.binaryCodec.writeInt(SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX);  // mate reference index is not used
         this.binaryCodec.writeInt(alignment.getMateAlignmentStart() - 1);
         this.binaryCodec.writeInt(alignment.getInferredInsertSize());
-        final byte[] variableLengthBinaryBlock = alignment.getVariableBinaryRepresentation();
+        // the variable-length block holds all the attributes, so it can only be reused if they're all kept
+        final byte[] variableLengthBinaryBlock = keepAttribute == null ? alignment.getVariableBinaryRepresentation() : null;
         if (variableLengthBinaryBlock != null) {
             // Don't need to encode variable-length block, because it is unchanged from
             // when the record was read from a BAM file.
@@ -125,7 +139,9 @@ public class SAMRecordSparkCodec implements SortingCollection.Codec<SAMRecord> {
             this.binaryCodec.writeBytes(qualities);
             SAMBinaryTagAndValue attribute = alignment.getBinaryAttributes();
             while (attribute != null) {
-                this.binaryTagCodec.writeTag(attribute.tag, attribute.value, attribute.isUnsignedArray());
+                if (keepAttribute == null || keepAttribute.test(attribute.tag)) {
+                    this.binaryTagCodec.writeTag(attribute.tag, attribute.value, attribute.isUnsignedArray());
+                }
                 attribute = attribute.getNext();
             }
         }
@@ -0,0 +1,63 @@
+package org.broadinstitute.hellbender.cmdline.argumentcollections;
+
+import htsjdk.samtools.util.SortingCollection;
+import org.broadinstitute.hellbender.cmdline.Advanced;
+import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.ArgumentCollectionDefinition;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.collections.ParallelSortingCollection;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An argument collection for tools that sort records with a {@link ParallelSortingCollection}.
+ * The number of records held in memory and the temporary directories are the tools' own MAX_RECORDS_IN_RAM and TMP_DIR.
+ */
+public final class SortingArgumentCollection implements ArgumentCollectionDefinition {
+    private static final long serialVersionUID = 1L;
+
+    @Advanced
+    @Argument(doc = "Number of threads to use when sorting. With more than one, records are sorted and written to " +
+            "temporary files in the background while more are read, and the temporary files are read ahead while " +
+            "they're merged. MAX_RECORDS_IN_RAM is shared between the threads.",
+            optional = true)
+    public int SORTING_THREADS = 1;
+
+    @Advanced
+    @Argument(doc = "Compression level of the temporary files written while sorting, from 0 (none) to 9.",
+            optional = true)
+    public int SORTING_COMPRESSION_LEVEL = 1;
+
+    /**
+     * Makes a sorting collection with these arguments.
+     *
+     * @param componentType the class of the records to sort
+     * @param codec encodes the records to and decodes them from the temporary files
+     * @param comparator the sort order
+     * @param maxRecordsInRam the most records to hold in memory at once
+     * @param tmpDirs directories for the temporary files
+     */
+    public <T> ParallelSortingCollection<T> newSortingCollection(final Class<T> componentType,
+                                                                 final SortingCollection.Codec<T> codec,
+                                                                 final Comparator<T> comparator,
+                                                                 final int maxRecordsInRam,
+                                                                 final List<File> tmpDirs) {
+        validate();
+        return new ParallelSortingCollection<>(componentType, codec, comparator, maxRecordsInRam,
+                SORTING_THREADS, SORTING_COMPRESSION_LEVEL, tmpDirs);
+    }
+
+    /**
+     * Checks the arguments, for tools that sort with something other than a {@link ParallelSortingCollection}.
+     */
+    public void validate() {
+        if (SORTING_THREADS < 1) {
+            throw new UserException.BadArgumentValue("SORTING_THREADS", Integer.toString(SORTING_THREADS), "must be at least 1");
+        }
+        if (SORTING_COMPRESSION_LEVEL < 0 || SORTING_COMPRESSION_LEVEL > 9) {
+            throw new UserException.BadArgumentValue("SORTING_COMPRESSION_LEVEL", Integer.toString(SORTING_COMPRESSION_LEVEL), "must be between 0 and 9");
+        }
+    }
+}
@@ -7,15 +7,26 @@ import org.broadinstitute.hellbender.engine.filters.CountingReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.downsampling.PositionalDownsampler;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * An AssemblyRegionWalker is a tool that processes an entire region of reads at a time, each marked as either "active"
@@ -44,6 +55,13 @@ import java.util.List;
  *
  * Read shards exist mainly as a proof-of-concept that we can shard the reads without introducing calling artifacts,
  * which will be important for the Spark equivalent of this traversal.
+ *
+ * When {@link #readShardThreads} is greater than 1, read shards are loaded and divided into assembly regions by a pool
+ * of worker threads, each of which owns its own reads, reference and Feature data sources. The resulting regions are
+ * handed back to the traversal thread in genomic order, so {@link #apply} is still called from a single thread, in the
+ * same order as in a single-threaded traversal. In this mode {@link #assemblyRegionEvaluator} is called once per worker
+ * thread, and the evaluators it returns are used concurrently, so it must either return a new instance on each call or
+ * return an evaluator that is safe to share across threads.
  */
 public abstract class AssemblyRegionWalker extends GATKTool {
 
@@ -73,6 +91,10 @@ public abstract class AssemblyRegionWalker extends GATKTool {
     @Argument(fullName = "maxProbPropagationDistance", shortName = "maxProbPropagationDistance", doc="Upper limit on how many bases away probability mass can be moved around when calculating the boundaries between active and inactive assembly regions", optional = true)
     protected int maxProbPropagationDistance = defaultMaxProbPropagationDistance();
 
+    @Advanced
+    @Argument(fullName = "readShardThreads", shortName = "readShardThreads", doc = "Number of threads used to load read shards and divide them into assembly regions in parallel. Regions are still processed one at a time, in genomic order.", optional = true)
+    protected int readShardThreads = 1;
+
     /**
      * @return Default value for the {@link #readShardSize} parameter, if none is provided on the command line
      */
@@ -151,6 +173,10 @@ public abstract class AssemblyRegionWalker extends GATKTool {
             throw new UserException.BadArgumentValue("assemblyRegionPadding must be <= readShardPadding");
         }
 
+        if ( readShardThreads < 1 ) {
+            throw new UserException.BadArgumentValue("readShardThreads must be >= 1");
+        }
+
         final List<SimpleInterval> intervals = hasIntervals() ? intervalsForTraversal : IntervalUtils.getAllIntervalsForReference(getHeaderForReads().getSequenceDictionary());
         readShards = makeReadShards(intervals);
     }
@@ -213,13 +239,24 @@ public abstract class AssemblyRegionWalker extends GATKTool {
 
     @Override
     public final void traverse() {
-
-        CountingReadFilter countedFilter = makeReadFilter();
-
         // Since we're processing regions rather than individual reads, tell the progress
         // meter to check the time more frequently (every 10 regions instead of every 1000 regions).
         progressMeter.setRecordsBetweenTimeChecks(10L);
 
+        if ( readShardThreads > 1 ) {
+            traverseReadShardsInParallel();
+        }
+        else {
+            traverseReadShardsSerially();
+        }
+    }
+
+    /**
+     * Load, divide and process each read shard in turn on the traversal thread.
+     */
+    private void traverseReadShardsSerially() {
+        CountingReadFilter countedFilter = makeReadFilter();
+
         for ( final LocalReadShard readShard : readShards ) {
             // Since reads in each shard are lazily fetched, we need to pass the filter to the window
             // instead of filtering the reads directly here
@@ -235,6 +272,76 @@ public abstract class AssemblyRegionWalker extends GATKTool {
         logger.info(countedFilter.getSummaryLine());
     }
 
+    /**
+     * Load and divide read shards into assembly regions on {@link #readShardThreads} worker threads, and process the
+     * resulting regions on the traversal thread in the original shard order.
+     *
+     * At most twice as many shards as there are workers are in flight at any one time, which bounds the number of
+     * loaded-but-unprocessed reads held in memory.
+     */
+    private void traverseReadShardsInParallel() {
+        final BlockingQueue<ReadShardWorker> idleWorkers = new ArrayBlockingQueue<>(readShardThreads);
+        final List<ReadShardWorker> allWorkers = new ArrayList<>(readShardThreads);
+        final ExecutorService executor = Executors.newFixedThreadPool(readShardThreads);
+
+        try {
+            // Workers (and their data sources) are created up-front on the traversal thread, then checked out
+            // by each task for the duration of a single shard
+            for ( int i = 0; i < readShardThreads; ++i ) {
+                final ReadShardWorker worker = new ReadShardWorker();
+                allWorkers.add(worker);
+                idleWorkers.add(worker);
+            }
+
+            final Deque<Future<List<AssemblyRegion>>> pendingShards = new ArrayDeque<>();
+            final Deque<LocalReadShard> pendingShardBounds = new ArrayDeque<>();
+            final Iterator<LocalReadShard> shardIterator = readShards.iterator();
+            final int maxShardsInFlight = 2 * readShardThreads;
+
+            while ( shardIterator.hasNext() || ! pendingShards.isEmpty() ) {
+                while ( shardIterator.hasNext() && pendingShards.size() < maxShardsInFlight ) {
+                    final LocalReadShard readShard = shardIterator.next();
+                    pendingShardBounds.add(readShard);
+                    pendingShards.add(executor.submit(() -> {
+                        final ReadShardWorker worker = idleWorkers.take();
+                        try {
+                            return worker.divideIntoAssemblyRegions(readShard);
+                        }
+                        finally {
+                            idleWorkers.add(worker);
+                        }
+                    }));
+                }
+
+                final List<AssemblyRegion> assemblyRegions = pendingShards.remove().get();
+                final LocalReadShard readShard = pendingShardBounds.remove();
+                currentReadShard = readShard;
+                processAssemblyRegions(readShard, assemblyRegions);
+            }
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for read shards to be loaded", e);
+        }
+        catch ( final ExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new GATKException("Error loading read shard", e.getCause());
+        }
+        finally {
+            // A task that hasn't noticed the interrupt may still be reading from its worker's data sources,
+            // so wait for every task to stop before closing them
+            Utils.shutdownNowAndAwaitTermination(executor);
+            final CountingReadFilter countedFilter = makeReadFilter();
+            for ( final ReadShardWorker worker : allWorkers ) {
+                countedFilter.addFilteredCounts(worker.readFilter);
+                worker.close();
+            }
+            logger.info(countedFilter.getSummaryLine());
+        }
+    }
+
     /**
      * Divide the given Shard up into active/inactive AssemblyRegions using the {@link #assemblyRegionEvaluator},
      * and send each region to the tool implementation for processing.
@@ -250,6 +357,17 @@ public abstract class AssemblyRegionWalker extends GATKTool {
                 minAssemblyRegionSize, maxAssemblyRegionSize, assemblyRegionPadding, activeProbThreshold,
                 maxProbPropagationDistance);
 
+        processAssemblyRegions(shard, assemblyRegions);
+    }
+
+    /**
+     * Send each of the assembly regions from a shard to the tool implementation for processing, using the
+     * traversal thread's data sources for the reference and Feature contexts.
+     *
+     * @param shard Shard the regions were created from
+     * @param assemblyRegions regions to process, in order of ascending location
+     */
+    private void processAssemblyRegions( final Shard<GATKRead> shard, final Iterable<AssemblyRegion> assemblyRegions ) {
         // Call into the tool implementation to process each assembly region from this shard.
         for ( final AssemblyRegion assemblyRegion : assemblyRegions ) {
             logger.debug("Processing assembly region at " + assemblyRegion.getSpan() + " isActive: " + assemblyRegion.isActive() + " numReads: " + assemblyRegion.getReads().size() + " in read shard " + shard.getInterval());
@@ -263,6 +381,61 @@ public abstract class AssemblyRegionWalker extends GATKTool {
         }
     }
 
+    /**
+     * Per-thread state for a parallel traversal: independent reads, reference and Feature data sources, plus
+     * the read filter and evaluator used for the shards this worker loads. Data sources are not thread-safe, so
+     * a worker must only be used by one thread at a time.
+     */
+    private final class ReadShardWorker implements AutoCloseable {
+        private final ReadsDataSource workerReads;
+        private final ReferenceDataSource workerReference;
+        private final FeatureManager workerFeatures;
+        private final CountingReadFilter readFilter;
+        private final AssemblyRegionEvaluator evaluator;
+
+        private ReadShardWorker() {
+            workerReads = createReadsDataSource();
+            workerReference = ReferenceDataSource.of(referenceArguments.getReferenceFile());
+            final FeatureManager featureManager = new FeatureManager(AssemblyRegionWalker.this);
+            workerFeatures = featureManager.isEmpty() ? null : featureManager;
+            readFilter = makeReadFilter();
+            evaluator = assemblyRegionEvaluator();
+        }
+
+        /**
+         * Load the reads for the given shard using this worker's own data sources, and divide them into assembly regions.
+         *
+         * @param readShard shard to load; only its bounds are used, since its reads source belongs to the traversal thread
+         * @return the assembly regions for the shard, in order of ascending location, filled with their reads
+         */
+        private List<AssemblyRegion> divideIntoAssemblyRegions( final LocalReadShard readShard ) {
+            final LocalReadShard workerShard = new LocalReadShard(readShard.getInterval(), readShard.getPaddedInterval(), workerReads);
+            workerShard.setReadFilter(readFilter);
+            workerShard.setDownsampler(maxReadsPerAlignmentStart > 0 ? new PositionalDownsampler(maxReadsPerAlignmentStart, getHeaderForReads()) : null);
+
+            final List<AssemblyRegion> assemblyRegions = new ArrayList<>();
+            for ( final AssemblyRegion region : AssemblyRegion.createFromReadShard(workerShard, getHeaderForReads(),
+                    new ReferenceContext(workerReference, workerShard.getPaddedInterval()),
+                    new FeatureContext(workerFeatures, workerShard.getPaddedInterval()),
+                    evaluator, minAssemblyRegionSize, maxAssemblyRegionSize, assemblyRegionPadding,
+                    activeProbThreshold, maxProbPropagationDistance) ) {
+                assemblyRegions.add(region);
+            }
+            return assemblyRegions;
+        }
+
+        @Override
+        public void close() {
+            if ( workerReads != null ) {
+                workerReads.close();
+            }
+            workerReference.close();
+            if ( workerFeatures != null ) {
+                workerFeatures.close();
+            }
+        }
+    }
+
     /**
      * Shutdown data sources.
      *
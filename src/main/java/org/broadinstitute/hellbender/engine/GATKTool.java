@@ -134,6 +134,19 @@ public abstract class GATKTool extends CommandLineProgram {
      * May be overridden by traversals that require custom initialization of the reads data source.
      */
     void initializeReads() {
+        reads = createReadsDataSource();
+    }
+
+    /**
+     * Open a new, independent source of reads data over our reads inputs (or return null if no reads argument(s)
+     * were provided). Must be called after the reference has been initialized, since CRAM inputs require it.
+     *
+     * Package-private so that engine classes can access it, but concrete tool child classes cannot. Traversals
+     * that process reads on several threads at once use this to give each thread its own reader handles.
+     *
+     * @return a new ReadsDataSource over our reads inputs, or null if there are no reads inputs
+     */
+    ReadsDataSource createReadsDataSource() {
         if (! readArguments.getReadFiles().isEmpty()) {
             SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(readArguments.getReadValidationStringency());
             if (hasReference()) { // pass in reference if available, because CRAM files need it
@@ -142,10 +155,10 @@ public abstract class GATKTool extends CommandLineProgram {
             else if (hasCramInput()) {
                 throw new UserException.MissingReference("A reference file is required when using CRAM files.");
             }
-            reads = new ReadsDataSource(readArguments.getReadFiles(), factory);
+            return new ReadsDataSource(readArguments.getReadFiles(), factory);
         }
         else {
-            reads = null;
+            return null;
         }
     }
 
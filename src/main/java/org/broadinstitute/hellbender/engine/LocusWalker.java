@@ -2,19 +2,34 @@ package org.broadinstitute.hellbender.engine;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import org.broadinstitute.hellbender.cmdline.Advanced;
+import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.GATKPlugin.GATKCommandLinePluginDescriptor;
 import org.broadinstitute.hellbender.cmdline.GATKPlugin.GATKReadFilterPluginDescriptor;
 import org.broadinstitute.hellbender.engine.filters.CountingReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.iterators.IntervalOverlappingIterator;
 import org.broadinstitute.hellbender.utils.iterators.ReadFilteringIterator;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.downsampling.DownsamplingMethod;
 import org.broadinstitute.hellbender.utils.locusiterator.LocusIteratorByState;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -26,10 +41,35 @@ import java.util.stream.StreamSupport;
  * LocusWalker authors must implement the apply() method to process each position, and may optionally implement
  * onTraversalStart(), onTraversalSuccess() and/or closeTool().
  *
+ * When {@link #locusShardThreads} is greater than 1, the traversal intervals are divided into shards of
+ * {@link #locusShardSize} bases, and each shard is piled up by its own {@link LocusIteratorByState} on a pool of
+ * worker threads. apply() is always called from the traversal thread: in genomic order by default, or as soon as
+ * each locus is ready for tools that override {@link #acceptsUnorderedLoci()} to return {@code true}. The number of
+ * loci waiting to be processed is capped by {@link #maxBufferedLoci}. Since each shard is piled up separately,
+ * downsampling decisions may differ slightly from those of a single-threaded traversal.
+ *
  * @author Daniel Gomez-Sanchez (magicDGS)
  */
 public abstract class LocusWalker extends GATKTool {
 
+    @Advanced
+    @Argument(fullName = "locusShardThreads", shortName = "locusShardThreads", doc = "Number of threads used to pile up shards of the traversal intervals in parallel. Loci are still processed one at a time.", optional = true)
+    protected int locusShardThreads = 1;
+
+    @Advanced
+    @Argument(fullName = "locusShardSize", shortName = "locusShardSize", doc = "Size of each shard of the traversal intervals, in bases, when piling up loci on multiple threads.", optional = true)
+    protected int locusShardSize = 1000000;
+
+    @Advanced
+    @Argument(fullName = "maxBufferedLoci", shortName = "maxBufferedLoci", doc = "Maximum number of loci that may be piled up but not yet processed when piling up loci on multiple threads. Lower this for very deep coverage. Must be at least locusShardThreads.", optional = true)
+    protected int maxBufferedLoci = 100000;
+
+    /**
+     * Maximum number of loci handed from a worker thread to the traversal thread at a time in a parallel traversal.
+     * Smaller batches are used if {@link #maxBufferedLoci} is too small to give every thread a full batch.
+     */
+    private static final int LOCUS_BATCH_SIZE = 100;
+
     /**
      * Should the LIBS keep unique reads? Tools that do should override to return {@code true}.
      */
@@ -63,6 +103,17 @@ public abstract class LocusWalker extends GATKTool {
         return false;
     }
 
+    /**
+     * Can this tool process loci out of genomic order? Tools that can (eg., tools that only accumulate per-locus
+     * statistics) should override to return {@code true}, which lets a parallel traversal hand each locus to
+     * {@link #apply} as soon as it is ready instead of holding it until all preceding loci have been processed.
+     *
+     * @return {@code true} if this tool accepts loci in any order, {@code false} otherwise
+     */
+    public boolean acceptsUnorderedLoci() {
+        return false;
+    }
+
     /**
      * Return the list of GATKCommandLinePluginDescriptors to be used for this CLP.
      * Uses the read filter plugin.
@@ -128,6 +179,25 @@ public abstract class LocusWalker extends GATKTool {
     @Override
     protected final void onStartup() {
         super.onStartup();
+
+        if ( locusShardThreads < 1 ) {
+            throw new UserException.BadArgumentValue("locusShardThreads must be >= 1");
+        }
+
+        if ( locusShardSize < 1 ) {
+            throw new UserException.BadArgumentValue("locusShardSize must be >= 1");
+        }
+
+        if ( maxBufferedLoci < locusShardThreads ) {
+            throw new UserException.BadArgumentValue("maxBufferedLoci must be >= locusShardThreads");
+        }
+
+        // Each worker queries its own shard of the intervals, which needs an index
+        if ( locusShardThreads > 1 && ! reads.isQueryableByInterval() ) {
+            throw new UserException.BadArgumentValue("locusShardThreads", Integer.toString(locusShardThreads),
+                    "Piling up loci on multiple threads requires all reads inputs to be indexed");
+        }
+
         if ( hasIntervals() ) {
             reads.setTraversalBounds(intervalArgumentCollection.getTraversalParameters(getHeaderForReads().getSequenceDictionary()));
         }
@@ -140,6 +210,8 @@ public abstract class LocusWalker extends GATKTool {
      * The default implementation iterates over all positions in the reference covered by reads for all samples in the read groups, using
      * the downsampling method provided by {@link #getDownsamplingMethod()}
      * and including deletions only if {@link #includeDeletions()} returns {@code true}.
+     *
+     * If {@link #locusShardThreads} is greater than 1, loci are piled up on multiple threads (see {@link LocusWalker}).
      */
     @Override
     public void traverse() {
@@ -148,6 +220,10 @@ public abstract class LocusWalker extends GATKTool {
         final Set<String> samples = header.getReadGroups().stream()
                                           .map(SAMReadGroupRecord::getSample)
                                           .collect(Collectors.toSet());
+        if ( locusShardThreads > 1 ) {
+            traverseLocusShardsInParallel(header, samples);
+            return;
+        }
         CountingReadFilter countedFilter = makeReadFilter();
         // get the LIBS
         LocusIteratorByState libs = new LocusIteratorByState(new ReadFilteringIterator(reads.iterator(), countedFilter), getDownsamplingMethod(), includeDeletions(), includeNs(), keepUniqueReadListInLibs(), samples, header);
@@ -164,6 +240,187 @@ public abstract class LocusWalker extends GATKTool {
         logger.info(countedFilter.getSummaryLine());
     }
 
+    /**
+     * Pile up shards of the traversal intervals on {@link #locusShardThreads} worker threads, and process the resulting
+     * loci on the traversal thread, either in genomic order or, if {@link #acceptsUnorderedLoci()}, as they become ready.
+     *
+     * At most one shard per worker is in flight at any one time, so in ordered mode the shard at the head of the queue
+     * always has a thread and the traversal can always make progress. A worker takes a permit for each locus it piles
+     * up, and the traversal thread returns the permits once it has processed the loci, so no more than
+     * {@link #maxBufferedLoci} loci are ever held, counting those in batches still being filled. In ordered mode each
+     * in-flight shard has its own equal share of the permits; otherwise all shards share them. Batches are never larger
+     * than a single thread's share, so a worker can always complete a batch for the traversal thread to release.
+     */
+    private void traverseLocusShardsInParallel( final SAMFileHeader header, final Set<String> samples ) {
+        final SAMSequenceDictionary dictionary = header.getSequenceDictionary();
+        final List<SimpleInterval> intervals = hasIntervals() ? intervalsForTraversal : IntervalUtils.getAllIntervalsForReference(dictionary);
+        final List<ShardBoundary> shards = new ArrayList<>();
+        for ( final SimpleInterval interval : intervals ) {
+            shards.addAll(Shard.divideIntervalIntoShards(interval, locusShardSize, 0, dictionary));
+        }
+
+        final boolean ordered = ! acceptsUnorderedLoci();
+        final int perThreadLoci = maxBufferedLoci / locusShardThreads;
+        final int batchSize = Math.min(LOCUS_BATCH_SIZE, perThreadLoci);
+        // In ordered mode each in-flight shard gets its own queue and share of the buffer; otherwise all shards share them
+        final BlockingQueue<LocusBatch> sharedQueue = ordered ? null : new LinkedBlockingQueue<>();
+        final Semaphore sharedPermits = ordered ? null : new Semaphore(maxBufferedLoci);
+
+        final BlockingQueue<LocusShardWorker> idleWorkers = new ArrayBlockingQueue<>(locusShardThreads);
+        final List<LocusShardWorker> allWorkers = new ArrayList<>(locusShardThreads);
+        final ExecutorService executor = Executors.newFixedThreadPool(locusShardThreads);
+
+        try {
+            for ( int i = 0; i < locusShardThreads; ++i ) {
+                final LocusShardWorker worker = new LocusShardWorker(header, samples);
+                allWorkers.add(worker);
+                idleWorkers.add(worker);
+            }
+
+            final Iterator<ShardBoundary> shardIterator = shards.iterator();
+            final Deque<InFlightLocusShard> inFlight = new ArrayDeque<>();
+
+            while ( shardIterator.hasNext() || ! inFlight.isEmpty() ) {
+                while ( shardIterator.hasNext() && inFlight.size() < locusShardThreads ) {
+                    final InFlightLocusShard shard = ordered ?
+                            new InFlightLocusShard(shardIterator.next(), new LinkedBlockingQueue<>(), new Semaphore(perThreadLoci)) :
+                            new InFlightLocusShard(shardIterator.next(), sharedQueue, sharedPermits);
+                    shard.future = executor.submit(() -> {
+                        final LocusShardWorker worker = idleWorkers.take();
+                        try {
+                            worker.pileUp(shard, batchSize);
+                        }
+                        finally {
+                            idleWorkers.add(worker);
+                            shard.queue.put(new LocusBatch(shard, Collections.emptyList(), true));
+                        }
+                        return null;
+                    });
+                    inFlight.add(shard);
+                }
+
+                final LocusBatch batch = ordered ? inFlight.peekFirst().queue.take() : sharedQueue.take();
+                if ( batch.isLastBatch ) {
+                    // Surfaces any exception thrown while piling up this shard
+                    batch.shard.future.get();
+                    inFlight.remove(batch.shard);
+                }
+                else {
+                    for ( final AlignmentContext alignmentContext : batch.contexts ) {
+                        final SimpleInterval alignmentInterval = new SimpleInterval(alignmentContext);
+                        apply(alignmentContext, new ReferenceContext(reference, alignmentInterval), new FeatureContext(features, alignmentInterval));
+                        progressMeter.update(alignmentInterval);
+                    }
+                    batch.shard.bufferedLoci.release(batch.contexts.size());
+                }
+            }
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for loci to be piled up", e);
+        }
+        catch ( final ExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new GATKException("Error piling up loci", e.getCause());
+        }
+        finally {
+            // A task that hasn't noticed the interrupt may still be reading from its worker's data source,
+            // so wait for every task to stop before closing them
+            Utils.shutdownNowAndAwaitTermination(executor);
+            final CountingReadFilter countedFilter = makeReadFilter();
+            for ( final LocusShardWorker worker : allWorkers ) {
+                countedFilter.addFilteredCounts(worker.readFilter);
+                worker.close();
+            }
+            logger.info(countedFilter.getSummaryLine());
+        }
+    }
+
+    /**
+     * A shard of the traversal intervals that is being piled up by a worker, together with the queue its loci are
+     * delivered through and the permits that bound how many of its loci may be buffered.
+     */
+    private static final class InFlightLocusShard {
+        private final ShardBoundary boundary;
+        private final BlockingQueue<LocusBatch> queue;
+        private final Semaphore bufferedLoci;
+        private Future<?> future;
+
+        private InFlightLocusShard( final ShardBoundary boundary, final BlockingQueue<LocusBatch> queue, final Semaphore bufferedLoci ) {
+            this.boundary = boundary;
+            this.queue = queue;
+            this.bufferedLoci = bufferedLoci;
+        }
+    }
+
+    /**
+     * A batch of consecutive loci from a single shard. The last batch for each shard is empty and marks the end of the shard.
+     */
+    private static final class LocusBatch {
+        private final InFlightLocusShard shard;
+        private final List<AlignmentContext> contexts;
+        private final boolean isLastBatch;
+
+        private LocusBatch( final InFlightLocusShard shard, final List<AlignmentContext> contexts, final boolean isLastBatch ) {
+            this.shard = shard;
+            this.contexts = contexts;
+            this.isLastBatch = isLastBatch;
+        }
+    }
+
+    /**
+     * Per-thread state for a parallel traversal: an independent source of reads and the read filter applied to the
+     * reads it loads. Data sources are not thread-safe, so a worker must only be used by one thread at a time.
+     */
+    private final class LocusShardWorker implements AutoCloseable {
+        private final SAMFileHeader header;
+        private final Set<String> samples;
+        private final ReadsDataSource workerReads;
+        private final CountingReadFilter readFilter;
+
+        private LocusShardWorker( final SAMFileHeader header, final Set<String> samples ) {
+            this.header = header;
+            this.samples = samples;
+            this.workerReads = createReadsDataSource();
+            this.readFilter = makeReadFilter();
+        }
+
+        /**
+         * Pile up the reads overlapping the given shard, and deliver the loci within the shard to its queue in batches.
+         * Reads spanning the shard boundaries are loaded by every shard they overlap, so that each pileup is complete.
+         * A permit is taken from the shard's buffer for each locus before it is piled up.
+         */
+        private void pileUp( final InFlightLocusShard shard, final int batchSize ) throws InterruptedException {
+            final SimpleInterval interval = shard.boundary.getInterval();
+            final LocusIteratorByState libs = new LocusIteratorByState(new ReadFilteringIterator(workerReads.query(interval), readFilter), getDownsamplingMethod(), includeDeletions(), includeNs(), keepUniqueReadListInLibs(), samples, header);
+            final Iterator<AlignmentContext> loci = new IntervalOverlappingIterator<>(libs, Collections.singletonList(interval), header.getSequenceDictionary());
+
+            List<AlignmentContext> batch = new ArrayList<>(batchSize);
+            while ( true ) {
+                shard.bufferedLoci.acquire();
+                if ( ! loci.hasNext() ) {
+                    shard.bufferedLoci.release();
+                    break;
+                }
+                batch.add(loci.next());
+                if ( batch.size() == batchSize ) {
+                    shard.queue.put(new LocusBatch(shard, batch, false));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if ( ! batch.isEmpty() ) {
+                shard.queue.put(new LocusBatch(shard, batch, false));
+            }
+        }
+
+        @Override
+        public void close() {
+            workerReads.close();
+        }
+    }
+
     /**
      * Process an individual AlignmentContext (with optional contextual information). Must be implemented by tool authors.
      * In general, tool authors should simply stream their output from apply(), and maintain as little internal state
@@ -198,6 +198,14 @@ public final class ReadsDataSource implements GATKDataSource<GATKRead>, AutoClos
         return intervalsForTraversal != null || traverseUnmapped;
     }
 
+    /**
+     * @return True if every file backing this data source is indexed, so that it can be queried by interval via
+     *         {@link #query}, otherwise false
+     */
+    public boolean isQueryableByInterval() {
+        return indicesAvailable;
+    }
+
     private void raiseExceptionForMissingIndex(String reason) {
         String commandsToIndex = backingFiles.entrySet().stream()
                 .filter(f -> !f.getKey().hasIndex())
@@ -6,6 +6,7 @@ import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import org.broadinstitute.hellbender.engine.AuthHolder;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceMappedTwoBitSource;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReferenceTwoBitSource;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
@@ -35,8 +36,25 @@ public class ReferenceMultiSource implements ReferenceSource, Serializable {
      */
     public ReferenceMultiSource( final PipelineOptions pipelineOptions, final String referenceURL,
                                  final SerializableFunction<GATKRead, SimpleInterval> referenceWindowFunction ) {
+        this(pipelineOptions, referenceURL, referenceWindowFunction, false);
+    }
+
+    /**
+     * @param pipelineOptions the pipeline options; must be GCSOptions if using the Google Genomics API
+     * @param referenceURL the name of the reference (if using the Google Genomics API), or a path to the reference file
+     * @param referenceWindowFunction the custom reference window function used to map reads to desired reference bases
+     * @param mapNodeLocalTwoBit if true, the reference, which must be a local .2bit file (see {@link #isLocalTwoBit}),
+     *                           is memory-mapped in each JVM (see {@link ReferenceMappedTwoBitSource}) rather than loaded
+     *                           and serialized with this object, so it must be at the same path on every node
+     */
+    public ReferenceMultiSource( final PipelineOptions pipelineOptions, final String referenceURL,
+                                 final SerializableFunction<GATKRead, SimpleInterval> referenceWindowFunction,
+                                 final boolean mapNodeLocalTwoBit ) {
         Utils.nonNull(referenceWindowFunction);
-        if (ReferenceTwoBitSource.isTwoBit(referenceURL)) {
+        if (mapNodeLocalTwoBit) {
+            Utils.validateArg(isLocalTwoBit(referenceURL), () -> "Only a local .2bit reference can be memory-mapped on each node, not " + referenceURL);
+            referenceSource = new ReferenceMappedTwoBitSource(referenceURL);
+        } else if (ReferenceTwoBitSource.isTwoBit(referenceURL)) {
             try {
                 referenceSource = new ReferenceTwoBitSource(pipelineOptions, referenceURL);
             } catch (IOException e) {
@@ -64,6 +82,14 @@ public class ReferenceMultiSource implements ReferenceSource, Serializable {
         this(auth.asPipelineOptionsDeprecated(), referenceURL, referenceWindowFunction);
     }
 
+    /**
+     * @return true if the reference is a .2bit file on the local file system, which can be memory-mapped on each node
+     */
+    public static boolean isLocalTwoBit(final String referenceURL) {
+        return ReferenceTwoBitSource.isTwoBit(referenceURL) &&
+                !BucketUtils.isCloudStorageUrl(referenceURL) && !BucketUtils.isHadoopUrl(referenceURL);
+    }
+
     private static boolean isFasta(String reference) {
         for (final String ext : ReferenceSequenceFileFactory.FASTA_EXTENSIONS) {
             if (reference.endsWith(ext)) {
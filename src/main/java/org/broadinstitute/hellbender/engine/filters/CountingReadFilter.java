@@ -48,6 +48,19 @@ public class CountingReadFilter extends ReadFilter {
         filteredCount = 0;
     }
 
+    /**
+     * Add the counts of another filter, composed of the same filters in the same way as this one, to the counts of this
+     * filter at every level. This lets the counts of copies of a filter used on separate threads be summarized together.
+     *
+     * @param other filter built the same way as this one, for example by another call to the same factory method
+     */
+    public void addFilteredCounts(final CountingReadFilter other) {
+        Utils.nonNull(other);
+        Utils.validateArg(other.getClass() == getClass() && other.getName().equals(getName()),
+                () -> "Can't add the counts of filter " + other.getName() + " to those of a different filter " + getName());
+        filteredCount += other.filteredCount;
+    }
+
     public String getName() {return delegateFilter.getClass().getSimpleName();}
 
     // Returns a summary line with filter counts organized by level
@@ -125,6 +138,12 @@ public class CountingReadFilter extends ReadFilter {
         public String getName() {
             return "Not " + delegateCountingFilter.getName();
         }
+
+        @Override
+        public void addFilteredCounts(final CountingReadFilter other) {
+            super.addFilteredCounts(other);
+            delegateCountingFilter.addFilteredCounts(((CountingNegateReadFilter)other).delegateCountingFilter);
+        }
     }
 
     /**
@@ -160,6 +179,13 @@ public class CountingReadFilter extends ReadFilter {
             }
         }
 
+        @Override
+        public void addFilteredCounts(final CountingReadFilter other) {
+            super.addFilteredCounts(other);
+            lhs.addFilteredCounts(((CountingBinopReadFilter)other).lhs);
+            rhs.addFilteredCounts(((CountingBinopReadFilter)other).rhs);
+        }
+
         @Override
         public abstract String getName();
     }
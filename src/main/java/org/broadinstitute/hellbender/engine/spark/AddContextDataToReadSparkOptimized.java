@@ -1,16 +1,22 @@
 package org.broadinstitute.hellbender.engine.spark;
 
 import com.google.api.services.storage.Storage;
+import com.google.common.annotations.VisibleForTesting;
 import org.broadinstitute.hellbender.utils.SerializableFunction;
 import com.google.cloud.genomics.dataflow.readers.bam.BAMIO;
 
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.Chunk;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.ValidationStringency;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
+import org.apache.spark.Accumulable;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
@@ -23,6 +29,7 @@ import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.IntervalUtils;
 import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.collections.IntervalsSkipList;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
@@ -36,6 +43,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -43,6 +51,7 @@ import java.util.NoSuchElementException;
 
 public final class AddContextDataToReadSparkOptimized implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final Logger logger = LogManager.getLogger(AddContextDataToReadSparkOptimized.class);
 
     // the granularity at which we'll want to assign work and read inputs.
     public static final int bigShardSize = 1_000_000;
@@ -61,16 +70,55 @@ public final class AddContextDataToReadSparkOptimized implements Serializable {
      public static JavaRDD<ContextShard> add(JavaSparkContext ctx, final List<SimpleInterval> intervals,
                                              String bam, final List<GATKVariant> variants, AuthHolder auth,
                                              final ReadFilter optFilter, final ReferenceMultiSource rds) {
+        return add(ctx, intervals, bam, variants, auth, optFilter, rds, false, null);
+    }
+
+    /**
+     * Create shards with reads, variants, and reference bases, using default values for shard sizes and margin.
+     * See the other methods here for an explanation of the various arguments.
+     *
+     * @param balanceShards if true, and the BAM is indexed, estimate the reads in each shard from the index, split the
+     *                      dense shards and merge the sparse ones (see {@link #balanceShards}), and give each shard its
+     *                      own partition, so that no task gets much more work than the others.
+     * @param statistics if not null, gathers the metrics of each shard as it is read.
+     */
+    public static JavaRDD<ContextShard> add(JavaSparkContext ctx, final List<SimpleInterval> intervals,
+                                            String bam, final List<GATKVariant> variants, AuthHolder auth,
+                                            final ReadFilter optFilter, final ReferenceMultiSource rds,
+                                            final boolean balanceShards, final ContextShardStatistics statistics) {
         // prepare shards for the intervals of interest
         List<SimpleInterval> shardedIntervals = IntervalUtils.cutToShards(intervals, bigShardSize);
+        boolean balanced = false;
+        if (balanceShards || statistics != null) {
+            long[] sizes = estimateShardSizes(bam, auth, shardedIntervals);
+            if (sizes == null) {
+                logger.info("No index for " + bam + ", so the shards can't be balanced.");
+            } else {
+                if (balanceShards) {
+                    final int nShards = shardedIntervals.size();
+                    // aim for shards with the average amount of data of the fixed-size ones
+                    final long targetSize = Math.max(1, Arrays.stream(sizes).sum() / Math.max(1, nShards));
+                    shardedIntervals = balanceShards(shardedIntervals, sizes, targetSize, outputShardSize);
+                    logger.info("Balanced " + nShards + " shards into " + shardedIntervals.size() + " shards of about " + targetSize + " compressed bytes.");
+                    balanced = true;
+                    if (statistics != null) {
+                        sizes = estimateShardSizes(bam, auth, shardedIntervals);
+                    }
+                }
+                if (statistics != null) {
+                    statistics.setEstimatedBytes(shardedIntervals, sizes);
+                }
+            }
+        }
         // add variants
         ArrayList<ContextShard> localShards = AddContextDataToReadSparkOptimized.fillVariants(shardedIntervals, variants, margin);
         // ship to cluster
-        JavaRDD<ContextShard> shards = ctx.parallelize(localShards);
+        JavaRDD<ContextShard> shards = balanced ? ctx.parallelize(localShards, Math.max(1, localShards.size())) : ctx.parallelize(localShards);
         // subdivide, and add reads
         JavaRDD<ContextShard> reads;
         try {
-            reads = shards.flatMap(AddContextDataToReadSparkOptimized.subdivideAndFillReads(bam, auth, outputShardSize, margin, optFilter));
+            reads = shards.flatMap(AddContextDataToReadSparkOptimized.subdivideAndFillReads(bam, auth, outputShardSize, margin, optFilter,
+                    statistics == null ? null : statistics.getAccumulable()));
         } catch (IOException x) {
             throw new UserException.CouldNotReadInputFile("Couldn't read "+bam+": "+x.getMessage(), x);
         }
@@ -105,6 +153,15 @@ public final class AddContextDataToReadSparkOptimized implements Serializable {
      * @throws IOException
      */
     public static FlatMapFunction<ContextShard,ContextShard> subdivideAndFillReads(String bam, AuthHolder auth, int outputShardSize, int margin, final ReadFilter optFilter) throws IOException {
+        return subdivideAndFillReads(bam, auth, outputShardSize, margin, optFilter, null);
+    }
+
+    /**
+     * As above, and if metrics is not null, adds a {@link ContextShardMetrics} to it for each shard once all of its
+     * sub-shards have been handed on.
+     */
+    public static FlatMapFunction<ContextShard,ContextShard> subdivideAndFillReads(String bam, AuthHolder auth, int outputShardSize, int margin, final ReadFilter optFilter,
+                                                                                  final Accumulable<ArrayList<ContextShardMetrics>, ContextShardMetrics> metrics) throws IOException {
             return new FlatMapFunction<ContextShard, ContextShard>() {
                 private static final long serialVersionUID = 1L;
                 @Override
@@ -113,7 +170,7 @@ public final class AddContextDataToReadSparkOptimized implements Serializable {
                         @Override
                         public Iterator<ContextShard> iterator() {
                             try {
-                                return new SubdivideAndFillReadsIterator(bam, auth, outputShardSize, margin, optFilter, contextShard);
+                                return new SubdivideAndFillReadsIterator(bam, auth, outputShardSize, margin, optFilter, contextShard, metrics);
                             } catch (Exception x) {
                                 throw new RuntimeException(x);
                             }
@@ -123,6 +180,106 @@ public final class AddContextDataToReadSparkOptimized implements Serializable {
             };
     }
 
+    /**
+     * Estimates how much read data each interval has, as the compressed bytes of the BAM that its index says may hold
+     * reads overlapping the interval.
+     *
+     * @return the estimates, or null if the BAM isn't indexed
+     */
+    public static long[] estimateShardSizes(String bam, AuthHolder auth, List<SimpleInterval> intervals) {
+        try (final SamReader reader = openBam(bam, auth)) {
+            if (reader.type() != SamReader.Type.BAM_TYPE || !reader.hasIndex()) {
+                return null;
+            }
+            final BAMIndex index = reader.indexing().getIndex();
+            final SAMSequenceDictionary dictionary = reader.getFileHeader().getSequenceDictionary();
+            final long[] sizes = new long[intervals.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                final SimpleInterval interval = intervals.get(i);
+                final int referenceIndex = dictionary.getSequenceIndex(interval.getContig());
+                final BAMFileSpan span = referenceIndex < 0 ? null : index.getSpanOverlapping(referenceIndex, interval.getStart(), interval.getEnd());
+                if (span != null) {
+                    for (final Chunk chunk : span.getChunks()) {
+                        // a chunk within a single BGZF block still costs a block read
+                        sizes[i] += Math.max(1, (chunk.getChunkEnd() >>> 16) - (chunk.getChunkStart() >>> 16));
+                    }
+                }
+            }
+            return sizes;
+        } catch (IOException | GeneralSecurityException x) {
+            throw new UserException.CouldNotReadInputFile("Couldn't read the index of "+bam+": "+x.getMessage(), x);
+        }
+    }
+
+    /**
+     * Evens out the work in a list of shards, given an estimate of the work in each.
+     * Shards larger than twice the target size are split into equal-length pieces of about the target size, but no
+     * shorter than minShardLength. Then runs of adjacent pieces on the same contig are merged as long as the merged
+     * shard is no larger than the target size. Shards stay in order.
+     *
+     * @param shards non-overlapping shards, in order
+     * @param sizes the estimated work in each shard
+     * @param targetSize the work we'd like in each shard
+     * @param minShardLength don't split shards into pieces shorter than this
+     */
+    @VisibleForTesting
+    public static List<SimpleInterval> balanceShards(List<SimpleInterval> shards, long[] sizes, long targetSize, int minShardLength) {
+        Utils.validateArg(shards.size() == sizes.length, "there must be one size per shard");
+        Utils.validateArg(targetSize > 0, "the target size must be positive");
+        Utils.validateArg(minShardLength > 0, "the minimum shard length must be positive");
+
+        // split
+        final List<SimpleInterval> pieces = new ArrayList<>();
+        final List<Long> pieceSizes = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            final SimpleInterval shard = shards.get(i);
+            final int nPieces = sizes[i] > 2 * targetSize ?
+                    (int)Math.max(1, Math.min((sizes[i] + targetSize - 1) / targetSize, shard.size() / minShardLength)) : 1;
+            for (int piece = 0; piece < nPieces; piece++) {
+                final int start = shard.getStart() + (int)((long)shard.size() * piece / nPieces);
+                final int end = shard.getStart() + (int)((long)shard.size() * (piece + 1) / nPieces) - 1;
+                pieces.add(new SimpleInterval(shard.getContig(), start, end));
+                pieceSizes.add(sizes[i] / nPieces);
+            }
+        }
+
+        // merge
+        final List<SimpleInterval> balanced = new ArrayList<>();
+        SimpleInterval current = null;
+        long currentSize = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            final SimpleInterval piece = pieces.get(i);
+            final long size = pieceSizes.get(i);
+            if (current != null && current.getContig().equals(piece.getContig()) && current.getEnd() + 1 == piece.getStart()
+                    && currentSize + size <= targetSize) {
+                current = new SimpleInterval(current.getContig(), current.getStart(), piece.getEnd());
+                currentSize += size;
+            } else {
+                if (current != null) {
+                    balanced.add(current);
+                }
+                current = piece;
+                currentSize = size;
+            }
+        }
+        if (current != null) {
+            balanced.add(current);
+        }
+        return balanced;
+    }
+
+    // local files only make sense if every worker sees the same thing, e.g. if we're running locally
+    private static SamReader openBam(String bam, AuthHolder auth) throws IOException, GeneralSecurityException {
+        if (BucketUtils.isCloudStorageUrl(bam)) {
+            final Storage.Objects storageClient = auth.makeStorageClient();
+            return BAMIO.openBAM(storageClient, bam, ValidationStringency.SILENT);
+        } else if (BucketUtils.isHadoopUrl(bam)) {
+            throw new RuntimeException("Sorry, Hadoop paths aren't yet supported");
+        } else {
+            return SamReaderFactory.make().validationStringency(ValidationStringency.SILENT).open(new File(bam));
+        }
+    }
+
     /**
      * Given a shard that has reads and variants, query Google Genomics' Reference server and get reference info
      * (including an extra margin on either side), and fill that and the correct variants into readContext.
@@ -178,12 +335,25 @@ public final class AddContextDataToReadSparkOptimized implements Serializable {
         private final List<SimpleInterval> subshards;
         private int currentSubShardIndex;
         private ArrayList<GATKRead> readsSoFar = new ArrayList<>();
-        private Storage.Objects storageClient = null;
         private SimpleInterval currentSubShard;
         private ContextShard nextOutput = null;
         private boolean readerClosed = false;
+        // null if we're not gathering metrics
+        private final Accumulable<ArrayList<ContextShardMetrics>, ContextShardMetrics> metrics;
+        private final ContextShardMetrics shardMetrics;
+        private final long startNanos;
+        private long readNanos;
+        private boolean metricsReported = false;
 
         public SubdivideAndFillReadsIterator(String bam, AuthHolder auth, int outputShardSize, int margin, final ReadFilter optFilter, ContextShard shard) throws IOException, GeneralSecurityException, ClassNotFoundException {
+            this(bam, auth, outputShardSize, margin, optFilter, shard, null);
+        }
+
+        public SubdivideAndFillReadsIterator(String bam, AuthHolder auth, int outputShardSize, int margin, final ReadFilter optFilter, ContextShard shard,
+                                             final Accumulable<ArrayList<ContextShardMetrics>, ContextShardMetrics> metrics) throws IOException, GeneralSecurityException, ClassNotFoundException {
+            startNanos = System.nanoTime();
+            this.metrics = metrics;
+            this.shardMetrics = null == metrics ? null : new ContextShardMetrics(shard.interval);
             this.bam = bam;
             this.shard = shard;
             this.optFilter = optFilter;
@@ -196,34 +366,45 @@ public final class AddContextDataToReadSparkOptimized implements Serializable {
             currentSubShardIndex = 0;
             currentSubShard = subshards.get(currentSubShardIndex);
 
-            if (BucketUtils.isCloudStorageUrl(bam)) {
-                storageClient = auth.makeStorageClient();
-                reader = BAMIO.openBAM(storageClient, bam, ValidationStringency.SILENT);
-            } else if (BucketUtils.isHadoopUrl(bam)) {
-                throw new RuntimeException("Sorry, Hadoop paths aren't yet supported");
-            } else {
-                // read from local file (this only makes sense if every worker sees the same thing, e.g. if we're running locally)
-                reader = SamReaderFactory.make().validationStringency(ValidationStringency.SILENT).open(new File(bam));
-            }
+            reader = openBam(bam, auth);
             query = reader.queryOverlapping(shard.interval.getContig(), shard.interval.getStart(), shard.interval.getEnd());
-
+            readNanos = System.nanoTime() - startNanos;
         }
 
         @Override
         public boolean hasNext() {
-            if (null==nextOutput) nextOutput = tryNext();
+            if (null==nextOutput) nextOutput = timedTryNext();
             return (null!=nextOutput);
         }
 
         @Override
         public ContextShard next() {
-            if (null==nextOutput) nextOutput = tryNext();
+            if (null==nextOutput) nextOutput = timedTryNext();
             if (null==nextOutput) throw new NoSuchElementException();
             ContextShard ret =  nextOutput;
             nextOutput = null;
             return ret;
         }
 
+        // tryNext, keeping track of the time spent reading, and reporting the metrics once we've run out of sub-shards
+        private ContextShard timedTryNext() {
+            if (null==shardMetrics) return tryNext();
+            final long before = System.nanoTime();
+            final ContextShard ret = tryNext();
+            readNanos += System.nanoTime() - before;
+            if (null!=ret) {
+                shardMetrics.SUBSHARDS++;
+                shardMetrics.READS += ret.reads.size();
+            } else if (!metricsReported) {
+                // the downstream work on the last sub-shard is done, since we've been asked for another
+                shardMetrics.READ_MILLIS = readNanos / 1_000_000;
+                shardMetrics.TOTAL_MILLIS = (System.nanoTime() - startNanos) / 1_000_000;
+                metrics.add(shardMetrics);
+                metricsReported = true;
+            }
+            return ret;
+        }
+
         // returns the next shard, if any. Otherwise, closes the reader and returns null.
         private ContextShard tryNext() {
             if (readerClosed) return null;
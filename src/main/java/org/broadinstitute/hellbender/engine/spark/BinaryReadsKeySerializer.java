@@ -0,0 +1,33 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.broadinstitute.hellbender.utils.read.markduplicates.BinaryReadsKey;
+
+/**
+ * Serializer for BinaryReadsKey that writes its three words as fixed-width longs.
+ */
+public final class BinaryReadsKeySerializer extends Serializer<BinaryReadsKey> {
+
+    public BinaryReadsKeySerializer() {
+        // keys are immutable
+        setImmutable(true);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, BinaryReadsKey key) {
+        output.writeLong(key.getWord0());
+        output.writeLong(key.getWord1());
+        output.writeLong(key.getWord2());
+    }
+
+    @Override
+    public BinaryReadsKey read(Kryo kryo, Input input, Class<BinaryReadsKey> type) {
+        final long word0 = input.readLong();
+        final long word1 = input.readLong();
+        final long word2 = input.readLong();
+        return new BinaryReadsKey(word0, word1, word2);
+    }
+}
@@ -0,0 +1,52 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import htsjdk.samtools.metrics.MetricBase;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+
+import java.io.Serializable;
+
+/**
+ * The work done for one shard by {@link AddContextDataToReadSparkOptimized}, as measured in the task that read it.
+ * Shards with TOTAL_MILLIS far above the others are the stragglers.
+ */
+public final class ContextShardMetrics extends MetricBase implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    //Note: those fields must be public because code in superclass finds them only if they are public.
+
+    /** The contig of the shard */
+    public String CONTIG;
+
+    /** The first position of the shard */
+    public int START;
+
+    /** The last position of the shard */
+    public int END;
+
+    /** The compressed bytes of the BAM that the index says may hold reads of the shard, or -1 if it wasn't estimated */
+    public long ESTIMATED_BYTES = -1;
+
+    /** The number of reads that start in the shard and pass the filter */
+    public long READS;
+
+    /** The number of sub-shards the shard was divided into */
+    public int SUBSHARDS;
+
+    /** The time spent querying and reading the BAM */
+    public long READ_MILLIS;
+
+    /** The time from opening the BAM to handing on the last sub-shard, which includes the work done downstream in the same task */
+    public long TOTAL_MILLIS;
+
+    public ContextShardMetrics() {}
+
+    public ContextShardMetrics( final SimpleInterval interval ) {
+        CONTIG = interval.getContig();
+        START = interval.getStart();
+        END = interval.getEnd();
+    }
+
+    public SimpleInterval getInterval() {
+        return new SimpleInterval(CONTIG, START, END);
+    }
+}
@@ -0,0 +1,86 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import htsjdk.samtools.metrics.MetricsFile;
+import org.apache.spark.Accumulable;
+import org.apache.spark.AccumulableParam;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.engine.AuthHolder;
+import org.broadinstitute.hellbender.metrics.MetricsUtils;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gathers a {@link ContextShardMetrics} for each shard that {@link AddContextDataToReadSparkOptimized} reads, through a
+ * Spark accumulator, so that the stragglers of a run can be found and written to a metrics file.
+ *
+ * The metrics are complete only once an action has consumed all the shards. As with any accumulator updated in a
+ * transformation, a shard whose task is re-run is reported once for each run.
+ */
+public final class ContextShardStatistics {
+    private final Accumulable<ArrayList<ContextShardMetrics>, ContextShardMetrics> accumulable;
+    // the estimates made on the driver, by shard interval
+    private final Map<SimpleInterval, Long> estimatedBytes = new HashMap<>();
+
+    public ContextShardStatistics( final JavaSparkContext ctx ) {
+        accumulable = ctx.accumulable(new ArrayList<>(), new MetricsListParam());
+    }
+
+    Accumulable<ArrayList<ContextShardMetrics>, ContextShardMetrics> getAccumulable() {
+        return accumulable;
+    }
+
+    void setEstimatedBytes( final List<SimpleInterval> shards, final long[] sizes ) {
+        Utils.validateArg(shards.size() == sizes.length, "there must be one size per shard");
+        for (int i = 0; i < sizes.length; i++) {
+            estimatedBytes.put(shards.get(i), sizes[i]);
+        }
+    }
+
+    /**
+     * @return the metrics of the shards read so far, slowest first
+     */
+    public List<ContextShardMetrics> getMetrics() {
+        final List<ContextShardMetrics> metrics = new ArrayList<>(accumulable.value());
+        for (final ContextShardMetrics shardMetrics : metrics) {
+            shardMetrics.ESTIMATED_BYTES = estimatedBytes.getOrDefault(shardMetrics.getInterval(), -1L);
+        }
+        metrics.sort(Comparator.comparingLong((ContextShardMetrics shardMetrics) -> shardMetrics.TOTAL_MILLIS).reversed());
+        return metrics;
+    }
+
+    /**
+     * Writes the metrics of the shards read so far, slowest first.
+     */
+    public void saveMetrics( final String metricsOutputPath, final AuthHolder authHolder ) {
+        final MetricsFile<ContextShardMetrics, Integer> metricsFile = new MetricsFile<>();
+        getMetrics().forEach(metricsFile::addMetric);
+        MetricsUtils.saveMetrics(metricsFile, metricsOutputPath, authHolder);
+    }
+
+    private static final class MetricsListParam implements AccumulableParam<ArrayList<ContextShardMetrics>, ContextShardMetrics> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public ArrayList<ContextShardMetrics> addAccumulator( final ArrayList<ContextShardMetrics> list, final ContextShardMetrics metrics ) {
+            list.add(metrics);
+            return list;
+        }
+
+        @Override
+        public ArrayList<ContextShardMetrics> addInPlace( final ArrayList<ContextShardMetrics> list1, final ArrayList<ContextShardMetrics> list2 ) {
+            list1.addAll(list2);
+            return list1;
+        }
+
+        @Override
+        public ArrayList<ContextShardMetrics> zero( final ArrayList<ContextShardMetrics> initialValue ) {
+            return new ArrayList<>();
+        }
+    }
+}
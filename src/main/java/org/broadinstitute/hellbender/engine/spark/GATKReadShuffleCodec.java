@@ -0,0 +1,335 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSparkCodec;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.SAMTagUtil;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.function.IntPredicate;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes GATKReads into compact byte arrays for shuffling, independently of Kryo.
+ *
+ * <p>Compared to {@link SAMRecordToGATKReadAdapterSerializer}, which writes the contig and mate contig names as strings
+ * in front of every record, this codec:</p>
+ * <ul>
+ *     <li>writes contigs and read groups as variable-length indexes into the header the codec was created with;</li>
+ *     <li>can drop the attributes that the stages after the shuffle do not need;</li>
+ *     <li>can compress each record (see {@link Compression}).</li>
+ * </ul>
+ *
+ * <p>The rest of the record uses the BAM record layout of {@link SAMRecordSparkCodec}. The codec is serializable, so
+ * it can be captured in Spark closures: {@code reads.map(codec::encode)} before a shuffle and
+ * {@code encoded.map(codec::decode)} after it. Decoded reads are headerless, as with the Kryo serializer.</p>
+ *
+ * <p>Spark already compresses shuffle blocks (spark.shuffle.compress), so per-record compression mostly pays off for
+ * long reads or when shuffle compression is disabled.</p>
+ */
+public final class GATKReadShuffleCodec implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Per-record compression applied after encoding.
+     */
+    public enum Compression {
+        NONE {
+            @Override
+            byte[] compress(final byte[] data, final int length, final GATKReadShuffleCodec codec) {
+                return Arrays.copyOf(data, length);
+            }
+
+            @Override
+            byte[] decompress(final byte[] data, final GATKReadShuffleCodec codec) {
+                return data;
+            }
+        },
+        DEFLATE {
+            @Override
+            byte[] compress(final byte[] data, final int length, final GATKReadShuffleCodec codec) {
+                final Deflater deflater = codec.deflater();
+                deflater.reset();
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                final ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 16);
+                writeUnsignedVarInt(result, length);
+                final byte[] buffer = codec.compressionBuffer(length);
+                while (!deflater.finished()) {
+                    final int n = deflater.deflate(buffer);
+                    result.write(buffer, 0, n);
+                }
+                return result.toByteArray();
+            }
+
+            @Override
+            byte[] decompress(final byte[] data, final GATKReadShuffleCodec codec) {
+                final ByteArrayInputStream in = new ByteArrayInputStream(data);
+                final int length = readUnsignedVarInt(in);
+                final int headerLength = data.length - in.available();
+                final Inflater inflater = codec.inflater();
+                inflater.reset();
+                inflater.setInput(data, headerLength, data.length - headerLength);
+                final byte[] result = new byte[length];
+                try {
+                    int offset = 0;
+                    while (offset < length) {
+                        final int n = inflater.inflate(result, offset, length - offset);
+                        if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                            throw new GATKException("Truncated compressed read record");
+                        }
+                        offset += n;
+                    }
+                } catch (final DataFormatException e) {
+                    throw new GATKException("Corrupt compressed read record", e);
+                }
+                return result;
+            }
+        };
+
+        abstract byte[] compress(final byte[] data, final int length, final GATKReadShuffleCodec codec);
+
+        abstract byte[] decompress(final byte[] data, final GATKReadShuffleCodec codec);
+    }
+
+    private final String[] contigNames;
+    private final String[] readGroupIds;
+    private final Set<String> attributesToKeep;
+    private final Compression compression;
+
+    // per-instance (and therefore per-task, once deserialized on an executor) working state
+    private transient Map<String, Integer> contigIndexes;
+    private transient Map<String, Integer> readGroupIndexes;
+    private transient SAMRecordSparkCodec recordCodec;
+    private transient IntPredicate keepAttribute;
+    private transient IntPredicate keepAttributeExceptReadGroup;
+    private transient ExposedByteArrayOutputStream buffer;
+    private transient Deflater deflater;
+    private transient Inflater inflater;
+    private transient byte[] compressionBuffer;
+
+    /**
+     * Create a codec that keeps all attributes and does not compress.
+     *
+     * @param header header of the reads; contig and read group indexes are relative to it
+     */
+    public GATKReadShuffleCodec(final SAMFileHeader header) {
+        this(header, null, Compression.NONE);
+    }
+
+    /**
+     * @param header header of the reads; contig and read group indexes are relative to it
+     * @param attributesToKeep names of the attributes to keep, including RG; {@code null} keeps all attributes
+     * @param compression compression applied to each encoded record
+     */
+    public GATKReadShuffleCodec(final SAMFileHeader header, final Collection<String> attributesToKeep, final Compression compression) {
+        Utils.nonNull(header, "header cannot be null");
+        Utils.nonNull(compression, "compression cannot be null");
+        final List<SAMSequenceRecord> sequences = header.getSequenceDictionary().getSequences();
+        this.contigNames = new String[sequences.size()];
+        for (int i = 0; i < contigNames.length; i++) {
+            contigNames[i] = sequences.get(i).getSequenceName();
+        }
+        final List<SAMReadGroupRecord> readGroups = header.getReadGroups();
+        this.readGroupIds = new String[readGroups.size()];
+        for (int i = 0; i < readGroupIds.length; i++) {
+            readGroupIds[i] = readGroups.get(i).getId();
+        }
+        this.attributesToKeep = attributesToKeep == null ? null : new HashSet<>(attributesToKeep);
+        this.compression = compression;
+    }
+
+    /**
+     * Encode a read. The read is not modified.
+     *
+     * @throws IllegalArgumentException if the read is on a contig that is not in the header
+     */
+    public byte[] encode(final GATKRead read) {
+        Utils.nonNull(read, "read cannot be null");
+        initializeIfNecessary();
+
+        // the read group and dropped attributes are filtered out as the record is written, rather than removed from a
+        // copy, so that reads backed by a SAMRecord are encoded without copying them (or touching their header)
+        final SAMRecord record = read instanceof SAMRecordToGATKReadAdapter ?
+                ((SAMRecordToGATKReadAdapter) read).getEncapsulatedSamRecord() : read.convertToSAMRecord(null);
+        final int readGroupIndex = readGroupIndex(record);
+
+        buffer.reset();
+        writeUnsignedVarInt(buffer, contigIndex(record.getReferenceName()));
+        writeUnsignedVarInt(buffer, contigIndex(record.getMateReferenceName()));
+        writeUnsignedVarInt(buffer, readGroupIndex);
+        recordCodec.setOutputStream(buffer);
+        recordCodec.encode(record, readGroupIndex > 0 ? keepAttributeExceptReadGroup : keepAttribute);
+        return compression.compress(buffer.getBuffer(), buffer.size(), this);
+    }
+
+    /**
+     * Decode a read encoded by a codec created with the same header and compression.
+     */
+    public GATKRead decode(final byte[] encoded) {
+        Utils.nonNull(encoded, "encoded read cannot be null");
+        initializeIfNecessary();
+
+        final ByteArrayInputStream in = new ByteArrayInputStream(compression.decompress(encoded, this));
+        final int contigIndex = readUnsignedVarInt(in);
+        final int mateContigIndex = readUnsignedVarInt(in);
+        final int readGroupIndex = readUnsignedVarInt(in);
+        recordCodec.setInputStream(in);
+        final SAMRecord record = recordCodec.decode();
+        if (record == null) {
+            throw new GATKException("Truncated read record");
+        }
+
+        // clear indexing bin after decoding to ensure all SAMRecords compare properly
+        record.setFlags(record.getFlags());
+        record.setReferenceName(contigName(contigIndex));
+        record.setMateReferenceName(contigName(mateContigIndex));
+        if (readGroupIndex > 0) {
+            record.setAttribute(SAMTag.RG.name(), readGroupIds[readGroupIndex - 1]);
+        }
+        return SAMRecordToGATKReadAdapter.headerlessReadAdapter(record);
+    }
+
+    private void initializeIfNecessary() {
+        if (recordCodec != null) {
+            return;
+        }
+        contigIndexes = new HashMap<>(contigNames.length * 2);
+        for (int i = 0; i < contigNames.length; i++) {
+            contigIndexes.put(contigNames[i], i);
+        }
+        readGroupIndexes = new HashMap<>(readGroupIds.length * 2);
+        for (int i = 0; i < readGroupIds.length; i++) {
+            readGroupIndexes.put(readGroupIds[i], i);
+        }
+        buffer = new ExposedByteArrayOutputStream();
+        recordCodec = new SAMRecordSparkCodec();
+
+        final SAMTagUtil tagUtil = SAMTagUtil.getSingleton();
+        final short readGroupTag = tagUtil.RG;
+        if (attributesToKeep == null) {
+            keepAttribute = null;
+            keepAttributeExceptReadGroup = tag -> tag != readGroupTag;
+        } else {
+            // attributes are few, so a scan of the kept tags beats boxing each tag for a set lookup
+            final short[] tagsToKeep = new short[attributesToKeep.size()];
+            int i = 0;
+            for (final String attribute : attributesToKeep) {
+                tagsToKeep[i++] = tagUtil.makeBinaryTag(attribute);
+            }
+            keepAttribute = tag -> {
+                for (final short kept : tagsToKeep) {
+                    if (kept == tag) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+            keepAttributeExceptReadGroup = tag -> tag != readGroupTag && keepAttribute.test(tag);
+        }
+    }
+
+    // 0 for no contig, index + 1 otherwise
+    private int contigIndex(final String contig) {
+        if (contig == null || SAMRecord.NO_ALIGNMENT_REFERENCE_NAME.equals(contig)) {
+            return 0;
+        }
+        final Integer index = contigIndexes.get(contig);
+        if (index == null) {
+            throw new IllegalArgumentException("Read contig " + contig + " is not in the sequence dictionary of the header");
+        }
+        return index + 1;
+    }
+
+    private String contigName(final int encodedIndex) {
+        return encodedIndex == 0 ? SAMRecord.NO_ALIGNMENT_REFERENCE_NAME : contigNames[encodedIndex - 1];
+    }
+
+    // 0 if the read group stays in the attributes (absent, dropped, or not in the header), index + 1 otherwise
+    private int readGroupIndex(final SAMRecord record) {
+        if (attributesToKeep != null && !attributesToKeep.contains(SAMTag.RG.name())) {
+            return 0;
+        }
+        final Object readGroup = record.getAttribute(SAMTag.RG.name());
+        if (!(readGroup instanceof String)) {
+            return 0;
+        }
+        final Integer index = readGroupIndexes.get(readGroup);
+        return index == null ? 0 : index + 1;
+    }
+
+    private Deflater deflater() {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        return deflater;
+    }
+
+    private Inflater inflater() {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        return inflater;
+    }
+
+    private byte[] compressionBuffer(final int length) {
+        if (compressionBuffer == null || compressionBuffer.length < length + 64) {
+            compressionBuffer = new byte[length + 64];
+        }
+        return compressionBuffer;
+    }
+
+    static void writeUnsignedVarInt(final ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readUnsignedVarInt(final InputStream in) {
+        try {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                final int b = in.read();
+                if (b < 0) {
+                    throw new GATKException("Truncated read record");
+                }
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        } catch (final IOException e) {
+            throw new GATKException("Error reading encoded read", e);
+        }
+        throw new GATKException("Malformed variable-length integer in encoded read");
+    }
+
+    /**
+     * ByteArrayOutputStream that gives access to its buffer, to avoid a copy before compression.
+     */
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(512);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
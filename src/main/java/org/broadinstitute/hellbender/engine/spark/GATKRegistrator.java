@@ -9,7 +9,9 @@ import htsjdk.samtools.SAMRecord;
 import org.apache.spark.serializer.KryoRegistrator;
 import org.bdgenomics.adam.serialization.ADAMKryoRegistrator;
 import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+import org.broadinstitute.hellbender.utils.read.markduplicates.BinaryReadsKey;
 import org.broadinstitute.hellbender.utils.read.markduplicates.PairedEnds;
+import org.broadinstitute.hellbender.utils.recalibration.SparseRecalibrationTables;
 
 import java.util.Collections;
 
@@ -52,6 +54,10 @@ public class GATKRegistrator implements KryoRegistrator {
         //register to avoid writing the full name of this class over and over
         kryo.register(PairedEnds.class, new FieldSerializer<>(kryo, PairedEnds.class));
 
+        kryo.register(BinaryReadsKey.class, new BinaryReadsKeySerializer());
+
+        kryo.register(SparseRecalibrationTables.class, new SparseRecalibrationTablesSerializer());
+
         // register the ADAM data types using Avro serialization, including:
         //     AlignmentRecord
         //     Genotype
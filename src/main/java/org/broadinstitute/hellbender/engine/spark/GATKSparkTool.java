@@ -8,13 +8,16 @@ import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMSequenceDictionary;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.cmdline.Advanced;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.argumentcollections.*;
 import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
 import org.broadinstitute.hellbender.engine.datasources.ReferenceWindowFunctions;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsParquetSchema;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSink;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
 import org.broadinstitute.hellbender.exceptions.GATKException;
@@ -29,7 +32,9 @@ import org.broadinstitute.hellbender.utils.read.ReadsWriteFormat;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Base class for GATK spark tools that accept standard kinds of inputs (reads, reference, and/or intervals).
@@ -82,6 +87,20 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
     @Argument(doc = "For tools that write an output, write the output in multiple pieces (shards)", shortName = "shardedOutput", fullName = "shardedOutput", optional = true)
     protected boolean shardedOutput = false;
 
+    @Argument(fullName = StandardArgumentDefinitions.CREATE_OUTPUT_BAM_INDEX_LONG_NAME,
+            shortName = StandardArgumentDefinitions.CREATE_OUTPUT_BAM_INDEX_SHORT_NAME,
+            doc = "If true, create a BAM index when writing a single coordinate-sorted BAM file.", optional = true)
+    protected boolean createOutputBamIndex = true;
+
+    @Argument(doc = "If true, create a Hadoop-BAM splitting index when writing a single BAM file.",
+            fullName = "createOutputBamSplittingIndex", shortName = "createOutputBamSplittingIndex", optional = true)
+    protected boolean createOutputBamSplittingIndex = false;
+
+    @Advanced
+    @Argument(doc = "If the reference is a local .2bit file at the same path on every node, memory-map it once per executor " +
+            "instead of loading it on the driver and shipping it to the executors", fullName = "nodeLocalReference", shortName = "nodeLocalReference", optional = true)
+    protected boolean nodeLocalReference = false;
+
     @Argument(doc="For tools that shuffle data or write an output, sets the number of reducers. Defaults to 0, which gives one partition per 10MB of input.",
             shortName = "numReducers", fullName = "numReducers", optional = true)
     protected int numReducers = 0;
@@ -225,6 +244,12 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
                 throw new UserException("Failed to read ADAM file " + readInput, e);
             }
 
+        } else if (ReadsParquetSchema.isParquetReads(readInput)) {
+            try {
+                return readsSource.getParquetReads(readInput, intervals, getRequestedReadColumns());
+            } catch (IOException e) {
+                throw new UserException("Failed to read Parquet read store " + readInput, e);
+            }
         } else {
             if (hasCramInput() && !hasReference()){
                 throw new UserException.MissingReference("A reference file is required when using CRAM files.");
@@ -235,8 +260,20 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
         }
     }
 
+    /**
+     * Returns the columns of the reads that this tool needs, when the reads input is a Parquet read store
+     * (see {@link ReadsParquetSchema}). Only these columns are read, and the other fields of the reads are left unset,
+     * so tools that narrow the columns must make sure their default read filters need no others.
+     *
+     * Defaults to all the columns. Has no effect on other inputs.
+     */
+    public Set<ReadsParquetSchema.Column> getRequestedReadColumns() {
+        return EnumSet.allOf(ReadsParquetSchema.Column.class);
+    }
+
     /**
      * Writes the reads from a {@link JavaRDD} to an output file.
+     * An output path ending in {@value ReadsParquetSchema#EXTENSION} is written as a Parquet read store.
      * @param ctx the JavaSparkContext to write.
      * @param outputFile path to the output bam/cram.
      * @param reads reads to write.
@@ -245,13 +282,20 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
         try {
             ReadsSparkSink.writeReads(ctx, outputFile,
                     hasReference() ? referenceArguments.getReferenceFile().getAbsolutePath() : null,
-                    reads, readsHeader, shardedOutput ? ReadsWriteFormat.SHARDED : ReadsWriteFormat.SINGLE,
-                    getRecommendedNumReducers());
+                    reads, readsHeader, getOutputFormat(outputFile),
+                    getRecommendedNumReducers(), createOutputBamIndex, createOutputBamSplittingIndex);
         } catch (IOException e) {
             throw new GATKException("unable to write bam: " + e);
         }
     }
 
+    private ReadsWriteFormat getOutputFormat(final String outputFile) {
+        if (ReadsParquetSchema.isParquetReads(outputFile)) {
+            return ReadsWriteFormat.PARQUET;
+        }
+        return shardedOutput ? ReadsWriteFormat.SHARDED : ReadsWriteFormat.SINGLE;
+    }
+
     /**
      * Return the recommended number of reducers for a pipeline processing the reads. The number is
      * calculated by finding the total size (in bytes) of all the files in the input path, then
@@ -383,8 +427,12 @@ public abstract class GATKSparkTool extends SparkCommandLineProgram {
     private void initializeReference() {
         final GCSOptions gcsOptions = getAuthenticatedGCSOptions(); // null if we have no api key
         final String referenceURL = referenceArguments.getReferenceFileName();
+        if ( nodeLocalReference && (referenceURL == null || !ReferenceMultiSource.isLocalTwoBit(referenceURL)) ) {
+            throw new UserException.BadArgumentValue("nodeLocalReference", "true",
+                    "Only a local .2bit reference can be memory-mapped on each node, but the reference is " + referenceURL);
+        }
         if ( referenceURL != null ) {
-            referenceSource = new ReferenceMultiSource(gcsOptions, referenceURL, getReferenceWindowFunction());
+            referenceSource = new ReferenceMultiSource(gcsOptions, referenceURL, getReferenceWindowFunction(), nodeLocalReference);
             referenceDictionary = referenceSource.getReferenceSequenceDictionary(readsHeader != null ? readsHeader.getSequenceDictionary() : null);
             if (referenceDictionary == null) {
                 throw new UserException.MissingReferenceDictFile(referenceURL);
@@ -0,0 +1,74 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.broadinstitute.hellbender.utils.recalibration.SparseRecalibrationTables;
+
+/**
+ * Serializer for SparseRecalibrationTables. Cell indexes are written as variable-length deltas from the previous cell
+ * of the table and observation counts as variable-length longs, so most cells take a few bytes plus their two doubles.
+ */
+public final class SparseRecalibrationTablesSerializer extends Serializer<SparseRecalibrationTables> {
+
+    public SparseRecalibrationTablesSerializer() {
+        // tables are never modified once built
+        setImmutable(true);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, SparseRecalibrationTables tables) {
+        output.writeInt(tables.numTables(), true);
+        for (int t = 0; t < tables.numTables(); t++) {
+            final int[] dimensions = tables.getDimensions(t);
+            output.writeInt(dimensions.length, true);
+            for (final int dimension : dimensions) {
+                output.writeInt(dimension, true);
+            }
+            final long[] cells = tables.getCells(t);
+            final long[] observations = tables.getObservations(t);
+            final double[] scaledMismatches = tables.getScaledMismatches(t);
+            final double[] reportedQualities = tables.getReportedQualities(t);
+            output.writeInt(cells.length, true);
+            long previousCell = 0;
+            for (int i = 0; i < cells.length; i++) {
+                output.writeLong(cells[i] - previousCell, true);
+                previousCell = cells[i];
+                output.writeLong(observations[i], true);
+                output.writeDouble(scaledMismatches[i]);
+                output.writeDouble(reportedQualities[i]);
+            }
+        }
+    }
+
+    @Override
+    public SparseRecalibrationTables read(Kryo kryo, Input input, Class<SparseRecalibrationTables> type) {
+        final int numTables = input.readInt(true);
+        final int[][] dimensions = new int[numTables][];
+        final long[][] cells = new long[numTables][];
+        final long[][] observations = new long[numTables][];
+        final double[][] scaledMismatches = new double[numTables][];
+        final double[][] reportedQualities = new double[numTables][];
+        for (int t = 0; t < numTables; t++) {
+            dimensions[t] = new int[input.readInt(true)];
+            for (int d = 0; d < dimensions[t].length; d++) {
+                dimensions[t][d] = input.readInt(true);
+            }
+            final int numCells = input.readInt(true);
+            cells[t] = new long[numCells];
+            observations[t] = new long[numCells];
+            scaledMismatches[t] = new double[numCells];
+            reportedQualities[t] = new double[numCells];
+            long previousCell = 0;
+            for (int i = 0; i < numCells; i++) {
+                previousCell += input.readLong(true);
+                cells[t][i] = previousCell;
+                observations[t][i] = input.readLong(true);
+                scaledMismatches[t][i] = input.readDouble();
+                reportedQualities[t][i] = input.readDouble();
+            }
+        }
+        return new SparseRecalibrationTables(dimensions, cells, observations, scaledMismatches, reportedQualities);
+    }
+}
@@ -0,0 +1,238 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.GenomicIndexUtil;
+import htsjdk.samtools.SAMRecord;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The .bai and Hadoop-BAM splitting index (.splitting-bai) entries for one part of a BAM, with virtual offsets
+ * relative to the start of the part.
+ *
+ * {@link ReadsSparkSink} writes each partition of a sorted RDD as a part of BGZF blocks and builds a fragment for it
+ * while writing; once the parts are concatenated behind the header, {@link #writeBai} and {@link #writeSplittingBai}
+ * shift each fragment by the position of its part in the file, so the indexes of the whole BAM are made without
+ * reading it again.
+ */
+public final class BAMIndexFragment implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final byte[] BAI_MAGIC = {'B', 'A', 'I', 1};
+
+    private final int granularity;
+    // per reference index, in the order of the records
+    private final Map<Integer, ReferenceIndex> references = new TreeMap<>();
+    private long numNoCoordinateRecords;
+    // start offsets of every granularity-th record, for the splitting index
+    private final LongArrayList splittingOffsets = new LongArrayList();
+    private long numRecords;
+
+    /**
+     * @param granularity the splitting index has an entry every this many records
+     */
+    public BAMIndexFragment(final int granularity) {
+        Utils.validateArg(granularity > 0, "granularity must be positive");
+        this.granularity = granularity;
+    }
+
+    private static final class ReferenceIndex implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // chunks (start and end offsets, one after the other) by bin
+        private final Map<Integer, LongArrayList> bins = new TreeMap<>();
+        // start offset of the first record overlapping each 16kb window, or -1
+        private long[] linearIndex = new long[0];
+        private long firstOffset = -1;
+        private long lastOffset;
+        private long numAligned;
+        private long numUnaligned;
+
+        private void add(final int bin, final int start, final int end, final boolean unaligned, final long startOffset, final long endOffset) {
+            final LongArrayList chunks = bins.computeIfAbsent(bin, b -> new LongArrayList());
+            final int last = chunks.size() - 1;
+            // as htsjdk does, extend the last chunk of the bin rather than start one in the same BGZF block
+            if (last > 0 && (chunks.getLong(last) == startOffset || chunks.getLong(last) >>> 16 == startOffset >>> 16)) {
+                chunks.set(last, endOffset);
+            } else {
+                chunks.add(startOffset);
+                chunks.add(endOffset);
+            }
+
+            final int startWindow = (start - 1) >> GenomicIndexUtil.LINEAR_INDEX_SHIFT;
+            final int endWindow = (end - 1) >> GenomicIndexUtil.LINEAR_INDEX_SHIFT;
+            if (endWindow >= linearIndex.length) {
+                final int oldLength = linearIndex.length;
+                linearIndex = Arrays.copyOf(linearIndex, endWindow + 1);
+                Arrays.fill(linearIndex, oldLength, linearIndex.length, -1);
+            }
+            for (int window = startWindow; window <= endWindow; window++) {
+                if (linearIndex[window] == -1) {
+                    linearIndex[window] = startOffset;
+                }
+            }
+
+            if (firstOffset == -1) {
+                firstOffset = startOffset;
+            }
+            lastOffset = endOffset;
+            if (unaligned) {
+                numUnaligned++;
+            } else {
+                numAligned++;
+            }
+        }
+    }
+
+    /**
+     * Adds a record, which must have its header set, written at the given virtual offsets of the part.
+     */
+    public void processRecord(final SAMRecord record, final long startOffset, final long endOffset) {
+        if (numRecords++ % granularity == 0) {
+            splittingOffsets.add(startOffset);
+        }
+        final int referenceIndex = record.getReferenceIndex();
+        if (referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+            numNoCoordinateRecords++;
+            return;
+        }
+        final int start = record.getAlignmentStart();
+        // unmapped reads placed at a position are indexed at that position
+        final int end = record.getReadUnmappedFlag() ? start : Math.max(start, record.getAlignmentEnd());
+        references.computeIfAbsent(referenceIndex, r -> new ReferenceIndex())
+                .add(record.computeIndexingBin(), start, end, record.getReadUnmappedFlag(), startOffset, endOffset);
+    }
+
+    /**
+     * Writes the .bai of a BAM made of parts with these fragments, in order.
+     *
+     * @param fragments the fragments of the parts, in the order of the parts in the file
+     * @param partOffsets the position in the file of the first byte of each part
+     * @param numReferences the number of sequences in the header
+     */
+    public static void writeBai(final List<BAMIndexFragment> fragments, final long[] partOffsets, final int numReferences, final OutputStream out) throws IOException {
+        Utils.validateArg(fragments.size() == partOffsets.length, "there must be one offset per fragment");
+        final DataOutputStream data = new DataOutputStream(out);
+        data.write(BAI_MAGIC);
+        writeInt(data, numReferences);
+        long numNoCoordinateRecords = 0;
+        for (final BAMIndexFragment fragment : fragments) {
+            numNoCoordinateRecords += fragment.numNoCoordinateRecords;
+        }
+        for (int reference = 0; reference < numReferences; reference++) {
+            writeReference(data, fragments, partOffsets, reference);
+        }
+        writeLong(data, numNoCoordinateRecords);
+        data.flush();
+    }
+
+    private static void writeReference(final DataOutputStream data, final List<BAMIndexFragment> fragments, final long[] partOffsets, final int reference) throws IOException {
+        // the parts are sorted, so appending the chunks of the parts in order keeps the chunks of each bin sorted
+        final Map<Integer, LongArrayList> bins = new TreeMap<>();
+        long[] linearIndex = new long[0];
+        long firstOffset = -1;
+        long lastOffset = 0;
+        long numAligned = 0;
+        long numUnaligned = 0;
+        for (int i = 0; i < fragments.size(); i++) {
+            final ReferenceIndex index = fragments.get(i).references.get(reference);
+            if (index == null) {
+                continue;
+            }
+            final long shift = partOffsets[i] << 16;
+            for (final Map.Entry<Integer, LongArrayList> bin : index.bins.entrySet()) {
+                final LongArrayList chunks = bins.computeIfAbsent(bin.getKey(), b -> new LongArrayList());
+                for (int c = 0; c < bin.getValue().size(); c++) {
+                    chunks.add(bin.getValue().getLong(c) + shift);
+                }
+            }
+            if (index.linearIndex.length > linearIndex.length) {
+                final int oldLength = linearIndex.length;
+                linearIndex = Arrays.copyOf(linearIndex, index.linearIndex.length);
+                Arrays.fill(linearIndex, oldLength, linearIndex.length, -1);
+            }
+            for (int window = 0; window < index.linearIndex.length; window++) {
+                // the earliest part overlapping the window has the smallest offset
+                if (linearIndex[window] == -1 && index.linearIndex[window] != -1) {
+                    linearIndex[window] = index.linearIndex[window] + shift;
+                }
+            }
+            if (firstOffset == -1) {
+                firstOffset = index.firstOffset + shift;
+            }
+            lastOffset = index.lastOffset + shift;
+            numAligned += index.numAligned;
+            numUnaligned += index.numUnaligned;
+        }
+
+        if (firstOffset == -1) {
+            writeInt(data, 0);
+            writeInt(data, 0);
+            return;
+        }
+
+        writeInt(data, bins.size() + 1);
+        for (final Map.Entry<Integer, LongArrayList> bin : bins.entrySet()) {
+            writeInt(data, bin.getKey());
+            writeInt(data, bin.getValue().size() / 2);
+            for (int c = 0; c < bin.getValue().size(); c++) {
+                writeLong(data, bin.getValue().getLong(c));
+            }
+        }
+        // the metadata pseudo-bin
+        writeInt(data, GenomicIndexUtil.MAX_BINS);
+        writeInt(data, 2);
+        writeLong(data, firstOffset);
+        writeLong(data, lastOffset);
+        writeLong(data, numAligned);
+        writeLong(data, numUnaligned);
+
+        // windows no read overlaps take the offset of the previous window, as in the indexes htsjdk writes
+        writeInt(data, linearIndex.length);
+        long previous = 0;
+        for (final long offset : linearIndex) {
+            previous = offset == -1 ? previous : offset;
+            writeLong(data, previous);
+        }
+    }
+
+    /**
+     * Writes the splitting index of a BAM made of parts with these fragments, in order.
+     *
+     * @param fragments the fragments of the parts, in the order of the parts in the file
+     * @param partOffsets the position in the file of the first byte of each part
+     * @param fileLength the length of the whole BAM
+     */
+    public static void writeSplittingBai(final List<BAMIndexFragment> fragments, final long[] partOffsets, final long fileLength, final OutputStream out) throws IOException {
+        Utils.validateArg(fragments.size() == partOffsets.length, "there must be one offset per fragment");
+        // the format of Hadoop-BAM's SplittingBAMIndexer: big-endian virtual offsets, then the file length as a virtual offset
+        final DataOutputStream data = new DataOutputStream(out);
+        for (int i = 0; i < fragments.size(); i++) {
+            final long shift = partOffsets[i] << 16;
+            final LongArrayList offsets = fragments.get(i).splittingOffsets;
+            for (int j = 0; j < offsets.size(); j++) {
+                data.writeLong(offsets.getLong(j) + shift);
+            }
+        }
+        data.writeLong(fileLength << 16);
+        data.flush();
+    }
+
+    private static void writeInt(final DataOutputStream data, final int value) throws IOException {
+        data.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+    }
+
+    private static void writeLong(final DataOutputStream data, final long value) throws IOException {
+        data.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array());
+    }
+}
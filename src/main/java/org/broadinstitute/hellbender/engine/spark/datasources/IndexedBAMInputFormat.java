@@ -0,0 +1,383 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.CachingBAMFileIndex;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.CloserUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.ReadConstants;
+import org.seqdoop.hadoop_bam.SAMRecordWritable;
+import org.seqdoop.hadoop_bam.SplittingBAMIndex;
+import org.seqdoop.hadoop_bam.SplittingBAMIndexer;
+import org.seqdoop.hadoop_bam.util.SAMHeaderReader;
+import org.seqdoop.hadoop_bam.util.WrapSeekable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reads the parts of an indexed BAM that overlap a set of intervals, without scanning the rest of the file.
+ *
+ * The .bai gives, for each interval, the chunks of the file (ranges of BGZF virtual offsets, already trimmed by its
+ * linear index) that may hold overlapping reads. The chunks of all the intervals are merged, chunks larger than the
+ * split size are cut at record boundaries taken from the Hadoop-BAM splitting index (.splitting-bai) when there is one,
+ * and consecutive chunks are packed into splits of about the split size of compressed data. Each split prefers the hosts
+ * of the HDFS block it starts in, so Spark runs it where its data is.
+ *
+ * The reads of the chunks are not filtered: like an index query, a chunk may hold reads near the intervals that do
+ * not overlap them, so callers must filter the reads themselves.
+ */
+public final class IndexedBAMInputFormat extends InputFormat<LongWritable, SAMRecordWritable> {
+    private static final Logger logger = LogManager.getLogger(IndexedBAMInputFormat.class);
+
+    public static final String INTERVALS_PROPERTY = "hellbender.indexedbaminputformat.intervals";
+
+    // chunks less than one (maximum size) BGZF block apart are read as one, since reading the gap costs less than a seek
+    static final long MERGE_GAP = 1 << 16;
+
+    /**
+     * Sets the intervals to read in the configuration.
+     */
+    public static void setIntervals(final Configuration conf, final List<SimpleInterval> intervals) {
+        Utils.nonEmpty(intervals, "intervals cannot be empty");
+        final StringBuilder value = new StringBuilder();
+        for (final SimpleInterval interval : intervals) {
+            // contig names cannot contain whitespace
+            value.append(interval.getContig()).append('\t').append(interval.getStart()).append('\t').append(interval.getEnd()).append('\n');
+        }
+        conf.set(INTERVALS_PROPERTY, value.toString());
+    }
+
+    static List<SimpleInterval> getIntervals(final Configuration conf) {
+        final String value = conf.get(INTERVALS_PROPERTY);
+        if (value == null) {
+            throw new UserException("No intervals set for " + IndexedBAMInputFormat.class.getSimpleName());
+        }
+        final List<SimpleInterval> intervals = new ArrayList<>();
+        for (final String line : value.split("\n")) {
+            final String[] fields = line.split("\t");
+            intervals.add(new SimpleInterval(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2])));
+        }
+        return intervals;
+    }
+
+    /**
+     * @return the path of the .bai for the BAM (either foo.bam.bai or foo.bai), or null if there is none
+     */
+    public static Path getIndexPath(final Path bam, final Configuration conf) throws IOException {
+        final FileSystem fs = bam.getFileSystem(conf);
+        final Path appended = bam.suffix(BAMIndex.BAMIndexSuffix);
+        if (fs.exists(appended)) {
+            return appended;
+        }
+        final String name = bam.getName();
+        final int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            final Path replaced = new Path(bam.getParent(), name.substring(0, dot) + BAMIndex.BAMIndexSuffix);
+            if (fs.exists(replaced)) {
+                return replaced;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<InputSplit> getSplits(final JobContext context) throws IOException {
+        final Configuration conf = context.getConfiguration();
+        final List<SimpleInterval> intervals = getIntervals(conf);
+        final List<InputSplit> splits = new ArrayList<>();
+        for (final Path path : FileInputFormat.getInputPaths(context)) {
+            splits.addAll(getSplits(path, conf, intervals));
+        }
+        return splits;
+    }
+
+    private static List<ChunkSplit> getSplits(final Path path, final Configuration conf, final List<SimpleInterval> intervals) throws IOException {
+        final FileSystem fs = path.getFileSystem(conf);
+        final FileStatus status = fs.getFileStatus(path);
+        final long maxSplitSize = conf.getLong(FileInputFormat.SPLIT_MAXSIZE, status.getBlockSize());
+
+        final Path indexPath = getIndexPath(path, conf);
+        if (indexPath == null) {
+            throw new UserException.BadInput("An index is required to read intervals of " + path + " with " + IndexedBAMInputFormat.class.getSimpleName());
+        }
+        final SAMFileHeader header = SAMHeaderReader.readSAMHeaderFrom(path, conf);
+        final List<Chunk> chunks = new ArrayList<>();
+        final BAMIndex index = new CachingBAMFileIndex(WrapSeekable.openPath(conf, indexPath), header.getSequenceDictionary());
+        try {
+            for (final SimpleInterval interval : intervals) {
+                final int referenceIndex = header.getSequenceIndex(interval.getContig());
+                if (referenceIndex < 0) {
+                    continue;
+                }
+                final BAMFileSpan span = index.getSpanOverlapping(referenceIndex, interval.getStart(), interval.getEnd());
+                if (span != null) {
+                    chunks.addAll(span.getChunks());
+                }
+            }
+        } finally {
+            index.close();
+        }
+
+        SplittingBAMIndex splittingIndex = null;
+        final Path splittingIndexPath = path.suffix(SplittingBAMIndexer.OUTPUT_FILE_EXTENSION);
+        if (fs.exists(splittingIndexPath)) {
+            try (final InputStream in = fs.open(splittingIndexPath)) {
+                splittingIndex = new SplittingBAMIndex(in);
+            }
+        }
+
+        final List<ChunkSplit> splits = new ArrayList<>();
+        for (final List<Chunk> splitChunks : partitionChunks(chunks, splittingIndex, maxSplitSize)) {
+            final long start = compressedOffset(splitChunks.get(0).getChunkStart());
+            final BlockLocation[] blocks = fs.getFileBlockLocations(status, start, 1);
+            splits.add(new ChunkSplit(path, splitChunks, blocks.length == 0 ? new String[0] : blocks[0].getHosts()));
+        }
+        logger.info(String.format("%d intervals of %s map to %d chunks of %d compressed bytes in %d splits",
+                intervals.size(), path, chunks.size(), splits.stream().mapToLong(ChunkSplit::getLength).sum(), splits.size()));
+        return splits;
+    }
+
+    /**
+     * Merges the chunks, cuts those larger than the split size at the alignments of the splitting index (if not null),
+     * and packs the resulting chunks, in file order, into groups of about the split size.
+     */
+    static List<List<Chunk>> partitionChunks(final List<Chunk> chunks, final SplittingBAMIndex splittingIndex, final long maxSplitSize) {
+        Utils.validateArg(maxSplitSize > 0, "the split size must be positive");
+        final List<List<Chunk>> partitions = new ArrayList<>();
+        List<Chunk> partition = new ArrayList<>();
+        long partitionSize = 0;
+        for (final Chunk merged : mergeChunks(chunks)) {
+            for (final Chunk chunk : cutChunk(merged, splittingIndex, maxSplitSize)) {
+                final long size = compressedSize(chunk);
+                if (!partition.isEmpty() && partitionSize + size > maxSplitSize) {
+                    partitions.add(partition);
+                    partition = new ArrayList<>();
+                    partitionSize = 0;
+                }
+                partition.add(chunk);
+                partitionSize += size;
+            }
+        }
+        if (!partition.isEmpty()) {
+            partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    /**
+     * Sorts the chunks and merges those that overlap or are less than {@link #MERGE_GAP} compressed bytes apart.
+     */
+    static List<Chunk> mergeChunks(final List<Chunk> chunks) {
+        final List<Chunk> sorted = new ArrayList<>(chunks);
+        Collections.sort(sorted, Comparator.comparingLong(Chunk::getChunkStart));
+        final List<Chunk> merged = new ArrayList<>();
+        Chunk current = null;
+        for (final Chunk chunk : sorted) {
+            if (current != null && (chunk.getChunkStart() <= current.getChunkEnd() ||
+                    compressedOffset(chunk.getChunkStart()) - compressedOffset(current.getChunkEnd()) < MERGE_GAP)) {
+                current = new Chunk(current.getChunkStart(), Math.max(current.getChunkEnd(), chunk.getChunkEnd()));
+            } else {
+                if (current != null) {
+                    merged.add(current);
+                }
+                current = chunk;
+            }
+        }
+        if (current != null) {
+            merged.add(current);
+        }
+        return merged;
+    }
+
+    // chunks can only be cut where a record starts, which only the splitting index knows
+    private static List<Chunk> cutChunk(final Chunk chunk, final SplittingBAMIndex splittingIndex, final long maxSplitSize) {
+        if (splittingIndex == null || compressedSize(chunk) <= maxSplitSize) {
+            return Collections.singletonList(chunk);
+        }
+        final List<Chunk> pieces = new ArrayList<>();
+        long start = chunk.getChunkStart();
+        long target = compressedOffset(start) + maxSplitSize;
+        while (target < compressedOffset(chunk.getChunkEnd())) {
+            final Long cut = splittingIndex.nextAlignment(target);
+            if (cut == null || cut >= chunk.getChunkEnd()) {
+                break;
+            }
+            if (cut > start) {
+                pieces.add(new Chunk(start, cut));
+                start = cut;
+            }
+            target = compressedOffset(cut) + maxSplitSize;
+        }
+        pieces.add(new Chunk(start, chunk.getChunkEnd()));
+        return pieces;
+    }
+
+    private static long compressedOffset(final long virtualOffset) {
+        return virtualOffset >>> 16;
+    }
+
+    // a chunk within a single BGZF block still costs a block read
+    private static long compressedSize(final Chunk chunk) {
+        return Math.max(1, compressedOffset(chunk.getChunkEnd()) - compressedOffset(chunk.getChunkStart()));
+    }
+
+    @Override
+    public RecordReader<LongWritable, SAMRecordWritable> createRecordReader(final InputSplit split, final TaskAttemptContext context) {
+        return new ChunkRecordReader();
+    }
+
+    /**
+     * A list of chunks of a BAM file.
+     */
+    public static final class ChunkSplit extends InputSplit implements Writable {
+        private Path path;
+        private List<Chunk> chunks;
+        // not serialized: only the driver schedules splits
+        private String[] hosts = new String[0];
+
+        // for deserialization
+        public ChunkSplit() {}
+
+        public ChunkSplit(final Path path, final List<Chunk> chunks, final String[] hosts) {
+            this.path = Utils.nonNull(path);
+            this.chunks = Utils.nonEmpty(chunks);
+            this.hosts = Utils.nonNull(hosts);
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public List<Chunk> getChunks() {
+            return chunks;
+        }
+
+        /**
+         * @return the (approximate) number of compressed bytes in the chunks
+         */
+        @Override
+        public long getLength() {
+            return chunks.stream().mapToLong(IndexedBAMInputFormat::compressedSize).sum();
+        }
+
+        @Override
+        public String[] getLocations() {
+            return hosts;
+        }
+
+        @Override
+        public void write(final DataOutput out) throws IOException {
+            Text.writeString(out, path.toString());
+            out.writeInt(chunks.size());
+            for (final Chunk chunk : chunks) {
+                out.writeLong(chunk.getChunkStart());
+                out.writeLong(chunk.getChunkEnd());
+            }
+        }
+
+        @Override
+        public void readFields(final DataInput in) throws IOException {
+            path = new Path(Text.readString(in));
+            final int numChunks = in.readInt();
+            chunks = new ArrayList<>(numChunks);
+            for (int i = 0; i < numChunks; i++) {
+                chunks.add(new Chunk(in.readLong(), in.readLong()));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return path + ":" + chunks;
+        }
+    }
+
+    /**
+     * Reads the records of the chunks of a {@link ChunkSplit}, keyed by their index in the split.
+     */
+    static final class ChunkRecordReader extends RecordReader<LongWritable, SAMRecordWritable> {
+        private final LongWritable key = new LongWritable();
+        private final SAMRecordWritable value = new SAMRecordWritable();
+        private SamReader reader;
+        private SAMRecordIterator iterator;
+        private long numRecords;
+
+        @Override
+        public void initialize(final InputSplit split, final TaskAttemptContext context) throws IOException {
+            final ChunkSplit chunkSplit = (ChunkSplit) split;
+            final Configuration conf = context.getConfiguration();
+            final ValidationStringency stringency = ValidationStringency.valueOf(
+                    conf.get(SAMHeaderReader.VALIDATION_STRINGENCY_PROPERTY, ReadConstants.DEFAULT_READ_VALIDATION_STRINGENCY.name()));
+            reader = SamReaderFactory.makeDefault().validationStringency(stringency)
+                    .open(SamInputResource.of(WrapSeekable.openPath(conf, chunkSplit.getPath())));
+            iterator = reader.indexing().iterator(new BAMFileSpan(chunkSplit.getChunks()));
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            final SAMRecord record = iterator.next();
+            key.set(numRecords++);
+            value.set(record);
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public SAMRecordWritable getCurrentValue() {
+            return value;
+        }
+
+        // the number of records in the chunks is not known in advance
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            CloserUtil.close(iterator);
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.TextTagCodec;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.io.api.Binary;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The columnar Parquet layout of a GATK read store, as written by {@link ReadsSparkSink} with
+ * {@link org.broadinstitute.hellbender.utils.read.ReadsWriteFormat#PARQUET} and read by {@link ReadsSparkSource#getParquetReads}.
+ *
+ * A read store is a directory of Parquet files with one flat record per read, plus a SAM text header in {@link #HEADER_FILE_NAME}.
+ * Unlike ADAM's AlignmentRecord, the fields are grouped into {@link Column}s that can be read on their own: a tool that
+ * only looks at flags reads only the flags column, and reads made from a projection have only the projected fields set.
+ * Each read also stores the end of its alignment, so that the Parquet row group statistics on contig, start and end
+ * let whole row groups be skipped when reading intervals of a coordinate-sorted store.
+ */
+public final class ReadsParquetSchema {
+
+    /**
+     * Name of the SAM text header file in a read store. Names starting with an underscore are ignored by the Parquet input format.
+     */
+    public static final String HEADER_FILE_NAME = "_header.sam";
+
+    /**
+     * Extension that marks a reads input or output as a Parquet read store.
+     */
+    public static final String EXTENSION = ".parquet";
+
+    private static final String RECORD_NAME = "GATKReadRecord";
+    private static final String NAMESPACE = "org.broadinstitute.hellbender.parquet";
+
+    private static final String NAME = "name";
+    private static final String FLAGS = "flags";
+    private static final String CONTIG = "contig";
+    private static final String START = "start";
+    private static final String END = "end";
+    private static final String MAPPING_QUALITY = "mappingQuality";
+    private static final String CIGAR = "cigar";
+    private static final String MATE_CONTIG = "mateContig";
+    private static final String MATE_START = "mateStart";
+    private static final String FRAGMENT_LENGTH = "fragmentLength";
+    private static final String BASES = "bases";
+    private static final String BASE_QUALITIES = "baseQualities";
+    private static final String READ_GROUP = "readGroup";
+    private static final String ATTRIBUTES = "attributes";
+
+    // the separator between the SAM text encodings of the attributes (tabs cannot occur within them)
+    private static final String ATTRIBUTE_SEPARATOR = "\t";
+
+    /**
+     * The groups of fields a tool can ask for.
+     */
+    public enum Column {
+        NAME(ReadsParquetSchema.NAME),
+        FLAGS(ReadsParquetSchema.FLAGS),
+        /** the contig, start and alignment end */
+        POSITION(CONTIG, START, END),
+        MAPPING_QUALITY(ReadsParquetSchema.MAPPING_QUALITY),
+        CIGAR(ReadsParquetSchema.CIGAR),
+        /** the mate contig and start, and the fragment length */
+        MATE(MATE_CONTIG, MATE_START, FRAGMENT_LENGTH),
+        BASES(ReadsParquetSchema.BASES),
+        BASE_QUALITIES(ReadsParquetSchema.BASE_QUALITIES),
+        READ_GROUP(ReadsParquetSchema.READ_GROUP),
+        /** all the attributes except the read group */
+        ATTRIBUTES(ReadsParquetSchema.ATTRIBUTES);
+
+        private final List<String> fields;
+
+        Column(final String... fields) {
+            this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+        }
+
+        public List<String> getFields() {
+            return fields;
+        }
+    }
+
+    /**
+     * The schema of the records in a read store, with every column.
+     */
+    public static final Schema SCHEMA = schemaFor(EnumSet.allOf(Column.class));
+
+    private ReadsParquetSchema() {}
+
+    /**
+     * @return true if the path names a Parquet read store
+     */
+    public static boolean isParquetReads(final String path) {
+        return path.endsWith(EXTENSION) || path.endsWith(EXTENSION + "/");
+    }
+
+    /**
+     * Makes the schema of records with only the given columns, to use as a projection of {@link #SCHEMA}.
+     */
+    public static Schema schemaFor(final Set<Column> columns) {
+        Utils.nonNull(columns);
+        Utils.validateArg(!columns.isEmpty(), "at least one column must be requested");
+        SchemaBuilder.FieldAssembler<Schema> fields = SchemaBuilder.record(RECORD_NAME).namespace(NAMESPACE).fields();
+        // fields are added in column declaration order whatever the order of the set
+        for (final Column column : EnumSet.copyOf(columns)) {
+            for (final String field : column.getFields()) {
+                switch (field) {
+                    case NAME:
+                    case CONTIG:
+                    case CIGAR:
+                    case MATE_CONTIG:
+                    case READ_GROUP:
+                    case ATTRIBUTES:
+                        fields = fields.name(field).type().nullable().stringType().noDefault();
+                        break;
+                    case BASES:
+                    case BASE_QUALITIES:
+                        fields = fields.name(field).type().bytesType().noDefault();
+                        break;
+                    default:
+                        fields = fields.name(field).type().intType().intDefault(0);
+                }
+            }
+        }
+        return fields.endRecord();
+    }
+
+    /**
+     * Converts a read to a record with every column.
+     */
+    public static GenericRecord toRecord(final GATKRead read) {
+        // the SAMRecord keeps the placement of unmapped reads, which GATKRead hides
+        final SAMRecord sam = read.convertToSAMRecord(null);
+        final GenericRecord record = new GenericData.Record(SCHEMA);
+        record.put(NAME, sam.getReadName());
+        record.put(FLAGS, sam.getFlags());
+        record.put(CONTIG, nullIfMissing(sam.getReferenceName()));
+        record.put(START, sam.getAlignmentStart());
+        // unmapped reads placed at a position overlap that position only
+        record.put(END, sam.getReadUnmappedFlag() ? sam.getAlignmentStart() : sam.getAlignmentEnd());
+        record.put(MAPPING_QUALITY, sam.getMappingQuality());
+        record.put(CIGAR, nullIfMissing(sam.getCigarString()));
+        record.put(MATE_CONTIG, nullIfMissing(sam.getMateReferenceName()));
+        record.put(MATE_START, sam.getMateAlignmentStart());
+        record.put(FRAGMENT_LENGTH, sam.getInferredInsertSize());
+        record.put(BASES, ByteBuffer.wrap(sam.getReadBases()));
+        record.put(BASE_QUALITIES, ByteBuffer.wrap(sam.getBaseQualities()));
+        record.put(READ_GROUP, sam.getStringAttribute(SAMTag.RG.name()));
+
+        final TextTagCodec codec = new TextTagCodec();
+        final StringBuilder attributes = new StringBuilder();
+        for (final SAMRecord.SAMTagAndValue attribute : sam.getAttributes()) {
+            if (attribute.tag.equals(SAMTag.RG.name())) {
+                continue;
+            }
+            if (attributes.length() > 0) {
+                attributes.append(ATTRIBUTE_SEPARATOR);
+            }
+            attributes.append(codec.encode(attribute.tag, attribute.value));
+        }
+        record.put(ATTRIBUTES, attributes.length() == 0 ? null : attributes.toString());
+        return record;
+    }
+
+    /**
+     * Converts a record, possibly of a projected schema, to a headerless read. Fields that are not in the record's schema
+     * are left at their SAMRecord defaults (no name, unmapped position, no bases and so on).
+     */
+    public static GATKRead fromRecord(final GenericRecord record) {
+        final Schema schema = record.getSchema();
+        final SAMRecord sam = new SAMRecord(null);
+        if (schema.getField(NAME) != null) {
+            sam.setReadName(string(record.get(NAME)));
+        }
+        if (schema.getField(FLAGS) != null) {
+            sam.setFlags((Integer) record.get(FLAGS));
+        }
+        if (schema.getField(CONTIG) != null) {
+            final String contig = string(record.get(CONTIG));
+            sam.setReferenceName(contig == null ? SAMRecord.NO_ALIGNMENT_REFERENCE_NAME : contig);
+            sam.setAlignmentStart((Integer) record.get(START));
+        }
+        if (schema.getField(MAPPING_QUALITY) != null) {
+            sam.setMappingQuality((Integer) record.get(MAPPING_QUALITY));
+        }
+        if (schema.getField(CIGAR) != null) {
+            final String cigar = string(record.get(CIGAR));
+            sam.setCigarString(cigar == null ? SAMRecord.NO_ALIGNMENT_CIGAR : cigar);
+        }
+        if (schema.getField(MATE_CONTIG) != null) {
+            final String mateContig = string(record.get(MATE_CONTIG));
+            sam.setMateReferenceName(mateContig == null ? SAMRecord.NO_ALIGNMENT_REFERENCE_NAME : mateContig);
+            sam.setMateAlignmentStart((Integer) record.get(MATE_START));
+            sam.setInferredInsertSize((Integer) record.get(FRAGMENT_LENGTH));
+        }
+        if (schema.getField(BASES) != null) {
+            sam.setReadBases(bytes(record.get(BASES)));
+        }
+        if (schema.getField(BASE_QUALITIES) != null) {
+            sam.setBaseQualities(bytes(record.get(BASE_QUALITIES)));
+        }
+        if (schema.getField(READ_GROUP) != null) {
+            sam.setAttribute(SAMTag.RG.name(), string(record.get(READ_GROUP)));
+        }
+        if (schema.getField(ATTRIBUTES) != null) {
+            final String attributes = string(record.get(ATTRIBUTES));
+            if (attributes != null) {
+                final TextTagCodec codec = new TextTagCodec();
+                for (final String attribute : attributes.split(ATTRIBUTE_SEPARATOR)) {
+                    final Map.Entry<String, Object> tagAndValue = codec.decode(attribute);
+                    sam.setAttribute(tagAndValue.getKey(), tagAndValue.getValue());
+                }
+            }
+        }
+        return SAMRecordToGATKReadAdapter.headerlessReadAdapter(sam);
+    }
+
+    /**
+     * Makes a filter that keeps the records overlapping any of the intervals, with the overlap semantics of
+     * {@link ReadsSparkSource#getParallelReads}: unmapped reads placed at a position are kept if the interval contains that position.
+     * Parquet uses it both to skip row groups by their statistics and to filter the records of the row groups it reads.
+     */
+    public static FilterPredicate overlapsAny(final List<SimpleInterval> intervals) {
+        Utils.nonEmpty(intervals, "intervals cannot be empty");
+        FilterPredicate predicate = null;
+        for (final SimpleInterval interval : intervals) {
+            final FilterPredicate overlaps = FilterApi.and(
+                    FilterApi.eq(FilterApi.binaryColumn(CONTIG), Binary.fromString(interval.getContig())),
+                    FilterApi.and(
+                            FilterApi.ltEq(FilterApi.intColumn(START), interval.getEnd()),
+                            FilterApi.gtEq(FilterApi.intColumn(END), interval.getStart())));
+            predicate = predicate == null ? overlaps : FilterApi.or(predicate, overlaps);
+        }
+        return predicate;
+    }
+
+    private static String nullIfMissing(final String value) {
+        return value == null || value.equals(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME) ? null : value;
+    }
+
+    // Avro strings are read back as Utf8 CharSequences
+    private static String string(final Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static byte[] bytes(final Object value) {
+        final ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -1,13 +1,20 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.CountingOutputStream;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BAMRecordCodec;
 import htsjdk.samtools.BamFileIoUtils;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
 import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.cram.common.CramVersions;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.zip.DeflaterFactory;
 import org.apache.commons.collections4.iterators.IteratorIterable;
+import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -20,6 +27,8 @@ import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.parquet.avro.AvroParquetOutputFormat;
+import org.apache.spark.SerializableWritable;
+import org.apache.spark.TaskContext;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
@@ -40,6 +49,7 @@ import org.seqdoop.hadoop_bam.KeyIgnoringBAMOutputFormat;
 import org.seqdoop.hadoop_bam.KeyIgnoringCRAMOutputFormat;
 import org.seqdoop.hadoop_bam.SAMFormat;
 import org.seqdoop.hadoop_bam.SAMRecordWritable;
+import org.seqdoop.hadoop_bam.SplittingBAMIndexer;
 import org.seqdoop.hadoop_bam.util.SAMOutputPreparer;
 import scala.Tuple2;
 
@@ -47,9 +57,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
+import java.util.zip.Deflater;
 
 /**
  * ReadsSparkSink writes GATKReads to a file. This code lifts from the HadoopGenomics/Hadoop-BAM
@@ -152,6 +171,26 @@ public final class ReadsSparkSink {
     public static void writeReads(
             final JavaSparkContext ctx, final String outputFile, final String referenceFile, final JavaRDD<GATKRead> reads,
             final SAMFileHeader header, ReadsWriteFormat format, final int numReducers) throws IOException {
+        writeReads(ctx, outputFile, referenceFile, reads, header, format, numReducers, false, false);
+    }
+
+    /**
+     * writeReads writes rddReads to outputFile with header as the file header.
+     * @param ctx the JavaSparkContext to write.
+     * @param outputFile path to the output bam.
+     * @param referenceFile path to the reference. required for cram output, otherwise may be null.
+     * @param reads reads to write.
+     * @param header the header to put at the top of the files
+     * @param format should the output be a single file, sharded, ADAM, etc.
+     * @param numReducers the number of reducers to use when writing a single file. A value of zero indicates that the default
+     *                    should be used.
+     * @param writeBai whether to write a .bai next to a single coordinate-sorted BAM (ignored for other outputs).
+     * @param writeSplittingBai whether to write a Hadoop-BAM splitting index next to a single BAM (ignored for other outputs).
+     */
+    public static void writeReads(
+            final JavaSparkContext ctx, final String outputFile, final String referenceFile, final JavaRDD<GATKRead> reads,
+            final SAMFileHeader header, ReadsWriteFormat format, final int numReducers,
+            final boolean writeBai, final boolean writeSplittingBai) throws IOException {
 
         SAMFormat samOutputFormat = IOUtils.isCramFileName(outputFile) ? SAMFormat.CRAM : SAMFormat.BAM;
 
@@ -168,11 +207,13 @@ public final class ReadsSparkSink {
         final JavaRDD<SAMRecord> samReads = reads.map(read -> read.convertToSAMRecord(null));
 
         if (format == ReadsWriteFormat.SINGLE) {
-            writeReadsSingle(ctx, absoluteOutputFile, absoluteReferenceFile, samOutputFormat, samReads, header, numReducers);
+            writeReadsSingle(ctx, absoluteOutputFile, absoluteReferenceFile, samOutputFormat, samReads, header, numReducers, writeBai, writeSplittingBai);
         } else if (format == ReadsWriteFormat.SHARDED) {
             saveAsShardedHadoopFiles(ctx, absoluteOutputFile, absoluteReferenceFile, samOutputFormat, samReads, header, true);
         } else if (format == ReadsWriteFormat.ADAM) {
             writeReadsADAM(ctx, absoluteOutputFile, samReads, header);
+        } else if (format == ReadsWriteFormat.PARQUET) {
+            writeReadsParquet(ctx, absoluteOutputFile, reads, header);
         }
     }
 
@@ -199,6 +240,30 @@ public final class ReadsSparkSink {
                 outputFile, Void.class, AlignmentRecord.class, AvroParquetOutputFormat.class, job.getConfiguration());
     }
 
+    /**
+     * Writes the reads as a Parquet read store (see {@link ReadsParquetSchema}): a directory of Parquet files, one per
+     * partition, and the SAM text header. Reads should be coordinate sorted for row group statistics to be useful in
+     * interval queries.
+     */
+    private static void writeReadsParquet(
+            final JavaSparkContext ctx, final String outputFile, final JavaRDD<GATKRead> reads,
+            final SAMFileHeader header) throws IOException {
+        final JavaPairRDD<Void, GenericRecord> records =
+                reads.mapToPair(read -> new Tuple2<>(null, ReadsParquetSchema.toRecord(read)));
+        // as for ADAM, the Job carries the Avro schema to the AvroParquetOutputFormat
+        final Job job = Job.getInstance(ctx.hadoopConfiguration());
+        AvroParquetOutputFormat.setSchema(job, ReadsParquetSchema.SCHEMA);
+        deleteHadoopFile(outputFile, ctx.hadoopConfiguration());
+        records.saveAsNewAPIHadoopFile(
+                outputFile, Void.class, GenericRecord.class, AvroParquetOutputFormat.class, job.getConfiguration());
+
+        // the output directory only exists once the records are written
+        final Path headerPath = new Path(outputFile, ReadsParquetSchema.HEADER_FILE_NAME);
+        try (final Writer writer = new OutputStreamWriter(headerPath.getFileSystem(ctx.hadoopConfiguration()).create(headerPath), StandardCharsets.UTF_8)) {
+            new SAMTextHeaderCodec().encode(writer, header);
+        }
+    }
+
     private static void saveAsShardedHadoopFiles(
             final JavaSparkContext ctx, final String outputFile, final String referenceFile,
             final SAMFormat samOutputFormat, final JavaRDD<SAMRecord> reads, final SAMFileHeader header,
@@ -241,11 +306,147 @@ public final class ReadsSparkSink {
 
     private static void writeReadsSingle(
             final JavaSparkContext ctx, final String outputFile, final String referenceFile, final SAMFormat samOutputFormat, final JavaRDD<SAMRecord> reads,
-            final SAMFileHeader header, final int numReducers) throws IOException {
+            final SAMFileHeader header, final int numReducers, final boolean writeBai, final boolean writeSplittingBai) throws IOException {
 
         final JavaRDD<SAMRecord> sortedReads = sortReads(reads, header, numReducers);
-        saveAsShardedHadoopFiles(ctx, outputFile, referenceFile, samOutputFormat, sortedReads,  header, false);
-        mergeHeaderlessBamShards(ctx, outputFile, samOutputFormat, header);
+        if (samOutputFormat == SAMFormat.CRAM) {
+            saveAsShardedHadoopFiles(ctx, outputFile, referenceFile, samOutputFormat, sortedReads,  header, false);
+            mergeHeaderlessBamShards(ctx, outputFile, samOutputFormat, header);
+        } else {
+            writeBamParts(ctx, outputFile, sortedReads, header,
+                    writeBai && header.getSortOrder() == SAMFileHeader.SortOrder.coordinate, writeSplittingBai);
+        }
+    }
+
+    /**
+     * A part of a single BAM written by one task attempt: BGZF blocks with no header, followed by a terminator block
+     * that is not counted in the length, and the index entries of its records.
+     */
+    private static final class BamPart implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final long length;
+        private final BAMIndexFragment indexFragment;
+
+        private BamPart(final String path, final long length, final BAMIndexFragment indexFragment) {
+            this.path = path;
+            this.length = length;
+            this.indexFragment = indexFragment;
+        }
+    }
+
+    /**
+     * Writes the sorted reads to a single BAM. Each partition writes its reads as BGZF blocks that can be concatenated
+     * as they are and keeps the index entries of its reads, so the driver only copies the bytes of the parts after the
+     * header and merges the index fragments, without decompressing or reading any records.
+     *
+     * Each task attempt writes its part under a name of its own, so that retried and speculative attempts of a task
+     * don't write over each other, and the driver commits the attempts whose results it received by renaming their
+     * parts before concatenating them.
+     */
+    private static void writeBamParts(
+            final JavaSparkContext ctx, final String outputFile, final JavaRDD<SAMRecord> sortedReads,
+            final SAMFileHeader header, final boolean writeBai, final boolean writeSplittingBai) throws IOException {
+        final Configuration conf = ctx.hadoopConfiguration();
+        final Path outputPath = new Path(outputFile);
+        final FileSystem fs = outputPath.getFileSystem(conf);
+        final String partsDirectory = outputFile.substring(0, outputFile.lastIndexOf('/') + 1) + "tmp" + UUID.randomUUID();
+
+        final Broadcast<SAMFileHeader> headerBroadcast = ctx.broadcast(header);
+        final Broadcast<SerializableWritable<Configuration>> confBroadcast = ctx.broadcast(new SerializableWritable<>(conf));
+        // collect returns the parts in the order of the partitions, which is the order of the reads
+        final List<BamPart> parts = sortedReads.mapPartitionsWithIndex((index, records) -> {
+                    final Path attemptPath = new Path(partsDirectory,
+                            String.format("part-r-%05d.attempt-%d", index, TaskContext.get().taskAttemptId()));
+                    return Collections.singletonList(writeBamPart(records, attemptPath,
+                            headerBroadcast.getValue(), confBroadcast.getValue().value())).iterator();
+                }, true)
+                .collect();
+
+        final List<BAMIndexFragment> fragments = new ArrayList<>(parts.size());
+        final long[] partOffsets = new long[parts.size()];
+        final long fileLength;
+        fs.delete(outputPath, true);
+        try (final CountingOutputStream out = new CountingOutputStream(fs.create(outputPath))) {
+            new SAMOutputPreparer().prepareForRecords(out, SAMFormat.BAM, header); // write the header
+            for (int i = 0; i < parts.size(); i++) {
+                final BamPart part = parts.get(i);
+                final Path partPath = new Path(partsDirectory, String.format("part-r-%05d", i));
+                if (!fs.rename(new Path(part.path), partPath)) {
+                    throw new GATKException("couldn't commit part " + part.path);
+                }
+                if (fs.getFileStatus(partPath).getLen() != part.length + BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length) {
+                    throw new GATKException("part " + part.path + " is not the length its task wrote");
+                }
+                partOffsets[i] = out.getCount();
+                fragments.add(part.indexFragment);
+                // copy the part without its terminator block
+                try (final InputStream in = fs.open(partPath)) {
+                    org.apache.hadoop.io.IOUtils.copyBytes(in, out, part.length, false);
+                }
+            }
+            out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+            fileLength = out.getCount();
+        }
+        fs.delete(new Path(partsDirectory), true);
+
+        if (writeBai) {
+            try (final OutputStream out = fs.create(new Path(outputFile + BAMIndex.BAMIndexSuffix))) {
+                BAMIndexFragment.writeBai(fragments, partOffsets, header.getSequenceDictionary().size(), out);
+            }
+        }
+        if (writeSplittingBai) {
+            try (final OutputStream out = fs.create(new Path(outputFile + SplittingBAMIndexer.OUTPUT_FILE_EXTENSION))) {
+                BAMIndexFragment.writeSplittingBai(fragments, partOffsets, fileLength, out);
+            }
+        }
+    }
+
+    private static BamPart writeBamPart(final Iterator<SAMRecord> records, final Path partPath, final SAMFileHeader header, final Configuration conf) throws IOException {
+        final BAMIndexFragment indexFragment = new BAMIndexFragment(SplittingBAMIndexer.DEFAULT_GRANULARITY);
+        try (final CountingOutputStream out = new CountingOutputStream(partPath.getFileSystem(conf).create(partPath))) {
+            // the virtual offsets of this stream are relative to the start of the part; closing it also closes the
+            // part and ends it with a terminator block
+            final EndableDeflaterFactory deflaterFactory = new EndableDeflaterFactory();
+            try (final BlockCompressedOutputStream bgzf = new BlockCompressedOutputStream(out, (File) null,
+                    BlockCompressedOutputStream.getDefaultCompressionLevel(), deflaterFactory)) {
+                final BAMRecordCodec codec = new BAMRecordCodec(header);
+                codec.setOutputStream(bgzf);
+                while (records.hasNext()) {
+                    final SAMRecord record = records.next();
+                    record.setHeaderStrict(header);
+                    final long startOffset = bgzf.getFilePointer();
+                    codec.encode(record);
+                    indexFragment.processRecord(record, startOffset, bgzf.getFilePointer());
+                }
+            } finally {
+                // a task writes one part, so free the native memory of its deflater now rather than on finalization
+                deflaterFactory.endDeflaters();
+            }
+            return new BamPart(partPath.toString(), out.getCount() - BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length, indexFragment);
+        }
+    }
+
+    /**
+     * Makes deflaters with the default factory, keeping them so that they can be ended once the stream using them is
+     * closed.
+     */
+    private static final class EndableDeflaterFactory extends DeflaterFactory {
+        private final DeflaterFactory factory = BlockCompressedOutputStream.getDefaultDeflaterFactory();
+        private final List<Deflater> deflaters = new ArrayList<>();
+
+        @Override
+        public Deflater makeDeflater(final int compressionLevel, final boolean nowrap) {
+            final Deflater deflater = factory.makeDeflater(compressionLevel, nowrap);
+            deflaters.add(deflater);
+            return deflater;
+        }
+
+        void endDeflaters() {
+            deflaters.forEach(Deflater::end);
+            deflaters.clear();
+        }
     }
 
     private static JavaRDD<SAMRecord> sortReads(final JavaRDD<SAMRecord> reads, final SAMFileHeader header, final int numReducers) {
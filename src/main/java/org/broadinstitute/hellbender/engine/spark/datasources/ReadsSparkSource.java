@@ -3,6 +3,8 @@ package org.broadinstitute.hellbender.engine.spark.datasources;
 import com.google.api.services.storage.Storage;
 import com.google.cloud.genomics.dataflow.readers.bam.BAMIO;
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.BufferedLineReader;
+import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -13,6 +15,9 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.parquet.avro.AvroParquetInputFormat;
+import org.apache.parquet.avro.AvroReadSupport;
+import org.apache.parquet.avro.GenericDataSupplier;
+import org.apache.parquet.hadoop.ParquetInputFormat;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
@@ -37,8 +42,11 @@ import org.seqdoop.hadoop_bam.util.SAMHeaderReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /** Loads the reads from disk either serially (using samReaderFactory) or in parallel using Hadoop-BAM.
  * The parallel code is a modified version of the example writing code from Hadoop-BAM.
@@ -95,19 +103,31 @@ public final class ReadsSparkSource implements Serializable {
         setHadoopBAMConfigurationProperties(readFileName, referencePath);
 
         boolean isBam = IOUtils.isBamFileName(readFileName);
-        if (isBam && intervals != null && !intervals.isEmpty()) {
-            BAMInputFormat.setIntervals(conf, intervals);
-        } else {
+        final boolean hasIntervals = intervals != null && !intervals.isEmpty();
+        final boolean isIndexedBam = isBam && hasIntervals && hasBamIndex(readFileName);
+        if (isIndexedBam) {
+            // read only the chunks of the file that the index maps the intervals to
             conf.unset(BAMInputFormat.INTERVALS_PROPERTY);
-        }
-
-        rdd2 = ctx.newAPIHadoopFile(
+            IndexedBAMInputFormat.setIntervals(conf, intervals);
+            rdd2 = ctx.newAPIHadoopFile(
+                    readFileName, IndexedBAMInputFormat.class, LongWritable.class, SAMRecordWritable.class,
+                    conf);
+        } else {
+            if (isBam && hasIntervals) {
+                BAMInputFormat.setIntervals(conf, intervals);
+            } else {
+                conf.unset(BAMInputFormat.INTERVALS_PROPERTY);
+            }
+            rdd2 = ctx.newAPIHadoopFile(
                     readFileName, AnySAMInputFormat.class, LongWritable.class, SAMRecordWritable.class,
                     conf);
+        }
 
         return rdd2.map(v1 -> {
             SAMRecord sam = v1._2().get();
-            if (isBam || samRecordOverlaps(sam, intervals)) { // don't check overlaps for BAM since it is done by input format
+            // don't check overlaps for BAM read by Hadoop-BAM since it is done by the input format, but index chunks hold
+            // reads near the intervals as well
+            if ((isBam && !isIndexedBam) || samRecordOverlaps(sam, intervals)) {
                 return (GATKRead) SAMRecordToGATKReadAdapter.headerlessReadAdapter(sam);
             }
             return null;
@@ -163,6 +183,36 @@ public final class ReadsSparkSource implements Serializable {
         return filteredRdd;
     }
 
+    /**
+     * Loads reads from a Parquet read store written by {@link ReadsSparkSink} (see {@link ReadsParquetSchema}).
+     * Only the requested columns are read from disk, and when there are intervals Parquet skips the row groups whose
+     * contig and position statistics show they have no overlapping reads.
+     * @param inputPath path to the read store directory
+     * @param intervals intervals of reads to include, or null or empty for all reads
+     * @param columns the columns to read; the other fields of the reads are left unset
+     * @return RDD of (SAMRecord-backed) GATKReads with only the requested fields set.
+     */
+    public JavaRDD<GATKRead> getParquetReads(final String inputPath, final List<SimpleInterval> intervals, final Set<ReadsParquetSchema.Column> columns) throws IOException {
+        final boolean hasIntervals = intervals != null && !intervals.isEmpty();
+        final Set<ReadsParquetSchema.Column> projection = EnumSet.noneOf(ReadsParquetSchema.Column.class);
+        projection.addAll(columns);
+        if (hasIntervals) {
+            // the filter needs the position
+            projection.add(ReadsParquetSchema.Column.POSITION);
+        }
+        final Job job = Job.getInstance(ctx.hadoopConfiguration());
+        AvroParquetInputFormat.setRequestedProjection(job, ReadsParquetSchema.schemaFor(projection));
+        AvroReadSupport.setAvroDataSupplier(job.getConfiguration(), GenericDataSupplier.class);
+        if (hasIntervals) {
+            ParquetInputFormat.setFilterPredicate(job.getConfiguration(), ReadsParquetSchema.overlapsAny(intervals));
+        }
+        @SuppressWarnings("unchecked")
+        final JavaRDD<GenericRecord> records = ctx.newAPIHadoopFile(
+                inputPath, AvroParquetInputFormat.class, Void.class, GenericRecord.class, job.getConfiguration())
+                .values();
+        return records.map(ReadsParquetSchema::fromRecord);
+    }
+
     /**
      * Loads the header using Hadoop-BAM.
      * @param filePath path to the bam.
@@ -188,6 +238,12 @@ public final class ReadsSparkSource implements Serializable {
             Path path = new Path(filePath);
             FileSystem fs = path.getFileSystem(ctx.hadoopConfiguration());
             if (fs.isDirectory(path)) {
+                final Path parquetHeader = new Path(path, ReadsParquetSchema.HEADER_FILE_NAME);
+                if (fs.exists(parquetHeader)) {
+                    try (final InputStream in = fs.open(parquetHeader)) {
+                        return new SAMTextHeaderCodec().decode(new BufferedLineReader(in), parquetHeader.toString());
+                    }
+                }
                 FileStatus[] bamFiles = fs.listStatus(path, new PathFilter() {
                     private static final long serialVersionUID = 1L;
                     @Override
@@ -207,6 +263,14 @@ public final class ReadsSparkSource implements Serializable {
         }
     }
 
+    private boolean hasBamIndex(final String readFileName) {
+        try {
+            return IndexedBAMInputFormat.getIndexPath(new Path(readFileName), ctx.hadoopConfiguration()) != null;
+        } catch (IOException e) {
+            throw new UserException("Failed to look for the index of " + readFileName, e);
+        }
+    }
+
     /**
      * Propagate any values that need to be passed to Hadoop-BAM through configuration properties:
      *
@@ -264,7 +328,9 @@ public final class ReadsSparkSource implements Serializable {
                 // This follows the behavior of htsjdk's SamReader which states that "an unmapped read will be returned
                 // by this call if it has a coordinate for the purpose of sorting that is in the query region".
                 int start = record.getAlignmentStart();
-                return interval.getStart() <= start && interval.getEnd() >= start;
+                if (interval.getContig().equals(record.getReferenceName()) && interval.getStart() <= start && interval.getEnd() >= start) {
+                    return true;
+                }
             } else  if (interval.overlaps(record)) {
                 return true;
             }
@@ -0,0 +1,210 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceSource;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A ReferenceSource impl backed by a .2bit file at the same local path on every node, which is memory-mapped once per
+ * JVM and shared by all the tasks running in it.
+ *
+ * Unlike {@link ReferenceTwoBitSource}, which holds the whole file in a byte array that is serialized with it (so that
+ * broadcasting it costs the size of the reference in every executor's heap), this serializes to just the path.
+ * Bases are decoded from the mapped file on demand, so the reference lives in the page cache rather than on the heap.
+ */
+public final class ReferenceMappedTwoBitSource implements ReferenceSource, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // files mapped in this JVM, by canonical path
+    private static final Map<String, MappedTwoBitFile> MAPPED_FILES = new ConcurrentHashMap<>();
+
+    private final String path;
+    private transient MappedTwoBitFile file;
+
+    /**
+     * @param path the local path of the .2bit file, which must be the same on every node
+     */
+    public ReferenceMappedTwoBitSource(final String path) {
+        Utils.validateArg(ReferenceTwoBitSource.isTwoBit(path), "ReferenceMappedTwoBitSource can only take .2bit files");
+        this.path = path;
+        // fail on the driver rather than in the tasks if the file is missing or malformed
+        getFile();
+    }
+
+    @Override
+    public ReferenceBases getReferenceBases(final PipelineOptions pipelineOptions, final SimpleInterval interval) throws IOException {
+        final MappedTwoBitFile twoBit = getFile();
+        final Sequence sequence = twoBit.getSequence(interval.getContig());
+        // as in ReferenceTwoBitSource, queries beyond the end of the contig are truncated
+        final SimpleInterval queryInterval = new SimpleInterval(interval.getContig(), interval.getStart(), Math.min(interval.getEnd(), sequence.length));
+        return new ReferenceBases(twoBit.getBases(sequence, queryInterval.getStart() - 1, queryInterval.getEnd()), queryInterval);
+    }
+
+    @Override
+    public SAMSequenceDictionary getReferenceSequenceDictionary(final SAMSequenceDictionary optReadSequenceDictionaryToMatch) {
+        final List<SAMSequenceRecord> records = new ArrayList<>();
+        for (final Sequence sequence : getFile().sequences.values()) {
+            records.add(new SAMSequenceRecord(sequence.name, sequence.length));
+        }
+        return new SAMSequenceDictionary(records);
+    }
+
+    @Override
+    public boolean isCompatibleWithSparkBroadcast() {
+        return true;
+    }
+
+    private MappedTwoBitFile getFile() {
+        if (file == null) {
+            final String canonicalPath;
+            try {
+                canonicalPath = new File(path).getCanonicalPath();
+            } catch (IOException e) {
+                throw new UserException.CouldNotReadInputFile(new File(path), e);
+            }
+            file = MAPPED_FILES.computeIfAbsent(canonicalPath, MappedTwoBitFile::new);
+        }
+        return file;
+    }
+
+    private static final class Sequence {
+        private final String name;
+        private final int length;
+        // sorted, non-overlapping blocks of Ns (0-based starts)
+        private final int[] nBlockStarts;
+        private final int[] nBlockSizes;
+        // position of the packed bases in the file
+        private final int packedOffset;
+
+        private Sequence(final String name, final int length, final int[] nBlockStarts, final int[] nBlockSizes, final int packedOffset) {
+            this.name = name;
+            this.length = length;
+            this.nBlockStarts = nBlockStarts;
+            this.nBlockSizes = nBlockSizes;
+            this.packedOffset = packedOffset;
+        }
+    }
+
+    /**
+     * The index of a mapped .2bit file (see https://genome.ucsc.edu/FAQ/FAQformat.html#format7). Only the sequence
+     * names, lengths and N blocks are on the heap; soft-masking is ignored, so bases are upper case as in {@link ReferenceTwoBitSource}.
+     */
+    private static final class MappedTwoBitFile {
+        private static final int SIGNATURE = 0x1A412743;
+        private static final byte[] BASES = {'T', 'C', 'A', 'G'};
+
+        private final String path;
+        private final MappedByteBuffer buffer;
+        private final Map<String, Sequence> sequences = new LinkedHashMap<>();
+
+        private MappedTwoBitFile(final String path) {
+            this.path = path;
+            try (final RandomAccessFile in = new RandomAccessFile(path, "r")) {
+                final long size = in.length();
+                if (size > Integer.MAX_VALUE) {
+                    throw new UserException.CouldNotReadInputFile(new File(path), "2bit files larger than 2GB cannot be memory-mapped");
+                }
+                // the mapping stays valid after the channel is closed
+                buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                throw new UserException.CouldNotReadInputFile(new File(path), e);
+            }
+            readIndex();
+        }
+
+        private void readIndex() {
+            if (buffer.getInt(0) != SIGNATURE) {
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (buffer.getInt(0) != SIGNATURE) {
+                    throw new UserException.MalformedFile(new File(path), "not a 2bit file");
+                }
+            }
+            if (buffer.getInt(4) != 0) {
+                throw new UserException.MalformedFile(new File(path), "unsupported 2bit version " + buffer.getInt(4));
+            }
+            final int sequenceCount = buffer.getInt(8);
+            int position = 16;
+            for (int i = 0; i < sequenceCount; i++) {
+                final byte[] name = new byte[buffer.get(position) & 0xFF];
+                for (int j = 0; j < name.length; j++) {
+                    name[j] = buffer.get(position + 1 + j);
+                }
+                position += 1 + name.length;
+                final Sequence sequence = readSequence(new String(name, StandardCharsets.US_ASCII), buffer.getInt(position));
+                sequences.put(sequence.name, sequence);
+                position += 4;
+            }
+        }
+
+        private Sequence readSequence(final String name, final int offset) {
+            int position = offset;
+            final int length = buffer.getInt(position);
+            final int nBlockCount = buffer.getInt(position + 4);
+            position += 8;
+            final int[] nBlockStarts = readInts(position, nBlockCount);
+            final int[] nBlockSizes = readInts(position + 4 * nBlockCount, nBlockCount);
+            position += 8 * nBlockCount;
+            final int maskBlockCount = buffer.getInt(position);
+            // skip the mask blocks and the reserved word
+            position += 4 + 8 * maskBlockCount + 4;
+            return new Sequence(name, length, nBlockStarts, nBlockSizes, position);
+        }
+
+        private int[] readInts(final int position, final int count) {
+            final int[] ints = new int[count];
+            for (int i = 0; i < count; i++) {
+                ints[i] = buffer.getInt(position + 4 * i);
+            }
+            return ints;
+        }
+
+        private Sequence getSequence(final String contig) {
+            final Sequence sequence = sequences.get(contig);
+            Utils.nonNull(sequence, () -> "Contig " + contig + " not found in reference dictionary");
+            return sequence;
+        }
+
+        /**
+         * @return the bases of the sequence in the 0-based half-open interval [start, end)
+         */
+        private byte[] getBases(final Sequence sequence, final int start, final int end) {
+            final byte[] bases = new byte[end - start];
+            // absolute gets, so that tasks can share the buffer without synchronization
+            for (int i = start; i < end; i++) {
+                final int packed = buffer.get(sequence.packedOffset + (i >>> 2));
+                bases[i - start] = BASES[(packed >>> (6 - 2 * (i & 3))) & 3];
+            }
+            // the first N block that may overlap the interval is the last one starting at or before its start
+            int block = Arrays.binarySearch(sequence.nBlockStarts, start);
+            block = block >= 0 ? block : Math.max(0, -block - 2);
+            for (; block < sequence.nBlockStarts.length && sequence.nBlockStarts[block] < end; block++) {
+                final int from = Math.max(start, sequence.nBlockStarts[block]);
+                final int to = Math.min(end, sequence.nBlockStarts[block] + sequence.nBlockSizes[block]);
+                for (int i = from; i < to; i++) {
+                    bases[i - start] = 'N';
+                }
+            }
+            return bases;
+        }
+    }
+}
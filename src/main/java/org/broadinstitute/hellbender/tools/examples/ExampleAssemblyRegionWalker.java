@@ -0,0 +1,104 @@
+package org.broadinstitute.hellbender.tools.examples;
+
+import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
+import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
+import org.broadinstitute.hellbender.engine.*;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.activityprofile.ActivityProfileState;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+
+/**
+ * Example/toy program that shows how to implement the AssemblyRegionWalker interface. A locus is considered active
+ * in proportion to the fraction of its pileup bases that differ from the reference, and each resulting active or
+ * inactive region is printed with its bounds and the reads it contains.
+ */
+@CommandLineProgramProperties(
+    summary = "Example tool that prints the active and inactive assembly regions of the supplied reads to the specified output file (stdout if none provided)",
+    oneLineSummary = "Example tool that prints assembly regions",
+    programGroup = ReadProgramGroup.class
+)
+public class ExampleAssemblyRegionWalker extends AssemblyRegionWalker {
+
+    @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Output file (if not provided, defaults to STDOUT)", common = false, optional = true)
+    private File OUTPUT_FILE = null;
+
+    private PrintStream outputStream = null;
+
+    @Override
+    protected int defaultReadShardSize() { return 5000; }
+
+    @Override
+    protected int defaultReadShardPadding() { return 100; }
+
+    @Override
+    protected int defaultMinAssemblyRegionSize() { return 50; }
+
+    @Override
+    protected int defaultMaxAssemblyRegionSize() { return 300; }
+
+    @Override
+    protected int defaultAssemblyRegionPadding() { return 100; }
+
+    @Override
+    protected int defaultMaxReadsPerAlignmentStart() { return 50; }
+
+    @Override
+    protected double defaultActiveProbThreshold() { return 0.002; }
+
+    @Override
+    protected int defaultMaxProbPropagationDistance() { return 50; }
+
+    @Override
+    public AssemblyRegionEvaluator assemblyRegionEvaluator() {
+        // Stateless, so the same evaluator could safely be shared by the workers of a multi-threaded traversal
+        return (locusPileup, referenceContext, featureContext) -> {
+            final SimpleInterval locus = new SimpleInterval(locusPileup);
+            final byte[] bases = locusPileup.getBasePileup().getBases();
+            if ( bases.length == 0 ) {
+                return new ActivityProfileState(locus, 0.0);
+            }
+            final byte refBase = referenceContext.getBase();
+            int mismatches = 0;
+            for ( final byte base : bases ) {
+                if ( base != refBase ) {
+                    ++mismatches;
+                }
+            }
+            return new ActivityProfileState(locus, (double)mismatches / bases.length);
+        };
+    }
+
+    @Override
+    public void onTraversalStart() {
+        try {
+            outputStream = OUTPUT_FILE != null ? new PrintStream(OUTPUT_FILE) : System.out;
+        }
+        catch ( FileNotFoundException e ) {
+            throw new UserException.CouldNotReadInputFile(OUTPUT_FILE, e);
+        }
+    }
+
+    @Override
+    public void apply( AssemblyRegion region, ReferenceContext referenceContext, FeatureContext featureContext ) {
+        outputStream.printf("%s region %s (extended span %s) in read shard %s with %d read(s)\n",
+            region.isActive() ? "Active" : "Inactive", region.getSpan(), region.getExtendedSpan(),
+            getCurrentReadShardBounds(), region.getReads().size());
+        outputStream.println("\tReference bases: " + referenceContext.getBases().length);
+        for ( final GATKRead read : region.getReads() ) {
+            outputStream.printf("\t%s %s:%d-%d\n", read.getName(), read.getContig(), read.getStart(), read.getEnd());
+        }
+    }
+
+    @Override
+    public void closeTool() {
+        if ( outputStream != null )
+            outputStream.close();
+    }
+}
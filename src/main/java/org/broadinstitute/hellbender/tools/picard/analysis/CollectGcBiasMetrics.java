@@ -2,22 +2,40 @@ package org.broadinstitute.hellbender.tools.picard.analysis;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.QualityUtil;
 import htsjdk.samtools.util.SequenceUtil;
 import htsjdk.samtools.util.StringUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.cmdline.Advanced;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.QCProgramGroup;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.R.RScriptExecutor;
 import org.broadinstitute.hellbender.utils.io.Resource;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Tool to collect information about GC bias in the reads in a given BAM file. Computes
@@ -41,6 +59,8 @@ public final class CollectGcBiasMetrics extends SinglePassSamProgram {
     /** The location of the R script to do the plotting. */
     private static final String R_SCRIPT = "gcBias.R";
 
+    private static final Logger logger = LogManager.getLogger(CollectGcBiasMetrics.class);
+
     @Argument(fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME,
             shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "File to write the output to.")
     public File OUTPUT;
@@ -65,26 +85,102 @@ public final class CollectGcBiasMetrics extends SinglePassSamProgram {
     @Argument(doc = "Should an output plot be created")
     public boolean PRODUCE_PLOT = false;
 
-    // Used to keep track of the total clusters as this is kinda important for bias
-    private int totalClusters = 0;
-    private int totalAlignedReads = 0;
-    // Histograms to track the number of windows at each GC, and the number of read starts
-    // at windows of each GC. Need 101 to get from 0-100.
-    private static final int WINDOWS = 101;
-    private final int[] windowsByGc = new int[WINDOWS];
-    private final int[] readsByGc = new int[WINDOWS];
-    private final long[] basesByGc = new long[WINDOWS];
-    private final long[] errorsByGc = new long[WINDOWS];
-    private static int lastContig = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
-    private byte[] gc;
+    @Advanced
+    @Argument(doc = "A directory of GC window indexes. If given, the GC of each window of the reference is read from an " +
+            "index there, named for the reference and WINDOW_SIZE, rather than calculated; if there's no such index " +
+            "it's built from the whole reference and saved for later runs.",
+            optional = true)
+    public File GC_INDEX_DIRECTORY = null;
+
+    @Advanced
+    @Argument(doc = "The number of threads to use. With more than one, the reads on each contig are counted " +
+            "separately, in parallel, and the counts are merged; this requires an indexed input and reference, and " +
+            "can't be used with STOP_AFTER.",
+            optional = true)
+    public int THREADS = 1;
+
+    // Need 101 to get from 0-100.
+    private static final int WINDOWS = GcWindowIndex.GC_VALUES;
+    private final GcCounts counts = new GcCounts();
+    private int lastContig = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+    private ByteBuffer gc;
     private byte[] refBases;
     private String saveHeader;
+    // null if the GC of each contig's windows is to be calculated as it's needed
+    private GcWindowIndex gcIndex;
+
+    /** The read and window counts of some set of contigs, so that contigs can be counted separately and merged. */
+    private static final class GcCounts {
+        // Used to keep track of the total clusters as this is kinda important for bias
+        private int totalClusters = 0;
+        private int totalAlignedReads = 0;
+        // Histograms to track the number of windows at each GC, and the number of read starts
+        // at windows of each GC.
+        private final int[] windowsByGc = new int[WINDOWS];
+        private final int[] readsByGc = new int[WINDOWS];
+        private final long[] basesByGc = new long[WINDOWS];
+        private final long[] errorsByGc = new long[WINDOWS];
+
+        private void merge(final GcCounts other) {
+            totalClusters += other.totalClusters;
+            totalAlignedReads += other.totalAlignedReads;
+            for (int i = 0; i < WINDOWS; i++) {
+                windowsByGc[i] += other.windowsByGc[i];
+                readsByGc[i] += other.readsByGc[i];
+                basesByGc[i] += other.basesByGc[i];
+                errorsByGc[i] += other.errorsByGc[i];
+            }
+        }
+    }
+
+    @Override
+    protected String[] customCommandLineValidation() {
+        if (THREADS < 1) {
+            return new String[]{"THREADS must be at least 1, but was " + THREADS + "."};
+        }
+        if (THREADS > 1 && STOP_AFTER > 0) {
+            return new String[]{"STOP_AFTER can't be used with more than one thread."};
+        }
+        if ((THREADS > 1 || GC_INDEX_DIRECTORY != null) && REFERENCE_SEQUENCE == null) {
+            return new String[]{"A REFERENCE_SEQUENCE is required with more than one thread or a GC_INDEX_DIRECTORY."};
+        }
+        return super.customCommandLineValidation();
+    }
+
+    @Override
+    protected Object doWork() {
+        if (THREADS == 1) {
+            return super.doWork();
+        }
+        countContigsInParallel();
+        finish();
+        return null;
+    }
 
     @Override
     protected void setup(final SAMFileHeader header, final File samFile) {
         IOUtil.assertFileIsWritable(CHART_OUTPUT);
         if (SUMMARY_OUTPUT != null) IOUtil.assertFileIsWritable(SUMMARY_OUTPUT);
         saveHeader = header.getReadGroups().get(0).getLibrary();
+        if (GC_INDEX_DIRECTORY != null) {
+            gcIndex = GcWindowIndex.openOrBuild(GC_INDEX_DIRECTORY, REFERENCE_SEQUENCE, referenceDictionary(header), WINDOW_SIZE);
+        }
+    }
+
+    /** the dictionary of the reads if they have one (which SinglePassSamProgram checks against the reference's), else the reference's */
+    private SAMSequenceDictionary referenceDictionary(final SAMFileHeader header) {
+        if (!header.getSequenceDictionary().isEmpty()) {
+            return header.getSequenceDictionary();
+        }
+        try (final ReferenceSequenceFile reference = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE)) {
+            final SAMSequenceDictionary dictionary = reference.getSequenceDictionary();
+            if (dictionary == null) {
+                throw new UserException.BadInput("The reference must have a sequence dictionary to use a GC_INDEX_DIRECTORY: " + REFERENCE_SEQUENCE.getAbsolutePath());
+            }
+            return dictionary;
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(REFERENCE_SEQUENCE, e);
+        }
     }
 
     ////////////////////////////////////////////////////////////////////////////
@@ -93,28 +189,52 @@ public final class CollectGcBiasMetrics extends SinglePassSamProgram {
     @Override
     protected void acceptRead(final SAMRecord rec, final ReferenceSequence ref) {
         //if read is unaligned then ref is passed in as null
-        if (!rec.getReadPairedFlag() || rec.getFirstOfPairFlag()) ++this.totalClusters;
-        if (ref!=null) {
+        if (ref != null) {
             //only do the recalculation of gc if current ref is different from last ref
             if (ref.getContigIndex() != lastContig) {
                 refBases = ref.getBases();
                 StringUtil.toUpperCase(refBases);
-                final int refLength = refBases.length;
-                final int lastWindowStart = refLength - WINDOW_SIZE;
-                gc = calculateAllGcs(refBases, windowsByGc, lastWindowStart);
+                gc = getContigGcs(ref.getContigIndex(), ref.getName(), refBases, counts.windowsByGc);
                 lastContig = ref.getContigIndex();
             }
-            if (!rec.getReadPairedFlag() || rec.getFirstOfPairFlag()) ++this.totalClusters;
+        }
+        countRead(counts, rec, ref == null ? null : refBases, gc);
+    }
+
+    /**
+     * The GC of the windows of a contig, from the index if there is one and calculated otherwise, adding the contig's
+     * windows to windowsByGc. The bases must be upper case.
+     */
+    private ByteBuffer getContigGcs(final int contigIndex, final String contigName, final byte[] bases, final int[] windowsByGc) {
+        if (gcIndex == null) {
+            return ByteBuffer.wrap(GcWindowIndex.calculateAllGcs(bases, WINDOW_SIZE, windowsByGc));
+        }
+        if (!gcIndex.getContigName(contigIndex).equals(contigName)) {
+            throw new GATKException("The GC window index has contig " + gcIndex.getContigName(contigIndex) +
+                    " where the reference has " + contigName);
+        }
+        final int[] contigWindowsByGc = gcIndex.getWindowsByGc(contigIndex);
+        for (int i = 0; i < WINDOWS; i++) {
+            windowsByGc[i] += contigWindowsByGc[i];
+        }
+        return gcIndex.getGcs(contigIndex);
+    }
+
+    /** Counts a read, whose contig's (upper case) bases and window GCs are given, or null if it has no contig. */
+    private void countRead(final GcCounts counts, final SAMRecord rec, final byte[] bases, final ByteBuffer gcs) {
+        if (!rec.getReadPairedFlag() || rec.getFirstOfPairFlag()) ++counts.totalClusters;
+        if (bases != null) {
+            if (!rec.getReadPairedFlag() || rec.getFirstOfPairFlag()) ++counts.totalClusters;
             if (!rec.getReadUnmappedFlag()) {
                 final int pos = rec.getReadNegativeStrandFlag() ? rec.getAlignmentEnd() - WINDOW_SIZE : rec.getAlignmentStart();
-                ++this.totalAlignedReads;
+                ++counts.totalAlignedReads;
                 if (pos > 0) {
-                    final int windowGc = gc[pos];
+                    final int windowGc = gcs.get(pos);
                     if (windowGc >= 0) {
-                        ++readsByGc[windowGc];
-                        basesByGc[windowGc] += rec.getReadLength();
-                        errorsByGc[windowGc] +=
-                                SequenceUtil.countMismatches(rec, refBases, IS_BISULFITE_SEQUENCED) +
+                        ++counts.readsByGc[windowGc];
+                        counts.basesByGc[windowGc] += rec.getReadLength();
+                        counts.errorsByGc[windowGc] +=
+                                SequenceUtil.countMismatches(rec, bases, IS_BISULFITE_SEQUENCED) +
                                         SequenceUtil.countInsertedBases(rec) + SequenceUtil.countDeletedBases(rec);
                     }
                 }
@@ -122,11 +242,109 @@ public final class CollectGcBiasMetrics extends SinglePassSamProgram {
         }
     }
 
+    /**
+     * Counts the reads on each contig in a task of its own, with its own reader and reference, on THREADS threads,
+     * and then the unplaced unmapped reads, merging the counts. Each contig is read with an index query, so the input
+     * must be an indexed BAM (or CRAM), and the reference must be indexed too. As when counting serially, a contig's
+     * windows are only counted if it has reads.
+     */
+    private void countContigsInParallel() {
+        IOUtil.assertFileIsReadable(INPUT);
+        IOUtil.assertFileIsReadable(REFERENCE_SEQUENCE);
+        final SAMFileHeader header;
+        try (final SamReader in = openInput()) {
+            if (!in.hasIndex()) {
+                throw new UserException.BadInput("The input must be indexed to count contigs in parallel: " + INPUT.getAbsolutePath());
+            }
+            header = in.getFileHeader();
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(INPUT, e);
+        }
+        final SAMSequenceDictionary dictionary;
+        try (final ReferenceSequenceFile reference = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE)) {
+            if (!reference.isIndexed()) {
+                throw new UserException.BadInput("The reference must be indexed to count contigs in parallel: " + REFERENCE_SEQUENCE.getAbsolutePath());
+            }
+            dictionary = reference.getSequenceDictionary();
+            if (!header.getSequenceDictionary().isEmpty()) {
+                SequenceUtil.assertSequenceDictionariesEqual(header.getSequenceDictionary(), dictionary);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(REFERENCE_SEQUENCE, e);
+        }
+        setup(header, INPUT);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<GcCounts>> futures = new ArrayList<>();
+            for (final SAMSequenceRecord contig : dictionary.getSequences()) {
+                futures.add(executor.submit(() -> countContig(contig)));
+            }
+            futures.add(executor.submit(this::countUnplacedReads));
+            for (final Future<GcCounts> future : futures) {
+                counts.merge(future.get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a contig to be counted", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new GATKException("Error counting a contig", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private GcCounts countContig(final SAMSequenceRecord contig) throws IOException {
+        final GcCounts contigCounts = new GcCounts();
+        try (final SamReader in = openInput();
+             final CloseableIterator<SAMRecord> iterator = in.query(contig.getSequenceName(), 0, 0, false)) {
+            if (!iterator.hasNext()) {
+                return contigCounts;
+            }
+            final byte[] bases;
+            try (final ReferenceSequenceFile reference = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE)) {
+                bases = reference.getSequence(contig.getSequenceName()).getBases();
+            }
+            StringUtil.toUpperCase(bases);
+            final ByteBuffer gcs = getContigGcs(contig.getSequenceIndex(), contig.getSequenceName(), bases, contigCounts.windowsByGc);
+            while (iterator.hasNext()) {
+                countRead(contigCounts, iterator.next(), bases, gcs);
+            }
+        }
+        logger.info("Counted contig " + contig.getSequenceName());
+        return contigCounts;
+    }
+
+    private GcCounts countUnplacedReads() throws IOException {
+        final GcCounts unplacedCounts = new GcCounts();
+        try (final SamReader in = openInput();
+             final CloseableIterator<SAMRecord> iterator = in.queryUnmapped()) {
+            while (iterator.hasNext()) {
+                countRead(unplacedCounts, iterator.next(), null, null);
+            }
+        }
+        return unplacedCounts;
+    }
+
+    private SamReader openInput() {
+        return SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE).validationStringency(VALIDATION_STRINGENCY).open(INPUT);
+    }
+
     /////////////////////////////////////////////////////////////////////////////
     // Synthesize the normalized coverage metrics and write it all out to a file
     /////////////////////////////////////////////////////////////////////////////
     @Override
     protected void finish () {
+        if (gcIndex != null) {
+            gcIndex.close();
+        }
+        final int[] windowsByGc = counts.windowsByGc;
+        final int[] readsByGc = counts.readsByGc;
+        final long[] basesByGc = counts.basesByGc;
+        final long[] errorsByGc = counts.errorsByGc;
         final MetricsFile<GcBiasDetailMetrics, ?> metricsFile = getMetricsFile();
         final double totalWindows = sum(windowsByGc);
         final double totalReads = sum(readsByGc);
@@ -154,8 +372,8 @@ public final class CollectGcBiasMetrics extends SinglePassSamProgram {
             final MetricsFile<GcBiasSummaryMetrics, ?> summaryMetricsFile = getMetricsFile();
             final GcBiasSummaryMetrics summary = new GcBiasSummaryMetrics();
             summary.WINDOW_SIZE = this.WINDOW_SIZE;
-            summary.TOTAL_CLUSTERS = this.totalClusters;
-            summary.ALIGNED_READS = this.totalAlignedReads;
+            summary.TOTAL_CLUSTERS = counts.totalClusters;
+            summary.ALIGNED_READS = counts.totalAlignedReads;
             calculateDropoutMetrics(metricsFile.getMetrics(), summary);
 
             summaryMetricsFile.addMetric(summary);
@@ -165,8 +383,8 @@ public final class CollectGcBiasMetrics extends SinglePassSamProgram {
         // Plot the results
         final NumberFormat fmt = NumberFormat.getIntegerInstance();
         fmt.setGroupingUsed(true);
-        final String subtitle = "Total clusters: " + fmt.format(this.totalClusters) +
-                ", Aligned reads: " + fmt.format(this.totalAlignedReads);
+        final String subtitle = "Total clusters: " + fmt.format(counts.totalClusters) +
+                ", Aligned reads: " + fmt.format(counts.totalAlignedReads);
         String title = INPUT.getName().replace(".duplicates_marked", "").replace(".aligned.bam", "");
         title += "." + saveHeader;
         if (PRODUCE_PLOT){
@@ -217,53 +435,4 @@ public final class CollectGcBiasMetrics extends SinglePassSamProgram {
         summary.AT_DROPOUT = atDropout;
         summary.GC_DROPOUT = gcDropout;
     }
-
-    /** Calculcate all the GC values for all windows. */
-    private byte[] calculateAllGcs(final byte[] refBases, final int[] windowsByGc, final int lastWindowStart) {
-        final int refLength = refBases.length;
-        final byte[] gc = new byte[refLength + 1];
-        final CalculateGcState state = new CalculateGcState();
-        for (int i = 1; i < lastWindowStart; ++i) {
-            final int windowEnd = i + WINDOW_SIZE;
-            final int windowGc = calculateGc(refBases, i, windowEnd, state);
-            gc[i] = (byte) windowGc;
-            if (windowGc != -1) windowsByGc[windowGc]++;
-        }
-        return gc;
-    }
-
-    /**
-     * Calculates GC as a number from 0 to 100 in the specified window. If the window includes
-     * more than five no-calls then -1 is returned.
-     */
-    private int calculateGc(final byte[] bases, final int startIndex, final int endIndex, final CalculateGcState state) {
-        if (state.init) {
-            state.init = false;
-            state.gcCount = 0;
-            state.nCount = 0;
-            for (int i = startIndex; i < endIndex; ++i) {
-                final byte base = bases[i];
-                if (base == 'G' || base == 'C') ++state.gcCount;
-                else if (base == 'N') ++state.nCount;
-            }
-        } else {
-            final byte newBase = bases[endIndex - 1];
-            if (newBase == 'G' || newBase == 'C') ++state.gcCount;
-            else if (newBase == 'N') ++state.nCount;
-
-            if (state.priorBase == 'G' || state.priorBase == 'C') --state.gcCount;
-            else if (state.priorBase == 'N') --state.nCount;
-        }
-        state.priorBase = bases[startIndex];
-        if (state.nCount > 4) return -1;
-        else return (state.gcCount * 100) / (endIndex - startIndex);
-    }
-
-    /** Keeps track of current GC calculation state. */
-    class CalculateGcState {
-        boolean init = true;
-        int nCount;
-        int gcCount;
-        byte priorBase;
-    }
 }
@@ -1,6 +1,7 @@
 package org.broadinstitute.hellbender.tools.picard.analysis;
 
 import htsjdk.samtools.util.CollectionUtil;
+import org.broadinstitute.hellbender.cmdline.Advanced;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
@@ -98,6 +99,12 @@ public final class CollectMultipleMetrics extends PicardCommandLineProgram {
     @Argument(doc = "List of metrics programs to apply during the pass through the SAM file.")
     public List<Program> PROGRAM = CollectionUtil.makeList(Program.values());
 
+    @Advanced
+    @Argument(doc = "If true, run each metrics program in a thread of its own, fed by the thread reading the input, " +
+            "so that the pass runs at the speed of the slowest program rather than of all of them together.",
+            optional = true)
+    public boolean PIPELINED = false;
+
     /**
      * Contents of PROGRAM list is transferred to this list during command-line validation, so that an outside
      * developer can invoke this class programmatically and provide alternative Programs to run by calling
@@ -139,7 +146,7 @@ public final class CollectMultipleMetrics extends PicardCommandLineProgram {
             programs.add(instance);
         }
 
-        SinglePassSamProgram.makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, programs);
+        SinglePassSamProgram.makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, programs, PIPELINED);
 
         return null;
     }
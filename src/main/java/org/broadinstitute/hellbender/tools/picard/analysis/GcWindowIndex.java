@@ -0,0 +1,312 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.StringUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The GC content of every window of a reference, as calculated by CollectGcBiasMetrics, saved to a file so that it's
+ * calculated once per reference and window size rather than on every run.
+ *
+ * The file has a header (a magic number, the version and the window size), and then, for each contig in reference
+ * order, its name, its length, the number of windows at each GC from 0 to 100, and a byte for each
+ * position of the contig (and one more) giving the GC of the window starting there, or -1 for a window with too many
+ * Ns. Each contig's bytes are memory-mapped as they're needed, so a run reads only the pages its reads touch.
+ *
+ * Indexes live in a directory, named by an MD5 of the reference's sequence dictionary (with the reference file's path,
+ * size and modification time too, if any contig lacks an M5) and the window size; see {@link #openOrBuild}.
+ */
+final class GcWindowIndex implements Closeable {
+    private static final Logger logger = LogManager.getLogger(GcWindowIndex.class);
+
+    /** the number of GC values, 0 to 100 */
+    static final int GC_VALUES = 101;
+    /** windows with more than this many Ns have no GC */
+    private static final int MAX_NS_IN_WINDOW = 4;
+
+    private static final int MAGIC = 0x47435749; // "GCWI"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".gcwindows";
+    private static final int IO_BUFFER_SIZE = 1 << 20;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final int windowSize;
+    private final List<Contig> contigs = new ArrayList<>();
+
+    private static final class Contig {
+        private final String name;
+        private final int length;
+        private final int[] windowsByGc;
+        private final long offset;
+
+        private Contig(final String name, final int length, final int[] windowsByGc, final long offset) {
+            this.name = name;
+            this.length = length;
+            this.windowsByGc = windowsByGc;
+            this.offset = offset;
+        }
+    }
+
+    /** Opens an index file, reading its header and the table of contigs. */
+    GcWindowIndex(final File file) {
+        this.file = file;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+        channel = randomAccessFile.getChannel();
+        try {
+            if (randomAccessFile.readInt() != MAGIC || randomAccessFile.readInt() != VERSION) {
+                throw new UserException.CouldNotReadInputFile(file, "not a GC window index, or one of a different version");
+            }
+            windowSize = randomAccessFile.readInt();
+            final long fileLength = randomAccessFile.length();
+            final byte[] histogram = new byte[GC_VALUES * Integer.BYTES];
+            while (randomAccessFile.getFilePointer() < fileLength) {
+                final String name = randomAccessFile.readUTF();
+                final int length = randomAccessFile.readInt();
+                randomAccessFile.readFully(histogram);
+                final int[] windowsByGc = new int[GC_VALUES];
+                ByteBuffer.wrap(histogram).asIntBuffer().get(windowsByGc);
+                final long offset = randomAccessFile.getFilePointer();
+                if (offset + length + 1 > fileLength) {
+                    throw new UserException.CouldNotReadInputFile(file, "the GC window index is truncated");
+                }
+                contigs.add(new Contig(name, length, windowsByGc, offset));
+                randomAccessFile.seek(offset + length + 1);
+            }
+        } catch (final IOException e) {
+            close();
+            throw new UserException.CouldNotReadInputFile(file, e);
+        } catch (final RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    int getWindowSize() { return windowSize; }
+
+    int getNumberOfContigs() { return contigs.size(); }
+
+    String getContigName(final int contigIndex) { return contigs.get(contigIndex).name; }
+
+    /** the number of windows at each GC, from 0 to 100, on a contig */
+    int[] getWindowsByGc(final int contigIndex) {
+        return contigs.get(contigIndex).windowsByGc.clone();
+    }
+
+    /**
+     * The GC of the window starting at each position of a contig, as {@link #calculateAllGcs} returns it, mapped
+     * from the file. The buffer is read-only, and may be read from several threads with absolute gets.
+     */
+    ByteBuffer getGcs(final int contigIndex) {
+        final Contig contig = contigs.get(contigIndex);
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, contig.offset, contig.length + 1);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+    }
+
+    /** checks that the index has the contigs of a sequence dictionary, in the same order */
+    boolean matches(final SAMSequenceDictionary dictionary) {
+        if (dictionary.size() != contigs.size()) {
+            return false;
+        }
+        for (int i = 0; i < contigs.size(); i++) {
+            final SAMSequenceRecord sequence = dictionary.getSequence(i);
+            if (!sequence.getSequenceName().equals(contigs.get(i).name) || sequence.getSequenceLength() != contigs.get(i).length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Closes the file. Buffers already mapped remain valid until they're garbage collected. */
+    @Override
+    public void close() {
+        try {
+            randomAccessFile.close();
+        } catch (final IOException e) {
+            logger.warn("Couldn't close GC window index " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Opens the index in a directory for a reference and window size, first building it, from every contig of the
+     * reference, if there isn't one. The index is written to a temporary file and renamed, so runs that build it at
+     * the same time don't see each other's partial files.
+     *
+     * @param directory the directory of indexes
+     * @param reference the reference fasta
+     * @param dictionary the reference's sequence dictionary, which names the index
+     * @param windowSize the size of the windows
+     */
+    static GcWindowIndex openOrBuild(final File directory, final File reference, final SAMSequenceDictionary dictionary, final int windowSize) {
+        final File indexFile = new File(directory, indexName(reference, dictionary, windowSize));
+        if (indexFile.exists()) {
+            final GcWindowIndex index = new GcWindowIndex(indexFile);
+            if (index.getWindowSize() == windowSize && index.matches(dictionary)) {
+                logger.info("Reading GC windows from " + indexFile.getAbsolutePath());
+                return index;
+            }
+            index.close();
+            logger.warn("The GC window index " + indexFile.getAbsolutePath() + " doesn't match the reference, so it will be rebuilt");
+        }
+
+        logger.info("Building GC window index " + indexFile.getAbsolutePath());
+        final File tmpFile;
+        try {
+            Files.createDirectories(directory.toPath());
+            tmpFile = File.createTempFile(indexFile.getName() + ".", ".tmp", directory);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(directory, "Couldn't create a GC window index", e);
+        }
+        try {
+            try (final ReferenceSequenceFile referenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(reference)) {
+                build(referenceFile, windowSize, tmpFile);
+            } catch (final IOException e) {
+                throw new UserException.CouldNotReadInputFile(reference, e);
+            }
+            try {
+                Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(indexFile, "Couldn't write the GC window index", e);
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                logger.warn("Couldn't delete temporary file " + tmpFile.getAbsolutePath());
+            }
+        }
+        return new GcWindowIndex(indexFile);
+    }
+
+    /** Writes an index of every contig of a reference to a file. */
+    static void build(final ReferenceSequenceFile reference, final int windowSize, final File file) {
+        Utils.validateArg(windowSize > 0, "windowSize must be positive");
+        reference.reset();
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(windowSize);
+            final ByteBuffer histogram = ByteBuffer.allocate(GC_VALUES * Integer.BYTES);
+            final IntBuffer histogramInts = histogram.asIntBuffer();
+            ReferenceSequence sequence;
+            while ((sequence = reference.nextSequence()) != null) {
+                final byte[] bases = sequence.getBases();
+                StringUtil.toUpperCase(bases);
+                final int[] windowsByGc = new int[GC_VALUES];
+                final byte[] gcs = calculateAllGcs(bases, windowSize, windowsByGc);
+                out.writeUTF(sequence.getName());
+                out.writeInt(bases.length);
+                histogramInts.clear();
+                histogramInts.put(windowsByGc);
+                out.write(histogram.array());
+                out.write(gcs);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(file, "Couldn't write the GC window index", e);
+        }
+    }
+
+    /**
+     * The file name of the index for a reference and window size: an MD5 of the name, length and M5 of each contig in
+     * the dictionary, and, if any contig has no M5, of the reference file's path, size and modification time, so that
+     * a changed reference gets a new index.
+     */
+    static String indexName(final File reference, final SAMSequenceDictionary dictionary, final int windowSize) {
+        final StringBuilder key = new StringBuilder();
+        boolean allHaveMd5s = true;
+        for (final SAMSequenceRecord sequence : dictionary.getSequences()) {
+            final String md5 = sequence.getMd5();
+            allHaveMd5s = allHaveMd5s && md5 != null;
+            key.append(sequence.getSequenceName()).append('\t')
+                    .append(sequence.getSequenceLength()).append('\t')
+                    .append(md5).append('\n');
+        }
+        if (!allHaveMd5s) {
+            key.append(reference.getAbsolutePath()).append('\t')
+                    .append(reference.length()).append('\t')
+                    .append(reference.lastModified()).append('\n');
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder();
+            for (final byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+            return name.append(".w").append(windowSize).append(EXTENSION).toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new GATKException("MD5 isn't available", e);
+        }
+    }
+
+    /**
+     * Calculates the GC of all the windows of a contig, returning an array with the GC of the window starting at each
+     * position (or -1 if it has too many Ns), and adding each window to windowsByGc. The bases must be upper case.
+     * As CollectGcBiasMetrics always has, windows start at 1 up to, but not including, length - windowSize, and the
+     * array has one more element than there are bases.
+     */
+    static byte[] calculateAllGcs(final byte[] bases, final int windowSize, final int[] windowsByGc) {
+        final int refLength = bases.length;
+        final int lastWindowStart = refLength - windowSize;
+        final byte[] gc = new byte[refLength + 1];
+        int gcCount = 0;
+        int nCount = 0;
+        for (int i = 1; i < lastWindowStart; ++i) {
+            final int windowEnd = i + windowSize;
+            if (i == 1) {
+                for (int j = i; j < windowEnd; ++j) {
+                    final byte base = bases[j];
+                    if (base == 'G' || base == 'C') ++gcCount;
+                    else if (base == 'N') ++nCount;
+                }
+            } else {
+                // slide the window along: add its last base, and drop the base before it
+                final byte newBase = bases[windowEnd - 1];
+                if (newBase == 'G' || newBase == 'C') ++gcCount;
+                else if (newBase == 'N') ++nCount;
+
+                final byte priorBase = bases[i - 1];
+                if (priorBase == 'G' || priorBase == 'C') --gcCount;
+                else if (priorBase == 'N') --nCount;
+            }
+            final int windowGc = nCount > MAX_NS_IN_WINDOW ? -1 : (gcCount * 100) / windowSize;
+            gc[i] = (byte) windowGc;
+            if (windowGc != -1) windowsByGc[windowGc]++;
+        }
+        return gc;
+    }
+}
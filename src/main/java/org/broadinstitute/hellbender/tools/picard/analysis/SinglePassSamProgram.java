@@ -16,11 +16,19 @@ import org.apache.logging.log4j.LogManager;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.runtime.ProgressLogger;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Super class that is designed to provide some consistent structure between subclasses that
@@ -44,12 +52,18 @@ public abstract class SinglePassSamProgram extends PicardCommandLineProgram {
 
     private static final Logger logger = LogManager.getLogger();
 
+    // records are handed to the program threads in batches of this size, and each program's queue holds this many batches
+    static final int RECORD_BATCH_SIZE = 1000;
+    static final int QUEUED_BATCHES_PER_PROGRAM = 8;
+
     /**
-     * Final implementation of doWork() that checks and loads the input and optionally reference
+     * Implementation of doWork() that checks and loads the input and optionally reference
      * sequence files and the runs the sublcass through the setup() acceptRead() and finish() steps.
+     * Subclasses may override it to read the input some other way (in parallel, say), but should
+     * still go through setup(), acceptRead() and finish().
      */
     @Override
-    protected final Object doWork() {
+    protected Object doWork() {
         makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, Arrays.asList(this));
         return null;
     }
@@ -59,6 +73,21 @@ public abstract class SinglePassSamProgram extends PicardCommandLineProgram {
                                 final boolean assumeSorted,
                                 final long stopAfter,
                                 final Collection<SinglePassSamProgram> programs) {
+        makeItSo(input, referenceSequence, assumeSorted, stopAfter, programs, false);
+    }
+
+    /**
+     * As above, but if pipelined is true each program's acceptRead() is called on a thread of its own, while this
+     * thread decodes the input, so that the pass runs at the speed of the slowest program (or of decoding) rather than
+     * of all the programs put together. Each program still sees every record in order, from a single thread.
+     * The records are shared between the programs, so programs must not modify them.
+     */
+    public static void makeItSo(final File input,
+                                final File referenceSequence,
+                                final boolean assumeSorted,
+                                final long stopAfter,
+                                final Collection<SinglePassSamProgram> programs,
+                                final boolean pipelined) {
 
         // Setup the standard inputs
         IOUtil.assertFileIsReadable(input);
@@ -101,36 +130,158 @@ public abstract class SinglePassSamProgram extends PicardCommandLineProgram {
 
 
         final ProgressLogger progress = new ProgressLogger(logger);
+        // with no programs there are no threads to feed, so just read the input as the serial path does
+        final ProgramPipeline pipeline = pipelined && !programs.isEmpty() ? new ProgramPipeline(programs) : null;
+
+        try {
+            for (final SAMRecord rec : in) {
+                final ReferenceSequence ref;
+                if (walker == null || rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    ref = null;
+                } else {
+                    ref = walker.get(rec.getReferenceIndex());
+                }
 
-        for (final SAMRecord rec : in) {
-            final ReferenceSequence ref;
-            if (walker == null || rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                ref = null;
-            } else {
-                ref = walker.get(rec.getReferenceIndex());
+                if (pipeline != null) {
+                    pipeline.add(rec, ref);
+                } else {
+                    for (final SinglePassSamProgram program : programs) {
+                        program.acceptRead(rec, ref);
+                    }
+                }
+
+                progress.record(rec);
+
+                // See if we need to terminate early?
+                if (stopAfter > 0 && progress.getCount() >= stopAfter) {
+                    break;
+                }
+
+                // And see if we're into the unmapped reads at the end
+                if (!anyUseNoRefReads && rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    break;
+                }
             }
 
+            if (pipeline != null) {
+                pipeline.finish();
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.shutdown();
+            }
+            CloserUtil.close(in);
+        }
+
+        for (final SinglePassSamProgram program : programs) {
+            program.finish();
+        }
+    }
+
+    /**
+     * One thread per program, each taking batches of records from a bounded queue of its own. Every batch goes on
+     * every queue, so a program that falls behind holds up the decoding thread rather than buffering the whole file.
+     */
+    private static final class ProgramPipeline {
+        private final List<BlockingQueue<RecordBatch>> queues = new ArrayList<>();
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final ExecutorService executor;
+        private RecordBatch currentBatch = new RecordBatch(RECORD_BATCH_SIZE);
+
+        private ProgramPipeline(final Collection<SinglePassSamProgram> programs) {
+            executor = Executors.newFixedThreadPool(programs.size());
             for (final SinglePassSamProgram program : programs) {
-                program.acceptRead(rec, ref);
+                final BlockingQueue<RecordBatch> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES_PER_PROGRAM);
+                queues.add(queue);
+                futures.add(executor.submit(() -> runProgram(program, queue)));
             }
+        }
 
-            progress.record(rec);
+        private static void runProgram(final SinglePassSamProgram program, final BlockingQueue<RecordBatch> queue) {
+            try {
+                RecordBatch batch;
+                // An empty batch tells the thread to stop
+                while ((batch = queue.take()).size > 0) {
+                    for (int i = 0; i < batch.size; i++) {
+                        program.acceptRead(batch.records[i], batch.refs[i]);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GATKException("Interrupted while waiting for records", e);
+            }
+        }
 
-            // See if we need to terminate early?
-            if (stopAfter > 0 && progress.getCount() >= stopAfter) {
-                break;
+        private void add(final SAMRecord rec, final ReferenceSequence ref) {
+            // BAM records decode their fields lazily, which isn't safe once several threads are reading them
+            rec.eagerDecode();
+            currentBatch.records[currentBatch.size] = rec;
+            currentBatch.refs[currentBatch.size] = ref;
+            if (++currentBatch.size == RECORD_BATCH_SIZE) {
+                submit(currentBatch);
+                currentBatch = new RecordBatch(RECORD_BATCH_SIZE);
             }
+        }
 
-            // And see if we're into the unmapped reads at the end
-            if (!anyUseNoRefReads && rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                break;
+        /** Flush the last batch, and wait for every program to see all the records. */
+        private void finish() {
+            if (currentBatch.size > 0) {
+                submit(currentBatch);
+            }
+            submit(new RecordBatch(0));
+            for (final Future<?> future : futures) {
+                waitForProgram(future);
             }
         }
 
-        CloserUtil.close(in);
+        /** Stop the threads, whether or not they've finished. */
+        private void shutdown() {
+            executor.shutdownNow();
+        }
 
-        for (final SinglePassSamProgram program : programs) {
-            program.finish();
+        /**
+         * Put a batch on every program's queue, waiting for space if a program is behind.
+         */
+        private void submit(final RecordBatch batch) {
+            try {
+                for (int i = 0; i < queues.size(); i++) {
+                    while (!queues.get(i).offer(batch, 1, TimeUnit.SECONDS)) {
+                        // A program that failed will never drain its queue, so check for failures while waiting
+                        if (futures.get(i).isDone()) {
+                            waitForProgram(futures.get(i));
+                            throw new GATKException("A metrics program thread exited before the end of the input");
+                        }
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GATKException("Interrupted while waiting for a metrics program thread", e);
+            }
+        }
+
+        private static void waitForProgram(final Future<?> future) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GATKException("Interrupted while waiting for a metrics program thread", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw new GATKException("Error in metrics program thread", e.getCause());
+            }
+        }
+    }
+
+    private static final class RecordBatch {
+        private final SAMRecord[] records;
+        private final ReferenceSequence[] refs;
+        private int size;
+
+        private RecordBatch(final int capacity) {
+            records = new SAMRecord[capacity];
+            refs = new ReferenceSequence[capacity];
         }
     }
 
@@ -144,6 +295,10 @@ public abstract class SinglePassSamProgram extends PicardCommandLineProgram {
      * Should be implemented by subclasses to accept SAMRecords one at a time.
      * If the read has a reference sequence and a reference sequence file was supplied to the program
      * it will be passed as 'ref'. Otherwise 'ref' may be null.
+     *
+     * When the programs are pipelined the same record is passed to every program, each on a thread of its own, so
+     * implementations must treat it as read-only: no setters, and no transient attributes either. The record has been
+     * eagerly decoded before it is shared, so reading it from several threads at once is safe.
      */
     protected abstract void acceptRead(final SAMRecord rec, final ReferenceSequence ref);
 
@@ -1,7 +1,11 @@
 package org.broadinstitute.hellbender.tools.picard.analysis.directed;
 
+import com.google.common.annotations.VisibleForTesting;
 import htsjdk.samtools.AlignmentBlock;
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.filter.SamRecordFilter;
@@ -9,24 +13,36 @@ import htsjdk.samtools.filter.SecondaryAlignmentFilter;
 import htsjdk.samtools.metrics.MetricBase;
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Histogram;
 import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Interval;
+import htsjdk.samtools.util.IntervalList;
 import htsjdk.samtools.util.SamLocusIterator;
 import htsjdk.samtools.util.SequenceUtil;
+import org.broadinstitute.hellbender.cmdline.Advanced;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.QCProgramGroup;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.MathUtils;
+import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.runtime.ProgressLogger;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Computes a number of metrics that are useful for evaluating coverage and performance of whole genome sequencing experiments.
@@ -64,6 +80,12 @@ public final class CollectWgsMetrics extends PicardCommandLineProgram {
     @Argument(doc = "Determines whether to include the base quality histogram in the metrics file.")
     public boolean INCLUDE_BQ_HISTOGRAM = false;
 
+    @Advanced
+    @Argument(doc = "The number of threads to use. With more than one, each contig is counted separately, in parallel, " +
+            "and the counts are merged; this requires an indexed input and reference, and can't be used with STOP_AFTER.",
+            optional = true)
+    public int THREADS = 1;
+
     /** Metrics for evaluating the performance of whole genome sequencing experiments. */
     public static class WgsMetrics extends MetricBase {
         /** The number of non-N bases in the genome reference over which coverage will be evaluated. */
@@ -120,78 +142,26 @@ public final class CollectWgsMetrics extends PicardCommandLineProgram {
         public double PCT_100X;
     }
 
+    @Override
+    protected String[] customCommandLineValidation() {
+        if (THREADS < 1) {
+            return new String[]{"THREADS must be at least 1, but was " + THREADS + "."};
+        }
+        if (THREADS > 1 && STOP_AFTER > 0) {
+            return new String[]{"STOP_AFTER can't be used with more than one thread."};
+        }
+        return super.customCommandLineValidation();
+    }
+
     @Override
     protected Object doWork() {
         IOUtil.assertFileIsReadable(INPUT);
         IOUtil.assertFileIsWritable(OUTPUT);
         IOUtil.assertFileIsReadable(REFERENCE_SEQUENCE);
 
-        // Setup all the inputs
-        final ProgressLogger progress = new ProgressLogger(logger, 10000000, "Processed", "loci");
-        final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(REFERENCE_SEQUENCE);
-        final SamReader in = SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE).validationStringency(VALIDATION_STRINGENCY).open(INPUT);
-
-        // Load up the reference sequence and double check sequence dictionaries
-        if (!in.getFileHeader().getSequenceDictionary().isEmpty()) {
-            SequenceUtil.assertSequenceDictionariesEqual(in.getFileHeader().getSequenceDictionary(), refWalker.getSequenceDictionary());
-        }
-
-        final SamLocusIterator iterator = new SamLocusIterator(in);
-        final List<SamRecordFilter> filters = new ArrayList<>();
-        final CountingFilter dupeFilter = new CountingDuplicateFilter();
-        final CountingFilter mapqFilter = new CountingMapQFilter(MINIMUM_MAPPING_QUALITY);
-        final CountingPairedFilter pairFilter = new CountingPairedFilter();
-        filters.add(mapqFilter);
-        filters.add(dupeFilter);
-        filters.add(pairFilter);
-        filters.add(new SecondaryAlignmentFilter()); // Not a counting filter because we never want to count reads twice
-        iterator.setSamFilters(filters);
-        iterator.setEmitUncoveredLoci(true);
-        iterator.setMappingQualityScoreCutoff(0); // Handled separately because we want to count bases
-        iterator.setQualityScoreCutoff(0);        // Handled separately because we want to count bases
-        iterator.setIncludeNonPfReads(false);
-
-        final int max = COVERAGE_CAP;
-        final long[] HistogramArray = new long[max + 1];
-        final long[] baseQHistogramArray = new long[Byte.MAX_VALUE];
-        final boolean usingStopAfter = STOP_AFTER > 0;
-        final long stopAfter = STOP_AFTER - 1;
-        long counter = 0;
-
-        long basesExcludedByBaseq = 0;
-        long basesExcludedByOverlap = 0;
-        long basesExcludedByCapping = 0;
-
-        // Loop through all the loci
-        while (iterator.hasNext()) {
-            final SamLocusIterator.LocusInfo info = iterator.next();
-
-            // Check that the reference is not N
-            final ReferenceSequence ref = refWalker.get(info.getSequenceIndex());
-            final byte base = ref.getBases()[info.getPosition() - 1];
-            if (base == 'N') continue;
-
-            // Figure out the coverage while not counting overlapping reads twice, and excluding various things
-            final Set<String> readNames = new HashSet<>(info.getRecordAndPositions().size());
-            int pileupSize = 0;
-            for (final SamLocusIterator.RecordAndOffset recs : info.getRecordAndPositions()) {
-
-                if (recs.getBaseQuality() < MINIMUM_BASE_QUALITY)                   { ++basesExcludedByBaseq;   continue; }
-                if (!readNames.add(recs.getRecord().getReadName()))                 { ++basesExcludedByOverlap; continue; }
-                pileupSize++;
-                if (pileupSize <= max) {
-                    baseQHistogramArray[recs.getRecord().getBaseQualities()[recs.getOffset()]]++;
-                }
-            }
-
-            final int depth = Math.min(readNames.size(), max);
-            if (depth < readNames.size()) basesExcludedByCapping += readNames.size() - max;
-            HistogramArray[depth]++;
-
-            // Record progress and perhaps stop
-            progress.record(info.getSequenceName(), info.getPosition());
-            if (usingStopAfter && ++counter > stopAfter) break;
-        }
+        final WgsCounts counts = THREADS > 1 ? countContigsInParallel() : countSerially();
+        final long[] HistogramArray = counts.coverageHistogram;
+        final long[] baseQHistogramArray = counts.baseQHistogram;
 
         // Construct and write the outputs
         final Histogram<Integer> histo = new Histogram<>("coverage", "count");
@@ -212,9 +182,12 @@ public final class CollectWgsMetrics extends PicardCommandLineProgram {
         metrics.MEDIAN_COVERAGE = histo.getMedian();
         metrics.MAD_COVERAGE = histo.getMedianAbsoluteDeviation();
 
-        final long basesExcludedByDupes = dupeFilter.getFilteredBases();
-        final long basesExcludedByMapq = mapqFilter.getFilteredBases();
-        final long basesExcludedByPairing = pairFilter.getFilteredBases();
+        final long basesExcludedByDupes = counts.basesExcludedByDupes;
+        final long basesExcludedByMapq = counts.basesExcludedByMapq;
+        final long basesExcludedByPairing = counts.basesExcludedByPairing;
+        final long basesExcludedByBaseq = counts.basesExcludedByBaseq;
+        final long basesExcludedByOverlap = counts.basesExcludedByOverlap;
+        final long basesExcludedByCapping = counts.basesExcludedByCapping;
         final double total = histo.getSum();
         final double totalWithExcludes = total + basesExcludedByDupes + basesExcludedByMapq + basesExcludedByPairing + basesExcludedByBaseq + basesExcludedByOverlap + basesExcludedByCapping;
         metrics.PCT_EXC_DUPE = basesExcludedByDupes / totalWithExcludes;
@@ -253,6 +226,210 @@ public final class CollectWgsMetrics extends PicardCommandLineProgram {
     protected WgsMetrics generateWgsMetrics() {
         return new WgsMetrics();
     }
+
+    /** Counts every locus of the input in a single pass, on this thread. */
+    private WgsCounts countSerially() {
+        final ProgressLogger progress = new ProgressLogger(logger, 10000000, "Processed", "loci");
+        final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(REFERENCE_SEQUENCE);
+        final SamReader in = openInput();
+
+        // Load up the reference sequence and double check sequence dictionaries
+        if (!in.getFileHeader().getSequenceDictionary().isEmpty()) {
+            SequenceUtil.assertSequenceDictionariesEqual(in.getFileHeader().getSequenceDictionary(), refWalker.getSequenceDictionary());
+        }
+
+        final WgsCounts counts = new WgsCounts(COVERAGE_CAP, MINIMUM_BASE_QUALITY);
+        final SamLocusIterator iterator = new SamLocusIterator(in);
+        final Filters filters = new Filters(iterator, MINIMUM_MAPPING_QUALITY);
+
+        final boolean usingStopAfter = STOP_AFTER > 0;
+        final long stopAfter = STOP_AFTER - 1;
+        long counter = 0;
+
+        // Loop through all the loci
+        while (iterator.hasNext()) {
+            final SamLocusIterator.LocusInfo info = iterator.next();
+
+            // Check that the reference is not N
+            final ReferenceSequence ref = refWalker.get(info.getSequenceIndex());
+            final byte base = ref.getBases()[info.getPosition() - 1];
+            if (base == 'N') continue;
+
+            counts.addLocus(info);
+
+            // Record progress and perhaps stop
+            progress.record(info.getSequenceName(), info.getPosition());
+            if (usingStopAfter && ++counter > stopAfter) break;
+        }
+
+        filters.addFilteredBases(counts);
+        CloserUtil.close(in);
+        return counts;
+    }
+
+    /**
+     * Counts each contig in a task of its own, with its own reader, reference and filters, on THREADS threads, and
+     * merges the counts. Each contig is read with an index query, so the input must be an indexed BAM (or CRAM), and
+     * the reference must be indexed too.
+     */
+    private WgsCounts countContigsInParallel() {
+        final SAMSequenceDictionary dictionary;
+        try (final SamReader in = openInput()) {
+            if (!in.hasIndex()) {
+                throw new UserException.BadInput("The input must be indexed to count contigs in parallel: " + INPUT.getAbsolutePath());
+            }
+            dictionary = in.getFileHeader().getSequenceDictionary();
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(INPUT, e);
+        }
+        try (final ReferenceSequenceFile reference = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE)) {
+            if (!reference.isIndexed()) {
+                throw new UserException.BadInput("The reference must be indexed to count contigs in parallel: " + REFERENCE_SEQUENCE.getAbsolutePath());
+            }
+            if (!dictionary.isEmpty()) {
+                SequenceUtil.assertSequenceDictionariesEqual(dictionary, reference.getSequenceDictionary());
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(REFERENCE_SEQUENCE, e);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<WgsCounts>> futures = new ArrayList<>();
+            for (final SAMSequenceRecord contig : dictionary.getSequences()) {
+                futures.add(executor.submit(() -> countContig(contig, dictionary)));
+            }
+            final WgsCounts counts = new WgsCounts(COVERAGE_CAP, MINIMUM_BASE_QUALITY);
+            for (final Future<WgsCounts> future : futures) {
+                counts.merge(future.get());
+            }
+            return counts;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a contig to be counted", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new GATKException("Error counting a contig", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private WgsCounts countContig(final SAMSequenceRecord contig, final SAMSequenceDictionary dictionary) throws IOException {
+        final WgsCounts counts = new WgsCounts(COVERAGE_CAP, MINIMUM_BASE_QUALITY);
+        try (final SamReader in = openInput();
+             final ReferenceSequenceFile reference = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE)) {
+            final byte[] bases = reference.getSequence(contig.getSequenceName()).getBases();
+
+            final SAMFileHeader header = new SAMFileHeader();
+            header.setSequenceDictionary(dictionary);
+            final IntervalList intervals = new IntervalList(header);
+            intervals.add(new Interval(contig.getSequenceName(), 1, contig.getSequenceLength()));
+
+            final SamLocusIterator iterator = new SamLocusIterator(in, intervals, true);
+            final Filters filters = new Filters(iterator, MINIMUM_MAPPING_QUALITY);
+            while (iterator.hasNext()) {
+                final SamLocusIterator.LocusInfo info = iterator.next();
+                if (bases[info.getPosition() - 1] == 'N') continue;
+                counts.addLocus(info);
+            }
+            filters.addFilteredBases(counts);
+        }
+        logger.info("Counted contig " + contig.getSequenceName());
+        return counts;
+    }
+
+    private SamReader openInput() {
+        return SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE).validationStringency(VALIDATION_STRINGENCY).open(INPUT);
+    }
+
+    /** The filters applied to the reads of one locus iterator, which count the bases they filter out. */
+    private static final class Filters {
+        private final CountingFilter dupeFilter = new CountingDuplicateFilter();
+        private final CountingFilter mapqFilter;
+        private final CountingPairedFilter pairFilter = new CountingPairedFilter();
+
+        private Filters(final SamLocusIterator iterator, final int minimumMappingQuality) {
+            mapqFilter = new CountingMapQFilter(minimumMappingQuality);
+            final List<SamRecordFilter> filters = new ArrayList<>();
+            filters.add(mapqFilter);
+            filters.add(dupeFilter);
+            filters.add(pairFilter);
+            filters.add(new SecondaryAlignmentFilter()); // Not a counting filter because we never want to count reads twice
+            iterator.setSamFilters(filters);
+            iterator.setEmitUncoveredLoci(true);
+            iterator.setMappingQualityScoreCutoff(0); // Handled separately because we want to count bases
+            iterator.setQualityScoreCutoff(0);        // Handled separately because we want to count bases
+            iterator.setIncludeNonPfReads(false);
+        }
+
+        private void addFilteredBases(final WgsCounts counts) {
+            counts.basesExcludedByDupes += dupeFilter.getFilteredBases();
+            counts.basesExcludedByMapq += mapqFilter.getFilteredBases();
+            counts.basesExcludedByPairing += pairFilter.getFilteredBases();
+        }
+    }
+
+    /** The coverage and base quality histograms and excluded base counts of some set of loci. */
+    @VisibleForTesting
+    static final class WgsCounts {
+        private final int coverageCap;
+        private final int minimumBaseQuality;
+        // reused at every locus, to find overlapping mates without allocating
+        private final ReadNameSet readNames = new ReadNameSet();
+
+        final long[] coverageHistogram;
+        final long[] baseQHistogram = new long[Byte.MAX_VALUE];
+        long basesExcludedByDupes = 0;
+        long basesExcludedByMapq = 0;
+        long basesExcludedByPairing = 0;
+        long basesExcludedByBaseq = 0;
+        long basesExcludedByOverlap = 0;
+        long basesExcludedByCapping = 0;
+
+        WgsCounts(final int coverageCap, final int minimumBaseQuality) {
+            this.coverageCap = coverageCap;
+            this.minimumBaseQuality = minimumBaseQuality;
+            this.coverageHistogram = new long[coverageCap + 1];
+        }
+
+        /** Figure out the coverage while not counting overlapping reads twice, and excluding various things */
+        void addLocus(final SamLocusIterator.LocusInfo info) {
+            readNames.clear();
+            int pileupSize = 0;
+            for (final SamLocusIterator.RecordAndOffset recs : info.getRecordAndPositions()) {
+
+                if (recs.getBaseQuality() < minimumBaseQuality)                     { ++basesExcludedByBaseq;   continue; }
+                if (!readNames.add(recs.getRecord().getReadName()))                 { ++basesExcludedByOverlap; continue; }
+                pileupSize++;
+                if (pileupSize <= coverageCap) {
+                    baseQHistogram[recs.getRecord().getBaseQualities()[recs.getOffset()]]++;
+                }
+            }
+
+            final int depth = Math.min(readNames.size(), coverageCap);
+            if (depth < readNames.size()) basesExcludedByCapping += readNames.size() - coverageCap;
+            coverageHistogram[depth]++;
+        }
+
+        void merge(final WgsCounts other) {
+            Utils.validateArg(other.coverageHistogram.length == coverageHistogram.length, "The coverage caps differ.");
+            for (int i = 0; i < coverageHistogram.length; i++) {
+                coverageHistogram[i] += other.coverageHistogram[i];
+            }
+            for (int i = 0; i < baseQHistogram.length; i++) {
+                baseQHistogram[i] += other.baseQHistogram[i];
+            }
+            basesExcludedByDupes += other.basesExcludedByDupes;
+            basesExcludedByMapq += other.basesExcludedByMapq;
+            basesExcludedByPairing += other.basesExcludedByPairing;
+            basesExcludedByBaseq += other.basesExcludedByBaseq;
+            basesExcludedByOverlap += other.basesExcludedByOverlap;
+            basesExcludedByCapping += other.basesExcludedByCapping;
+        }
+    }
 }
 
 /**
@@ -0,0 +1,63 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+/**
+ * A set of read names that is cleared and reused at every locus, so that counting the distinct templates in a pileup
+ * doesn't allocate a new HashSet (and its entries) for each of the billions of loci in a genome.
+ *
+ * Names are kept in an open-addressed table with linear probing, and compared with equals(), so unlike a set of name
+ * hashes there are no false collisions. The slots in use are remembered, so clearing costs only as much as the pileup.
+ */
+final class ReadNameSet {
+    private static final int MIN_CAPACITY = 64;
+
+    private String[] names = new String[MIN_CAPACITY];
+    // the slots holding names, in the order they were filled; the table is never more than half full
+    private int[] usedSlots = new int[MIN_CAPACITY / 2];
+    private int size = 0;
+
+    /** Adds a name, returning false if it was already present. */
+    boolean add(final String name) {
+        if (size == usedSlots.length) {
+            grow();
+        }
+        final int mask = names.length - 1;
+        int slot = mix(name.hashCode()) & mask;
+        String present;
+        while ((present = names[slot]) != null) {
+            if (present.equals(name)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        usedSlots[size++] = slot;
+        return true;
+    }
+
+    int size() { return size; }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            names[usedSlots[i]] = null;
+        }
+        size = 0;
+    }
+
+    private void grow() {
+        final String[] oldNames = names;
+        final int[] oldUsedSlots = usedSlots;
+        final int oldSize = size;
+        names = new String[2 * oldNames.length];
+        usedSlots = new int[oldNames.length];
+        size = 0;
+        for (int i = 0; i < oldSize; i++) {
+            add(oldNames[oldUsedSlots[i]]);
+        }
+    }
+
+    /** read names often differ only in their last few characters, so spread the hash code's bits before masking */
+    private static int mix(final int hashCode) {
+        final int hash = hashCode * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -15,13 +15,15 @@ import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.PeekableIterator;
 import htsjdk.samtools.util.RuntimeIOException;
-import htsjdk.samtools.util.SortingCollection;
 import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.argumentcollections.SortingArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.collections.ParallelSortingCollection;
 import org.broadinstitute.hellbender.utils.runtime.ProgressLogger;
 
 import java.io.File;
@@ -66,6 +68,9 @@ public final class FixMateInformation extends PicardCommandLineProgram {
     @Argument(shortName = "MC", optional = true, doc = "Adds the mate CIGAR tag (MC) if true, does not if false.")
     public Boolean ADD_MATE_CIGAR = true;
 
+    @ArgumentCollection
+    public SortingArgumentCollection sortingArgs = new SortingArgumentCollection();
+
     protected Object doWork() {
         // Open up the input
         boolean allQueryNameSorted = true;
@@ -124,7 +129,7 @@ public final class FixMateInformation extends PicardCommandLineProgram {
                 iterator = new SamPairUtil.SetMateInfoIterator(new PeekableIterator<>(tmp), ADD_MATE_CIGAR);
             } else {
                 logger.info("Sorting input into queryname order.");
-                final SortingCollection<SAMRecord> sorter = SortingCollection.newInstance(SAMRecord.class,
+                final ParallelSortingCollection<SAMRecord> sorter = sortingArgs.newSortingCollection(SAMRecord.class,
                         new BAMRecordCodec(header),
                         new SAMRecordQueryNameComparator(),
                         MAX_RECORDS_IN_RAM,
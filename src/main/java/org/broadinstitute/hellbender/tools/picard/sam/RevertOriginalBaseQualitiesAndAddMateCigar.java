@@ -11,12 +11,14 @@ import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
-import htsjdk.samtools.util.SortingCollection;
 import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.argumentcollections.SortingArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
+import org.broadinstitute.hellbender.utils.collections.ParallelSortingCollection;
 import org.broadinstitute.hellbender.utils.read.ReadUtils;
 import org.broadinstitute.hellbender.utils.read.mergealignment.AbstractAlignmentMerger;
 import org.broadinstitute.hellbender.utils.runtime.ProgressLogger;
@@ -59,6 +61,9 @@ public final class RevertOriginalBaseQualitiesAndAddMateCigar extends PicardComm
             + " Set to 0 to never skip the file.")
     public int MAX_RECORDS_TO_EXAMINE = 10000;
 
+    @ArgumentCollection
+    public SortingArgumentCollection sortingArgs = new SortingArgumentCollection();
+
     public RevertOriginalBaseQualitiesAndAddMateCigar() {
         this.CREATE_INDEX = true;
         this.CREATE_MD5_FILE = true;
@@ -86,8 +91,8 @@ public final class RevertOriginalBaseQualitiesAndAddMateCigar extends PicardComm
 
         try (final SAMFileWriter out = createSAMWriter(OUTPUT, REFERENCE_SEQUENCE, outHeader, false)) {
             // Iterate over the records, revert original base qualities, and push them into a SortingCollection by queryname
-            final SortingCollection<SAMRecord> sorter = SortingCollection.newInstance(SAMRecord.class, new BAMRecordCodec(outHeader),
-                    new SAMRecordQueryNameComparator(), MAX_RECORDS_IN_RAM);
+            final ParallelSortingCollection<SAMRecord> sorter = sortingArgs.newSortingCollection(SAMRecord.class, new BAMRecordCodec(outHeader),
+                    new SAMRecordQueryNameComparator(), MAX_RECORDS_IN_RAM, TMP_DIR);
             final ProgressLogger revertingProgress = new ProgressLogger(logger, 1000000, " reverted OQs");
             int numOriginalQualitiesRestored = 0;
             for (final SAMRecord record : in) {
@@ -124,6 +129,7 @@ public final class RevertOriginalBaseQualitiesAndAddMateCigar extends PicardComm
                 logger.info("Updated " + sorterIterator.getNumMateCigarsAdded() + " records with mate cigar");
                 if (!foundPairedMappedReads) logger.info("Did not find any paired mapped reads.");
             }
+            sorter.cleanup();
         }
         return null;
     }
@@ -14,12 +14,15 @@ import htsjdk.samtools.filter.FilteringSamIterator;
 import htsjdk.samtools.filter.SamRecordFilter;
 import htsjdk.samtools.util.*;
 import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.argumentcollections.SortingArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.collections.ParallelSortingCollection;
 import org.broadinstitute.hellbender.utils.runtime.ProgressLogger;
 
 import java.io.File;
@@ -95,6 +98,12 @@ public final class RevertSam extends PicardCommandLineProgram {
             "same sample alias ", shortName = StandardArgumentDefinitions.LIBRARY_NAME_SHORT_NAME, optional = true)
     public String LIBRARY_NAME;
 
+    @ArgumentCollection
+    public SortingArgumentCollection sortingArgs = new SortingArgumentCollection();
+
+    // the collection that sorts the records by name when sanitizing, or null
+    private ParallelSortingCollection<SAMRecord> sorter = null;
+
     /**
      * Enforce that output ordering is queryname when sanitization is turned on since it requires a queryname sort.
      */
@@ -109,6 +118,18 @@ public final class RevertSam extends PicardCommandLineProgram {
 
     @Override
     protected Object doWork() {
+        try {
+            return revert();
+        } finally {
+            // the sorter's temporary files and threads must be cleaned up however revert() leaves
+            if (sorter != null) {
+                sorter.cleanup();
+                sorter = null;
+            }
+        }
+    }
+
+    private Object revert() {
         IOUtil.assertFileIsReadable(INPUT);
         IOUtil.assertFileIsWritable(OUTPUT);
 
@@ -165,9 +186,8 @@ public final class RevertSam extends PicardCommandLineProgram {
         ////////////////////////////////////////////////////////////////////////////
         // Build a sorting collection to use if we are sanitizing
         ////////////////////////////////////////////////////////////////////////////
-        final SortingCollection<SAMRecord> sorter;
         if (sanitizing) {
-            sorter = SortingCollection.newInstance(SAMRecord.class, new BAMRecordCodec(outHeader), new SAMRecordQueryNameComparator(), MAX_RECORDS_IN_RAM);
+            sorter = sortingArgs.newSortingCollection(SAMRecord.class, new BAMRecordCodec(outHeader), new SAMRecordQueryNameComparator(), MAX_RECORDS_IN_RAM, TMP_DIR);
         } else {
             sorter = null;
         }
@@ -276,6 +296,7 @@ public final class RevertSam extends PicardCommandLineProgram {
             }
 
             out.close();
+            iterator.close();
 
             final double discardRate = discarded / (double) total;
             final NumberFormat fmt = new DecimalFormat("0.000%");
@@ -1,13 +1,17 @@
 package org.broadinstitute.hellbender.tools.picard.sam;
 
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.cmdline.argumentcollections.SortingArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
+import org.broadinstitute.hellbender.utils.collections.ParallelSortingCollection;
 import org.broadinstitute.hellbender.utils.runtime.ProgressLogger;
 
 import java.io.File;
@@ -36,6 +40,9 @@ public final class SortSam extends PicardCommandLineProgram {
     @Argument(shortName = StandardArgumentDefinitions.SORT_ORDER_SHORT_NAME, doc = "Sort order of output file")
     public SAMFileHeader.SortOrder SORT_ORDER;
 
+    @ArgumentCollection
+    public SortingArgumentCollection sortingArgs = new SortingArgumentCollection();
+
     @Override
     protected Object doWork() {
         IOUtil.assertFileIsReadable(INPUT);
@@ -43,18 +50,42 @@ public final class SortSam extends PicardCommandLineProgram {
         final SamReader reader = SamReaderFactory.makeDefault().validationStringency(VALIDATION_STRINGENCY).referenceSequence(REFERENCE_SEQUENCE).open(INPUT);
         SAMFileHeader writeHeader = reader.getFileHeader().clone();
         writeHeader.setSortOrder(SORT_ORDER);
-        try (final SAMFileWriter writer = createSAMWriter(OUTPUT, REFERENCE_SEQUENCE, writeHeader, false)) {
-            writer.setProgressLogger(
-                    new ProgressLogger(logger, (int) 1e7, "Wrote", "records from a sorting collection"));
+        final SAMRecordComparator comparator = SORT_ORDER.getComparatorInstance();
+        if (comparator == null) {
+            // unsorted or unknown: there's nothing to sort, so just copy the records
+            try (final SAMFileWriter writer = createSAMWriter(OUTPUT, REFERENCE_SEQUENCE, writeHeader, true)) {
+                final ProgressLogger progress = new ProgressLogger(logger, (int) 1e7, "Wrote");
+                for (final SAMRecord rec : reader) {
+                    writer.addAlignment(rec);
+                    progress.record(rec);
+                }
+            }
+            CloserUtil.close(reader);
+            return null;
+        }
 
+        final ParallelSortingCollection<SAMRecord> sorter = sortingArgs.newSortingCollection(SAMRecord.class,
+                new BAMRecordCodec(writeHeader), comparator, MAX_RECORDS_IN_RAM, TMP_DIR);
+        try {
             final ProgressLogger progress = new ProgressLogger(logger, (int) 1e7, "Read");
             for (final SAMRecord rec : reader) {
-                writer.addAlignment(rec);
+                sorter.add(rec);
                 progress.record(rec);
             }
 
             logger.info("Finished reading inputs, merging and writing to output now.");
 
+            try (final SAMFileWriter writer = createSAMWriter(OUTPUT, REFERENCE_SEQUENCE, writeHeader, true);
+                 final CloseableIterator<SAMRecord> sorted = sorter.iterator()) {
+                final ProgressLogger writeProgress = new ProgressLogger(logger, (int) 1e7, "Wrote", "records from a sorting collection");
+                while (sorted.hasNext()) {
+                    final SAMRecord rec = sorted.next();
+                    writer.addAlignment(rec);
+                    writeProgress.record(rec);
+                }
+            }
+        } finally {
+            sorter.cleanup();
         }
         CloserUtil.close(reader);
         return null;
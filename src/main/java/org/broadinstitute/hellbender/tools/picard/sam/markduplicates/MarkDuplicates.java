@@ -4,19 +4,18 @@ import com.google.common.annotations.VisibleForTesting;
 import htsjdk.samtools.*;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
-import htsjdk.samtools.util.SortingCollection;
 import htsjdk.samtools.util.SortingLongCollection;
 import org.broadinstitute.hellbender.cmdline.Argument;
+import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
+import org.broadinstitute.hellbender.cmdline.argumentcollections.SortingArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
 import org.broadinstitute.hellbender.utils.read.ReadUtils;
 import org.broadinstitute.hellbender.utils.read.markduplicates.*;
 import org.broadinstitute.hellbender.utils.runtime.ProgressLogger;
 
 import java.io.File;
-import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
@@ -55,9 +54,11 @@ public final class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgr
     @Argument(doc = "Report Memory Stats at various times during the run")
     public boolean reportMemoryStats = false;
 
+    @ArgumentCollection
+    public SortingArgumentCollection sortingArgs = new SortingArgumentCollection();
 
-    private SortingCollection<ReadEndsForMarkDuplicates> pairSort;
-    private SortingCollection<ReadEndsForMarkDuplicates> fragSort;
+    private PackedReadEndsCollection pairSort;
+    private PackedReadEndsCollection fragSort;
     private SortingLongCollection duplicateIndexes;
     private int numDuplicateIndices = 0;
 
@@ -195,20 +196,14 @@ public final class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgr
      * duplication, caching to disk as necessary to sort them.
      */
     private void buildSortedReadEndLists() {
-        final int maxInMemory = (int) ((Runtime.getRuntime().maxMemory() * SORTING_COLLECTION_SIZE_RATIO) / ReadEndsForMarkDuplicates.SIZE_OF);
+        final int maxInMemory = (int) ((Runtime.getRuntime().maxMemory() * SORTING_COLLECTION_SIZE_RATIO) / PackedReadEndsCollection.SIZE_OF);
         logger.info("Will retain up to " + maxInMemory + " data points before spilling to disk.");
 
-        this.pairSort = SortingCollection.newInstance(ReadEndsForMarkDuplicates.class,
-                new ReadEndsForMarkDuplicatesCodec(),
-                new ReadEndsMDComparator(),
-                maxInMemory,
-                TMP_DIR);
-
-        this.fragSort = SortingCollection.newInstance(ReadEndsForMarkDuplicates.class,
-                new ReadEndsForMarkDuplicatesCodec(),
-                new ReadEndsMDComparator(),
-                maxInMemory,
-                TMP_DIR);
+        sortingArgs.validate();
+        this.pairSort = new PackedReadEndsCollection(maxInMemory, sortingArgs.SORTING_THREADS,
+                sortingArgs.SORTING_COMPRESSION_LEVEL, TMP_DIR);
+        this.fragSort = new PackedReadEndsCollection(maxInMemory, sortingArgs.SORTING_THREADS,
+                sortingArgs.SORTING_COMPRESSION_LEVEL, TMP_DIR);
 
         try(final SamHeaderAndIterator headerAndIterator = openInputs()) {
             final SAMFileHeader header = headerAndIterator.header;
@@ -487,20 +482,4 @@ public final class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgr
             }
         }
     }
-
-    /** Comparator for ReadEndsForMarkDuplicates that orders by read1 position then pair orientation then read2 position. */
-    static class ReadEndsMDComparator implements Comparator<ReadEndsForMarkDuplicates>, Serializable {
-        private static final long serialVersionUID = 1L;
-        public int compare(final ReadEndsForMarkDuplicates lhs, final ReadEndsForMarkDuplicates rhs) {
-            int retval = lhs.libraryId - rhs.libraryId;
-            if (retval == 0) retval = lhs.read1ReferenceIndex - rhs.read1ReferenceIndex;
-            if (retval == 0) retval = lhs.read1Coordinate - rhs.read1Coordinate;
-            if (retval == 0) retval = lhs.orientation - rhs.orientation;
-            if (retval == 0) retval = lhs.read2ReferenceIndex - rhs.read2ReferenceIndex;
-            if (retval == 0) retval = lhs.read2Coordinate - rhs.read2Coordinate;
-            if (retval == 0) retval = (int) (lhs.read1IndexInFile - rhs.read1IndexInFile);
-            if (retval == 0) retval = (int) (lhs.read2IndexInFile - rhs.read2IndexInFile);
-            return retval;
-        }
-    }
 }
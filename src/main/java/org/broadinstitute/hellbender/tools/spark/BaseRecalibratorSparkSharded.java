@@ -19,9 +19,11 @@ import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
 import org.broadinstitute.hellbender.engine.datasources.VariantsSource;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.spark.AddContextDataToReadSparkOptimized;
+import org.broadinstitute.hellbender.engine.spark.ContextShardStatistics;
 import org.broadinstitute.hellbender.engine.spark.SparkCommandLineProgram;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.tools.spark.transforms.BaseRecalibratorSparkFn;
 import org.broadinstitute.hellbender.tools.spark.transforms.bqsr.BaseRecalibratorEngineSparkWrapper;
 import org.broadinstitute.hellbender.tools.walkers.bqsr.BaseRecalibrator;
 import org.broadinstitute.hellbender.utils.IntervalUtils;
@@ -32,6 +34,7 @@ import org.broadinstitute.hellbender.utils.io.IOUtils;
 import org.broadinstitute.hellbender.utils.recalibration.BaseRecalibrationEngine;
 import org.broadinstitute.hellbender.utils.recalibration.RecalibrationArgumentCollection;
 import org.broadinstitute.hellbender.utils.recalibration.RecalibrationTables;
+import org.broadinstitute.hellbender.utils.recalibration.SparseRecalibrationTables;
 import org.broadinstitute.hellbender.utils.recalibration.covariates.StandardCovariateList;
 import org.broadinstitute.hellbender.utils.variant.GATKVariant;
 
@@ -73,6 +76,13 @@ public class BaseRecalibratorSparkSharded extends SparkCommandLineProgram {
               shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, optional = false)
     private String outputTablesPath = null;
 
+    @Argument(doc = "Estimate the reads in each shard from the BAM index, and split dense shards and merge sparse ones so that the tasks do similar amounts of work.",
+              shortName = "balanceShards", fullName = "balanceShards", optional = true)
+    private boolean balanceShards = true;
+
+    @Argument(doc = "Path to write the reads, time, and estimated size of each shard to, slowest first.",
+              shortName = "shardMetrics", fullName = "shardMetricsOutput", optional = true)
+    private String shardMetricsOutput = null;
 
     private AuthHolder auth;
 
@@ -106,17 +116,15 @@ public class BaseRecalibratorSparkSharded extends SparkCommandLineProgram {
         List<GATKVariant> variants = VariantsSource.getVariantsList(localVariants);
 
         // get reads, reference, variants
-        JavaRDD<ContextShard> readsWithContext = AddContextDataToReadSparkOptimized.add(ctx, intervals, bam, variants, auth, readFilterToApply, rds);
+        final ContextShardStatistics shardStatistics = shardMetricsOutput == null ? null : new ContextShardStatistics(ctx);
+        JavaRDD<ContextShard> readsWithContext = AddContextDataToReadSparkOptimized.add(ctx, intervals, bam, variants, auth, readFilterToApply, rds,
+                balanceShards, shardStatistics);
 
         // run BaseRecalibratorEngine.
         BaseRecalibratorEngineSparkWrapper recal = new BaseRecalibratorEngineSparkWrapper(readsHeaderBcast, refDictionaryBcast, bqsrArgs);
-        JavaRDD<RecalibrationTables> tables = readsWithContext.mapPartitions(s->recal.apply(s));
+        JavaRDD<SparseRecalibrationTables> tables = readsWithContext.mapPartitions(s->recal.apply(s));
 
-        final RecalibrationTables emptyRecalibrationTable = new RecalibrationTables(new StandardCovariateList(bqsrArgs, readsHeader));
-        final RecalibrationTables table = tables.treeAggregate(emptyRecalibrationTable,
-                RecalibrationTables::inPlaceCombine,
-                RecalibrationTables::inPlaceCombine,
-                Math.max(1, (int)(Math.log(tables.partitions().size()) / Math.log(2))));
+        final RecalibrationTables table = BaseRecalibratorSparkFn.combineTables(tables, new StandardCovariateList(bqsrArgs, readsHeader));
 
         BaseRecalibrationEngine.finalizeRecalibrationTables(table);
 
@@ -125,6 +133,10 @@ public class BaseRecalibratorSparkSharded extends SparkCommandLineProgram {
         } catch (IOException e) {
             throw new UserException.CouldNotCreateOutputFile(new File(outputTablesPath), e);
         }
+
+        if (shardStatistics != null) {
+            shardStatistics.saveMetrics(shardMetricsOutput, auth);
+        }
     }
 
 
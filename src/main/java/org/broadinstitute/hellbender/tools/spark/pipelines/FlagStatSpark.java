@@ -6,12 +6,17 @@ import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.SparkProgramGroup;
+import org.broadinstitute.hellbender.engine.filters.ReadFilter;
+import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.spark.GATKSparkTool;
+import org.broadinstitute.hellbender.engine.spark.datasources.ReadsParquetSchema;
 import org.broadinstitute.hellbender.tools.FlagStat.FlagStatus;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 
 import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.Set;
 
 @CommandLineProgramProperties(summary ="runs FlagStat on Spark",
         oneLineSummary = "FlagStat on Spark",
@@ -28,6 +33,29 @@ public final class FlagStatSpark extends GATKSparkTool {
             optional = true)
     public String out;
 
+    /**
+     * {@link FlagStatus} looks at flags, contigs and mapping qualities only, so a Parquet read store input is read
+     * without bases, qualities, cigars or attributes.
+     */
+    @Override
+    public Set<ReadsParquetSchema.Column> getRequestedReadColumns() {
+        return EnumSet.of(ReadsParquetSchema.Column.FLAGS, ReadsParquetSchema.Column.POSITION,
+                ReadsParquetSchema.Column.MAPPING_QUALITY, ReadsParquetSchema.Column.MATE);
+    }
+
+    /**
+     * The columns read from a Parquet read store leave out the bases and cigar that the default read filters check,
+     * so reads from one are all counted, like samtools flagstat does. Other inputs are filtered as usual.
+     */
+    @Override
+    public ReadFilter makeReadFilter() {
+        if (ReadsParquetSchema.isParquetReads(getReadSourceName())
+                && !getRequestedReadColumns().containsAll(EnumSet.allOf(ReadsParquetSchema.Column.class))) {
+            return ReadFilterLibrary.ALLOW_ALL_READS;
+        }
+        return super.makeReadFilter();
+    }
+
     @Override
     protected void runTool(final JavaSparkContext ctx) {
         final JavaRDD<GATKRead> reads = getReads();
@@ -39,6 +39,8 @@ import java.util.stream.IntStream;
 public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
     private static final long serialVersionUID = 1L;
 
+    @VisibleForTesting static final String ASSEMBLIES_FILE_NAME = "assemblies.txt";
+
     //--------- parameters ----------
     @VisibleForTesting static final Params defaultParams =
             new Params(
@@ -116,6 +118,20 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
     @Argument(doc = "Include read mapping location in FASTQ files.", fullName = "intervalOnlyAssembly")
     private boolean intervalOnlyAssembly = false;
 
+    @Argument(doc = "Assemble the reads of each interval in the Spark tasks, and write the contigs to the output " +
+            "directory instead of FASTQ files.", fullName = "assembleInJVM", optional = true)
+    private boolean assembleInJVM = false;
+
+    @Argument(doc = "Minimum count of a kmer used in local assembly.", fullName = "assemblyMinKmerCount", optional = true)
+    private int assemblyMinKmerCount = 2;
+
+    @Argument(doc = "Minimum length of a contig from local assembly.", fullName = "assemblyMinContigLength", optional = true)
+    private int assemblyMinContigLength = 150;
+
+    @Argument(doc = "Maximum number of kmers in the reads of a local assembly.  Larger assemblies fail without " +
+            "being attempted.", fullName = "assemblyMaxKmers", optional = true)
+    private int assemblyMaxKmers = LocalAssembler.DEFAULT_MAX_KMERS;
+
     // --------- locations ----------
 
     @Argument(doc = "directory for fastq output", shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME,
@@ -196,20 +212,62 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         if ( !intervalOnlyAssembly )
             addAssemblyQNames(params, ctx, kmersToIgnoreFile, qNamesMultiMap, allPrimaryLines, locations, pipelineOptions);
 
-        // write a FASTQ file for each interval
         final String outDir = outputDir;
         final int maxFastqSize = maxFASTQSize;
         final boolean includeMapLoc = includeMappingLocation;
-        final List<Tuple2<Integer, String>> intervalDispositions =
-                generateFastqs(ctx, qNamesMultiMap, allPrimaryLines, intervals.size(), includeMapLoc,
-                                intervalAndFastqBytes -> writeFastq(intervalAndFastqBytes, outDir, maxFastqSize));
+        final List<Tuple2<Integer, String>> intervalDispositions;
+        if ( assembleInJVM ) {
+            // assemble the reads for each interval where they're gathered
+            final LocalAssembler assembler = new LocalAssembler(kSize, assemblyMinKmerCount, assemblyMinContigLength,
+                                                                    assemblyMaxKmers);
+            final List<Tuple2<Integer, LocalAssembler.AssemblyResult>> assemblies =
+                    generateFastqs(ctx, qNamesMultiMap, allPrimaryLines, intervals.size(), includeMapLoc,
+                                    intervalAndFastqBytes -> assembleFastq(intervalAndFastqBytes, assembler, maxFastqSize));
+            intervalDispositions = writeAssemblies(outDir + "/" + ASSEMBLIES_FILE_NAME, pipelineOptions, assemblies);
+        } else {
+            // write a FASTQ file for each interval
+            intervalDispositions =
+                    generateFastqs(ctx, qNamesMultiMap, allPrimaryLines, intervals.size(), includeMapLoc,
+                                    intervalAndFastqBytes -> writeFastq(intervalAndFastqBytes, outDir, maxFastqSize));
+        }
 
         // record the intervals
         if ( locations.intervalFile != null ) {
             writeIntervalFile(locations.intervalFile, pipelineOptions, header, intervals, intervalDispositions);
         }
 
-        log("Wrote FASTQs for assembly.");
+        log(assembleInJVM ? "Wrote assembled contigs." : "Wrote FASTQs for assembly.");
+    }
+
+    /**
+     * Write the contigs of each successful assembly as a line with the interval ID and the packed FASTA,
+     * the format RunSGAViaProcessBuilderOnSpark writes, so that AlignAssembledContigsSpark can take either.
+     * Returns the disposition of each interval.
+     */
+    private static List<Tuple2<Integer, String>> writeAssemblies(
+            final String assembliesFile,
+            final PipelineOptions pipelineOptions,
+            final List<Tuple2<Integer, LocalAssembler.AssemblyResult>> assemblies ) {
+        final List<Tuple2<Integer, String>> intervalDispositions = new ArrayList<>(assemblies.size());
+        try ( final Writer writer =
+                      new BufferedWriter(new OutputStreamWriter(BucketUtils.createFile(assembliesFile, pipelineOptions))) ) {
+            for ( final Tuple2<Integer, LocalAssembler.AssemblyResult> assembly : assemblies ) {
+                final LocalAssembler.AssemblyResult result = assembly._2();
+                if ( result == null ) {
+                    intervalDispositions.add(new Tuple2<>(assembly._1(), "Not assembled -- FASTQ too big."));
+                } else if ( result.assembledContigs == null ) {
+                    intervalDispositions.add(new Tuple2<>(assembly._1(), result.runtimeInfo.toString().replace('\n', ' ')));
+                } else {
+                    if ( !result.assembledContigs.getContents().isEmpty() ) {
+                        writer.write(assembly._1() + "\t" + result.assembledContigs.toPackedFasta() + "\n");
+                    }
+                    intervalDispositions.add(new Tuple2<>(assembly._1(), "Assembled " + result.runtimeInfo.stdoutMsg));
+                }
+            }
+        } catch ( final IOException ioe ) {
+            throw new GATKException("Can't write assemblies file " + assembliesFile, ioe);
+        }
+        return intervalDispositions;
     }
 
     /** write a file describing each interval */
@@ -378,17 +436,17 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
      * Transform all the reads for a supplied set of template names in each inverval into FASTQ records
      * for each interval, and do something with the list of FASTQ records for each interval (like write it to a file).
      */
-    @VisibleForTesting static List<Tuple2<Integer, String>> generateFastqs(final JavaSparkContext ctx,
+    @VisibleForTesting static <T> List<T> generateFastqs(final JavaSparkContext ctx,
                                        final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNamesMultiMap,
                                        final JavaRDD<GATKRead> reads,
                                        final int nIntervals,
                                        final boolean includeMappingLocation,
-                                       final org.apache.spark.api.java.function.Function<Tuple2<Integer, List<byte[]>>, Tuple2<Integer, String>> fastqHandler) {
-        final Broadcast<HopscotchUniqueMultiMap<String, Integer, QNameAndInterval>> broadcastQNamesMultiMap =
-                ctx.broadcast(qNamesMultiMap);
+                                       final org.apache.spark.api.java.function.Function<Tuple2<Integer, List<byte[]>>, T> fastqHandler) {
+        final Broadcast<QNameIntervalMultiMap> broadcastQNamesMultiMap =
+                ctx.broadcast(new QNameIntervalMultiMap(qNamesMultiMap));
         final int nPartitions = reads.partitions().size();
 
-        final List<Tuple2<Integer, String>> intervalDispositions =
+        final List<T> intervalDispositions =
             reads
                 .mapPartitionsToPair(readItr ->
                         new ReadsForQNamesFinder(broadcastQNamesMultiMap.value(), nIntervals,
@@ -430,6 +488,18 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
         return new Tuple2<>(intervalAndFastqs._1(), disposition);
     }
 
+    /** assemble the FASTQ records for an interval, unless there are too many (in which case the result is null) */
+    @VisibleForTesting static Tuple2<Integer, LocalAssembler.AssemblyResult> assembleFastq(
+            final Tuple2<Integer, List<byte[]>> intervalAndFastqs,
+            final LocalAssembler assembler, final int maxFastqSize ) {
+        final List<byte[]> fastqsList = intervalAndFastqs._2;
+        final int fastqSize = fastqsList.stream().mapToInt(fastqRec -> fastqRec.length).sum();
+        if ( fastqSize > maxFastqSize ) return new Tuple2<>(intervalAndFastqs._1(), null);
+        // sort, as for writing a FASTQ, so that the contigs don't depend on the order in which the reads arrive
+        SVFastqUtils.sortFastqRecords(fastqsList);
+        return new Tuple2<>(intervalAndFastqs._1(), assembler.assembleFastqRecords(fastqsList));
+    }
+
     /**
      * Grab template names for all reads that contain kmers associated with a given breakpoint.
      */
@@ -438,8 +508,8 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             final JavaSparkContext ctx,
             final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap,
             final JavaRDD<GATKRead> reads ) {
-        final Broadcast<HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval>> broadcastKmerMultiMap =
-                ctx.broadcast(kmerMultiMap);
+        final Broadcast<KmerIntervalMultiMap> broadcastKmerMultiMap =
+                ctx.broadcast(new KmerIntervalMultiMap(kmerMultiMap));
 
         final int kSize = params.kSize;
         final double minEntropy = params.minEntropy;
@@ -472,8 +542,8 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             final PipelineOptions pipelineOptions ) {
 
         final Broadcast<Set<SVKmer>> broadcastKmerKillSet = ctx.broadcast(kmerKillSet);
-        final Broadcast<HopscotchUniqueMultiMap<String, Integer, QNameAndInterval>> broadcastQNameAndIntervalsMultiMap =
-                ctx.broadcast(qNamesMultiMap);
+        final Broadcast<QNameIntervalMultiMap> broadcastQNameAndIntervalsMultiMap =
+                ctx.broadcast(new QNameIntervalMultiMap(qNamesMultiMap));
 
         // given a set of template names with interval IDs and a kill set of ubiquitous kmers,
         // produce a set of interesting kmers for each interval ID
@@ -1085,13 +1155,13 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
      * The template names of reads to kmerize, along with a set of kmers to ignore are passed in (by broadcast).
      */
     private static final class QNameKmerizer implements Function<GATKRead, Iterator<Tuple2<KmerAndInterval, Integer>>> {
-        private final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNameAndIntervalMultiMap;
+        private final QNameIntervalMultiMap qNameAndIntervalMultiMap;
         private final Set<SVKmer> kmersToIgnore;
         private final int kSize;
         private final double minEntropy;
         private final ArrayList<Tuple2<KmerAndInterval, Integer>> tupleList = new ArrayList<>();
 
-        QNameKmerizer( final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNameAndIntervalMultiMap,
+        QNameKmerizer( final QNameIntervalMultiMap qNameAndIntervalMultiMap,
                        final Set<SVKmer> kmersToIgnore, final int kSize, final double minEntropy ) {
             this.qNameAndIntervalMultiMap = qNameAndIntervalMultiMap;
             this.kmersToIgnore = kmersToIgnore;
@@ -1101,10 +1171,8 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
 
         public Iterator<Tuple2<KmerAndInterval, Integer>> apply( final GATKRead read ) {
             final String qName = read.getName();
-            final Iterator<QNameAndInterval> names = qNameAndIntervalMultiMap.findEach(qName);
             tupleList.clear();
-            while ( names.hasNext() ) {
-                final int intervalId = names.next().getIntervalId();
+            for ( final int intervalId : qNameAndIntervalMultiMap.getIntervalIds(qName) ) {
                 SVKmerizerWithLowComplexityFilter.stream(read.getBases(), kSize, minEntropy)
                         .map(kmer -> kmer.canonical(kSize))
                         .filter(kmer -> !kmersToIgnore.contains(kmer))
@@ -1153,10 +1221,10 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
     private static final class QNamesForKmersFinder implements Function<GATKRead, Iterator<Tuple2<SVKmer, String>>> {
         private final int kSize;
         private final double minEntropy;
-        private final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap;
+        private final KmerIntervalMultiMap kmerMultiMap;
 
         QNamesForKmersFinder( final int kSize, final double minEntropy,
-                              final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap ) {
+                              final KmerIntervalMultiMap kmerMultiMap ) {
             this.kSize = kSize;
             this.minEntropy = minEntropy;
             this.kmerMultiMap = kmerMultiMap;
@@ -1167,8 +1235,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             SVKmerizerWithLowComplexityFilter.stream(read.getBases(), kSize, minEntropy)
                     .map( kmer -> kmer.canonical(kSize) )
                     .forEach( kmer -> {
-                        final Iterator<KmerAndInterval> itr = kmerMultiMap.findEach(kmer);
-                        if ( itr.hasNext() ) results.add(new Tuple2<>(kmer, read.getName()));
+                        if ( kmerMultiMap.containsKey(kmer) ) results.add(new Tuple2<>(kmer, read.getName()));
                     });
             return results.iterator();
         }
@@ -1180,11 +1247,11 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
      * Kmers that have too many (defined by constructor param) associated qnames are discarded.
      */
     private static final class KmerQNameToQNameIntervalMapper {
-        private final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap;
+        private final KmerIntervalMultiMap kmerMultiMap;
         private final int maxQNamesPerKmer;
         private final int kmerMapSize;
 
-        KmerQNameToQNameIntervalMapper( final HopscotchUniqueMultiMap<SVKmer, Integer, KmerAndInterval> kmerMultiMap,
+        KmerQNameToQNameIntervalMapper( final KmerIntervalMultiMap kmerMultiMap,
                                         final int maxQNamesPerKmer,
                                         final int kmerMapSize ) {
             this.kmerMultiMap = kmerMultiMap;
@@ -1221,9 +1288,7 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
                 final List<String> qNames = entry.getValue();
                 // if the list hasn't been discarded for having grown too big
                 if ( qNames != null ) {
-                    Iterator<KmerAndInterval> intervalItr = kmerMultiMap.findEach(entry.getKey());
-                    while ( intervalItr.hasNext() ) {
-                        final int intervalId = intervalItr.next().getIntervalId();
+                    for ( final int intervalId : kmerMultiMap.getIntervalIds(entry.getKey()) ) {
                         for ( final String qName : qNames ) {
                             qNameAndIntervals.add(new QNameAndInterval(qName, intervalId));
                         }
@@ -1238,13 +1303,13 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
      * Find <intervalId,fastqBytes> pairs for interesting template names.
      */
     private static final class ReadsForQNamesFinder {
-        private final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNamesMultiMap;
+        private final QNameIntervalMultiMap qNamesMultiMap;
         private final int nIntervals;
         private final int nReadsPerInterval;
         private final boolean includeMappingLocation;
 
         @SuppressWarnings("unchecked")
-        ReadsForQNamesFinder( final HopscotchUniqueMultiMap<String, Integer, QNameAndInterval> qNamesMultiMap,
+        ReadsForQNamesFinder( final QNameIntervalMultiMap qNamesMultiMap,
                               final int nIntervals, final boolean includeMappingLocation ) {
             this.qNamesMultiMap = qNamesMultiMap;
             this.nIntervals = nIntervals;
@@ -1259,11 +1324,9 @@ public final class FindBreakpointEvidenceSpark extends GATKSparkTool {
             while ( readsItr.hasNext() ) {
                 final GATKRead read = readsItr.next();
                 final String readName = read.getName();
-                final Iterator<QNameAndInterval> namesItr = qNamesMultiMap.findEach(readName);
                 byte[] fastqBytes = null;
-                while ( namesItr.hasNext() ) {
+                for ( final int intervalId : qNamesMultiMap.getIntervalIds(readName) ) {
                     if ( fastqBytes == null ) fastqBytes = SVFastqUtils.readToFastqRecord(read, includeMappingLocation);
-                    final int intervalId = namesItr.next().getIntervalId();
                     if ( intervalReads[intervalId] == null ) {
                         intervalReads[intervalId] = new ArrayList<>(nReadsPerInterval);
                         nPopulatedIntervals += 1;
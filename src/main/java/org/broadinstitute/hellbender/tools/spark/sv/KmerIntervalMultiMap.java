@@ -0,0 +1,174 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A compact, add-only multimap of SVKmers onto interval IDs, for broadcasting.
+ *
+ * A HopscotchUniqueMultiMap of KmerAndIntervals has an object per entry, and every executor that receives it as a
+ * broadcast has to rebuild all of those objects.  This class keeps each entry as a pair of longs (the kmer's bits) and
+ * an int in parallel arrays, using open addressing with linear probing in a power-of-2 sized table.  There are no
+ * per-entry objects to allocate, trace, or serialize:  the Kryo serializer writes just the primitive values.
+ */
+@DefaultSerializer(KmerIntervalMultiMap.Serializer.class)
+public final class KmerIntervalMultiMap {
+    private static final double LOAD_FACTOR = .75;
+    private static final int MIN_CAPACITY = 256;
+    // two longs per slot, and a Java array can't have more than Integer.MAX_VALUE elements
+    private static final int MAX_CAPACITY = 1 << 29;
+    private static final int EMPTY = -1;
+    private static final int[] NO_INTERVALS = new int[0];
+
+    private int size;
+    // the high and low bits of the kmer in each slot, one after the other
+    private long[] kmers;
+    // the interval ID in each slot, or EMPTY for an unused slot
+    private int[] intervalIds;
+
+    /** make a map for a specified number of entries (or good guess) */
+    public KmerIntervalMultiMap( final int capacity ) {
+        allocate(computeCapacity(capacity));
+    }
+
+    /** make a map of kmers onto interval IDs from a collection of KmerAndIntervals */
+    public KmerIntervalMultiMap( final Collection<FindBreakpointEvidenceSpark.KmerAndInterval> kmerAndIntervals ) {
+        this(kmerAndIntervals.size());
+        for ( final FindBreakpointEvidenceSpark.KmerAndInterval kmerAndInterval : kmerAndIntervals ) {
+            add(kmerAndInterval, kmerAndInterval.getIntervalId());
+        }
+    }
+
+    private KmerIntervalMultiMap( final Kryo kryo, final Input input ) {
+        int nEntries = input.readVarInt(true);
+        allocate(computeCapacity(nEntries));
+        while ( nEntries-- > 0 ) {
+            final long valHigh = input.readLong();
+            final long valLow = input.readLong();
+            insert(valHigh, valLow, input.readVarInt(true));
+        }
+    }
+
+    private void serialize( final Kryo kryo, final Output output ) {
+        output.writeVarInt(size, true);
+        for ( int slot = 0; slot != intervalIds.length; ++slot ) {
+            if ( intervalIds[slot] != EMPTY ) {
+                output.writeLong(kmers[2*slot]);
+                output.writeLong(kmers[2*slot+1]);
+                output.writeVarInt(intervalIds[slot], true);
+            }
+        }
+    }
+
+    /** add a kmer and interval ID, unless that pair is already present.  returns true if the map changed. */
+    public boolean add( final SVKmer kmer, final int intervalId ) {
+        Utils.validateArg(intervalId >= 0, "Interval IDs must be non-negative.");
+        final long valHigh = kmer.getValHigh();
+        final long valLow = kmer.getValLow();
+        final int mask = intervalIds.length - 1;
+        for ( int slot = hash(valHigh, valLow) & mask; intervalIds[slot] != EMPTY; slot = (slot + 1) & mask ) {
+            if ( intervalIds[slot] == intervalId && kmers[2*slot] == valHigh && kmers[2*slot+1] == valLow ) {
+                return false;
+            }
+        }
+        if ( size >= LOAD_FACTOR*intervalIds.length ) resize();
+        insert(valHigh, valLow, intervalId);
+        return true;
+    }
+
+    public boolean containsKey( final SVKmer kmer ) {
+        final long valHigh = kmer.getValHigh();
+        final long valLow = kmer.getValLow();
+        final int mask = intervalIds.length - 1;
+        for ( int slot = hash(valHigh, valLow) & mask; intervalIds[slot] != EMPTY; slot = (slot + 1) & mask ) {
+            if ( kmers[2*slot] == valHigh && kmers[2*slot+1] == valLow ) return true;
+        }
+        return false;
+    }
+
+    /** the interval IDs associated with a kmer, in no particular order (an empty array if there are none) */
+    public int[] getIntervalIds( final SVKmer kmer ) {
+        final long valHigh = kmer.getValHigh();
+        final long valLow = kmer.getValLow();
+        final int mask = intervalIds.length - 1;
+        int[] result = NO_INTERVALS;
+        int count = 0;
+        for ( int slot = hash(valHigh, valLow) & mask; intervalIds[slot] != EMPTY; slot = (slot + 1) & mask ) {
+            if ( kmers[2*slot] == valHigh && kmers[2*slot+1] == valLow ) {
+                if ( count == result.length ) result = Arrays.copyOf(result, Math.max(2, 2*count));
+                result[count++] = intervalIds[slot];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    public int size() { return size; }
+
+    // -------- internal methods ----------
+
+    private void allocate( final int capacity ) {
+        size = 0;
+        kmers = new long[2*capacity];
+        intervalIds = new int[capacity];
+        Arrays.fill(intervalIds, EMPTY);
+    }
+
+    /** put an entry known not to be present into the first free slot of its chain */
+    private void insert( final long valHigh, final long valLow, final int intervalId ) {
+        final int mask = intervalIds.length - 1;
+        int slot = hash(valHigh, valLow) & mask;
+        while ( intervalIds[slot] != EMPTY ) slot = (slot + 1) & mask;
+        kmers[2*slot] = valHigh;
+        kmers[2*slot+1] = valLow;
+        intervalIds[slot] = intervalId;
+        size += 1;
+    }
+
+    private void resize() {
+        if ( intervalIds.length == MAX_CAPACITY ) throw new IllegalStateException("Table can't be that big.");
+        final long[] oldKmers = kmers;
+        final int[] oldIntervalIds = intervalIds;
+        allocate(2*oldIntervalIds.length);
+        for ( int slot = 0; slot != oldIntervalIds.length; ++slot ) {
+            if ( oldIntervalIds[slot] != EMPTY ) insert(oldKmers[2*slot], oldKmers[2*slot+1], oldIntervalIds[slot]);
+        }
+    }
+
+    /** smallest power of 2 that holds the specified number of entries at our load factor */
+    private static int computeCapacity( final int size ) {
+        if ( size > LOAD_FACTOR*MAX_CAPACITY ) throw new IllegalArgumentException("Table can't be that big.");
+        int capacity = MIN_CAPACITY;
+        while ( capacity*LOAD_FACTOR < size ) capacity <<= 1;
+        return capacity;
+    }
+
+    /** kmers with similar bits are common, and linear probing needs the bits well mixed, so we use a 64-bit finalizer */
+    private static int hash( final long valHigh, final long valLow ) {
+        long hash = valHigh * 0x9E3779B97F4A7C15L + valLow;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (int)hash;
+    }
+
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<KmerIntervalMultiMap> {
+        @Override
+        public void write( final Kryo kryo, final Output output, final KmerIntervalMultiMap kmerIntervalMultiMap ) {
+            kmerIntervalMultiMap.serialize(kryo, output);
+        }
+
+        @Override
+        public KmerIntervalMultiMap read( final Kryo kryo, final Input input,
+                                          final Class<KmerIntervalMultiMap> klass ) {
+            return new KmerIntervalMultiMap(kryo, input);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import org.broadinstitute.hellbender.tools.spark.utils.HopscotchMap;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A de Bruijn graph assembler for the reads of one putative breakpoint, run in the JVM (e.g., inside a Spark task)
+ * as an alternative to writing a FASTQ and running the SGA pipeline on it in external processes.
+ *
+ * The reads are kmerized into canonical SVKmers, which are counted in a HopscotchMap.  Kmers seen fewer than
+ * minKmerCount times are taken to be errors and ignored.  Contigs are the unbranched paths through the graph of the
+ * remaining kmers, and those shorter than minContigLength are dropped.
+ *
+ * The kmer map is sized by the number of kmers in the reads, and a set of reads that has more than maxKmers of them
+ * fails without being assembled, rather than risking running the task out of memory.
+ */
+public final class LocalAssembler implements Serializable {
+    private static final long serialVersionUID = 1L;
+    @VisibleForTesting static final String MODULE_NAME = "local assembly";
+    @VisibleForTesting static final int DOMINANT_BRANCH_RATIO = 4;
+    public static final int DEFAULT_MAX_KMERS = 10000000;
+
+    private final int kSize;
+    private final int minKmerCount;
+    private final int minContigLength;
+    private final int maxKmers;
+
+    public LocalAssembler( final int kSize, final int minKmerCount, final int minContigLength ) {
+        this(kSize, minKmerCount, minContigLength, DEFAULT_MAX_KMERS);
+    }
+
+    public LocalAssembler( final int kSize, final int minKmerCount, final int minContigLength, final int maxKmers ) {
+        Utils.validateArg((kSize & 1) != 0 && kSize >= 3 && kSize < 64, "K must be odd, and between 3 and 63.");
+        Utils.validateArg(minKmerCount > 0, "minKmerCount must be positive.");
+        Utils.validateArg(maxKmers > 0, "maxKmers must be positive.");
+        this.kSize = kSize;
+        this.minKmerCount = minKmerCount;
+        this.minContigLength = minContigLength;
+        this.maxKmers = maxKmers;
+    }
+
+    /**
+     * The result of assembling the reads of one breakpoint.
+     * assembledContigs is null if the assembly failed, and runtimeInfo says why.
+     */
+    public static final class AssemblyResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final ContigsCollection assembledContigs;
+        public final ExternalCommandlineProgramModule.RuntimeInfo runtimeInfo;
+
+        public AssemblyResult( final ContigsCollection assembledContigs,
+                               final ExternalCommandlineProgramModule.RuntimeInfo runtimeInfo ) {
+            this.assembledContigs = assembledContigs;
+            this.runtimeInfo = runtimeInfo;
+        }
+    }
+
+    /**
+     * Assemble a list of FASTQ records (such as FindBreakpointEvidenceSpark gathers for each interval).
+     * Failures, including reads with more than maxKmers kmers, are reported in the result's runtime information,
+     * as for an SGA module, rather than thrown.
+     */
+    public AssemblyResult assembleFastqRecords( final List<byte[]> fastqRecords ) {
+        final List<byte[]> sequences = new ArrayList<>(fastqRecords.size());
+        for ( final byte[] fastqRecord : fastqRecords ) {
+            sequences.add(getSequence(fastqRecord));
+        }
+        return assemble(sequences);
+    }
+
+    /**
+     * Assemble a list of read sequences.
+     * Failures, including reads with more than maxKmers kmers, are reported in the result's runtime information,
+     * as for an SGA module, rather than thrown.
+     */
+    public AssemblyResult assemble( final List<byte[]> sequences ) {
+        final long startTime = System.currentTimeMillis();
+        final long nKmers = countKmerOccurrences(sequences);
+        if ( nKmers > maxKmers ) {
+            return new AssemblyResult(null,
+                    new ExternalCommandlineProgramModule.RuntimeInfo(MODULE_NAME,
+                            ExternalCommandlineProgramModule.RuntimeInfo.ReturnStatus.PGFAIL, null,
+                            sequences.size() + " reads have " + nKmers + " kmers, more than the limit of " +
+                                    maxKmers + ": not assembled"));
+        }
+        try {
+            final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts = countKmers(sequences, (int)nKmers);
+            final List<String> contigs = buildContigs(kmerCounts);
+            final String stats = sequences.size() + " reads, " + kmerCounts.size() + " distinct kmers, " +
+                    contigs.size()/2 + " contigs in " + (System.currentTimeMillis() - startTime) + " ms";
+            return new AssemblyResult(new ContigsCollection(contigs),
+                    new ExternalCommandlineProgramModule.RuntimeInfo(MODULE_NAME,
+                            ExternalCommandlineProgramModule.RuntimeInfo.ReturnStatus.SUCCESS, stats, null));
+        } catch ( final RuntimeException e ) {
+            return new AssemblyResult(null,
+                    new ExternalCommandlineProgramModule.RuntimeInfo(MODULE_NAME,
+                            ExternalCommandlineProgramModule.RuntimeInfo.ReturnStatus.PGFAIL, null,
+                            "Failed after " + (System.currentTimeMillis() - startTime) + " ms\n" +
+                                    Throwables.getStackTraceAsString(e)));
+        }
+    }
+
+    /** the sequence is the second line of a FASTQ record */
+    @VisibleForTesting static byte[] getSequence( final byte[] fastqRecord ) {
+        int start = 0;
+        while ( start < fastqRecord.length && fastqRecord[start] != '\n' ) ++start;
+        start = Math.min(start + 1, fastqRecord.length);
+        int end = start;
+        while ( end < fastqRecord.length && fastqRecord[end] != '\n' ) ++end;
+        return Arrays.copyOfRange(fastqRecord, start, end);
+    }
+
+    /** the number of kmers in the reads, counting repeats:  an upper bound on the number of distinct kmers */
+    private long countKmerOccurrences( final List<byte[]> sequences ) {
+        long nKmers = 0;
+        for ( final byte[] sequence : sequences ) {
+            nKmers += Math.max(0, sequence.length - kSize + 1);
+        }
+        return nKmers;
+    }
+
+    private HopscotchMap<SVKmer, Integer, KmerAndCount> countKmers( final List<byte[]> sequences, final int nKmers ) {
+        final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts = new HopscotchMap<>(Math.max(nKmers, 16));
+        for ( final byte[] sequence : sequences ) {
+            final SVKmerizer kmerizer = new SVKmerizer(sequence, kSize);
+            while ( kmerizer.hasNext() ) {
+                final SVKmer kmer = kmerizer.next().canonical(kSize);
+                final KmerAndCount kmerAndCount = kmerCounts.find(kmer);
+                if ( kmerAndCount == null ) kmerCounts.add(new KmerAndCount(kmer));
+                else kmerAndCount.incrementCount();
+            }
+        }
+        return kmerCounts;
+    }
+
+    /** returns alternating FASTA header lines and sequences */
+    private List<String> buildContigs( final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts ) {
+        final List<String> fastaLines = new ArrayList<>();
+        final StringBuilder prefix = new StringBuilder();
+        final StringBuilder suffix = new StringBuilder();
+        for ( final KmerAndCount seed : kmerCounts ) {
+            if ( seed.isUsed() || seed.getCount() < minKmerCount ) continue;
+            seed.markUsed();
+            long countSum = seed.getCount();
+            int nKmers = 1;
+
+            // extend to the right while there's a unique, unbranched successor
+            suffix.setLength(0);
+            SVKmer kmer = seed;
+            while ( (kmer = getUniqueNeighbor(kmerCounts, kmer, true)) != null ) {
+                suffix.append(baseChar(kmer.lastBase()));
+                countSum += kmerCounts.find(kmer.canonical(kSize)).getCount();
+                nKmers += 1;
+            }
+
+            // and to the left
+            prefix.setLength(0);
+            kmer = seed;
+            while ( (kmer = getUniqueNeighbor(kmerCounts, kmer, false)) != null ) {
+                prefix.append(baseChar(kmer.firstBase(kSize)));
+                countSum += kmerCounts.find(kmer.canonical(kSize)).getCount();
+                nKmers += 1;
+            }
+
+            final String sequence = prefix.reverse().toString() + seed.toString(kSize) + suffix.toString();
+            if ( sequence.length() >= minContigLength ) {
+                fastaLines.add(">contig-" + fastaLines.size()/2 + " " + sequence.length() + " " + (countSum / nKmers));
+                fastaLines.add(sequence);
+            }
+        }
+        return fastaLines;
+    }
+
+    /**
+     * If the kmer has a single (or dominant) solid neighbor in the given direction, and that neighbor's single
+     * (or dominant) neighbor in the opposite direction is the kmer itself, and it's not yet part of a contig, mark it
+     * used and return it, in the orientation that continues the walk.  Otherwise return null.
+     */
+    private SVKmer getUniqueNeighbor( final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts,
+                                      final SVKmer kmer, final boolean successor ) {
+        final SVKmer neighbor = getDominantNeighbor(kmerCounts, kmer, successor);
+        if ( neighbor == null ) return null;
+        final KmerAndCount neighborEntry = kmerCounts.find(neighbor.canonical(kSize));
+        if ( neighborEntry.isUsed() ) return null;
+        final SVKmer back = getDominantNeighbor(kmerCounts, neighbor, !successor);
+        if ( back == null || !back.equals(kmer) ) return null;
+        neighborEntry.markUsed();
+        return neighbor;
+    }
+
+    /**
+     * Returns the only solid neighbor in the given direction, or, if there are several, the one seen at least
+     * DOMINANT_BRANCH_RATIO times as often as all the others put together:  a branch that rare is taken to be a
+     * sequencing error that happened to recur.  Returns null if there is no such neighbor.
+     */
+    private SVKmer getDominantNeighbor( final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts,
+                                        final SVKmer kmer, final boolean successor ) {
+        SVKmer best = null;
+        int bestCount = 0;
+        int otherCounts = 0;
+        for ( final SVKmer.Base base : SVKmer.Base.values() ) {
+            final SVKmer candidate = successor ? kmer.successor(base, kSize) : kmer.predecessor(base, kSize);
+            final KmerAndCount entry = findSolid(kmerCounts, candidate);
+            if ( entry == null ) continue;
+            if ( entry.getCount() > bestCount ) {
+                otherCounts += bestCount;
+                best = candidate;
+                bestCount = entry.getCount();
+            } else {
+                otherCounts += entry.getCount();
+            }
+        }
+        return bestCount >= DOMINANT_BRANCH_RATIO * otherCounts ? best : null;
+    }
+
+    private KmerAndCount findSolid( final HopscotchMap<SVKmer, Integer, KmerAndCount> kmerCounts, final SVKmer kmer ) {
+        final KmerAndCount entry = kmerCounts.find(kmer.canonical(kSize));
+        return entry != null && entry.getCount() >= minKmerCount ? entry : null;
+    }
+
+    private static char baseChar( final SVKmer.Base base ) {
+        return base.name().charAt(0);
+    }
+
+    /**
+     * A canonical kmer and the number of times it was seen.
+     * Equality and hashing are those of the kmer, so the entry is its own key.
+     */
+    @VisibleForTesting static final class KmerAndCount extends SVKmer implements Map.Entry<SVKmer, Integer> {
+        private int count;
+        private boolean used;
+
+        KmerAndCount( final SVKmer kmer ) {
+            super(kmer);
+            this.count = 1;
+        }
+
+        @Override
+        public SVKmer getKey() { return this; }
+        @Override
+        public Integer getValue() { return count; }
+        @Override
+        public Integer setValue( final Integer value ) {
+            throw new UnsupportedOperationException("Can't set KmerAndCount.count");
+        }
+
+        public int getCount() { return count; }
+        void incrementCount() { count += 1; }
+        boolean isUsed() { return used; }
+        void markUsed() { used = true; }
+    }
+}
@@ -0,0 +1,236 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A compact, add-only multimap of template names onto interval IDs, for broadcasting.
+ *
+ * A HopscotchUniqueMultiMap of QNameAndIntervals has an object and a byte array per entry, even when a template name
+ * is associated with several intervals.  This class packs each distinct name once into a single byte array, and keeps
+ * the name's offset in that array, its hash, and the interval ID of each entry in parallel int arrays, using open
+ * addressing with linear probing in a power-of-2 sized table.  The Kryo serializer writes the packed names followed
+ * by an offset and interval ID for each entry.
+ *
+ * Template names must be ASCII (as the SAM spec requires) and no longer than 255 characters.
+ */
+@DefaultSerializer(QNameIntervalMultiMap.Serializer.class)
+public final class QNameIntervalMultiMap {
+    private static final double LOAD_FACTOR = .75;
+    private static final int MIN_CAPACITY = 256;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int MAX_QNAME_LENGTH = 255;
+    private static final int MAX_QNAMES_LENGTH = Integer.MAX_VALUE - 8;
+    private static final int EMPTY = -1;
+    private static final int[] NO_INTERVALS = new int[0];
+
+    private int size;
+    // each distinct template name, as a length byte followed by its characters
+    private byte[] qNames;
+    private int qNamesLength;
+    // the offset in qNames of the template name in each slot, or EMPTY for an unused slot
+    private int[] qNameOffsets;
+    // the hash of the template name in each slot, so that we rarely have to compare names
+    private int[] hashes;
+    private int[] intervalIds;
+
+    /** make a map for a specified number of entries (or good guess) */
+    public QNameIntervalMultiMap( final int capacity ) {
+        allocate(computeCapacity(capacity));
+        qNames = new byte[(int)Math.min(MAX_QNAMES_LENGTH, Math.max(1024L, 16L*capacity))];
+        qNamesLength = 0;
+    }
+
+    /** make a map of template names onto interval IDs from a collection of QNameAndIntervals */
+    public QNameIntervalMultiMap( final Collection<FindBreakpointEvidenceSpark.QNameAndInterval> qNameAndIntervals ) {
+        this(qNameAndIntervals.size());
+        for ( final FindBreakpointEvidenceSpark.QNameAndInterval qNameAndInterval : qNameAndIntervals ) {
+            add(qNameAndInterval.getQName(), qNameAndInterval.getIntervalId());
+        }
+    }
+
+    private QNameIntervalMultiMap( final Kryo kryo, final Input input ) {
+        int nEntries = input.readVarInt(true);
+        allocate(computeCapacity(nEntries));
+        qNamesLength = input.readVarInt(true);
+        qNames = input.readBytes(qNamesLength);
+        while ( nEntries-- > 0 ) {
+            final int qNameOffset = input.readVarInt(true);
+            insert(qNameOffset, hash(qNames, qNameOffset), input.readVarInt(true));
+        }
+    }
+
+    private void serialize( final Kryo kryo, final Output output ) {
+        output.writeVarInt(size, true);
+        output.writeVarInt(qNamesLength, true);
+        output.writeBytes(qNames, 0, qNamesLength);
+        for ( int slot = 0; slot != qNameOffsets.length; ++slot ) {
+            if ( qNameOffsets[slot] != EMPTY ) {
+                output.writeVarInt(qNameOffsets[slot], true);
+                output.writeVarInt(intervalIds[slot], true);
+            }
+        }
+    }
+
+    /** add a template name and interval ID, unless that pair is already present.  returns true if the map changed. */
+    public boolean add( final String qName, final int intervalId ) {
+        Utils.validateArg(qName.length() <= MAX_QNAME_LENGTH, () -> "Template name too long: " + qName);
+        Utils.validateArg(intervalId >= 0, "Interval IDs must be non-negative.");
+        final int hash = hash(qName);
+        final int mask = qNameOffsets.length - 1;
+        // the offset of the name, if we already have it for some other interval
+        int qNameOffset = EMPTY;
+        for ( int slot = hash & mask; qNameOffsets[slot] != EMPTY; slot = (slot + 1) & mask ) {
+            if ( isQName(slot, hash, qNameOffset, qName) ) {
+                if ( intervalIds[slot] == intervalId ) return false;
+                qNameOffset = qNameOffsets[slot];
+            }
+        }
+        if ( qNameOffset == EMPTY ) qNameOffset = appendQName(qName);
+        if ( size >= LOAD_FACTOR*qNameOffsets.length ) resize();
+        insert(qNameOffset, hash, intervalId);
+        return true;
+    }
+
+    /** the interval IDs associated with a template name, in no particular order (an empty array if there are none) */
+    public int[] getIntervalIds( final String qName ) {
+        final int hash = hash(qName);
+        final int mask = qNameOffsets.length - 1;
+        int qNameOffset = EMPTY;
+        int[] result = NO_INTERVALS;
+        int count = 0;
+        for ( int slot = hash & mask; qNameOffsets[slot] != EMPTY; slot = (slot + 1) & mask ) {
+            if ( isQName(slot, hash, qNameOffset, qName) ) {
+                qNameOffset = qNameOffsets[slot];
+                if ( count == result.length ) result = Arrays.copyOf(result, Math.max(2, 2*count));
+                result[count++] = intervalIds[slot];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    public int size() { return size; }
+
+    // -------- internal methods ----------
+
+    private void allocate( final int capacity ) {
+        size = 0;
+        qNameOffsets = new int[capacity];
+        hashes = new int[capacity];
+        intervalIds = new int[capacity];
+        Arrays.fill(qNameOffsets, EMPTY);
+    }
+
+    /**
+     * does the slot hold the name?  each distinct name is stored once, so once we've found its offset we can just
+     * compare offsets.
+     */
+    private boolean isQName( final int slot, final int hash, final int knownQNameOffset, final String qName ) {
+        if ( hashes[slot] != hash ) return false;
+        final int qNameOffset = qNameOffsets[slot];
+        if ( knownQNameOffset != EMPTY ) return qNameOffset == knownQNameOffset;
+        final int length = qNames[qNameOffset] & 0xFF;
+        if ( length != qName.length() ) return false;
+        for ( int idx = 0; idx != length; ++idx ) {
+            if ( qName.charAt(idx) != qNames[qNameOffset + 1 + idx] ) return false;
+        }
+        return true;
+    }
+
+    private int appendQName( final String qName ) {
+        final int length = qName.length();
+        final long minLength = (long)qNamesLength + length + 1;
+        if ( minLength > qNames.length ) {
+            if ( minLength > MAX_QNAMES_LENGTH ) throw new IllegalStateException("Too many template names.");
+            qNames = Arrays.copyOf(qNames, (int)Math.min(MAX_QNAMES_LENGTH, Math.max(2L*qNames.length, minLength)));
+        }
+        final int qNameOffset = qNamesLength;
+        qNames[qNameOffset] = (byte)length;
+        for ( int idx = 0; idx != length; ++idx ) {
+            final char chr = qName.charAt(idx);
+            Utils.validateArg(chr < 128, () -> "Template name is not ASCII: " + qName);
+            qNames[qNameOffset + 1 + idx] = (byte)chr;
+        }
+        qNamesLength += length + 1;
+        return qNameOffset;
+    }
+
+    /** put an entry known not to be present into the first free slot of its chain */
+    private void insert( final int qNameOffset, final int hash, final int intervalId ) {
+        final int mask = qNameOffsets.length - 1;
+        int slot = hash & mask;
+        while ( qNameOffsets[slot] != EMPTY ) slot = (slot + 1) & mask;
+        qNameOffsets[slot] = qNameOffset;
+        hashes[slot] = hash;
+        intervalIds[slot] = intervalId;
+        size += 1;
+    }
+
+    private void resize() {
+        if ( qNameOffsets.length == MAX_CAPACITY ) throw new IllegalStateException("Table can't be that big.");
+        final int[] oldQNameOffsets = qNameOffsets;
+        final int[] oldHashes = hashes;
+        final int[] oldIntervalIds = intervalIds;
+        allocate(2*oldQNameOffsets.length);
+        for ( int slot = 0; slot != oldQNameOffsets.length; ++slot ) {
+            if ( oldQNameOffsets[slot] != EMPTY ) insert(oldQNameOffsets[slot], oldHashes[slot], oldIntervalIds[slot]);
+        }
+    }
+
+    /** smallest power of 2 that holds the specified number of entries at our load factor */
+    private static int computeCapacity( final int size ) {
+        if ( size > LOAD_FACTOR*MAX_CAPACITY ) throw new IllegalArgumentException("Table can't be that big.");
+        int capacity = MIN_CAPACITY;
+        while ( capacity*LOAD_FACTOR < size ) capacity <<= 1;
+        return capacity;
+    }
+
+    // 32-bit FNV-1a, as for SVKmer, followed by a finalizer to mix the low bits we use to pick a slot.
+    // the two versions must agree for ASCII names.
+
+    private static int hash( final String qName ) {
+        int hash = (int)2166136261L;
+        final int length = qName.length();
+        for ( int idx = 0; idx != length; ++idx ) {
+            hash = (hash ^ (qName.charAt(idx) & 0xFF)) * 16777619;
+        }
+        return mix(hash);
+    }
+
+    private static int hash( final byte[] qNames, final int qNameOffset ) {
+        int hash = (int)2166136261L;
+        final int end = qNameOffset + 1 + (qNames[qNameOffset] & 0xFF);
+        for ( int idx = qNameOffset + 1; idx != end; ++idx ) {
+            hash = (hash ^ (qNames[idx] & 0xFF)) * 16777619;
+        }
+        return mix(hash);
+    }
+
+    private static int mix( int hash ) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    public static final class Serializer extends com.esotericsoftware.kryo.Serializer<QNameIntervalMultiMap> {
+        @Override
+        public void write( final Kryo kryo, final Output output, final QNameIntervalMultiMap qNameIntervalMultiMap ) {
+            qNameIntervalMultiMap.serialize(kryo, output);
+        }
+
+        @Override
+        public QNameIntervalMultiMap read( final Kryo kryo, final Input input,
+                                           final Class<QNameIntervalMultiMap> klass ) {
+            return new QNameIntervalMultiMap(kryo, input);
+        }
+    }
+}
@@ -131,6 +131,10 @@ public class SVKmer implements Comparable<SVKmer> {
         return reverseComplement(kSize);
     }
 
+    // the raw bits, for compact tables of kmers
+    final long getValHigh() { return valHigh; }
+    final long getValLow() { return valLow; }
+
     public final Base firstBase( final int kSize ) { return Base.values()[(int)(valHigh >> (kSize-2))]; }
     public final Base lastBase() { return Base.values()[(int)(valLow & 3)]; }
 
@@ -20,7 +20,8 @@ import java.util.Arrays;
 public final class BaseRecalibratorSparkFn {
 
     public static RecalibrationReport apply( final JavaPairRDD<GATKRead, ReadContextData> readsWithContext, final SAMFileHeader header, final SAMSequenceDictionary referenceDictionary, final RecalibrationArgumentCollection recalArgs ) {
-        JavaRDD<RecalibrationTables> unmergedTables = readsWithContext.mapPartitions(readWithContextIterator -> {
+        // partition tables are shipped and combined as their non-empty cells, not as RecalibrationTables object graphs
+        JavaRDD<SparseRecalibrationTables> unmergedTables = readsWithContext.mapPartitions(readWithContextIterator -> {
             final BaseRecalibrationEngine bqsr = new BaseRecalibrationEngine(recalArgs, header);
             bqsr.logCovariatesUsed();
 
@@ -33,20 +34,33 @@ public final class BaseRecalibratorSparkFn {
                 bqsr.processRead(readWithData._1(), refDS, variants);
             }
             // Need to wrap in ArrayList due to our current inability to serialize the return value of Arrays.asList() directly
-            return new ArrayList<>(Arrays.asList(bqsr.getRecalibrationTables()));
+            return new ArrayList<>(Arrays.asList(new SparseRecalibrationTables(bqsr.getRecalibrationTables())));
         });
 
-        final RecalibrationTables emptyRecalibrationTable = new RecalibrationTables(new StandardCovariateList(recalArgs, header));
-        final RecalibrationTables combinedTables = unmergedTables.treeAggregate(emptyRecalibrationTable,
-                RecalibrationTables::inPlaceCombine,
-                RecalibrationTables::inPlaceCombine,
-                Math.max(1, (int)(Math.log(unmergedTables.partitions().size()) / Math.log(2))));
+        final StandardCovariateList covariates = new StandardCovariateList(recalArgs, header);
+        final RecalibrationTables combinedTables = combineTables(unmergedTables, covariates);
 
         BaseRecalibrationEngine.finalizeRecalibrationTables(combinedTables);
 
         final QuantizationInfo quantizationInfo = new QuantizationInfo(combinedTables, recalArgs.QUANTIZING_LEVELS);
 
-        final StandardCovariateList covariates = new StandardCovariateList(recalArgs, header);
         return RecalUtils.createRecalibrationReport(recalArgs.generateReportTable(covariates.covariateNames()), quantizationInfo.generateReportTable(), RecalUtils.generateReportTables(combinedTables, covariates));
     }
+
+    /**
+     * Combines the tables of all partitions with a treeAggregate, so that the driver receives a few combined tables
+     * rather than one per partition.
+     *
+     * @param tables the tables of each partition
+     * @param covariates the covariates the tables were created with
+     * @return the combined tables, not finalized
+     */
+    public static RecalibrationTables combineTables( final JavaRDD<SparseRecalibrationTables> tables, final StandardCovariateList covariates ) {
+        final SparseRecalibrationTables emptyTables = new SparseRecalibrationTables(new RecalibrationTables(covariates));
+        final SparseRecalibrationTables combinedTables = tables.treeAggregate(emptyTables,
+                SparseRecalibrationTables::combine,
+                SparseRecalibrationTables::combine,
+                Math.max(1, (int)(Math.log(tables.partitions().size()) / Math.log(2))));
+        return combinedTables.toRecalibrationTables(covariates);
+    }
 }
@@ -21,7 +21,8 @@ import java.util.Iterator;
 
 /**
  * A lightweight wrapper over BaseRecalibrationEngine to make it easier to use from Spark.
- * Takes in reads + contextual data (overlapping reference bases and variants), spits out RecalibrationTables.
+ * Takes in reads + contextual data (overlapping reference bases and variants), spits out RecalibrationTables
+ * (as SparseRecalibrationTables, for combining with BaseRecalibratorSparkFn.combineTables).
  */
 public final class BaseRecalibratorEngineSparkWrapper implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -67,7 +68,7 @@ public final class BaseRecalibratorEngineSparkWrapper implements Serializable {
         }
     }
 
-    public Iterable<RecalibrationTables> apply(Iterator<ContextShard> shards) throws Exception {
+    public Iterable<SparseRecalibrationTables> apply(Iterator<ContextShard> shards) throws Exception {
         this.header = headerBcast.value();
         this.referenceSequenceDictionary = referenceSequenceDictionaryBcast.value();
         recalibrationEngine = new BaseRecalibrationEngine(recalArgs, header);
@@ -85,8 +86,8 @@ public final class BaseRecalibratorEngineSparkWrapper implements Serializable {
                 recalibrationEngine.processRead(read, refDS, variants);
             }
         }
-        ArrayList<RecalibrationTables> ret = new ArrayList<>();
-        ret.add(recalibrationEngine.getRecalibrationTables());
+        ArrayList<SparseRecalibrationTables> ret = new ArrayList<>();
+        ret.add(new SparseRecalibrationTables(recalibrationEngine.getRecalibrationTables()));
         return ret;
     }
 
@@ -0,0 +1,45 @@
+package org.broadinstitute.hellbender.tools.spark.transforms.markduplicates;
+
+import org.apache.spark.Partitioner;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.markduplicates.BinaryReadsKey;
+
+/**
+ * Partitions BinaryReadsKeys by the upper bits of {@link BinaryReadsKey#longHash()}.
+ *
+ * A HashPartitioner would use {@link BinaryReadsKey#hashCode()}, which is also what the hash maps grouping the keys
+ * within each partition use, so all the keys of a partition would share the low bits of their hash. Taking the
+ * partition from an independent mix of the key avoids that and spreads keys that differ only in their position.
+ */
+public final class BinaryReadsKeyPartitioner extends Partitioner {
+    private static final long serialVersionUID = 1L;
+
+    private final int numPartitions;
+
+    public BinaryReadsKeyPartitioner(final int numPartitions) {
+        Utils.validateArg(numPartitions > 0, "numPartitions must be positive");
+        this.numPartitions = numPartitions;
+    }
+
+    @Override
+    public int numPartitions() {
+        return numPartitions;
+    }
+
+    @Override
+    public int getPartition(final Object key) {
+        final long hash = ((BinaryReadsKey) key).longHash();
+        // multiply-shift of the upper 32 bits maps uniformly onto [0, numPartitions)
+        return (int) (((hash >>> 32) * numPartitions) >>> 32);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof BinaryReadsKeyPartitioner && ((BinaryReadsKeyPartitioner) o).numPartitions == numPartitions;
+    }
+
+    @Override
+    public int hashCode() {
+        return numPartitions;
+    }
+}
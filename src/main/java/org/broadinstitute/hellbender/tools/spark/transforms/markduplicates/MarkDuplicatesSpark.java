@@ -5,6 +5,7 @@ import htsjdk.samtools.metrics.MetricsFile;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.cmdline.Advanced;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
@@ -41,6 +42,12 @@ public final class MarkDuplicatesSpark extends GATKSparkTool {
     @Argument(shortName = "DS", fullName = "DUPLICATE_SCORING_STRATEGY", doc = "The scoring strategy for choosing the non-duplicate among candidates.")
     public MarkDuplicatesScoringStrategy duplicatesScoringStrategy = MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES;
 
+    @Advanced
+    @Argument(fullName = "useMateCigar", shortName = "useMateCigar", doc = "Key read pairs by the mate cigar (MC) attribute," +
+            " so that only small read stubs are shuffled, and join the duplicate flags back to the reads in their input order." +
+            " Every read with a mapped mate must have the MC attribute.", optional = true)
+    public boolean useMateCigar = false;
+
     @ArgumentCollection
     protected OpticalDuplicatesArgumentCollection opticalDuplicatesArgumentCollection = new OpticalDuplicatesArgumentCollection();
 
@@ -52,6 +59,20 @@ public final class MarkDuplicatesSpark extends GATKSparkTool {
     public static JavaRDD<GATKRead> mark(final JavaRDD<GATKRead> reads, final SAMFileHeader header,
                                          final MarkDuplicatesScoringStrategy scoringStrategy,
                                          final OpticalDuplicateFinder opticalDuplicateFinder, final int numReducers) {
+        return mark(reads, header, scoringStrategy, opticalDuplicateFinder, numReducers, false);
+    }
+
+    /**
+     * Marks duplicates, keying read pairs by the mate cigar (MC) attribute if {@code useMateCigar} is true
+     * (see {@link MarkDuplicatesSparkUtils#transformReadsWithMateCigar}).
+     */
+    public static JavaRDD<GATKRead> mark(final JavaRDD<GATKRead> reads, final SAMFileHeader header,
+                                         final MarkDuplicatesScoringStrategy scoringStrategy,
+                                         final OpticalDuplicateFinder opticalDuplicateFinder, final int numReducers,
+                                         final boolean useMateCigar) {
+        if (useMateCigar) {
+            return MarkDuplicatesSparkUtils.transformReadsWithMateCigar(header, scoringStrategy, opticalDuplicateFinder, reads, numReducers);
+        }
 
         JavaRDD<GATKRead> primaryReads = reads.filter(v1 -> !ReadUtils.isNonPrimary(v1));
         JavaRDD<GATKRead> nonPrimaryReads = reads.filter(v1 -> ReadUtils.isNonPrimary(v1));
@@ -66,7 +87,7 @@ public final class MarkDuplicatesSpark extends GATKSparkTool {
         final OpticalDuplicateFinder finder = opticalDuplicatesArgumentCollection.READ_NAME_REGEX != null ?
                 new OpticalDuplicateFinder(opticalDuplicatesArgumentCollection.READ_NAME_REGEX, opticalDuplicatesArgumentCollection.OPTICAL_DUPLICATE_PIXEL_DISTANCE, null) : null;
 
-        final JavaRDD<GATKRead> finalReadsForMetrics = mark(reads, getHeaderForReads(), duplicatesScoringStrategy, finder, getRecommendedNumReducers());
+        final JavaRDD<GATKRead> finalReadsForMetrics = mark(reads, getHeaderForReads(), duplicatesScoringStrategy, finder, getRecommendedNumReducers(), useMateCigar);
 
         if (metricsFile != null) {
             final JavaPairRDD<String, DuplicationMetrics> metricsByLibrary = MarkDuplicatesSparkUtils.generateMetrics(getHeaderForReads(), finalReadsForMetrics);
@@ -2,23 +2,31 @@ package org.broadinstitute.hellbender.tools.spark.transforms.markduplicates;
 
 import com.google.common.collect.*;
 import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.TextCigarCodec;
 import htsjdk.samtools.metrics.MetricsFile;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.apache.spark.HashPartitioner;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.broadinstitute.hellbender.engine.AuthHolder;
+import org.broadinstitute.hellbender.engine.spark.GATKReadShuffleCodec;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.metrics.MetricsUtils;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadCoordinateComparator;
 import org.broadinstitute.hellbender.utils.read.ReadUtils;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
 import org.broadinstitute.hellbender.utils.read.markduplicates.*;
 import scala.Tuple2;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 /**
  * Utility classes and functions for Mark Duplicates.
@@ -30,8 +38,8 @@ public class MarkDuplicatesSparkUtils {
 
     /**
      * (0) filter: remove unpaired reads and reads with an unmapped mate.
-     * (1) keyReadsByName: label each read with its read group and read name.
-     * (2) GroupByKey: group together reads with the same group and name.
+     * (1) keyReadsByName: label each read with its read group and a hash of its read name (see BinaryReadsKey).
+     * (2) GroupByKey: group together reads with the same group and name, splitting groups whose names merely share a hash.
      * (3) keyPairedEndsWithAlignmentInfo:
      *   (a) Sort each group of reads (see GATKOrder below).
      *   (b) Pair consecutive reads into PairedEnds. In most cases there will only be two reads
@@ -48,26 +56,37 @@ public class MarkDuplicatesSparkUtils {
      */
     static JavaRDD<GATKRead> transformReads(final SAMFileHeader header, final MarkDuplicatesScoringStrategy scoringStrategy, final OpticalDuplicateFinder finder, final JavaRDD<GATKRead> reads, final int numReducers) {
 
-        JavaPairRDD<String, Iterable<GATKRead>> keyedReads;
+        final BinaryReadsKey.Encoder keys = new BinaryReadsKey.Encoder(header);
+        final BinaryReadsKeyPartitioner partitioner = new BinaryReadsKeyPartitioner(numReducers);
+
+        JavaRDD<Iterable<GATKRead>> readsByName;
         if (SAMFileHeader.SortOrder.queryname.equals(header.getSortOrder())) {
             // reads are already sorted by name, so perform grouping within the partition (no shuffle)
-            keyedReads = spanReadsByKey(header, reads);
+            readsByName = spanReadsByKey(header, reads).values();
         } else {
-            // sort by group and name (incurs a shuffle)
-            JavaPairRDD<String, GATKRead> keyReadPairs = reads.mapToPair(read -> new Tuple2<>(ReadsKey.keyForRead(header, read), read));
-            keyedReads = keyReadPairs.groupByKey(numReducers);
+            // sort by group and name (incurs a shuffle); reads are shuffled in the compact header-relative encoding
+            final GATKReadShuffleCodec codec = new GATKReadShuffleCodec(header);
+            JavaPairRDD<BinaryReadsKey, byte[]> keyReadPairs = reads.mapToPair(read -> new Tuple2<>(keys.keyForRead(read), codec.encode(read)));
+            readsByName = keyReadPairs.groupByKey(partitioner).flatMap(encodedReads -> {
+                // decode eagerly: the reads are iterated more than once and modified below
+                final List<GATKRead> decoded = new ArrayList<>();
+                for (final byte[] encodedRead : encodedReads._2()) {
+                    decoded.add(codec.decode(encodedRead));
+                }
+                return splitByReadKey(decoded);
+            });
         }
 
-        JavaPairRDD<String, Iterable<PairedEnds>> keyedPairs = keyedReads.flatMapToPair(keyedRead -> {
-            List<Tuple2<String, PairedEnds>> out = Lists.newArrayList();
+        JavaPairRDD<BinaryReadsKey, Iterable<PairedEnds>> keyedPairs = readsByName.flatMapToPair(readsWithSameName -> {
+            List<Tuple2<BinaryReadsKey, PairedEnds>> out = Lists.newArrayList();
             // Write each read out as a pair with only the first slot filled
-            for (GATKRead read : keyedRead._2()) {
+            for (GATKRead read : readsWithSameName) {
                 read.setIsDuplicate(false);
                 final PairedEnds pair = PairedEnds.of(read);
-                out.add(new Tuple2<>(pair.keyForFragment(header), pair));
+                out.add(new Tuple2<>(keys.keyForFragment(pair.first()), pair));
             }
             // Write each paired read with a mapped mate as a pair
-            final List<GATKRead> sorted = Lists.newArrayList(Iterables.filter(keyedRead._2(), read -> ReadUtils.readHasMappedMate(read)));
+            final List<GATKRead> sorted = Lists.newArrayList(Iterables.filter(readsWithSameName, read -> ReadUtils.readHasMappedMate(read)));
             sorted.sort(new GATKOrder(header));
             PairedEnds pair = null;
             //Records are sorted, we iterate over them and pair them up.
@@ -76,31 +95,234 @@ public class MarkDuplicatesSparkUtils {
                     pair = PairedEnds.of(record);
                 } else {                                           //second in pair
                     pair.and(record);
-                    out.add(new Tuple2<>(pair.key(header), pair));
+                    out.add(new Tuple2<>(keys.keyForPairedEnds(pair.first(), pair.second()), pair));
                     pair = null;                                   //back to first
                 }
             }
             if (pair != null) {                                    //left over read
-                out.add(new Tuple2<>(pair.key(header), pair));
+                out.add(new Tuple2<>(keys.keyForPairedEnds(pair.first(), null), pair));
             }
             return out;
-        }).groupByKey(numReducers);
+        }).groupByKey(partitioner);
 
         return markPairedEnds(keyedPairs, scoringStrategy, finder, header);
     }
 
-    static JavaPairRDD<String, Iterable<GATKRead>> spanReadsByKey(final SAMFileHeader header, final JavaRDD<GATKRead> reads) {
+    /**
+     * Single-shuffle alternative to {@link #transformReads} for reads that carry the mate cigar (MC) attribute, which
+     * lets each read compute the key of its pair without seeing its mate (see
+     * {@link BinaryReadsKey.Encoder#keyForPairedEndsFromMateCigar}). Unlike transformReads, this takes all the reads,
+     * including non-primary ones, and returns them in their input order and partitioning.
+     *
+     * (0) keyStubs: number each read by its partition and position in it, and for each primary read make a stub
+     *     without bases, qualities or attributes other than the read group and its duplicate score.
+     *     Label the stub with its fragment key and, if it has a mapped mate, with the key of its pair.
+     * (1) GroupByKey: group the stubs that share a key. Only stubs are shuffled, not whole reads.
+     * (2) markDuplicateStubs: for fragment keys, mark fragments as in transformReads. For paired-ends keys, pair up
+     *     stubs with the same read group and name (sorted as in GATKOrder) and mark duplicate pairs as in transformReads.
+     *     Emit (read number, flag) for the reads marked as duplicates or holding a positive optical duplicate count.
+     * (3) PartitionBy: send each flag to the partition its read came from. This shuffle is tiny.
+     * (4) zipPartitions: clear the duplicate flag of every primary read and apply the flags.
+     *
+     * The reads are evaluated twice, by (0) and (4), so they must come back in the same order, as reads loaded from
+     * a file do. The result differs from transformReads only in that the optical duplicate count is not set on reads
+     * for which it would be zero, and in how the reads are paired up for names with more than two primary reads.
+     */
+    static JavaRDD<GATKRead> transformReadsWithMateCigar(final SAMFileHeader header, final MarkDuplicatesScoringStrategy scoringStrategy, final OpticalDuplicateFinder finder, final JavaRDD<GATKRead> reads, final int numReducers) {
+
+        final BinaryReadsKey.Encoder keys = new BinaryReadsKey.Encoder(header);
+        final GATKReadShuffleCodec codec = new GATKReadShuffleCodec(header,
+                Arrays.asList(SAMTag.RG.name(), DUPLICATE_SCORE_ATTRIBUTE_NAME), GATKReadShuffleCodec.Compression.NONE);
+
+        final JavaPairRDD<BinaryReadsKey, Tuple2<Long, byte[]>> keyedStubs = JavaPairRDD.fromJavaRDD(reads.mapPartitionsWithIndex((partition, iter) -> {
+            final int[] index = {0};
+            return Iterators.concat(Iterators.transform(iter,
+                    read -> keyStubs(read, readNumber(partition, index[0]++), keys, codec, scoringStrategy).iterator()));
+        }, false));
+
+        final JavaPairRDD<Integer, Long> flags = keyedStubs.groupByKey(new BinaryReadsKeyPartitioner(numReducers)).flatMapToPair(keyedGroup -> {
+            final boolean isFragment = keyedGroup._1().isFragment();
+            final List<Long> readNumbers = new ArrayList<>();
+            final List<GATKRead> stubs = new ArrayList<>();
+            for (final Tuple2<Long, byte[]> stub : keyedGroup._2()) {
+                readNumbers.add(stub._1());
+                stubs.add(codec.decode(stub._2()));
+            }
+
+            final ToIntFunction<GATKRead> scorer = stub -> stub.getAttributeAsInteger(DUPLICATE_SCORE_ATTRIBUTE_NAME);
+            if (isFragment) {
+                markFragments(stubs, scorer, header);
+            } else {
+                markPairs(pairStubs(stubs, header), scorer, finder, header);
+            }
+
+            final List<Tuple2<Integer, Long>> out = new ArrayList<>();
+            for (int i = 0; i < stubs.size(); i++) {
+                final GATKRead stub = stubs.get(i);
+                if (isFragment && ReadUtils.readHasMappedMate(stub)) {
+                    // marked by the key of its pair
+                    continue;
+                }
+                final int flag = stub.isDuplicate() ? DUPLICATE_FLAG :
+                        stub.hasAttribute(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME) ? stub.getAttributeAsInteger(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME) : 0;
+                if (flag != 0) {
+                    final long readNumber = readNumbers.get(i);
+                    out.add(new Tuple2<>((int) (readNumber >>> 32), (readNumber << 32) | Integer.toUnsignedLong(flag)));
+                }
+            }
+            return out;
+        });
+
+        // the flags of each input partition end up in the partition with the same index
+        final JavaRDD<Long> flagsByPartition = flags.partitionBy(new HashPartitioner(reads.partitions().size())).values();
+        return reads.zipPartitions(flagsByPartition, (readsIter, flagsIter) -> {
+            final Int2IntOpenHashMap flagsByIndex = new Int2IntOpenHashMap();
+            while (flagsIter.hasNext()) {
+                final long flag = flagsIter.next();
+                flagsByIndex.put((int) (flag >>> 32), (int) flag);
+            }
+            final int[] index = {0};
+            return () -> Iterators.transform(readsIter, read -> applyFlag(read, flagsByIndex.get(index[0]++)));
+        });
+    }
+
+    // the flag of a read marked as duplicate; other flags are optical duplicate counts
+    private static final int DUPLICATE_FLAG = -1;
+
+    // temporary attribute holding the duplicate score of a stub
+    private static final String DUPLICATE_SCORE_ATTRIBUTE_NAME = "ds";
+
+    private static final String MATE_CIGAR_ATTRIBUTE_NAME = "MC";
+
+    private static long readNumber(final int partition, final int index) {
+        return ((long) partition << 32) | Integer.toUnsignedLong(index);
+    }
+
+    private static List<Tuple2<BinaryReadsKey, Tuple2<Long, byte[]>>> keyStubs(final GATKRead read, final long readNumber,
+                                                                               final BinaryReadsKey.Encoder keys, final GATKReadShuffleCodec codec,
+                                                                               final MarkDuplicatesScoringStrategy scoringStrategy) {
+        if (ReadUtils.isNonPrimary(read)) {
+            return Collections.emptyList();
+        }
+        final Tuple2<Long, byte[]> encodedStub = new Tuple2<>(readNumber, codec.encode(makeStub(read, scoringStrategy.score(read))));
+
+        final BinaryReadsKey fragmentKey = keys.keyForFragment(read);
+        if (!ReadUtils.readHasMappedMate(read)) {
+            return Collections.singletonList(new Tuple2<>(fragmentKey, encodedStub));
+        }
+        final String mateCigar = read.getAttributeAsString(MATE_CIGAR_ATTRIBUTE_NAME);
+        if (mateCigar == null) {
+            throw new UserException.MalformedRead(read, "the mate cigar (MC) attribute is required to mark duplicates using mate cigars;" +
+                    " it can be added with FixMateInformation or RevertOriginalBaseQualitiesAndAddMateCigar");
+        }
+        return Arrays.asList(new Tuple2<>(fragmentKey, encodedStub),
+                new Tuple2<>(keys.keyForPairedEndsFromMateCigar(read, TextCigarCodec.decode(mateCigar)), encodedStub));
+    }
+
+    /**
+     * Makes the stub of a read that is shuffled in its place: its name, flags (not marked as a duplicate), alignment,
+     * mate alignment and read group, and the given duplicate score. The stub is built from those fields alone rather
+     * than from a copy of the read, so the bases, qualities and other attributes are never copied.
+     */
+    static GATKRead makeStub(final GATKRead read, final int score) {
+        final SAMRecord record = read instanceof SAMRecordToGATKReadAdapter ?
+                ((SAMRecordToGATKReadAdapter) read).getEncapsulatedSamRecord() : read.convertToSAMRecord(null);
+        final SAMRecord stub = new SAMRecord(null);
+        stub.setReadName(record.getReadName());
+        stub.setFlags(record.getFlags());
+        stub.setDuplicateReadFlag(false);
+        stub.setReferenceName(record.getReferenceName());
+        stub.setAlignmentStart(record.getAlignmentStart());
+        stub.setMappingQuality(record.getMappingQuality());
+        stub.setCigar(record.getCigar());
+        stub.setMateReferenceName(record.getMateReferenceName());
+        stub.setMateAlignmentStart(record.getMateAlignmentStart());
+        stub.setInferredInsertSize(record.getInferredInsertSize());
+        stub.setAttribute(SAMTag.RG.name(), record.getAttribute(SAMTag.RG.name()));
+        stub.setAttribute(DUPLICATE_SCORE_ATTRIBUTE_NAME, score);
+        return SAMRecordToGATKReadAdapter.headerlessReadAdapter(stub);
+    }
+
+    /**
+     * Pairs up the stubs that share a paired-ends key as transformReads pairs up reads with the same name.
+     * Stubs whose mate is missing (whose mate has a different key) are left out, so they are not marked, as in Picard.
+     */
+    static List<PairedEnds> pairStubs(final List<GATKRead> stubs, final SAMFileHeader header) {
+        final List<PairedEnds> pairs = new ArrayList<>(stubs.size() / 2);
+        for (final Iterable<GATKRead> stubsWithSameName : splitByReadKey(stubs)) {
+            final List<GATKRead> sorted = Lists.newArrayList(stubsWithSameName);
+            sorted.sort(new GATKOrder(header));
+            for (int i = 0; i + 1 < sorted.size(); i += 2) {
+                pairs.add(PairedEnds.of(sorted.get(i)).and(sorted.get(i + 1)));
+            }
+        }
+        return pairs;
+    }
+
+    private static GATKRead applyFlag(final GATKRead read, final int flag) {
+        if (ReadUtils.isNonPrimary(read)) {
+            return read;
+        }
+        read.setIsDuplicate(flag == DUPLICATE_FLAG);
+        if (flag > 0) {
+            read.setAttribute(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME, flag);
+        }
+        return read;
+    }
+
+    /**
+     * Splits reads grouped under the same {@link BinaryReadsKey} read key by read group and name, since read keys only
+     * hold a hash of the name. Nearly always there is a single group, which is returned without copying.
+     */
+    static List<Iterable<GATKRead>> splitByReadKey(final List<GATKRead> reads) {
+        if (reads.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final GATKRead first = reads.get(0);
+        boolean allSame = true;
+        for (final GATKRead read : reads) {
+            if (!BinaryReadsKey.sameReadKey(first, read)) {
+                allSame = false;
+                break;
+            }
+        }
+        if (allSame) {
+            return Collections.<Iterable<GATKRead>>singletonList(reads);
+        }
+        final List<List<GATKRead>> groups = new ArrayList<>(2);
+        for (final GATKRead read : reads) {
+            List<GATKRead> group = null;
+            for (final List<GATKRead> candidate : groups) {
+                if (BinaryReadsKey.sameReadKey(candidate.get(0), read)) {
+                    group = candidate;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.add(group);
+            }
+            group.add(read);
+        }
+        return new ArrayList<>(groups);
+    }
+
+    static JavaPairRDD<BinaryReadsKey, Iterable<GATKRead>> spanReadsByKey(final SAMFileHeader header, final JavaRDD<GATKRead> reads) {
+        final BinaryReadsKey.Encoder keys = new BinaryReadsKey.Encoder(header);
         JavaPairRDD<String, GATKRead> nameReadPairs = reads.mapToPair(read -> new Tuple2<>(read.getName(), read));
         return spanByKey(nameReadPairs).flatMapToPair(namedRead -> {
-            // for each name, separate reads by key (group name)
-            List<Tuple2<String, Iterable<GATKRead>>> out = Lists.newArrayList();
-            ListMultimap<String, GATKRead> multi = LinkedListMultimap.create();
+            // for each name, separate reads by key (read group and a hash of the name)
+            List<Tuple2<BinaryReadsKey, Iterable<GATKRead>>> out = Lists.newArrayList();
+            ListMultimap<BinaryReadsKey, GATKRead> multi = LinkedListMultimap.create();
             for (GATKRead read : namedRead._2()) {
-                multi.put(ReadsKey.keyForRead(header, read), read);
+                multi.put(keys.keyForRead(read), read);
             }
-            for (String key : multi.keySet()) {
+            for (BinaryReadsKey key : multi.keySet()) {
+                // read groups missing from the header are only hashed, so split the rare groups whose hashes collide;
                 // list from Multimap is not serializable by Kryo, so put in a new array list
-                out.add(new Tuple2<>(key, Lists.newArrayList(multi.get(key))));
+                for (Iterable<GATKRead> group : splitByReadKey(multi.get(key))) {
+                    out.add(new Tuple2<>(key, Lists.newArrayList(group)));
+                }
             }
             return out;
         });
@@ -155,19 +377,19 @@ public class MarkDuplicatesSparkUtils {
         };
     }
 
-    static JavaRDD<GATKRead> markPairedEnds(final JavaPairRDD<String, Iterable<PairedEnds>> keyedPairs,
+    static JavaRDD<GATKRead> markPairedEnds(final JavaPairRDD<BinaryReadsKey, Iterable<PairedEnds>> keyedPairs,
                                             final MarkDuplicatesScoringStrategy scoringStrategy,
                                             final OpticalDuplicateFinder finder, final SAMFileHeader header) {
         return keyedPairs.flatMap(keyedPair -> {
             Iterable<PairedEnds> pairedEnds = keyedPair._2();
-            final ImmutableListMultimap<Boolean, PairedEnds> paired = Multimaps.index(pairedEnds, pair -> pair.second() != null);
 
             // Each key corresponds to either fragments or paired ends, not a mixture of both.
 
-            if (ReadsKey.isFragment(keyedPair._1())) { // fragments
+            if (keyedPair._1().isFragment()) { // fragments
                 return handleFragments(pairedEnds, scoringStrategy, header);
             }
 
+            final ImmutableListMultimap<Boolean, PairedEnds> paired = Multimaps.index(pairedEnds, pair -> pair.second() != null);
             List<GATKRead> out = Lists.newArrayList();
 
             // As in Picard, unpaired ends left alone.
@@ -175,42 +397,7 @@ public class MarkDuplicatesSparkUtils {
                 out.add(pair.first());
             }
 
-            // Order by score using ReadCoordinateComparator for tie-breaking.
-            Comparator<PairedEnds> pairedEndsComparator =
-                    Comparator.<PairedEnds, Integer>comparing(pe -> pe.score(scoringStrategy)).reversed()
-                            .thenComparing((o1, o2) -> new ReadCoordinateComparator(header).compare(o1.first(), o2.first()));
-            final List <PairedEnds> scored = paired.get(true).stream().sorted(pairedEndsComparator).collect(Collectors.toList());
-
-            final PairedEnds best = Iterables.getFirst(scored, null);
-            if (best == null) {
-                return out;
-            }
-
-            // Mark everyone who's not best as a duplicate
-            for (final PairedEnds pair : Iterables.skip(scored, 1)) {
-                pair.first().setIsDuplicate(true);
-                pair.second().setIsDuplicate(true);
-            }
-
-            // Now, add location information to the paired ends
-            for (final PairedEnds pair : scored) {
-                // Both elements in the pair have the same name
-                finder.addLocationInformation(pair.first().getName(), pair);
-            }
-
-            // This must happen last, as findOpticalDuplicates mutates the list.
-            // Split by orientation and count duplicates in each group separately.
-            final ImmutableListMultimap<Byte, PairedEnds> groupByOrientation = Multimaps.index(scored, pe -> pe.getOrientationForOpticalDuplicates());
-            final int numOpticalDuplicates;
-            if (groupByOrientation.containsKey(ReadEnds.FR) && groupByOrientation.containsKey(ReadEnds.RF)){
-                final List<PairedEnds> peFR = new ArrayList<>(groupByOrientation.get(ReadEnds.FR));
-                final List<PairedEnds> peRF = new ArrayList<>(groupByOrientation.get(ReadEnds.RF));
-                numOpticalDuplicates = countOpticalDuplicates(finder, peFR) +  countOpticalDuplicates(finder, peRF);
-            } else {
-                numOpticalDuplicates = countOpticalDuplicates(finder, scored);
-            }
-            best.first().setAttribute(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME, numOpticalDuplicates);
-
+            final List<PairedEnds> scored = markPairs(paired.get(true), scoringStrategy::score, finder, header);
             for (final PairedEnds pair : scored) {
                 out.add(pair.first());
                 out.add(pair.second());
@@ -219,6 +406,53 @@ public class MarkDuplicatesSparkUtils {
         });
     }
 
+    /**
+     * Marks duplicates among pairs that share a paired-ends key:
+     * (a) sort the pairs by score and mark all but the highest scoring as duplicates.
+     * (b) count which duplicates are optical duplicates and store the count on the first read of the best pair.
+     * @return the pairs sorted by score
+     */
+    private static List<PairedEnds> markPairs(final Collection<PairedEnds> pairs, final ToIntFunction<GATKRead> scorer,
+                                              final OpticalDuplicateFinder finder, final SAMFileHeader header) {
+        // Order by score using ReadCoordinateComparator for tie-breaking.
+        final ReadCoordinateComparator coordinateComparator = new ReadCoordinateComparator(header);
+        Comparator<PairedEnds> pairedEndsComparator =
+                Comparator.<PairedEnds>comparingInt(pe -> scorer.applyAsInt(pe.first()) + scorer.applyAsInt(pe.second())).reversed()
+                        .thenComparing((o1, o2) -> coordinateComparator.compare(o1.first(), o2.first()));
+        final List <PairedEnds> scored = pairs.stream().sorted(pairedEndsComparator).collect(Collectors.toList());
+
+        final PairedEnds best = Iterables.getFirst(scored, null);
+        if (best == null) {
+            return scored;
+        }
+
+        // Mark everyone who's not best as a duplicate
+        for (final PairedEnds pair : Iterables.skip(scored, 1)) {
+            pair.first().setIsDuplicate(true);
+            pair.second().setIsDuplicate(true);
+        }
+
+        // Now, add location information to the paired ends
+        for (final PairedEnds pair : scored) {
+            // Both elements in the pair have the same name
+            finder.addLocationInformation(pair.first().getName(), pair);
+        }
+
+        // This must happen last, as findOpticalDuplicates mutates the list.
+        // Split by orientation and count duplicates in each group separately.
+        final ImmutableListMultimap<Byte, PairedEnds> groupByOrientation = Multimaps.index(scored, pe -> pe.getOrientationForOpticalDuplicates());
+        final int numOpticalDuplicates;
+        if (groupByOrientation.containsKey(ReadEnds.FR) && groupByOrientation.containsKey(ReadEnds.RF)){
+            final List<PairedEnds> peFR = new ArrayList<>(groupByOrientation.get(ReadEnds.FR));
+            final List<PairedEnds> peRF = new ArrayList<>(groupByOrientation.get(ReadEnds.RF));
+            numOpticalDuplicates = countOpticalDuplicates(finder, peFR) +  countOpticalDuplicates(finder, peRF);
+        } else {
+            numOpticalDuplicates = countOpticalDuplicates(finder, new ArrayList<>(scored));
+        }
+        best.first().setAttribute(OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME, numOpticalDuplicates);
+        return scored;
+    }
+
     private static int countOpticalDuplicates(OpticalDuplicateFinder finder, List<PairedEnds> scored) {
         final boolean[] opticalDuplicateFlags = finder.findOpticalDuplicates(scored);
         int numOpticalDuplicates = 0;
@@ -231,17 +465,27 @@ public class MarkDuplicatesSparkUtils {
     }
 
     private static List<GATKRead> handleFragments(Iterable<PairedEnds> pairedEnds, final MarkDuplicatesScoringStrategy scoringStrategy, final SAMFileHeader header) {
+        final List<GATKRead> readsCopy = Lists.newArrayList();
+        for (final PairedEnds pair : pairedEnds) {
+            readsCopy.add(pair.first().copy());
+        }
+        return markFragments(readsCopy, scoringStrategy::score, header);
+    }
+
+    /**
+     * Marks duplicates among reads that share a fragment key, in place.
+     * @return the reads without a mapped mate (the only ones emitted for a fragment key)
+     */
+    private static List<GATKRead> markFragments(final List<GATKRead> fragments, final ToIntFunction<GATKRead> scorer, final SAMFileHeader header) {
         List<GATKRead> reads = Lists.newArrayList();
 
-        final Iterable<GATKRead> transform = Iterables.transform(pairedEnds, pair -> pair.first());
-        Iterable<GATKRead> readsCopy = Iterables.transform(transform, GATKRead::copy);
-        final Map<Boolean, List<GATKRead>> byPairing = StreamSupport.stream(readsCopy.spliterator(), false).collect(Collectors.partitioningBy(
+        final Map<Boolean, List<GATKRead>> byPairing = fragments.stream().collect(Collectors.partitioningBy(
                 read -> ReadUtils.readHasMappedMate(read)
         ));
         // Note the we emit only fragments from this mapper.
         if (byPairing.get(true).isEmpty()) {
             // There are no paired reads, mark all but the highest scoring fragment as duplicate.
-            Comparator<GATKRead> fragmentsComparator = Comparator.<GATKRead, Integer>comparing(read -> scoringStrategy.score(read)).reversed().thenComparing(new ReadCoordinateComparator(header));
+            Comparator<GATKRead> fragmentsComparator = Comparator.<GATKRead>comparingInt(scorer).reversed().thenComparing(new ReadCoordinateComparator(header));
             List <GATKRead> frags = byPairing.get(false).stream().sorted(fragmentsComparator).collect(Collectors.toList());
             if (!frags.isEmpty()) {
                 reads.add(frags.get(0));                        //highest score - just emit
@@ -4,6 +4,7 @@ import htsjdk.samtools.SAMFileHeader;
 import htsjdk.tribble.Feature;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.cmdline.Advanced;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.ArgumentCollection;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
@@ -13,6 +14,7 @@ import org.broadinstitute.hellbender.engine.*;
 import org.broadinstitute.hellbender.engine.filters.ReadFilter;
 import org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary;
 import org.broadinstitute.hellbender.engine.filters.WellformedReadFilter;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.Utils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
@@ -26,6 +28,13 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary.*;
 
@@ -66,6 +75,16 @@ import static org.broadinstitute.hellbender.engine.filters.ReadFilterLibrary.*;
  * The GATK Report is intended to be easy to read by humans or computers. Check out the documentation of the GATKReport to learn how to manipulate this table.
  * </p>
  *
+ * <h3>Multi-threading</h3>
+ * <p>
+ * With -recalibrationThreads greater than 1, the traversal thread only reads the input and looks up the known sites
+ * overlapping each read, and hands batches of reads to worker threads. Each worker collects its own private
+ * recalibration tables, and the tables of all workers are combined once at the end of the traversal, so the
+ * workers never contend for shared state. Batches are dealt to the workers in turn and the tables are combined in
+ * worker order, so a run's fractional error sums don't depend on thread timing. They may still differ from those of
+ * a single-threaded run in the last decimal place, since the sums are added in a different order.
+ * </p>
+ *
  * <h3>Examples</h3>
  * <pre>
  * java -Xmx4g -jar GenomeAnalysisTK.jar \
@@ -111,8 +130,24 @@ public final class BaseRecalibrator extends ReadWalker {
     @Argument(shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, fullName = StandardArgumentDefinitions.OUTPUT_LONG_NAME, doc = "The output recalibration table file to create", optional = false)
     private File recalTableFile = null;
 
+    @Advanced
+    @Argument(fullName = "recalibrationThreads", shortName = "recalibrationThreads", doc = "Number of threads used to collect recalibration statistics. Each thread keeps its own recalibration tables, which are combined at the end.", optional = true)
+    private int recalibrationThreads = 1;
+
+    /**
+     * Number of reads handed to a recalibration thread at a time
+     */
+    private static final int READ_BATCH_SIZE = 1000;
+
     private BaseRecalibrationEngine recalibrationEngine;
 
+    // State for multi-threaded runs (only used if recalibrationThreads > 1)
+    private ExecutorService recalibrationExecutor;
+    private long readBatchesSubmitted;
+    private List<RecalibrationWorker> recalibrationWorkers;
+    private List<Future<?>> recalibrationWorkerFutures;
+    private List<ReadAndKnownSites> currentReadBatch;
+
     private ReferenceDataSource referenceDataSource; // datasource for the reference. We're using a different one from the engine itself to avoid messing with its caches.
 
     /**
@@ -135,11 +170,37 @@ public final class BaseRecalibrator extends ReadWalker {
             recalArgs.DEFAULT_PLATFORM = recalArgs.FORCE_PLATFORM;
         }
 
+        if ( recalibrationThreads < 1 ) {
+            throw new UserException.BadArgumentValue("recalibrationThreads", Integer.toString(recalibrationThreads), "must be >= 1");
+        }
+
         Utils.warnOnNonIlluminaReadGroups(getHeaderForReads(), logger);
 
         recalibrationEngine = new BaseRecalibrationEngine(recalArgs, getHeaderForReads());
         recalibrationEngine.logCovariatesUsed();
         referenceDataSource = ReferenceDataSource.of(referenceArguments.getReferenceFile());
+
+        if ( recalibrationThreads > 1 ) {
+            startRecalibrationWorkers();
+        }
+    }
+
+    /**
+     * Start one worker per recalibration thread. The first worker uses the main recalibration engine and reference
+     * data source; the others get their own, so that no tables or reference caches are shared between threads.
+     */
+    private void startRecalibrationWorkers() {
+        recalibrationWorkers = new ArrayList<>(recalibrationThreads);
+        recalibrationWorkerFutures = new ArrayList<>(recalibrationThreads);
+        currentReadBatch = new ArrayList<>(READ_BATCH_SIZE);
+        recalibrationExecutor = Executors.newFixedThreadPool(recalibrationThreads);
+
+        for ( int i = 0; i < recalibrationThreads; ++i ) {
+            final RecalibrationWorker worker = i == 0 ? new RecalibrationWorker(recalibrationEngine, referenceDataSource) :
+                    new RecalibrationWorker(new BaseRecalibrationEngine(recalArgs, getHeaderForReads()), ReferenceDataSource.of(referenceArguments.getReferenceFile()));
+            recalibrationWorkers.add(worker);
+            recalibrationWorkerFutures.add(recalibrationExecutor.submit(worker));
+        }
     }
 
     @Override
@@ -181,11 +242,98 @@ public final class BaseRecalibrator extends ReadWalker {
      */
     @Override
     public void apply( GATKRead read, ReferenceContext ref, FeatureContext featureContext ) {
-        recalibrationEngine.processRead(read, referenceDataSource, featureContext.getValues(knownSites));
+        if ( recalibrationThreads > 1 ) {
+            // The known sites must be looked up here, since the FeatureContext is not safe to use from other threads
+            currentReadBatch.add(new ReadAndKnownSites(read, featureContext.getValues(knownSites)));
+            if ( currentReadBatch.size() == READ_BATCH_SIZE ) {
+                submitReadBatchInTurn(currentReadBatch);
+                currentReadBatch = new ArrayList<>(READ_BATCH_SIZE);
+            }
+        }
+        else {
+            recalibrationEngine.processRead(read, referenceDataSource, featureContext.getValues(knownSites));
+        }
+    }
+
+    /**
+     * Hand a batch of reads to the next recalibration worker in turn. Batches are dealt out in a fixed rotation rather
+     * than to whichever worker is free, so each worker's tables (and their floating-point sums) are the same on every run.
+     */
+    private void submitReadBatchInTurn( final List<ReadAndKnownSites> batch ) {
+        submitReadBatch(recalibrationWorkers.get((int)(readBatchesSubmitted++ % recalibrationThreads)), batch);
+    }
+
+    /**
+     * Hand a batch of reads to a recalibration worker, waiting for space in its queue if it is busy.
+     * An empty batch tells the worker to stop.
+     */
+    private void submitReadBatch( final RecalibrationWorker worker, final List<ReadAndKnownSites> batch ) {
+        try {
+            while ( ! worker.readBatchQueue.offer(batch, 1, TimeUnit.SECONDS) ) {
+                // A worker that died will never drain the queue, so check for failures while waiting
+                for ( final Future<?> future : recalibrationWorkerFutures ) {
+                    if ( future.isDone() ) {
+                        waitForRecalibrationWorker(future);
+                        throw new GATKException("A recalibration thread exited before the end of the traversal");
+                    }
+                }
+            }
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a recalibration thread", e);
+        }
+    }
+
+    private static void waitForRecalibrationWorker( final Future<?> future ) {
+        try {
+            future.get();
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a recalibration thread", e);
+        }
+        catch ( final ExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new GATKException("Error in recalibration thread", e.getCause());
+        }
+    }
+
+    /**
+     * Flush the last batch of reads, stop the workers once they have drained the queue, and fold the tables
+     * collected by each worker into the main recalibration engine.
+     */
+    private void finishRecalibrationWorkers() {
+        if ( ! currentReadBatch.isEmpty() ) {
+            submitReadBatchInTurn(currentReadBatch);
+            currentReadBatch = new ArrayList<>(0);
+        }
+        for ( final RecalibrationWorker worker : recalibrationWorkers ) {
+            submitReadBatch(worker, new ArrayList<>(0));
+        }
+        for ( final Future<?> future : recalibrationWorkerFutures ) {
+            waitForRecalibrationWorker(future);
+        }
+        recalibrationExecutor.shutdown();
+
+        // Always in worker order, so that the floating-point sums are added up the same way on every run
+        for ( final RecalibrationWorker worker : recalibrationWorkers ) {
+            if ( worker.engine != recalibrationEngine ) {
+                recalibrationEngine.combine(worker.engine);
+                worker.reference.close();
+            }
+        }
+        recalibrationWorkers = null;
     }
 
     @Override
     public Object onTraversalSuccess() {
+        if ( recalibrationThreads > 1 ) {
+            finishRecalibrationWorkers();
+        }
+
         recalibrationEngine.finalizeData();
 
         logger.info("Calculating quantized quality scores...");
@@ -216,4 +364,63 @@ public final class BaseRecalibrator extends ReadWalker {
             throw new UserException.CouldNotCreateOutputFile(recalTableFile, e);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void closeTool() {
+        // Only does anything if the traversal failed before the workers were finished. Workers may still be
+        // using their reference data sources until they stop, so wait for them before closing those.
+        if ( recalibrationExecutor != null ) {
+            Utils.shutdownNowAndAwaitTermination(recalibrationExecutor);
+        }
+        if ( recalibrationWorkers != null ) {
+            for ( final RecalibrationWorker worker : recalibrationWorkers ) {
+                if ( worker.reference != referenceDataSource ) {
+                    worker.reference.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A read together with the known sites that overlap it, as looked up on the traversal thread.
+     */
+    private static final class ReadAndKnownSites {
+        private final GATKRead read;
+        private final List<Feature> knownSites;
+
+        private ReadAndKnownSites( final GATKRead read, final List<Feature> knownSites ) {
+            this.read = read;
+            this.knownSites = knownSites;
+        }
+    }
+
+    /**
+     * Collects recalibration statistics for the batches of reads it takes from its own queue into its own engine
+     * (and therefore its own recalibration tables), until it takes an empty batch.
+     */
+    private static final class RecalibrationWorker implements Runnable {
+        private final BlockingQueue<List<ReadAndKnownSites>> readBatchQueue = new ArrayBlockingQueue<>(2);
+        private final BaseRecalibrationEngine engine;
+        private final ReferenceDataSource reference;
+
+        private RecalibrationWorker( final BaseRecalibrationEngine engine, final ReferenceDataSource reference ) {
+            this.engine = engine;
+            this.reference = reference;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<ReadAndKnownSites> batch;
+                while ( ! (batch = readBatchQueue.take()).isEmpty() ) {
+                    for ( final ReadAndKnownSites readAndKnownSites : batch ) {
+                        engine.processRead(readAndKnownSites.read, reference, readAndKnownSites.knownSites);
+                    }
+                }
+            }
+            catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -77,6 +77,14 @@ public final class CheckPileup extends LocusWalker {
         return true;
     }
 
+    /**
+     * Each locus is checked independently, so loci may be processed in any order.
+     */
+    @Override
+    public boolean acceptsUnorderedLoci() {
+        return true;
+    }
+
     private long nLoci = 0;
     private long nBases = 0;
     private PrintStream out;
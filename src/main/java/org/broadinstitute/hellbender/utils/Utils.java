@@ -26,6 +26,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -1088,4 +1089,29 @@ public final class Utils {
             }
         };
     }
+
+    /**
+     * Interrupts the tasks of an executor and waits for all of them to stop, however long that takes. Tasks that
+     * don't respond to interrupts (for example, ones blocked on file I/O) keep running until they finish, so
+     * resources they use must not be closed until this returns. If the calling thread is itself interrupted while
+     * waiting, it keeps waiting, and its interrupt status is restored before returning.
+     */
+    public static void shutdownNowAndAwaitTermination(final ExecutorService executorService) {
+        Utils.nonNull(executorService, "executorService");
+        executorService.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+                logger.warn("Still waiting for worker threads to stop");
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
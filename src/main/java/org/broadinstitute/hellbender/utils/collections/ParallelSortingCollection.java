@@ -0,0 +1,454 @@
+package org.broadinstitute.hellbender.utils.collections;
+
+import com.google.common.annotations.VisibleForTesting;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.SortingCollection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An external sort with the same life cycle as htsjdk's {@link SortingCollection} (add, doneAdding, iterate, cleanup),
+ * and the same codecs, that can use several threads.
+ *
+ * Records are gathered in chunks. When a chunk is full it's sorted and written, compressed, to a temporary file; with
+ * more than one thread that happens on a background thread while the next chunk fills, and no more than
+ * sortThreads - 1 chunks are waiting to be written at once, so that no more than maxRecordsInRam records are held in
+ * memory. The files are merged with a k-way merge that, with more than one thread, decodes the next batch of records
+ * of each file in the background while the current batch is merged. The last chunk is never written, but sorted in
+ * memory and merged with the files.
+ *
+ * The sort is stable: records that compare equal come out in the order in which they were added, however many
+ * threads are used.
+ */
+public final class ParallelSortingCollection<T> implements Iterable<T> {
+    private static final Logger logger = LogManager.getLogger(ParallelSortingCollection.class);
+
+    private static final int IO_BUFFER_SIZE = 128 * 1024;
+    // the buffers of all the temporary files being merged share this much memory, but have at least MIN_IO_BUFFER_SIZE each
+    private static final int MERGE_BUFFER_BUDGET = 64 * 1024 * 1024;
+    private static final int MIN_IO_BUFFER_SIZE = 8 * 1024;
+    // the most records decoded at once from each temporary file while merging
+    private static final int MAX_READ_AHEAD_RECORDS = 10000;
+
+    private final Class<T> componentType;
+    private final SortingCollection.Codec<T> codec;
+    private final Comparator<T> comparator;
+    private final int chunkSize;
+    private final int sortThreads;
+    private final int compressionLevel;
+    private final List<File> tmpDirs;
+    // null when there's only one thread, and everything happens on the caller's
+    private final ExecutorService executor;
+
+    private T[] chunk;
+    private int chunkCount = 0;
+    // the temporary files, in the order their chunks were added
+    private final List<File> spillFiles = new ArrayList<>();
+    // chunks being sorted and written in the background, oldest first
+    private final Deque<Future<File>> pendingSpills = new ArrayDeque<>();
+    // iterators that haven't been closed, which cleanup() closes (callers often iterate with a for loop, and can't)
+    private final List<MergingIterator> openIterators = new ArrayList<>();
+    private boolean doneAdding = false;
+    private boolean cleanedUp = false;
+
+    /**
+     * @param componentType the class of the records
+     * @param codec encodes records to and decodes them from the temporary files; it's cloned for each file
+     * @param comparator the sort order
+     * @param maxRecordsInRam the most records to hold in memory at once
+     * @param sortThreads the number of threads to sort, write and read records with
+     * @param compressionLevel the deflate level of the temporary files, from 0 (none) to 9
+     * @param tmpDirs directories for the temporary files; each file is written to the one with the most space
+     */
+    public ParallelSortingCollection(final Class<T> componentType,
+                                     final SortingCollection.Codec<T> codec,
+                                     final Comparator<T> comparator,
+                                     final int maxRecordsInRam,
+                                     final int sortThreads,
+                                     final int compressionLevel,
+                                     final List<File> tmpDirs) {
+        Utils.nonNull(componentType);
+        Utils.nonNull(codec);
+        Utils.nonNull(comparator);
+        Utils.validateArg(maxRecordsInRam > 0, "maxRecordsInRam must be positive");
+        Utils.validateArg(sortThreads > 0, "sortThreads must be positive");
+        Utils.validateArg(compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION, "compressionLevel must be between 0 and 9");
+        Utils.validateArg(tmpDirs != null && !tmpDirs.isEmpty(), "there must be at least one temporary directory");
+        this.componentType = componentType;
+        this.codec = codec;
+        this.comparator = comparator;
+        this.chunkSize = Math.max(1, maxRecordsInRam / sortThreads);
+        this.sortThreads = sortThreads;
+        this.compressionLevel = compressionLevel;
+        this.tmpDirs = new ArrayList<>(tmpDirs);
+        this.executor = sortThreads == 1 ? null : Executors.newFixedThreadPool(sortThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "ParallelSortingCollection");
+            // a collection that's never cleaned up mustn't keep the JVM alive
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.chunk = newArray(chunkSize);
+    }
+
+    public void add(final T record) {
+        if (doneAdding) {
+            throw new IllegalStateException("Can't add records after doneAdding()");
+        }
+        if (cleanedUp) {
+            throw new IllegalStateException("Can't add records after cleanup()");
+        }
+        if (chunkCount == chunkSize) {
+            spillChunk();
+        }
+        chunk[chunkCount++] = record;
+    }
+
+    /**
+     * Sorts the records still in memory, and waits for all of the temporary files to be written. No more records
+     * may be added. Called by {@link #iterator} if it hasn't been called already.
+     */
+    public void doneAdding() {
+        if (cleanedUp) {
+            throw new IllegalStateException("Can't call doneAdding() after cleanup()");
+        }
+        if (doneAdding) {
+            return;
+        }
+        doneAdding = true;
+        while (!pendingSpills.isEmpty()) {
+            spillFiles.add(waitFor(pendingSpills.removeFirst()));
+        }
+        if (executor != null) {
+            Arrays.parallelSort(chunk, 0, chunkCount, comparator);
+        } else {
+            Arrays.sort(chunk, 0, chunkCount, comparator);
+        }
+        if (!spillFiles.isEmpty()) {
+            logger.info("Merging " + chunkCount + " records in memory with " + spillFiles.size() + " temporary files");
+        }
+    }
+
+    /**
+     * Iterates over the records in order. The iterator should be closed, to release the temporary files it has open.
+     */
+    @Override
+    public CloseableIterator<T> iterator() {
+        doneAdding();
+        if (cleanedUp) {
+            throw new IllegalStateException("Can't iterate after cleanup()");
+        }
+        final MergingIterator iterator = new MergingIterator();
+        openIterators.add(iterator);
+        return iterator;
+    }
+
+    /** Closes any open iterators, deletes the temporary files and stops the threads. The collection can't be used afterwards. */
+    public void cleanup() {
+        if (cleanedUp) {
+            return;
+        }
+        cleanedUp = true;
+        for (final MergingIterator iterator : new ArrayList<>(openIterators)) {
+            iterator.close();
+        }
+        try {
+            while (!pendingSpills.isEmpty()) {
+                spillFiles.add(waitFor(pendingSpills.removeFirst()));
+            }
+        } finally {
+            for (final File spillFile : spillFiles) {
+                if (!spillFile.delete()) {
+                    logger.warn("Couldn't delete temporary file " + spillFile.getAbsolutePath());
+                }
+            }
+            spillFiles.clear();
+            chunk = null;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /** Sort and write the full chunk, in the background if there's more than one thread, and start a new one. */
+    private void spillChunk() {
+        final T[] records = chunk;
+        final int count = chunkCount;
+        if (executor == null) {
+            spillFiles.add(sortAndWrite(records, count, codec.clone()));
+        } else {
+            // bound the records waiting to be written, so that we stay within maxRecordsInRam
+            while (pendingSpills.size() >= sortThreads - 1) {
+                spillFiles.add(waitFor(pendingSpills.removeFirst()));
+            }
+            final SortingCollection.Codec<T> spillCodec = codec.clone();
+            pendingSpills.addLast(executor.submit(() -> sortAndWrite(records, count, spillCodec)));
+        }
+        chunk = newArray(chunkSize);
+        chunkCount = 0;
+    }
+
+    private File sortAndWrite(final T[] records, final int count, final SortingCollection.Codec<T> spillCodec) {
+        Arrays.sort(records, 0, count, comparator);
+        final File spillFile = newTempFile();
+        final Deflater deflater = new Deflater(compressionLevel);
+        try (final OutputStream out = new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(spillFile), deflater, IO_BUFFER_SIZE), IO_BUFFER_SIZE)) {
+            spillCodec.setOutputStream(out);
+            for (int i = 0; i < count; i++) {
+                spillCodec.encode(records[i]);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(spillFile, "Error writing records to a temporary file", e);
+        } finally {
+            deflater.end();
+        }
+        return spillFile;
+    }
+
+    private File newTempFile() {
+        File tmpDir = tmpDirs.get(0);
+        for (final File dir : tmpDirs) {
+            if (dir.getUsableSpace() > tmpDir.getUsableSpace()) {
+                tmpDir = dir;
+            }
+        }
+        try {
+            final File file = File.createTempFile("sortingcollection.", ".tmp", tmpDir);
+            file.deleteOnExit();
+            return file;
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(tmpDir, "Couldn't create a temporary file", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T[] newArray(final int size) {
+        return (T[])Array.newInstance(componentType, size);
+    }
+
+    private static <R> R waitFor(final Future<R> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a sorting thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new GATKException("Error in sorting thread", e.getCause());
+        }
+    }
+
+    /** A sorted run of records: a temporary file, or the chunk left in memory. */
+    private abstract static class Run<T> {
+        // the position of the run in the order the records were added, to break ties
+        private final int index;
+        protected T head;
+
+        private Run(final int index) {
+            this.index = index;
+        }
+
+        /** moves head to the next record, or to null at the end of the run */
+        protected abstract void advance();
+
+        protected void close() {}
+    }
+
+    private final class MemoryRun extends Run<T> {
+        private final T[] records;
+        private final int count;
+        private int next = 0;
+
+        private MemoryRun(final int index, final T[] records, final int count) {
+            super(index);
+            this.records = records;
+            this.count = count;
+            advance();
+        }
+
+        @Override
+        protected void advance() {
+            head = next < count ? records[next++] : null;
+        }
+    }
+
+    private final class FileRun extends Run<T> {
+        private final File file;
+        private final InputStream in;
+        private final Inflater inflater = new Inflater();
+        private final SortingCollection.Codec<T> runCodec = codec.clone();
+        private final int batchSize;
+        private List<T> batch;
+        private int next = 0;
+        // the batch after this one, being decoded in the background
+        private Future<List<T>> readAhead;
+
+        private FileRun(final int index, final File file, final int batchSize, final int bufferSize) {
+            super(index);
+            this.file = file;
+            this.batchSize = batchSize;
+            try {
+                in = new BufferedInputStream(new InflaterInputStream(new FileInputStream(file), inflater, bufferSize), bufferSize);
+            } catch (final IOException e) {
+                inflater.end();
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+            runCodec.setInputStream(in);
+            batch = readBatch();
+            startReadAhead();
+            advance();
+        }
+
+        @Override
+        protected void advance() {
+            if (next == batch.size()) {
+                if (batch.size() < batchSize) {
+                    head = null;
+                    return;
+                }
+                batch = readAhead != null ? waitFor(readAhead) : readBatch();
+                readAhead = null;
+                next = 0;
+                startReadAhead();
+                if (batch.isEmpty()) {
+                    head = null;
+                    return;
+                }
+            }
+            head = batch.get(next++);
+        }
+
+        private void startReadAhead() {
+            if (executor != null && batch.size() == batchSize) {
+                readAhead = executor.submit(this::readBatch);
+            }
+        }
+
+        private List<T> readBatch() {
+            final List<T> records = new ArrayList<>(batchSize);
+            T record;
+            while (records.size() < batchSize && (record = runCodec.decode()) != null) {
+                records.add(record);
+            }
+            return records;
+        }
+
+        @Override
+        protected void close() {
+            // the stream mustn't be closed under a batch that's still being decoded
+            if (readAhead != null) {
+                try {
+                    readAhead.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (final ExecutionException e) {
+                    // the run is being abandoned, so its errors don't matter
+                }
+                readAhead = null;
+            }
+            try {
+                in.close();
+            } catch (final IOException e) {
+                logger.warn("Couldn't close temporary file " + file.getAbsolutePath(), e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /** A k-way merge of the runs, by the head of each run, with ties going to the run added first. */
+    private final class MergingIterator implements CloseableIterator<T> {
+        private final List<Run<T>> runs = new ArrayList<>();
+        private final PriorityQueue<Run<T>> queue;
+
+        private MergingIterator() {
+            final int nRuns = spillFiles.size() + 1;
+            queue = new PriorityQueue<>(nRuns, (run1, run2) -> {
+                final int cmp = comparator.compare(run1.head, run2.head);
+                return cmp != 0 ? cmp : Integer.compare(run1.index, run2.index);
+            });
+            final int batchSize = Math.max(1, Math.min(MAX_READ_AHEAD_RECORDS, chunkSize / (2 * nRuns)));
+            final int bufferSize = Math.max(MIN_IO_BUFFER_SIZE, Math.min(IO_BUFFER_SIZE, MERGE_BUFFER_BUDGET / (2 * nRuns)));
+            try {
+                for (int i = 0; i < spillFiles.size(); i++) {
+                    runs.add(new FileRun(i, spillFiles.get(i), batchSize, bufferSize));
+                }
+            } catch (final RuntimeException e) {
+                close();
+                throw e;
+            }
+            runs.add(new MemoryRun(spillFiles.size(), chunk, chunkCount));
+            for (final Run<T> run : runs) {
+                if (run.head != null) {
+                    queue.add(run);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            final Run<T> run = queue.poll();
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+            final T record = run.head;
+            run.advance();
+            if (run.head != null) {
+                queue.add(run);
+            }
+            return record;
+        }
+
+        @Override
+        public void close() {
+            queue.clear();
+            for (final Run<T> run : runs) {
+                run.close();
+            }
+            runs.clear();
+            openIterators.remove(this);
+        }
+    }
+
+    @VisibleForTesting
+    List<File> getSpillFiles() {
+        return Collections.unmodifiableList(spillFiles);
+    }
+}
@@ -0,0 +1,547 @@
+package org.broadinstitute.hellbender.utils.genotyper;
+
+import htsjdk.samtools.util.Locatable;
+import htsjdk.variant.variantcontext.Allele;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
+
+import java.util.*;
+
+/**
+ * Memory-lean alternative to {@link ReadLikelihoods} for high-depth, many-allele regions.
+ *
+ * <p>
+ *     Differences with {@link ReadLikelihoods}:
+ *     <ul>
+ *         <li>likelihoods are stored as floats, in a single contiguous allele-major array per sample
+ *         ({@code values[s][a * readCount + r]}) instead of a {@code double[allele][read]} matrix per sample;</li>
+ *         <li>there is no per-read hash index: reads are addressed by position and
+ *         {@link LikelihoodMatrix#indexOfRead} is a linear identity search;</li>
+ *         <li>{@link #marginalize} does not copy the likelihoods. The result reads through to this collection's arrays,
+ *         computing the maximum over the old alleles on the fly, and only allocates its own array for a sample when
+ *         that sample is first written to. Writes to this collection after marginalization copy the affected sample
+ *         first so that the marginalized view is not affected.</li>
+ *     </ul>
+ * </p>
+ *
+ * <p>Single precision keeps about 7 significant digits, which is well below the resolution of the genotyping
+ * models that consume these likelihoods. Use {@link #toReadLikelihoods()} to hand the values to code that requires
+ * a {@link ReadLikelihoods}.</p>
+ *
+ * @param <A> the type of the allele the likelihood makes reference to.
+ */
+public final class CompactReadLikelihoods<A extends Allele> implements SampleList, AlleleList<A> {
+
+    private final SampleList samples;
+
+    private AlleleList<A> alleles;
+
+    private final GATKRead[][] readsBySampleIndex;
+
+    /**
+     * Own likelihoods per sample, allele-major. Null for samples of a marginalized view that have not been written yet.
+     */
+    private final float[][] valuesBySampleIndex;
+
+    /**
+     * Whether the sample array in {@link #valuesBySampleIndex} is referenced by a marginalized view and therefore has
+     * to be copied before it is modified.
+     */
+    private final boolean[] sharedBySampleIndex;
+
+    /**
+     * Lazy marginalization source; null if every sample has its own array.
+     */
+    private final MarginalizationSource source;
+
+    private final LikelihoodMatrix<A>[] sampleMatrices;
+
+    /**
+     * Constructs a new read-likelihood collection with all likelihoods set to 0.
+     *
+     * @param samples all supported samples in the collection.
+     * @param alleles all supported alleles in the collection.
+     * @param reads reads stratified per sample.
+     *
+     * @throws IllegalArgumentException if any of {@code allele}, {@code samples}
+     * or {@code reads} is {@code null}.
+     */
+    public CompactReadLikelihoods(final SampleList samples,
+                                  final AlleleList<A> alleles,
+                                  final Map<String, List<GATKRead>> reads) {
+        Utils.nonNull(alleles, "allele list cannot be null");
+        Utils.nonNull(samples, "sample list cannot be null");
+        Utils.nonNull(reads, "read map cannot be null");
+
+        final int sampleCount = samples.numberOfSamples();
+        final int alleleCount = alleles.numberOfAlleles();
+        final GATKRead[][] sampleReads = new GATKRead[sampleCount][];
+        final float[][] values = new float[sampleCount][];
+        for (int s = 0; s < sampleCount; s++) {
+            final List<GATKRead> list = reads.get(samples.getSample(s));
+            sampleReads[s] = list == null ? new GATKRead[0] : list.toArray(new GATKRead[list.size()]);
+            values[s] = new float[alleleCount * sampleReads[s].length];
+        }
+        this.samples = samples;
+        this.alleles = alleles;
+        this.readsBySampleIndex = sampleReads;
+        this.valuesBySampleIndex = values;
+        this.sharedBySampleIndex = new boolean[sampleCount];
+        this.source = null;
+        this.sampleMatrices = newMatrixArray(sampleCount);
+    }
+
+    // Internally used constructor for marginalized views.
+    private CompactReadLikelihoods(final SampleList samples,
+                                   final AlleleList<A> alleles,
+                                   final GATKRead[][] readsBySampleIndex,
+                                   final MarginalizationSource source) {
+        final int sampleCount = samples.numberOfSamples();
+        this.samples = samples;
+        this.alleles = alleles;
+        this.readsBySampleIndex = readsBySampleIndex;
+        this.valuesBySampleIndex = new float[sampleCount][];
+        this.sharedBySampleIndex = new boolean[sampleCount];
+        this.source = source;
+        this.sampleMatrices = newMatrixArray(sampleCount);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private LikelihoodMatrix<A>[] newMatrixArray(final int sampleCount) {
+        return (LikelihoodMatrix<A>[]) new LikelihoodMatrix[sampleCount];
+    }
+
+    /**
+     * Creates a compact copy of a {@link ReadLikelihoods}, rounding the likelihoods to single precision.
+     */
+    public static <A extends Allele> CompactReadLikelihoods<A> fromReadLikelihoods(final ReadLikelihoods<A> likelihoods) {
+        Utils.nonNull(likelihoods, "likelihoods cannot be null");
+        final int sampleCount = likelihoods.numberOfSamples();
+        final Map<String, List<GATKRead>> reads = new LinkedHashMap<>(sampleCount);
+        for (int s = 0; s < sampleCount; s++) {
+            reads.put(likelihoods.getSample(s), likelihoods.sampleReads(s));
+        }
+        final CompactReadLikelihoods<A> result = new CompactReadLikelihoods<>(new IndexedSampleList(likelihoods.samples()),
+                new IndexedAlleleList<>(likelihoods.alleles()), reads);
+        final int alleleCount = likelihoods.numberOfAlleles();
+        for (int s = 0; s < sampleCount; s++) {
+            final LikelihoodMatrix<A> matrix = likelihoods.sampleMatrix(s);
+            final float[] values = result.valuesBySampleIndex[s];
+            final int readCount = matrix.numberOfReads();
+            for (int a = 0; a < alleleCount; a++) {
+                for (int r = 0; r < readCount; r++) {
+                    values[a * readCount + r] = (float) matrix.get(a, r);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a {@link ReadLikelihoods} with the same samples, alleles, reads and likelihoods.
+     */
+    public ReadLikelihoods<A> toReadLikelihoods() {
+        final int sampleCount = numberOfSamples();
+        final Map<String, List<GATKRead>> reads = new LinkedHashMap<>(sampleCount);
+        for (int s = 0; s < sampleCount; s++) {
+            reads.put(getSample(s), Arrays.asList(readsBySampleIndex[s]));
+        }
+        final ReadLikelihoods<A> result = new ReadLikelihoods<>(samples, alleles, reads);
+        final int alleleCount = numberOfAlleles();
+        for (int s = 0; s < sampleCount; s++) {
+            final LikelihoodMatrix<A> matrix = result.sampleMatrix(s);
+            final int readCount = readsBySampleIndex[s].length;
+            for (int a = 0; a < alleleCount; a++) {
+                for (int r = 0; r < readCount; r++) {
+                    matrix.set(a, r, get(s, a, r));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int indexOfSample(final String sample) {
+        return samples.indexOfSample(sample);
+    }
+
+    @Override
+    public int numberOfSamples() {
+        return samples.numberOfSamples();
+    }
+
+    @Override
+    public String getSample(final int sampleIndex) {
+        return samples.getSample(sampleIndex);
+    }
+
+    @Override
+    public int indexOfAllele(final A allele) {
+        return alleles.indexOfAllele(allele);
+    }
+
+    @Override
+    public int numberOfAlleles() {
+        return alleles.numberOfAlleles();
+    }
+
+    @Override
+    public A getAllele(final int alleleIndex) {
+        return alleles.getAllele(alleleIndex);
+    }
+
+    /**
+     * Returns the samples in this collection.
+     */
+    public List<String> samples() {
+        return Collections.unmodifiableList(samples.asListOfSamples());
+    }
+
+    /**
+     * Returns the alleles in this collection.
+     */
+    public List<A> alleles() {
+        return Collections.unmodifiableList(alleles.asListOfAlleles());
+    }
+
+    /**
+     * Returns the number of reads that belong to a sample.
+     */
+    public int sampleReadCount(final int sampleIndex) {
+        Utils.validIndex(sampleIndex, samples.numberOfSamples());
+        return readsBySampleIndex[sampleIndex].length;
+    }
+
+    /**
+     * Returns the reads that belong to a sample sorted by their index (within that sample).
+     */
+    public List<GATKRead> sampleReads(final int sampleIndex) {
+        Utils.validIndex(sampleIndex, samples.numberOfSamples());
+        return Collections.unmodifiableList(Arrays.asList(readsBySampleIndex[sampleIndex]));
+    }
+
+    /**
+     * Returns a read vs allele likelihood matrix corresponding to a sample.
+     */
+    public LikelihoodMatrix<A> sampleMatrix(final int sampleIndex) {
+        Utils.validIndex(sampleIndex, samples.numberOfSamples());
+        final LikelihoodMatrix<A> extantResult = sampleMatrices[sampleIndex];
+        if (extantResult == null) {
+            return sampleMatrices[sampleIndex] = new SampleMatrix(sampleIndex);
+        } else {
+            return extantResult;
+        }
+    }
+
+    /**
+     * Approximate number of bytes used by the likelihood values (not counting reads or alleles) owned by this collection.
+     */
+    public long likelihoodBytes() {
+        long result = 0;
+        for (final float[] values : valuesBySampleIndex) {
+            result += values == null ? 0 : (long) values.length * Float.BYTES;
+        }
+        return result;
+    }
+
+    private double get(final int sampleIndex, final int alleleIndex, final int readIndex) {
+        final float[] values = valuesBySampleIndex[sampleIndex];
+        if (values != null) {
+            return values[alleleIndex * readsBySampleIndex[sampleIndex].length + readIndex];
+        }
+        return source.get(sampleIndex, alleleIndex, readIndex);
+    }
+
+    private void set(final int sampleIndex, final int alleleIndex, final int readIndex, final double value) {
+        writableValues(sampleIndex)[alleleIndex * readsBySampleIndex[sampleIndex].length + readIndex] = (float) value;
+    }
+
+    // Returns the sample's own array, materializing it from the marginalization source or un-sharing it as needed.
+    private float[] writableValues(final int sampleIndex) {
+        final float[] values = valuesBySampleIndex[sampleIndex];
+        if (values == null) {
+            return valuesBySampleIndex[sampleIndex] = source.materialize(sampleIndex, numberOfAlleles(), readsBySampleIndex[sampleIndex].length);
+        } else if (sharedBySampleIndex[sampleIndex]) {
+            sharedBySampleIndex[sampleIndex] = false;
+            return valuesBySampleIndex[sampleIndex] = values.clone();
+        } else {
+            return values;
+        }
+    }
+
+    /**
+     * Perform marginalization from an allele set to another (smaller one) taking the maximum value
+     * for each read in the original allele subset.
+     *
+     * <p>The likelihoods are not copied; see the class documentation.</p>
+     *
+     * @param newToOldAlleleMap map where the keys are the new alleles and the value list the original
+     *                          alleles that correspond to the new one.
+     * @param overlap if not {@code null}, only reads that overlap the location (with unclipping) will be present in
+     *                        the output read-collection.
+     * @return never {@code null}.
+     *
+     * @throws IllegalArgumentException is {@code newToOldAlleleMap} is {@code null} or contains {@code null} values,
+     *  or its values contain reference to non-existing alleles in this read-likelihood collection. Also no new allele
+     *  can have zero old alleles mapping nor two new alleles can make reference to the same old allele.
+     */
+    public <B extends Allele> CompactReadLikelihoods<B> marginalize(final Map<B, List<A>> newToOldAlleleMap, final Locatable overlap) {
+        Utils.nonNull(newToOldAlleleMap, "the input allele mapping cannot be null");
+        @SuppressWarnings("unchecked")
+        final B[] newAlleles = newToOldAlleleMap.keySet().toArray((B[]) new Allele[newToOldAlleleMap.size()]);
+        final int[][] newToOldAlleleIndices = newToOldAlleleIndices(newToOldAlleleMap, newAlleles);
+
+        final int sampleCount = numberOfSamples();
+        final float[][] sourceValues = new float[sampleCount][];
+        final int[] sourceReadCounts = new int[sampleCount];
+        final int[][] readsToKeep = new int[sampleCount][];
+        final GATKRead[][] newReadsBySampleIndex = new GATKRead[sampleCount][];
+        final IntArrayList buffer = new IntArrayList(200);
+        for (int s = 0; s < sampleCount; s++) {
+            // a view of a view would chain sources; materialize instead
+            sourceValues[s] = valuesBySampleIndex[s] != null ? valuesBySampleIndex[s] : writableValues(s);
+            sharedBySampleIndex[s] = true;
+            final GATKRead[] sampleReads = readsBySampleIndex[s];
+            sourceReadCounts[s] = sampleReads.length;
+            if (overlap == null) {
+                newReadsBySampleIndex[s] = sampleReads.clone();
+            } else {
+                buffer.clear();
+                for (int r = 0; r < sampleReads.length; r++) {
+                    if (ReadLikelihoods.unclippedReadOverlapsRegion(sampleReads[r], overlap)) {
+                        buffer.add(r);
+                    }
+                }
+                if (buffer.size() == sampleReads.length) {
+                    newReadsBySampleIndex[s] = sampleReads.clone();
+                } else {
+                    readsToKeep[s] = buffer.toIntArray();
+                    newReadsBySampleIndex[s] = new GATKRead[readsToKeep[s].length];
+                    for (int i = 0; i < readsToKeep[s].length; i++) {
+                        newReadsBySampleIndex[s][i] = sampleReads[readsToKeep[s][i]];
+                    }
+                }
+            }
+        }
+        return new CompactReadLikelihoods<>(samples, new IndexedAlleleList<>(newAlleles), newReadsBySampleIndex,
+                new MarginalizationSource(sourceValues, sourceReadCounts, newToOldAlleleIndices, readsToKeep));
+    }
+
+    /**
+     * Same as {@link #marginalize(Map, Locatable)} with no read filtering.
+     */
+    public <B extends Allele> CompactReadLikelihoods<B> marginalize(final Map<B, List<A>> newToOldAlleleMap) {
+        return marginalize(newToOldAlleleMap, null);
+    }
+
+    // calculates, for each new allele, the indices of the old alleles that map to it.
+    private <B extends Allele> int[][] newToOldAlleleIndices(final Map<B, List<A>> newToOldAlleleMap, final B[] newAlleles) {
+        Arrays.stream(newAlleles).forEach(Utils::nonNull);
+        Utils.containsNoNull(newToOldAlleleMap.values(), "no new allele list can be null");
+        newToOldAlleleMap.values().stream().forEach(oldList -> Utils.containsNoNull(oldList,"old alleles cannot be null"));
+
+        final boolean[] used = new boolean[numberOfAlleles()];
+        final int[][] result = new int[newAlleles.length][];
+        for (int newIndex = 0; newIndex < newAlleles.length; newIndex++) {
+            final List<A> oldAlleles = newToOldAlleleMap.get(newAlleles[newIndex]);
+            result[newIndex] = new int[oldAlleles.size()];
+            for (int i = 0; i < oldAlleles.size(); i++) {
+                final int oldAlleleIndex = indexOfAllele(oldAlleles.get(i));
+                if (oldAlleleIndex == -1) {
+                    throw new IllegalArgumentException("missing old allele " + oldAlleles.get(i) + " in likelihood collection ");
+                }
+                if (used[oldAlleleIndex]) {
+                    throw new IllegalArgumentException("collision: two new alleles make reference to the same old allele");
+                }
+                used[oldAlleleIndex] = true;
+                result[newIndex][i] = oldAlleleIndex;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the non-reference allele to the read-likelihood collection setting each read likelihood to the second
+     * best found (or best one if only one allele has likelihood), as {@link ReadLikelihoods#addNonReferenceAllele} does.
+     *
+     * <p>Thanks to the allele-major layout this is a single {@link Arrays#copyOf} per sample.</p>
+     *
+     * @param nonRefAllele the non-ref allele.
+     *
+     * @throws IllegalArgumentException if {@code nonRefAllele} is anything but the designated &lt;NON_REF&gt;
+     * symbolic allele {@link org.broadinstitute.hellbender.utils.variant.GATKVCFConstants#NON_REF_SYMBOLIC_ALLELE}.
+     */
+    public void addNonReferenceAllele(final A nonRefAllele) {
+        Utils.nonNull(nonRefAllele, "non-ref allele cannot be null");
+        if (!nonRefAllele.equals(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE)) {
+            throw new IllegalArgumentException("the non-ref allele is not valid");
+        }
+        if (alleles.containsAllele(nonRefAllele)) {
+            return;
+        }
+
+        final int alleleCount = alleles.numberOfAlleles();
+        final int sampleCount = samples.numberOfSamples();
+        for (int s = 0; s < sampleCount; s++) {
+            final int readCount = readsBySampleIndex[s].length;
+            final float[] oldValues = valuesBySampleIndex[s] != null ? valuesBySampleIndex[s] : writableValues(s);
+            final float[] newValues = Arrays.copyOf(oldValues, (alleleCount + 1) * readCount);
+            for (int r = 0; r < readCount; r++) {
+                float best = Float.NEGATIVE_INFINITY;
+                float secondBest = Float.NEGATIVE_INFINITY;
+                for (int a = 0; a < alleleCount; a++) {
+                    final float candidate = oldValues[a * readCount + r];
+                    if (candidate > best) {
+                        secondBest = best;
+                        best = candidate;
+                    } else if (candidate > secondBest) {
+                        secondBest = candidate;
+                    }
+                }
+                newValues[alleleCount * readCount + r] = best == secondBest || Float.isInfinite(best - secondBest) ? best : secondBest;
+            }
+            valuesBySampleIndex[s] = newValues;
+            sharedBySampleIndex[s] = false;
+        }
+
+        @SuppressWarnings("unchecked")
+        final A[] newAlleles = (A[]) new Allele[alleleCount + 1];
+        for (int a = 0; a < alleleCount; a++) {
+            newAlleles[a] = alleles.getAllele(a);
+        }
+        newAlleles[alleleCount] = nonRefAllele;
+        alleles = new IndexedAlleleList<>(newAlleles);
+    }
+
+    /**
+     * The likelihoods a marginalized view reads through to until it gets its own copy.
+     */
+    private static final class MarginalizationSource {
+        private final float[][] values;
+        private final int[] readCounts;
+        private final int[][] newToOldAlleleIndices;
+        // null entries mean all reads are kept
+        private final int[][] readsToKeep;
+
+        MarginalizationSource(final float[][] values, final int[] readCounts, final int[][] newToOldAlleleIndices, final int[][] readsToKeep) {
+            this.values = values;
+            this.readCounts = readCounts;
+            this.newToOldAlleleIndices = newToOldAlleleIndices;
+            this.readsToKeep = readsToKeep;
+        }
+
+        double get(final int sampleIndex, final int newAlleleIndex, final int newReadIndex) {
+            final float[] sampleValues = values[sampleIndex];
+            final int readCount = readCounts[sampleIndex];
+            final int oldReadIndex = readsToKeep[sampleIndex] == null ? newReadIndex : readsToKeep[sampleIndex][newReadIndex];
+            float result = Float.NEGATIVE_INFINITY;
+            for (final int oldAlleleIndex : newToOldAlleleIndices[newAlleleIndex]) {
+                final float likelihood = sampleValues[oldAlleleIndex * readCount + oldReadIndex];
+                if (likelihood > result) {
+                    result = likelihood;
+                }
+            }
+            return result;
+        }
+
+        float[] materialize(final int sampleIndex, final int newAlleleCount, final int newReadCount) {
+            final float[] result = new float[newAlleleCount * newReadCount];
+            for (int a = 0; a < newAlleleCount; a++) {
+                for (int r = 0; r < newReadCount; r++) {
+                    result[a * newReadCount + r] = (float) get(sampleIndex, a, r);
+                }
+            }
+            // the view no longer needs the original array
+            values[sampleIndex] = null;
+            return result;
+        }
+    }
+
+    private final class SampleMatrix implements LikelihoodMatrix<A> {
+
+        private final int sampleIndex;
+
+        private SampleMatrix(final int sampleIndex) {
+            this.sampleIndex = sampleIndex;
+        }
+
+        @Override
+        public List<GATKRead> reads() {
+            return sampleReads(sampleIndex);
+        }
+
+        @Override
+        public List<A> alleles() {
+            return CompactReadLikelihoods.this.alleles();
+        }
+
+        @Override
+        public void set(final int alleleIndex, final int readIndex, final double value) {
+            Utils.validIndex(alleleIndex, numberOfAlleles());
+            Utils.validIndex(readIndex, numberOfReads());
+            CompactReadLikelihoods.this.set(sampleIndex, alleleIndex, readIndex, value);
+        }
+
+        @Override
+        public double get(final int alleleIndex, final int readIndex) {
+            Utils.validIndex(alleleIndex, numberOfAlleles());
+            Utils.validIndex(readIndex, numberOfReads());
+            return CompactReadLikelihoods.this.get(sampleIndex, alleleIndex, readIndex);
+        }
+
+        @Override
+        public int indexOfAllele(final A allele) {
+            Utils.nonNull(allele);
+            return CompactReadLikelihoods.this.indexOfAllele(allele);
+        }
+
+        /**
+         * Linear search by identity; there is no per-read hash index.
+         */
+        @Override
+        public int indexOfRead(final GATKRead read) {
+            Utils.nonNull(read);
+            final GATKRead[] sampleReads = readsBySampleIndex[sampleIndex];
+            for (int r = 0; r < sampleReads.length; r++) {
+                if (sampleReads[r] == read) {
+                    return r;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int numberOfAlleles() {
+            return alleles.numberOfAlleles();
+        }
+
+        @Override
+        public int numberOfReads() {
+            return readsBySampleIndex[sampleIndex].length;
+        }
+
+        @Override
+        public A getAllele(final int alleleIndex) {
+            return CompactReadLikelihoods.this.getAllele(alleleIndex);
+        }
+
+        @Override
+        public GATKRead getRead(final int readIndex) {
+            final GATKRead[] sampleReads = readsBySampleIndex[sampleIndex];
+            Utils.validIndex(readIndex, sampleReads.length);
+            return sampleReads[readIndex];
+        }
+
+        @Override
+        public void copyAlleleLikelihoods(final int alleleIndex, final double[] dest, final int offset) {
+            Utils.nonNull(dest);
+            Utils.validIndex(alleleIndex, numberOfAlleles());
+            final int readCount = numberOfReads();
+            for (int r = 0; r < readCount; r++) {
+                dest[offset + r] = CompactReadLikelihoods.this.get(sampleIndex, alleleIndex, r);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.broadinstitute.hellbender.utils.pairhmm;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.genotyper.LikelihoodMatrix;
+import org.broadinstitute.hellbender.utils.haplotype.Haplotype;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes PairHMM likelihoods for many (reads x haplotypes) work units at once, e.g. for all the assembly regions of a shard.
+ *
+ * Each thread owns one {@link PairHMM} whose matrices are sized once for the longest read and haplotype in the batch and
+ * then reused for every unit that thread processes. Units are processed in order of decreasing cost so that the most
+ * expensive ones start first and the threads finish at about the same time.
+ *
+ * Every work unit must have its own {@link LikelihoodMatrix}; units are written to concurrently.
+ */
+public final class BatchPairHMM implements Closeable {
+    private static final Logger logger = LogManager.getLogger(BatchPairHMM.class);
+
+    /**
+     * One likelihood computation: the likelihoods of {@code reads} against the alleles of {@code likelihoods},
+     * with the same semantics as {@link PairHMM#computeLog10Likelihoods}.
+     */
+    public static final class WorkUnit {
+        private final LikelihoodMatrix<Haplotype> likelihoods;
+        private final List<GATKRead> reads;
+        private final Map<GATKRead, byte[]> gcp;
+        private final int readMaxLength;
+        private final int haplotypeMaxLength;
+
+        public WorkUnit(final LikelihoodMatrix<Haplotype> likelihoods, final List<GATKRead> reads, final Map<GATKRead, byte[]> gcp) {
+            this.likelihoods = Utils.nonNull(likelihoods, "likelihoods may not be null");
+            this.reads = Utils.nonNull(reads, "reads may not be null");
+            this.gcp = Utils.nonNull(gcp, "gcp may not be null");
+            this.readMaxLength = PairHMM.findMaxReadLength(reads);
+            int maxHaplotypeLength = 0;
+            for (final Haplotype haplotype : likelihoods.alleles()) {
+                maxHaplotypeLength = Math.max(maxHaplotypeLength, haplotype.length());
+            }
+            this.haplotypeMaxLength = maxHaplotypeLength;
+        }
+
+        public LikelihoodMatrix<Haplotype> getLikelihoods() {
+            return likelihoods;
+        }
+
+        public List<GATKRead> getReads() {
+            return reads;
+        }
+
+        /**
+         * Rough number of matrix cells the PairHMM has to fill for this unit.
+         */
+        long estimatedCost() {
+            return (long) reads.size() * likelihoods.alleles().size() * readMaxLength * haplotypeMaxLength;
+        }
+    }
+
+    private final PairHMM[] hmms;
+    private final ExecutorService executor;
+
+    /**
+     * @param implementation the PairHMM implementation to use
+     * @param numThreads number of threads to spread each batch over, must be at least 1. Implementations that parallelize
+     *                   internally (the native AVX backend) always run on a single instance.
+     */
+    public BatchPairHMM(final PairHMM.Implementation implementation, final int numThreads) {
+        Utils.nonNull(implementation, "implementation may not be null");
+        Utils.validateArg(numThreads > 0, () -> "numThreads must be > 0 but got " + numThreads);
+
+        final PairHMM first = implementation.makeNewHMM();
+        final int instances = first.supportsConcurrentInstances() ? numThreads : 1;
+        if (instances < numThreads) {
+            logger.info("PairHMM implementation " + first.getClass().getSimpleName() + " manages its own threads; batches will be computed on a single instance");
+        }
+        hmms = new PairHMM[instances];
+        hmms[0] = first;
+        for (int i = 1; i < instances; i++) {
+            hmms[i] = implementation.makeNewHMM();
+        }
+        executor = instances > 1 ? Executors.newFixedThreadPool(instances) : null;
+    }
+
+    /**
+     * Compute the likelihoods of every work unit, storing the results in each unit's likelihood matrix.
+     * Returns once all the units are done.
+     *
+     * @param units the work units; units with no reads are skipped
+     */
+    public void computeLog10Likelihoods(final List<WorkUnit> units) {
+        Utils.nonNull(units, "units may not be null");
+        final List<WorkUnit> sorted = new ArrayList<>(units.size());
+        int batchReadMaxLength = 0;
+        int batchHaplotypeMaxLength = 0;
+        for (final WorkUnit unit : units) {
+            Utils.nonNull(unit, "work units may not be null");
+            if (!unit.reads.isEmpty()) {
+                sorted.add(unit);
+                batchReadMaxLength = Math.max(batchReadMaxLength, unit.readMaxLength);
+                batchHaplotypeMaxLength = Math.max(batchHaplotypeMaxLength, unit.haplotypeMaxLength);
+            }
+        }
+        if (sorted.isEmpty()) {
+            return;
+        }
+        sorted.sort(Comparator.comparingLong(WorkUnit::estimatedCost).reversed());
+
+        final AtomicInteger nextUnit = new AtomicInteger(0);
+        if (executor == null || sorted.size() == 1) {
+            computeUnits(hmms[0], sorted, nextUnit, batchReadMaxLength, batchHaplotypeMaxLength);
+            return;
+        }
+
+        final int readMaxLength = batchReadMaxLength;
+        final int haplotypeMaxLength = batchHaplotypeMaxLength;
+        final List<Callable<Void>> tasks = new ArrayList<>(hmms.length);
+        for (final PairHMM hmm : hmms) {
+            tasks.add(() -> {
+                computeUnits(hmm, sorted, nextUnit, readMaxLength, haplotypeMaxLength);
+                return null;
+            });
+        }
+        try {
+            for (final Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error computing PairHMM likelihoods", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while computing PairHMM likelihoods", e);
+        }
+    }
+
+    /**
+     * Repeatedly take the next unprocessed unit and compute it with the given PairHMM until none are left.
+     */
+    private static void computeUnits(final PairHMM hmm, final List<WorkUnit> units, final AtomicInteger nextUnit,
+                                     final int readMaxLength, final int haplotypeMaxLength) {
+        for (int i = nextUnit.getAndIncrement(); i < units.size(); i = nextUnit.getAndIncrement()) {
+            final WorkUnit unit = units.get(i);
+            hmm.prepareForBatch(unit.likelihoods.alleles(), readMaxLength, haplotypeMaxLength);
+            hmm.computeLog10Likelihoods(unit.likelihoods, unit.reads, unit.gcp);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            Utils.shutdownNowAndAwaitTermination(executor);
+        }
+        for (final PairHMM hmm : hmms) {
+            hmm.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.broadinstitute.hellbender.utils.pairhmm;
+
+import org.broadinstitute.hellbender.utils.QualityUtils;
+
+import static org.broadinstitute.hellbender.utils.pairhmm.PairHMMModel.*;
+
+/**
+ * Version of {@link LoglessPairHMM} that fills its dynamic programming matrices in single precision, as the native
+ * AVX implementation does, and only recomputes a read/haplotype pair in double precision when the single precision
+ * probability is too small to be trusted.
+ *
+ * The float matrices take half the memory of the double ones, which keeps more of them in cache and lets the JIT
+ * vectorize the inner loop more aggressively. The double precision matrices of the superclass are kept for the fallback.
+ */
+public final class FloatLoglessPairHMM extends LoglessPairHMM {
+    // the float exponent range is much smaller than the double one, so use a smaller scaling factor than the double HMM
+    static final float INITIAL_CONDITION_FLOAT = (float) Math.pow(2, 120);
+    static final double INITIAL_CONDITION_FLOAT_LOG10 = Math.log10(INITIAL_CONDITION_FLOAT);
+
+    /**
+     * Final (scaled) probabilities below this value have lost too much precision in float and are recomputed in double.
+     * This is the same threshold the native implementation uses.
+     */
+    static final float MIN_ACCEPTED = 1e-28f;
+
+    private float[][] floatTransition = null;
+    private float[][] floatPrior = null;
+    private float[][] floatMatchMatrix = null;
+    private float[][] floatInsertionMatrix = null;
+    private float[][] floatDeletionMatrix = null;
+
+    private boolean floatConstantsAreInitialized = false;
+    private byte[] previousFloatHaplotypeBases = null;
+    private long doublePrecisionFallbacks = 0;
+
+    public FloatLoglessPairHMM() {
+        super();
+    }
+
+    /**
+     * @param cacheIdenticalReads see {@link LoglessPairHMM#LoglessPairHMM(boolean)}
+     */
+    public FloatLoglessPairHMM(final boolean cacheIdenticalReads) {
+        super(cacheIdenticalReads);
+    }
+
+    /**
+     * Number of read/haplotype pairs that had to be recomputed in double precision
+     */
+    public long getDoublePrecisionFallbacks() {
+        return doublePrecisionFallbacks;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize( final int readMaxLength, final int haplotypeMaxLength ) {
+        super.initialize(readMaxLength, haplotypeMaxLength);
+
+        floatMatchMatrix = new float[paddedMaxReadLength][paddedMaxHaplotypeLength];
+        floatInsertionMatrix = new float[paddedMaxReadLength][paddedMaxHaplotypeLength];
+        floatDeletionMatrix = new float[paddedMaxReadLength][paddedMaxHaplotypeLength];
+        floatPrior = new float[paddedMaxReadLength][paddedMaxHaplotypeLength];
+        floatTransition = new float[paddedMaxReadLength][TRANS_PROB_ARRAY_LENGTH];
+
+        floatConstantsAreInitialized = false;
+        previousFloatHaplotypeBases = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double subComputeReadLikelihoodGivenHaplotypeLog10( final byte[] haplotypeBases,
+                                                               final byte[] readBases,
+                                                               final byte[] readQuals,
+                                                               final byte[] insertionGOP,
+                                                               final byte[] deletionGOP,
+                                                               final byte[] overallGCP,
+                                                               final int hapStartIndex,
+                                                               final boolean recacheReadValues,
+                                                               final int nextHapStartIndex) {
+        if (previousFloatHaplotypeBases == null || previousFloatHaplotypeBases.length != haplotypeBases.length) {
+            final float initialValue = INITIAL_CONDITION_FLOAT / haplotypeBases.length;
+            // set the initial value (free deletions in the beginning) for the first row in the deletion matrix
+            for( int j = 0; j < paddedHaplotypeLength; j++ ) {
+                floatDeletionMatrix[0][j] = initialValue;
+            }
+        }
+        previousFloatHaplotypeBases = haplotypeBases;
+
+        if ( ! floatConstantsAreInitialized || recacheReadValues ) {
+            // compute the transition probabilities in double and round them once, so both paths use the same model
+            initializeProbabilities(transition, insertionGOP, deletionGOP, overallGCP);
+            for (int i = 1; i < paddedReadLength; i++) {
+                for (int k = 0; k < TRANS_PROB_ARRAY_LENGTH; k++) {
+                    floatTransition[i][k] = (float) transition[i][k];
+                }
+            }
+            floatConstantsAreInitialized = true;
+        }
+
+        initializeFloatPriors(haplotypeBases, readBases, readQuals, hapStartIndex);
+
+        for (int i = 1; i < paddedReadLength; i++) {
+            final float[] trans = floatTransition[i];
+            final float[] priorRow = floatPrior[i];
+            final float[] matchRow = floatMatchMatrix[i];
+            final float[] insertionRow = floatInsertionMatrix[i];
+            final float[] deletionRow = floatDeletionMatrix[i];
+            final float[] previousMatchRow = floatMatchMatrix[i - 1];
+            final float[] previousInsertionRow = floatInsertionMatrix[i - 1];
+            final float[] previousDeletionRow = floatDeletionMatrix[i - 1];
+            // +1 here is because hapStartIndex is 0-based, but our matrices are 1 based
+            for (int j = hapStartIndex+1; j < paddedHaplotypeLength; j++) {
+                matchRow[j] = priorRow[j] * ( previousMatchRow[j - 1] * trans[matchToMatch] +
+                        previousInsertionRow[j - 1] * trans[indelToMatch] +
+                        previousDeletionRow[j - 1] * trans[indelToMatch] );
+                insertionRow[j] = previousMatchRow[j] * trans[matchToInsertion] + previousInsertionRow[j] * trans[insertionToInsertion];
+                deletionRow[j] = matchRow[j - 1] * trans[matchToDeletion] + deletionRow[j - 1] * trans[deletionToDeletion];
+            }
+        }
+
+        final int endI = paddedReadLength - 1;
+        float finalSumProbabilities = 0.0f;
+        for (int j = 1; j < paddedHaplotypeLength; j++) {
+            finalSumProbabilities += floatMatchMatrix[endI][j] + floatInsertionMatrix[endI][j];
+        }
+
+        if (finalSumProbabilities >= MIN_ACCEPTED && !Float.isInfinite(finalSumProbabilities)) {
+            return Math.log10(finalSumProbabilities) - INITIAL_CONDITION_FLOAT_LOG10;
+        }
+
+        // Too small for float. The double matrices may hold columns of a haplotype that was computed in float only,
+        // so recompute the whole pair from scratch.
+        doublePrecisionFallbacks++;
+        final double initialValue = INITIAL_CONDITION / haplotypeBases.length;
+        for( int j = 0; j < paddedHaplotypeLength; j++ ) {
+            deletionMatrix[0][j] = initialValue;
+        }
+        return super.subComputeReadLikelihoodGivenHaplotypeLog10(haplotypeBases, readBases, readQuals, insertionGOP,
+                deletionGOP, overallGCP, 0, true, nextHapStartIndex);
+    }
+
+    /**
+     * Single precision version of {@link LoglessPairHMM#initializePriors}.
+     */
+    private void initializeFloatPriors(final byte[] haplotypeBases, final byte[] readBases, final byte[] readQuals, final int startIndex) {
+        final double tristateCorrection = doNotUseTristateCorrection ? 1.0 : TRISTATE_CORRECTION;
+        for (int i = 0; i < readBases.length; i++) {
+            final byte x = readBases[i];
+            final byte qual = readQuals[i];
+            final float matchPrior = (float) QualityUtils.qualToProb(qual);
+            final float mismatchPrior = (float) (QualityUtils.qualToErrorProb(qual) / tristateCorrection);
+            final float[] priorRow = floatPrior[i + 1];
+            for (int j = startIndex; j < haplotypeBases.length; j++) {
+                final byte y = haplotypeBases[j];
+                priorRow[j + 1] = x == y || x == (byte) 'N' || y == (byte) 'N' ? matchPrior : mismatchPrior;
+            }
+        }
+    }
+}
@@ -1,6 +1,18 @@
 package org.broadinstitute.hellbender.utils.pairhmm;
 
 import org.broadinstitute.hellbender.utils.QualityUtils;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.genotyper.LikelihoodMatrix;
+import org.broadinstitute.hellbender.utils.haplotype.Haplotype;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.broadinstitute.hellbender.utils.pairhmm.PairHMMModel.*;
 
@@ -11,8 +23,232 @@ public class LoglessPairHMM extends N2MemoryPairHMM {
     // we divide e by 3 because the observed base could have come from any of the non-observed alleles
     static final double TRISTATE_CORRECTION = 3.0;
 
+    private final boolean cacheIdenticalReads;
+    private long readCacheHits = 0;
+    private long readCacheMisses = 0;
+
+    public LoglessPairHMM() {
+        this(false);
+    }
+
+    /**
+     * @param cacheIdenticalReads if true, reads with the same bases, base qualities, insertion and deletion qualities and
+     *                            gap continuation penalties are computed only once per call to computeLog10Likelihoods
+     *                            and the result is copied to the duplicates. This is a big win on high-depth amplicon data,
+     *                            but costs a hash of every read on data with few duplicates, so it is off by default.
+     */
+    public LoglessPairHMM(final boolean cacheIdenticalReads) {
+        this.cacheIdenticalReads = cacheIdenticalReads;
+    }
+
+    /**
+     * Number of reads whose likelihoods were copied from an identical read instead of being computed
+     */
+    public long getReadCacheHits() {
+        return readCacheHits;
+    }
+
+    /**
+     * Number of reads whose likelihoods had to be computed, i.e. the number of distinct reads seen
+     */
+    public long getReadCacheMisses() {
+        return readCacheMisses;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * If read caching is enabled, only the first of a group of identical reads is run through the HMM.
+     */
+    @Override
+    public void computeLog10Likelihoods(final LikelihoodMatrix<Haplotype> logLikelihoods,
+                                        final List<GATKRead> processedReads,
+                                        final Map<GATKRead, byte[]> gcp) {
+        if (!cacheIdenticalReads || processedReads.size() < 2) {
+            super.computeLog10Likelihoods(logLikelihoods, processedReads, gcp);
+            return;
+        }
+
+        // index in processedReads of the read to copy from, or -1 if the read has to be computed
+        final int readCount = processedReads.size();
+        final int[] sourceIndex = new int[readCount];
+        final List<GATKRead> distinctReads = new ArrayList<>(readCount);
+        final int[] distinctToOriginal = new int[readCount];
+        final Map<ReadKey, Integer> firstOccurrence = new HashMap<>(readCount * 2);
+        for (int r = 0; r < readCount; r++) {
+            final GATKRead read = processedReads.get(r);
+            final Integer previous = firstOccurrence.putIfAbsent(new ReadKey(read, gcp.get(read)), r);
+            if (previous == null) {
+                sourceIndex[r] = -1;
+                distinctToOriginal[distinctReads.size()] = r;
+                distinctReads.add(read);
+            } else {
+                sourceIndex[r] = previous;
+            }
+        }
+        readCacheMisses += distinctReads.size();
+        readCacheHits += readCount - distinctReads.size();
+        if (distinctReads.size() == readCount) {
+            super.computeLog10Likelihoods(logLikelihoods, processedReads, gcp);
+            return;
+        }
+
+        final int alleleCount = logLikelihoods.alleles().size();
+        final double[] likelihoods = new double[readCount * alleleCount];
+        super.computeLog10Likelihoods(new DistinctReadsLikelihoodMatrix(logLikelihoods, distinctReads, distinctToOriginal, likelihoods), distinctReads, gcp);
+        for (int r = 0; r < readCount; r++) {
+            if (sourceIndex[r] >= 0) {
+                final int offset = r * alleleCount;
+                System.arraycopy(likelihoods, sourceIndex[r] * alleleCount, likelihoods, offset, alleleCount);
+                for (int a = 0; a < alleleCount; a++) {
+                    logLikelihoods.set(a, r, likelihoods[offset + a]);
+                }
+            }
+        }
+        mLogLikelihoodArray = likelihoods;
+    }
+
+    @Override
+    public void close() {
+        if (readCacheHits + readCacheMisses > 0) {
+            logger.info(String.format("PairHMM read cache: %d hits, %d misses", readCacheHits, readCacheMisses));
+        }
+        super.close();
+    }
+
+    /**
+     * Everything the HMM result depends on for a read, compared by value.
+     */
+    private static final class ReadKey {
+        private final byte[] bases;
+        private final byte[] quals;
+        private final byte[] insertionGOP;
+        private final byte[] deletionGOP;
+        private final byte[] overallGCP;
+        private final int hashCode;
+
+        ReadKey(final GATKRead read, final byte[] overallGCP) {
+            this.bases = read.getBases();
+            this.quals = read.getBaseQualities();
+            this.insertionGOP = ReadUtils.getBaseInsertionQualities(read);
+            this.deletionGOP = ReadUtils.getBaseDeletionQualities(read);
+            this.overallGCP = overallGCP;
+            int hash = Arrays.hashCode(bases);
+            hash = 31 * hash + Arrays.hashCode(quals);
+            hash = 31 * hash + Arrays.hashCode(insertionGOP);
+            hash = 31 * hash + Arrays.hashCode(deletionGOP);
+            hash = 31 * hash + Arrays.hashCode(overallGCP);
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReadKey)) {
+                return false;
+            }
+            final ReadKey other = (ReadKey) o;
+            return hashCode == other.hashCode
+                    && Arrays.equals(bases, other.bases)
+                    && Arrays.equals(quals, other.quals)
+                    && Arrays.equals(insertionGOP, other.insertionGOP)
+                    && Arrays.equals(deletionGOP, other.deletionGOP)
+                    && Arrays.equals(overallGCP, other.overallGCP);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Write-through view of a likelihood matrix restricted to the distinct reads: values set for distinct read r go to
+     * read distinctToOriginal[r] of the underlying matrix and are also recorded, in read-major order, in likelihoods.
+     * The reads of the view are the distinct reads; the alleles are those of the underlying matrix.
+     */
+    private static final class DistinctReadsLikelihoodMatrix implements LikelihoodMatrix<Haplotype> {
+        private final LikelihoodMatrix<Haplotype> delegate;
+        private final List<GATKRead> distinctReads;
+        private final int[] distinctToOriginal;
+        private final double[] likelihoods;
+        private final int alleleCount;
+
+        DistinctReadsLikelihoodMatrix(final LikelihoodMatrix<Haplotype> delegate, final List<GATKRead> distinctReads,
+                                      final int[] distinctToOriginal, final double[] likelihoods) {
+            this.delegate = delegate;
+            this.distinctReads = Collections.unmodifiableList(distinctReads);
+            this.distinctToOriginal = distinctToOriginal;
+            this.likelihoods = likelihoods;
+            this.alleleCount = delegate.alleles().size();
+        }
+
+        @Override
+        public List<GATKRead> reads() {
+            return distinctReads;
+        }
+
+        @Override
+        public List<Haplotype> alleles() {
+            return delegate.alleles();
+        }
+
+        @Override
+        public void set(final int alleleIndex, final int readIndex, final double value) {
+            final int originalIndex = distinctToOriginal[readIndex];
+            likelihoods[originalIndex * alleleCount + alleleIndex] = value;
+            delegate.set(alleleIndex, originalIndex, value);
+        }
+
+        @Override
+        public double get(final int alleleIndex, final int readIndex) {
+            return likelihoods[distinctToOriginal[readIndex] * alleleCount + alleleIndex];
+        }
+
+        @Override
+        public int indexOfAllele(final Haplotype allele) {
+            return delegate.indexOfAllele(allele);
+        }
+
+        @Override
+        public int indexOfRead(final GATKRead read) {
+            Utils.nonNull(read);
+            return distinctReads.indexOf(read);
+        }
+
+        @Override
+        public int numberOfAlleles() {
+            return alleleCount;
+        }
+
+        @Override
+        public int numberOfReads() {
+            return distinctReads.size();
+        }
+
+        @Override
+        public Haplotype getAllele(final int alleleIndex) {
+            return delegate.getAllele(alleleIndex);
+        }
+
+        @Override
+        public GATKRead getRead(final int readIndex) {
+            Utils.validIndex(readIndex, distinctReads.size());
+            return distinctReads.get(readIndex);
+        }
+
+        @Override
+        public void copyAlleleLikelihoods(final int alleleIndex, final double[] dest, final int offset) {
+            Utils.validIndex(alleleIndex, alleleCount);
+            Utils.nonNull(dest);
+            for (int r = 0; r < distinctReads.size(); r++) {
+                dest[offset + r] = get(alleleIndex, r);
+            }
+        }
+    }
 
-    
     /**
      * {@inheritDoc}
      */
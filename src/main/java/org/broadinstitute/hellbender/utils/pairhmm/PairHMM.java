@@ -16,6 +16,7 @@ import java.io.Closeable;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 /**
@@ -50,6 +51,18 @@ public abstract class PairHMM implements Closeable{
             logger.info("Using the non-hardware-accelerated Java LOGLESS_CACHING PairHMM implementation");
             return hmm;
         }),
+        /* LOGLESS_CACHING, computing the likelihoods of reads identical to an earlier read in the same batch only once */
+        LOGLESS_CACHING_IDENTICAL_READS(() -> {
+            final LoglessPairHMM hmm = new LoglessPairHMM(true);
+            logger.info("Using the non-hardware-accelerated Java LOGLESS_CACHING PairHMM implementation, caching identical reads");
+            return hmm;
+        }),
+        /* LOGLESS_CACHING computed in single precision, falling back to double precision for reads whose likelihood underflows */
+        FLOAT_LOGLESS_CACHING(() -> {
+            final FloatLoglessPairHMM hmm = new FloatLoglessPairHMM();
+            logger.info("Using the non-hardware-accelerated Java single precision FLOAT_LOGLESS_CACHING PairHMM implementation");
+            return hmm;
+        }),
         /* Optimized AVX implementation of LOGLESS_CACHING called through JNI. Throws if AVX is not available */
         AVX_LOGLESS_CACHING(() -> {
             // Constructor will throw a UserException if AVX is not available
@@ -98,7 +111,8 @@ public abstract class PairHMM implements Closeable{
 
     //profiling information
     protected static Boolean doProfiling = true;
-    protected static long pairHMMComputeTime = 0;
+    // summed across all instances, which may be computing on different threads
+    protected static final LongAdder pairHMMComputeTime = new LongAdder();
     protected long threadLocalPairHMMComputeTimeDiff = 0;
     protected long startTime = 0;
 
@@ -140,6 +154,29 @@ public abstract class PairHMM implements Closeable{
         initialize(readMaxLength, haplotypeMaxLength);
     }
 
+    /**
+     * Prepare this PairHMM to compute likelihoods of reads up to readMaxLength against the given haplotypes as part of a
+     * {@link BatchPairHMM} batch. The existing matrices are kept if they are already large enough, so a single instance
+     * can be reused across many work units without reallocation.
+     *
+     * @param haplotypes the haplotypes of the next work unit
+     * @param readMaxLength the max length of reads we want to use with this PairHMM
+     * @param haplotypeMaxLength the max length of haplotypes we want to use with this PairHMM
+     */
+    void prepareForBatch( final List<Haplotype> haplotypes, final int readMaxLength, final int haplotypeMaxLength ) {
+        if (!initialized || readMaxLength > maxReadLength || haplotypeMaxLength > maxHaplotypeLength) {
+            initialize(Math.max(readMaxLength, maxReadLength), Math.max(haplotypeMaxLength, maxHaplotypeLength));
+        }
+    }
+
+    /**
+     * Whether several instances of this implementation may compute likelihoods concurrently on different threads.
+     * Implementations that parallelize internally should return false so that {@link BatchPairHMM} feeds them serially.
+     */
+    boolean supportsConcurrentInstances() {
+        return true;
+    }
+
     private static int findMaxAlleleLength(final List<? extends Allele> alleles) {
         int max = 0;
         for (final Allele allele : alleles) {
@@ -216,9 +253,7 @@ public abstract class PairHMM implements Closeable{
         }
         if(doProfiling) {
             threadLocalPairHMMComputeTimeDiff = (System.nanoTime() - startTime);
-            {
-                pairHMMComputeTime += threadLocalPairHMMComputeTimeDiff;
-            }
+            pairHMMComputeTime.add(threadLocalPairHMMComputeTimeDiff);
         }
     }
 
@@ -342,6 +377,6 @@ public abstract class PairHMM implements Closeable{
     @Override
     public void close() {
         if(doProfiling)
-            logger.info("Total compute time in PairHMM computeLogLikelihoods() : "+(pairHMMComputeTime*1e-9));
+            logger.info("Total compute time in PairHMM computeLogLikelihoods() : "+(pairHMMComputeTime.sum()*1e-9));
     }
 }
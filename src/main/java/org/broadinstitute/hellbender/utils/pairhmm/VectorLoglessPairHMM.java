@@ -13,6 +13,7 @@ import org.broadinstitute.hellbender.utils.haplotype.Haplotype;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadUtils;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +67,22 @@ public final class VectorLoglessPairHMM extends LoglessPairHMM {
         }
     }
 
+    /**
+     * The native backend needs the haplotypes of every work unit and manages its own buffers, so always re-initialize.
+     */
+    @Override
+    void prepareForBatch(final List<Haplotype> haplotypes, final int readMaxLength, final int haplotypeMaxLength) {
+        initialize(haplotypes, Collections.emptyMap(), readMaxLength, haplotypeMaxLength);
+    }
+
+    /**
+     * The native library already spreads each call over its own threads.
+     */
+    @Override
+    boolean supportsConcurrentInstances() {
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -117,7 +134,7 @@ public final class VectorLoglessPairHMM extends LoglessPairHMM {
         }
         if (doProfiling) {
             threadLocalPairHMMComputeTimeDiff = (System.nanoTime() - startTime);
-            pairHMMComputeTime += threadLocalPairHMMComputeTimeDiff;
+            pairHMMComputeTime.add(threadLocalPairHMMComputeTimeDiff);
             pairHMMSetupTime += threadLocalSetupTimeDiff;
         }
     }
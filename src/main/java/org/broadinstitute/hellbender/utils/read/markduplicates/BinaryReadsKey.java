@@ -0,0 +1,285 @@
+package org.broadinstitute.hellbender.utils.read.markduplicates;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMReadGroupRecord;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Fixed-width binary equivalent of the String keys made by {@link ReadsKey}, for use as a shuffle key in MarkDuplicatesSpark.
+ *
+ * <p>A key is three longs, so it costs no String formatting to build and 24 bytes to shuffle
+ * (see {@code BinaryReadsKeySerializer}). Keys are made by an {@link Encoder}, which maps read groups and libraries
+ * to their index in the header:</p>
+ * <ul>
+ *     <li>fragment and paired-ends keys hold the library index, and the reference index, stranded unclipped start
+ *     and strand of each end. They are equal exactly when the corresponding {@link ReadsKey} Strings are equal.</li>
+ *     <li>read keys hold the read group index and a 64-bit hash of the read name. Different names may (very rarely)
+ *     share a key, so the reads grouped under a read key must be split by name again (see {@link #sameReadKey}).</li>
+ * </ul>
+ */
+public final class BinaryReadsKey {
+
+    private static final int FRAGMENT = 1;
+    private static final int PAIRED_ENDS = 2;
+    private static final int READ = 3;
+
+    private static final long MAX_INDEX = 0xFFFF;
+
+    // kind (8 bits) | unused (6 bits) | first strand (1 bit) | second strand (1 bit) | library or read group index + 1 (16 bits) | first reference index + 1 (32 bits)
+    private final long word0;
+    // second reference index + 1 (32 bits) | first stranded unclipped start (32 bits), or the read name hash for read keys
+    private final long word1;
+    // second stranded unclipped start (32 bits), or the read group id hash for read keys whose read group is not in the header
+    private final long word2;
+
+    /**
+     * Recreates a key from its words, as returned by {@link #getWord0()}, {@link #getWord1()} and {@link #getWord2()}.
+     * Keys should otherwise be made by an {@link Encoder}.
+     */
+    public BinaryReadsKey(final long word0, final long word1, final long word2) {
+        this.word0 = word0;
+        this.word1 = word1;
+        this.word2 = word2;
+    }
+
+    public long getWord0() {
+        return word0;
+    }
+
+    public long getWord1() {
+        return word1;
+    }
+
+    public long getWord2() {
+        return word2;
+    }
+
+    /**
+     * Returns true if this is a fragment key.
+     */
+    public boolean isFragment() {
+        return kind() == FRAGMENT;
+    }
+
+    /**
+     * Returns true if this is a read key, which groups reads by read group and name.
+     */
+    public boolean isReadKey() {
+        return kind() == READ;
+    }
+
+    private int kind() {
+        return (int) (word0 >>> 56);
+    }
+
+    /**
+     * Returns true if two reads that share a read key really have the same read group and name.
+     */
+    public static boolean sameReadKey(final GATKRead read1, final GATKRead read2) {
+        return read1.getName().equals(read2.getName()) && Objects.equals(read1.getReadGroup(), read2.getReadGroup());
+    }
+
+    /**
+     * A 64-bit mix of all the words, for partitioning. {@link #hashCode()} is kept cheaper since hash maps within a
+     * partition mix it again.
+     */
+    public long longHash() {
+        long h = mix64(word0);
+        h = mix64(h ^ word1);
+        return mix64(h ^ word2);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BinaryReadsKey)) {
+            return false;
+        }
+        final BinaryReadsKey that = (BinaryReadsKey) o;
+        return word0 == that.word0 && word1 == that.word1 && word2 == that.word2;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(word0);
+        result = 31 * result + Long.hashCode(word1);
+        return 31 * result + Long.hashCode(word2);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x|%016x|%016x", word0, word1, word2);
+    }
+
+    // the 64-bit finalizer of MurmurHash3
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53e63a5fe53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // FNV-1a over the chars of the String, finalized with mix64 so that similar names spread over all the bits
+    static long hash64(final String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * Makes binary keys for reads with a given header. Serializable so that it can be captured in Spark closures.
+     */
+    public static final class Encoder implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final SAMFileHeader header;
+        // read group id -> read group index + 1
+        private final Map<String, Integer> readGroupIndexes = new HashMap<>();
+        // read group index -> library index + 1 (0 for no library)
+        private final int[] libraryIndexes;
+
+        public Encoder(final SAMFileHeader header) {
+            this.header = Utils.nonNull(header, "header cannot be null");
+            final List<SAMReadGroupRecord> readGroups = header.getReadGroups();
+            Utils.validateArg(readGroups.size() < MAX_INDEX, "too many read groups in the header for binary duplicate keys");
+            final Map<String, Integer> libraries = new HashMap<>();
+            libraryIndexes = new int[readGroups.size()];
+            for (int i = 0; i < readGroups.size(); i++) {
+                final SAMReadGroupRecord readGroup = readGroups.get(i);
+                readGroupIndexes.put(readGroup.getId(), i + 1);
+                final String library = readGroup.getLibrary();
+                libraryIndexes[i] = library == null ? 0 : libraries.computeIfAbsent(library, l -> libraries.size() + 1);
+            }
+        }
+
+        /**
+         * Makes a key for the fragment; binary equivalent of {@link ReadsKey#keyForFragment}.
+         */
+        public BinaryReadsKey keyForFragment(final GATKRead read) {
+            return key(FRAGMENT, libraryIndex(read),
+                    ReadUtils.getReferenceIndex(read, header), ReadUtils.getStrandedUnclippedStart(read), read.isReverseStrand(),
+                    null, 0, false);
+        }
+
+        /**
+         * Makes a key for the paired reads; binary equivalent of {@link ReadsKey#keyForPairedEnds}.
+         * {@code second} may be null for a read whose mate was not found.
+         */
+        public BinaryReadsKey keyForPairedEnds(final GATKRead first, final GATKRead second) {
+            return key(PAIRED_ENDS, libraryIndex(first),
+                    ReadUtils.getReferenceIndex(first, header), ReadUtils.getStrandedUnclippedStart(first), first.isReverseStrand(),
+                    second == null ? null : ReadUtils.getReferenceIndex(second, header),
+                    second == null ? 0 : ReadUtils.getStrandedUnclippedStart(second),
+                    second != null && second.isReverseStrand());
+        }
+
+        /**
+         * Makes the key that {@link #keyForPairedEnds} gives to the pair of this read and its mate, using only this read:
+         * the mate's position comes from the mate fields and its clipping from the mate cigar (MC) attribute.
+         * Both reads of a pair get the same key.
+         *
+         * The two ends are put in the order of PairedEnds: by reference index, start and first-of-pair flag (the order
+         * MarkDuplicatesSpark sorts reads with the same name in, which differs only in flags expected to be the same for
+         * both mates), then swapped if the first end has the larger stranded unclipped start.
+         *
+         * @param read a read with a mapped mate
+         * @param mateCigar the cigar of the mate, usually from the MC attribute
+         */
+        public BinaryReadsKey keyForPairedEndsFromMateCigar(final GATKRead read, final Cigar mateCigar) {
+            Utils.validateArg(ReadUtils.readHasMappedMate(read), "read must have a mapped mate");
+            final int readReference = ReadUtils.getReferenceIndex(read, header);
+            final int readStart = ReadUtils.getStrandedUnclippedStart(read);
+            final int mateReference = ReadUtils.getMateReferenceIndex(read, header);
+            final int mateStart = read.mateIsReverseStrand() ? unclippedEnd(read.getMateStart(), mateCigar) : unclippedStart(read.getMateStart(), mateCigar);
+
+            int order = Integer.compare(readReference, mateReference);
+            if (order == 0) {
+                order = Integer.compare(read.getStart(), read.getMateStart());
+            }
+            boolean readIsFirst = order != 0 ? order < 0 : read.isFirstOfPair();
+            if (readIsFirst ? readStart > mateStart : mateStart > readStart) {
+                readIsFirst = !readIsFirst;
+            }
+            return readIsFirst ?
+                    key(PAIRED_ENDS, libraryIndex(read), readReference, readStart, read.isReverseStrand(), mateReference, mateStart, read.mateIsReverseStrand()) :
+                    key(PAIRED_ENDS, libraryIndex(read), mateReference, mateStart, read.mateIsReverseStrand(), readReference, readStart, read.isReverseStrand());
+        }
+
+        /**
+         * Makes a key for the read name and read group. Keys of different reads can collide; see {@link #sameReadKey}.
+         */
+        public BinaryReadsKey keyForRead(final GATKRead read) {
+            final String readGroup = read.getReadGroup();
+            final Integer readGroupIndex = readGroup == null ? null : readGroupIndexes.get(readGroup);
+            final long word0 = ((long) READ << 56) | ((readGroupIndex == null ? 0L : readGroupIndex.longValue()) << 32);
+            // read groups missing from the header are told apart by a hash of their id
+            final long word2 = readGroup == null || readGroupIndex != null ? 0 : hash64(readGroup);
+            return new BinaryReadsKey(word0, hash64(read.getName()), word2);
+        }
+
+        // secondReference is null for fragments and for paired ends without a second end
+        private static BinaryReadsKey key(final int kind, final int library,
+                                          final int firstReference, final int firstStart, final boolean firstReverse,
+                                          final Integer secondReference, final int secondStart, final boolean secondReverse) {
+            long word0 = (long) kind << 56;
+            if (firstReverse) {
+                word0 |= 1L << 49;
+            }
+            if (secondReverse) {
+                word0 |= 1L << 48;
+            }
+            word0 |= (long) library << 32;
+            word0 |= Integer.toUnsignedLong(firstReference + 1);
+            // a paired-ends key without a second end must differ from one whose second end is unmapped
+            final long secondReferenceBits = secondReference == null ? 0xFFFFFFFFL : Integer.toUnsignedLong(secondReference + 1);
+            final long word1 = (secondReferenceBits << 32) | Integer.toUnsignedLong(firstStart);
+            return new BinaryReadsKey(word0, word1, Integer.toUnsignedLong(secondStart));
+        }
+
+        private static int unclippedStart(final int alignmentStart, final Cigar cigar) {
+            int start = alignmentStart;
+            for (final CigarElement element : cigar.getCigarElements()) {
+                if (!element.getOperator().isClipping()) {
+                    break;
+                }
+                start -= element.getLength();
+            }
+            return start;
+        }
+
+        private static int unclippedEnd(final int alignmentStart, final Cigar cigar) {
+            int end = alignmentStart + cigar.getReferenceLength() - 1;
+            final List<CigarElement> elements = cigar.getCigarElements();
+            for (int i = elements.size() - 1; i >= 0; i--) {
+                if (!elements.get(i).getOperator().isClipping()) {
+                    break;
+                }
+                end += elements.get(i).getLength();
+            }
+            return end;
+        }
+
+        private int libraryIndex(final GATKRead read) {
+            final String readGroup = read.getReadGroup();
+            final Integer readGroupIndex = readGroup == null ? null : readGroupIndexes.get(readGroup);
+            return readGroupIndex == null ? 0 : libraryIndexes[readGroupIndex - 1];
+        }
+    }
+}
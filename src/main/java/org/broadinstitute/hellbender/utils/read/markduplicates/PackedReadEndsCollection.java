@@ -0,0 +1,657 @@
+package org.broadinstitute.hellbender.utils.read.markduplicates;
+
+import com.google.common.annotations.VisibleForTesting;
+import htsjdk.samtools.util.CloseableIterator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An external sort of {@link ReadEndsForMarkDuplicates} that keeps each one as a fixed-width record of
+ * {@link #WORDS_PER_RECORD} longs in large long[] pages, rather than as an object, so that many more of them fit in
+ * memory and there's nothing for the garbage collector to trace.
+ *
+ * The fields of a record are packed big-endian, with the sort key first: libraryId, read1ReferenceIndex,
+ * read1Coordinate, orientation, read2ReferenceIndex, read2Coordinate, read1IndexInFile and read2IndexInFile, and then
+ * score, readGroup, tile, x, y and orientationForOpticalDuplicates. Each field is stored with its sign bit flipped, so
+ * comparing the key's words as unsigned longs orders records by those fields in turn, as MarkDuplicates needs.
+ *
+ * When a page is full it's sorted in place, by a quicksort over the records that compares and swaps their longs, and
+ * written to a compressed temporary file; with more than one thread that happens in the background while the next page
+ * fills, and no more than sortThreads - 1 pages are waiting to be written at once. The last page is sorted in memory
+ * and merged with the files by a k-way merge. The collection has the same life cycle as htsjdk's SortingCollection:
+ * add, doneAdding, iterate, cleanup.
+ */
+public final class PackedReadEndsCollection implements Iterable<ReadEndsForMarkDuplicates> {
+    private static final Logger logger = LogManager.getLogger(PackedReadEndsCollection.class);
+
+    public static final int WORDS_PER_RECORD = 6;
+
+    /** bytes of memory per record */
+    public static final int SIZE_OF = WORDS_PER_RECORD * Long.BYTES;
+
+    // the widths, in bits, of the packed fields, in the order they're packed
+    private static final int SHORT_BITS = 16;
+    private static final int BYTE_BITS = 8;
+    private static final int INT_BITS = 32;
+    private static final int LONG_BITS = 64;
+
+    // the key fills the first KEY_WORDS words and the top KEY_TAIL_BITS bits of the next
+    private static final int KEY_BITS = SHORT_BITS + INT_BITS + INT_BITS + BYTE_BITS + INT_BITS + INT_BITS + LONG_BITS + LONG_BITS;
+    private static final int KEY_WORDS = KEY_BITS / LONG_BITS;
+    private static final int KEY_TAIL_BITS = KEY_BITS % LONG_BITS;
+
+    // the largest page, leaving room for the scratch record at the end of each
+    private static final int MAX_PAGE_RECORDS = (Integer.MAX_VALUE - 8) / WORDS_PER_RECORD - 1;
+    private static final int MIN_PAGE_RECORDS = 1024;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private static final int IO_BUFFER_SIZE = 128 * 1024;
+    // the buffers of all the temporary files being merged share this much memory, but have at least MIN_IO_BUFFER_SIZE each
+    private static final int MERGE_BUFFER_BUDGET = 64 * 1024 * 1024;
+    private static final int MIN_IO_BUFFER_SIZE = 8 * 1024;
+    // the most records read at once from each temporary file while merging
+    private static final int MAX_READ_RECORDS = 10000;
+
+    private final int pageRecords;
+    private final int sortThreads;
+    private final int compressionLevel;
+    private final List<File> tmpDirs;
+    // null when there's only one thread, and everything happens on the caller's
+    private final ExecutorService executor;
+
+    // each page has room for one more record than it holds, as scratch space for sorting
+    private long[] page;
+    private int pageCount = 0;
+    // full-sized pages that have been written, to be reused
+    private final Deque<long[]> freePages = new ArrayDeque<>();
+    // the temporary files, and the number of records in each, in the order their pages were added
+    private final List<File> spillFiles = new ArrayList<>();
+    private final List<Integer> spillCounts = new ArrayList<>();
+    // pages being sorted and written in the background, oldest first
+    private final Deque<PendingSpill> pendingSpills = new ArrayDeque<>();
+    // iterators that haven't been closed, which cleanup() closes (callers often iterate with a for loop, and can't)
+    private final List<MergingIterator> openIterators = new ArrayList<>();
+    private boolean doneAdding = false;
+    private boolean cleanedUp = false;
+
+    /**
+     * @param maxRecordsInRam the most records to hold in memory at once
+     * @param sortThreads the number of threads to sort and write records with
+     * @param compressionLevel the deflate level of the temporary files, from 0 (none) to 9
+     * @param tmpDirs directories for the temporary files; each file is written to the one with the most space
+     */
+    public PackedReadEndsCollection(final int maxRecordsInRam,
+                                    final int sortThreads,
+                                    final int compressionLevel,
+                                    final List<File> tmpDirs) {
+        Utils.validateArg(maxRecordsInRam > 0, "maxRecordsInRam must be positive");
+        Utils.validateArg(sortThreads > 0, "sortThreads must be positive");
+        Utils.validateArg(compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION, "compressionLevel must be between 0 and 9");
+        Utils.validateArg(tmpDirs != null && !tmpDirs.isEmpty(), "there must be at least one temporary directory");
+        this.pageRecords = Math.min(MAX_PAGE_RECORDS, Math.max(1, maxRecordsInRam / sortThreads));
+        this.sortThreads = sortThreads;
+        this.compressionLevel = compressionLevel;
+        this.tmpDirs = new ArrayList<>(tmpDirs);
+        this.executor = sortThreads == 1 ? null : Executors.newFixedThreadPool(sortThreads - 1, runnable -> {
+            final Thread thread = new Thread(runnable, "PackedReadEndsCollection");
+            // a collection that's never cleaned up mustn't keep the JVM alive
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the first page grows as it fills, so that small inputs don't claim maxRecordsInRam's worth of memory
+        this.page = newPage(Math.min(pageRecords, MIN_PAGE_RECORDS));
+    }
+
+    /** Packs a copy of the read ends; the object may be reused once this returns. */
+    public void add(final ReadEndsForMarkDuplicates readEnds) {
+        if (doneAdding) {
+            throw new IllegalStateException("Can't add records after doneAdding()");
+        }
+        if (cleanedUp) {
+            throw new IllegalStateException("Can't add records after cleanup()");
+        }
+        if (pageCount == pageRecords) {
+            spillPage();
+        } else if (pageCount == capacity(page)) {
+            page = Arrays.copyOf(page, (Math.min(pageRecords, 2 * pageCount) + 1) * WORDS_PER_RECORD);
+        }
+        pack(readEnds, page, pageCount++ * WORDS_PER_RECORD);
+    }
+
+    /**
+     * Sorts the records still in memory, and waits for all of the temporary files to be written. No more records
+     * may be added. Called by {@link #iterator} if it hasn't been called already.
+     */
+    public void doneAdding() {
+        if (cleanedUp) {
+            throw new IllegalStateException("Can't call doneAdding() after cleanup()");
+        }
+        if (doneAdding) {
+            return;
+        }
+        doneAdding = true;
+        while (!pendingSpills.isEmpty()) {
+            finishSpill(pendingSpills.removeFirst());
+        }
+        freePages.clear();
+        sort(page, pageCount);
+        if (!spillFiles.isEmpty()) {
+            logger.info("Merging " + pageCount + " read ends in memory with " + spillFiles.size() + " temporary files");
+        }
+    }
+
+    /**
+     * Iterates over the read ends in order, unpacking each into a new object. The iterator should be closed, to
+     * release the temporary files it has open.
+     */
+    @Override
+    public CloseableIterator<ReadEndsForMarkDuplicates> iterator() {
+        doneAdding();
+        if (cleanedUp) {
+            throw new IllegalStateException("Can't iterate after cleanup()");
+        }
+        final MergingIterator iterator = new MergingIterator();
+        openIterators.add(iterator);
+        return iterator;
+    }
+
+    /** Closes any open iterators, deletes the temporary files and stops the threads. The collection can't be used afterwards. */
+    public void cleanup() {
+        if (cleanedUp) {
+            return;
+        }
+        cleanedUp = true;
+        for (final MergingIterator iterator : new ArrayList<>(openIterators)) {
+            iterator.close();
+        }
+        try {
+            while (!pendingSpills.isEmpty()) {
+                finishSpill(pendingSpills.removeFirst());
+            }
+        } finally {
+            for (final File spillFile : spillFiles) {
+                if (!spillFile.delete()) {
+                    logger.warn("Couldn't delete temporary file " + spillFile.getAbsolutePath());
+                }
+            }
+            spillFiles.clear();
+            spillCounts.clear();
+            freePages.clear();
+            page = null;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /** Sort and write the full page, in the background if there's more than one thread, and start a new one. */
+    private void spillPage() {
+        final long[] records = page;
+        final int count = pageCount;
+        if (executor == null) {
+            spillFiles.add(sortAndWrite(records, count));
+            spillCounts.add(count);
+            // write into the same page again
+        } else {
+            // bound the pages waiting to be written, so that we stay within maxRecordsInRam
+            while (pendingSpills.size() >= sortThreads - 1) {
+                finishSpill(pendingSpills.removeFirst());
+            }
+            pendingSpills.addLast(new PendingSpill(records, count, executor.submit(() -> sortAndWrite(records, count))));
+            page = freePages.isEmpty() ? newPage(pageRecords) : freePages.removeFirst();
+        }
+        pageCount = 0;
+    }
+
+    private void finishSpill(final PendingSpill spill) {
+        spillFiles.add(waitFor(spill.file));
+        spillCounts.add(spill.count);
+        if (!doneAdding && capacity(spill.page) == pageRecords) {
+            freePages.addLast(spill.page);
+        }
+    }
+
+    private File sortAndWrite(final long[] records, final int count) {
+        sort(records, count);
+        final File spillFile = newTempFile();
+        final Deflater deflater = new Deflater(compressionLevel);
+        try (final OutputStream out = new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(spillFile), deflater, IO_BUFFER_SIZE), IO_BUFFER_SIZE)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE / SIZE_OF * SIZE_OF);
+            final LongBuffer longs = buffer.asLongBuffer();
+            final int wordsPerWrite = longs.capacity();
+            final int totalWords = count * WORDS_PER_RECORD;
+            for (int word = 0; word < totalWords; word += wordsPerWrite) {
+                final int nWords = Math.min(wordsPerWrite, totalWords - word);
+                longs.clear();
+                longs.put(records, word, nWords);
+                out.write(buffer.array(), 0, nWords * Long.BYTES);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(spillFile, "Error writing read ends to a temporary file", e);
+        } finally {
+            deflater.end();
+        }
+        return spillFile;
+    }
+
+    private File newTempFile() {
+        File tmpDir = tmpDirs.get(0);
+        for (final File dir : tmpDirs) {
+            if (dir.getUsableSpace() > tmpDir.getUsableSpace()) {
+                tmpDir = dir;
+            }
+        }
+        try {
+            final File file = File.createTempFile("readends.", ".tmp", tmpDir);
+            file.deleteOnExit();
+            return file;
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(tmpDir, "Couldn't create a temporary file", e);
+        }
+    }
+
+    private static long[] newPage(final int records) {
+        return new long[(records + 1) * WORDS_PER_RECORD];
+    }
+
+    /** the number of records a page holds, not counting its scratch record */
+    private static int capacity(final long[] page) {
+        return page.length / WORDS_PER_RECORD - 1;
+    }
+
+    private static <R> R waitFor(final Future<R> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GATKException("Interrupted while waiting for a sorting thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new GATKException("Error in sorting thread", e.getCause());
+        }
+    }
+
+    private static final class PendingSpill {
+        private final long[] page;
+        private final int count;
+        private final Future<File> file;
+
+        private PendingSpill(final long[] page, final int count, final Future<File> file) {
+            this.page = page;
+            this.count = count;
+            this.file = file;
+        }
+    }
+
+    // -------- packing ----------
+
+    @VisibleForTesting
+    static void pack(final ReadEndsForMarkDuplicates readEnds, final long[] words, final int offset) {
+        Arrays.fill(words, offset, offset + WORDS_PER_RECORD, 0L);
+        int bit = 0;
+        bit = put(words, offset, bit, SHORT_BITS, readEnds.libraryId);
+        bit = put(words, offset, bit, INT_BITS, readEnds.read1ReferenceIndex);
+        bit = put(words, offset, bit, INT_BITS, readEnds.read1Coordinate);
+        bit = put(words, offset, bit, BYTE_BITS, readEnds.orientation);
+        bit = put(words, offset, bit, INT_BITS, readEnds.read2ReferenceIndex);
+        bit = put(words, offset, bit, INT_BITS, readEnds.read2Coordinate);
+        bit = put(words, offset, bit, LONG_BITS, readEnds.read1IndexInFile);
+        bit = put(words, offset, bit, LONG_BITS, readEnds.read2IndexInFile);
+        bit = put(words, offset, bit, SHORT_BITS, readEnds.score);
+        bit = put(words, offset, bit, SHORT_BITS, readEnds.readGroup);
+        bit = put(words, offset, bit, SHORT_BITS, readEnds.tile);
+        bit = put(words, offset, bit, SHORT_BITS, readEnds.x);
+        bit = put(words, offset, bit, SHORT_BITS, readEnds.y);
+        put(words, offset, bit, BYTE_BITS, readEnds.orientationForOpticalDuplicates);
+    }
+
+    @VisibleForTesting
+    static ReadEndsForMarkDuplicates unpack(final long[] words, final int offset) {
+        final ReadEndsForMarkDuplicates readEnds = new ReadEndsForMarkDuplicates();
+        int bit = 0;
+        readEnds.libraryId = (short)get(words, offset, bit, SHORT_BITS);
+        bit += SHORT_BITS;
+        readEnds.read1ReferenceIndex = (int)get(words, offset, bit, INT_BITS);
+        bit += INT_BITS;
+        readEnds.read1Coordinate = (int)get(words, offset, bit, INT_BITS);
+        bit += INT_BITS;
+        readEnds.orientation = (byte)get(words, offset, bit, BYTE_BITS);
+        bit += BYTE_BITS;
+        readEnds.read2ReferenceIndex = (int)get(words, offset, bit, INT_BITS);
+        bit += INT_BITS;
+        readEnds.read2Coordinate = (int)get(words, offset, bit, INT_BITS);
+        bit += INT_BITS;
+        readEnds.read1IndexInFile = get(words, offset, bit, LONG_BITS);
+        bit += LONG_BITS;
+        readEnds.read2IndexInFile = get(words, offset, bit, LONG_BITS);
+        bit += LONG_BITS;
+        readEnds.score = (short)get(words, offset, bit, SHORT_BITS);
+        bit += SHORT_BITS;
+        readEnds.readGroup = (short)get(words, offset, bit, SHORT_BITS);
+        bit += SHORT_BITS;
+        readEnds.tile = (short)get(words, offset, bit, SHORT_BITS);
+        bit += SHORT_BITS;
+        readEnds.x = (short)get(words, offset, bit, SHORT_BITS);
+        bit += SHORT_BITS;
+        readEnds.y = (short)get(words, offset, bit, SHORT_BITS);
+        bit += SHORT_BITS;
+        readEnds.orientationForOpticalDuplicates = (byte)get(words, offset, bit, BYTE_BITS);
+        return readEnds;
+    }
+
+    /** stores a signed value in width bits, starting bit bits into the record, with its sign bit flipped; returns the next bit */
+    private static int put(final long[] words, final int offset, final int bit, final int width, final long value) {
+        final long flipped = (value ^ (1L << (width - 1))) & mask(width);
+        final int word = offset + bit / LONG_BITS;
+        final int shift = bit % LONG_BITS;
+        final int bitsInWord = Math.min(width, LONG_BITS - shift);
+        final int rest = width - bitsInWord;
+        words[word] |= (flipped >>> rest) << (LONG_BITS - shift - bitsInWord);
+        if (rest > 0) {
+            words[word + 1] |= (flipped & mask(rest)) << (LONG_BITS - rest);
+        }
+        return bit + width;
+    }
+
+    /** the signed value stored by put */
+    private static long get(final long[] words, final int offset, final int bit, final int width) {
+        final int word = offset + bit / LONG_BITS;
+        final int shift = bit % LONG_BITS;
+        final int bitsInWord = Math.min(width, LONG_BITS - shift);
+        final int rest = width - bitsInWord;
+        long flipped = ((words[word] >>> (LONG_BITS - shift - bitsInWord)) & mask(bitsInWord)) << rest;
+        if (rest > 0) {
+            flipped |= words[word + 1] >>> (LONG_BITS - rest);
+        }
+        // flip the sign bit back, and sign-extend
+        return ((flipped ^ (1L << (width - 1))) << (LONG_BITS - width)) >> (LONG_BITS - width);
+    }
+
+    private static long mask(final int width) {
+        return width == LONG_BITS ? -1L : (1L << width) - 1;
+    }
+
+    // -------- sorting ----------
+
+    /** compares the keys of the records at two offsets, which may be in different arrays */
+    @VisibleForTesting
+    static int compare(final long[] words1, final int offset1, final long[] words2, final int offset2) {
+        for (int word = 0; word < KEY_WORDS; word++) {
+            final int cmp = Long.compareUnsigned(words1[offset1 + word], words2[offset2 + word]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Long.compare(words1[offset1 + KEY_WORDS] >>> (LONG_BITS - KEY_TAIL_BITS),
+                words2[offset2 + KEY_WORDS] >>> (LONG_BITS - KEY_TAIL_BITS));
+    }
+
+    /**
+     * Sorts the first count records of a page in place: a quicksort, recursing into the smaller partition so the stack
+     * stays shallow, and finishing small partitions with an insertion sort. The scratch record at the end of the
+     * page holds the pivot.
+     */
+    @VisibleForTesting
+    static void sort(final long[] page, final int count) {
+        quickSort(page, 0, count, capacity(page) * WORDS_PER_RECORD);
+    }
+
+    /** sorts records [from, to) */
+    private static void quickSort(final long[] page, int from, int to, final int scratch) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            // order the first, middle and last records, so the scans below can't run off the ends
+            final int mid = (from + to) >>> 1;
+            final int last = to - 1;
+            if (compareRecords(page, mid, from) < 0) swap(page, mid, from);
+            if (compareRecords(page, last, mid) < 0) {
+                swap(page, last, mid);
+                if (compareRecords(page, mid, from) < 0) swap(page, mid, from);
+            }
+            System.arraycopy(page, mid * WORDS_PER_RECORD, page, scratch, WORDS_PER_RECORD);
+
+            int i = from;
+            int j = last;
+            while (i <= j) {
+                while (compare(page, i * WORDS_PER_RECORD, page, scratch) < 0) i++;
+                while (compare(page, j * WORDS_PER_RECORD, page, scratch) > 0) j--;
+                if (i <= j) {
+                    swap(page, i++, j--);
+                }
+            }
+            // [from, j] <= pivot <= [i, to)
+            if (j + 1 - from < to - i) {
+                quickSort(page, from, j + 1, scratch);
+                from = i;
+            } else {
+                quickSort(page, i, to, scratch);
+                to = j + 1;
+            }
+        }
+        insertionSort(page, from, to, scratch);
+    }
+
+    private static void insertionSort(final long[] page, final int from, final int to, final int scratch) {
+        for (int i = from + 1; i < to; i++) {
+            if (compareRecords(page, i, i - 1) >= 0) {
+                continue;
+            }
+            System.arraycopy(page, i * WORDS_PER_RECORD, page, scratch, WORDS_PER_RECORD);
+            int j = i - 1;
+            while (j >= from && compare(page, j * WORDS_PER_RECORD, page, scratch) > 0) {
+                j--;
+            }
+            System.arraycopy(page, (j + 1) * WORDS_PER_RECORD, page, (j + 2) * WORDS_PER_RECORD, (i - j - 1) * WORDS_PER_RECORD);
+            System.arraycopy(page, scratch, page, (j + 1) * WORDS_PER_RECORD, WORDS_PER_RECORD);
+        }
+    }
+
+    private static int compareRecords(final long[] page, final int record1, final int record2) {
+        return compare(page, record1 * WORDS_PER_RECORD, page, record2 * WORDS_PER_RECORD);
+    }
+
+    private static void swap(final long[] page, final int record1, final int record2) {
+        final int offset1 = record1 * WORDS_PER_RECORD;
+        final int offset2 = record2 * WORDS_PER_RECORD;
+        for (int word = 0; word < WORDS_PER_RECORD; word++) {
+            final long tmp = page[offset1 + word];
+            page[offset1 + word] = page[offset2 + word];
+            page[offset2 + word] = tmp;
+        }
+    }
+
+    // -------- merging ----------
+
+    /** A sorted run of records: a temporary file, or the page left in memory. The head record is at offset in words. */
+    private abstract static class Run {
+        // the position of the run in the order the records were added, to break ties
+        private final int index;
+        protected long[] words;
+        protected int offset;
+        protected boolean exhausted = false;
+
+        private Run(final int index) {
+            this.index = index;
+        }
+
+        /** moves to the next record, or sets exhausted at the end of the run */
+        protected abstract void advance();
+
+        protected void close() {}
+    }
+
+    private static final class MemoryRun extends Run {
+        private final int count;
+        private int next = 0;
+
+        private MemoryRun(final int index, final long[] page, final int count) {
+            super(index);
+            this.words = page;
+            this.count = count;
+            advance();
+        }
+
+        @Override
+        protected void advance() {
+            if (next == count) {
+                exhausted = true;
+            } else {
+                offset = next++ * WORDS_PER_RECORD;
+            }
+        }
+    }
+
+    private static final class FileRun extends Run {
+        private final File file;
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater();
+        private final byte[] bytes;
+        private final LongBuffer longs;
+        private int remaining;
+        private int batchCount = 0;
+        private int next = 0;
+
+        private FileRun(final int index, final File file, final int count, final int batchSize, final int bufferSize) {
+            super(index);
+            this.file = file;
+            this.remaining = count;
+            try {
+                in = new DataInputStream(new InflaterInputStream(new FileInputStream(file), inflater, bufferSize));
+            } catch (final IOException e) {
+                inflater.end();
+                throw new UserException.CouldNotReadInputFile(file, e);
+            }
+            bytes = new byte[batchSize * SIZE_OF];
+            longs = ByteBuffer.wrap(bytes).asLongBuffer();
+            words = new long[batchSize * WORDS_PER_RECORD];
+            advance();
+        }
+
+        @Override
+        protected void advance() {
+            if (next == batchCount) {
+                if (remaining == 0) {
+                    exhausted = true;
+                    return;
+                }
+                batchCount = Math.min(remaining, words.length / WORDS_PER_RECORD);
+                try {
+                    in.readFully(bytes, 0, batchCount * SIZE_OF);
+                } catch (final IOException e) {
+                    throw new UserException.CouldNotReadInputFile(file, e);
+                }
+                longs.clear();
+                longs.get(words, 0, batchCount * WORDS_PER_RECORD);
+                remaining -= batchCount;
+                next = 0;
+            }
+            offset = next++ * WORDS_PER_RECORD;
+        }
+
+        @Override
+        protected void close() {
+            try {
+                in.close();
+            } catch (final IOException e) {
+                logger.warn("Couldn't close temporary file " + file.getAbsolutePath(), e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /** A k-way merge of the runs, by the head of each run, with ties going to the run added first. */
+    private final class MergingIterator implements CloseableIterator<ReadEndsForMarkDuplicates> {
+        private final List<Run> runs = new ArrayList<>();
+        private final PriorityQueue<Run> queue;
+
+        private MergingIterator() {
+            final int nRuns = spillFiles.size() + 1;
+            queue = new PriorityQueue<>(nRuns, (run1, run2) -> {
+                final int cmp = compare(run1.words, run1.offset, run2.words, run2.offset);
+                return cmp != 0 ? cmp : Integer.compare(run1.index, run2.index);
+            });
+            final int batchSize = Math.max(1, Math.min(MAX_READ_RECORDS, pageRecords / (2 * nRuns)));
+            final int bufferSize = Math.max(MIN_IO_BUFFER_SIZE, Math.min(IO_BUFFER_SIZE, MERGE_BUFFER_BUDGET / (2 * nRuns)));
+            try {
+                for (int i = 0; i < spillFiles.size(); i++) {
+                    runs.add(new FileRun(i, spillFiles.get(i), spillCounts.get(i), batchSize, bufferSize));
+                }
+            } catch (final RuntimeException e) {
+                close();
+                throw e;
+            }
+            runs.add(new MemoryRun(spillFiles.size(), page, pageCount));
+            for (final Run run : runs) {
+                if (!run.exhausted) {
+                    queue.add(run);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public ReadEndsForMarkDuplicates next() {
+            final Run run = queue.poll();
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+            final ReadEndsForMarkDuplicates readEnds = unpack(run.words, run.offset);
+            run.advance();
+            if (!run.exhausted) {
+                queue.add(run);
+            }
+            return readEnds;
+        }
+
+        @Override
+        public void close() {
+            queue.clear();
+            for (final Run run : runs) {
+                run.close();
+            }
+            runs.clear();
+            openIterators.remove(this);
+        }
+    }
+
+    @VisibleForTesting
+    List<File> getSpillFiles() {
+        return Collections.unmodifiableList(spillFiles);
+    }
+}
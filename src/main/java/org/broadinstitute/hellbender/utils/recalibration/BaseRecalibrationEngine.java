@@ -62,6 +62,13 @@ public final class BaseRecalibrationEngine implements Serializable {
 
     private RecalibrationTables recalTables;
 
+    /**
+     * Flat accumulators for the quality score table and the additional covariate tables, indexed like the tables in
+     * recalTables (the read group table, at index 0, is derived from the quality score table and has none).
+     * Reads are counted into these, and the counts are flushed into recalTables whenever the tables are requested.
+     */
+    private final FlatRecalDatumTable[] flatTables;
+
     private SAMFileHeader readsHeader;
 
     /**
@@ -96,6 +103,10 @@ public final class BaseRecalibrationEngine implements Serializable {
             throw new UserException("Number of read groups must be >= 1, but is " + numReadGroups);
         }
         recalTables = new RecalibrationTables(covariates, numReadGroups);
+        flatTables = new FlatRecalDatumTable[recalTables.numTables()];
+        for ( int i = 1; i < flatTables.length; i++ ) { // skip the read group table
+            flatTables[i] = new FlatRecalDatumTable(recalTables.getTable(i).getDimensions());
+        }
         keyCache = new CovariateKeyCache();
         cachedEventTypes = recalArgs.computeIndelBQSRTables ? EventType.values() : new EventType[]{EventType.BASE_SUBSTITUTION};
     }
@@ -160,6 +171,7 @@ public final class BaseRecalibrationEngine implements Serializable {
             throw new IllegalStateException("FinalizeData() has already been called");
         }
 
+        flushFlatTables();
         finalizeRecalibrationTables(recalTables);
         finalized = true;
     }
@@ -213,9 +225,19 @@ public final class BaseRecalibrationEngine implements Serializable {
      * Get a possibly not-final recalibration table, to deal with distributed execution.
      */
     public RecalibrationTables getRecalibrationTables() {
+        flushFlatTables();
         return recalTables;
     }
 
+    /**
+     * Transfer all observations counted so far from the flat accumulators into recalTables
+     */
+    private void flushFlatTables() {
+        for ( int i = 1; i < flatTables.length; i++ ) {
+            flatTables[i].flushInto(recalTables.getTable(i));
+        }
+    }
+
     /**
      * Get the final recalibration tables, after finalizeData() has been called
      *
@@ -240,6 +262,24 @@ public final class BaseRecalibrationEngine implements Serializable {
         return numReadsProcessed;
     }
 
+    /**
+     * Fold the recalibration tables and read count collected by another engine into this one, in place.
+     *
+     * Used to combine engines that each processed a disjoint subset of the reads on their own thread.
+     * Both engines must have been created with the same arguments and reads header, and neither may be finalized.
+     *
+     * @param other engine whose data to add to this engine; must not be used afterwards
+     */
+    public void combine( final BaseRecalibrationEngine other ) {
+        Utils.nonNull(other);
+        if ( finalized || other.finalized ) {
+            throw new IllegalStateException("Cannot combine engines after finalizeData() has been called");
+        }
+
+        RecalibrationTables.inPlaceCombine(getRecalibrationTables(), other.getRecalibrationTables());
+        numReadsProcessed += other.numReadsProcessed;
+    }
+
     /**
      * Update the recalibration statistics using the information in recalInfo
      * @param recalInfo data structure holding information about the recalibration values for a single read
@@ -251,7 +291,7 @@ public final class BaseRecalibrationEngine implements Serializable {
 
         final GATKRead read = recalInfo.getRead();
         final ReadCovariates readCovariates = recalInfo.getCovariatesValues();
-        final NestedIntegerArray<RecalDatum> qualityScoreTable = recalTables.getQualityScoreTable();
+        final FlatRecalDatumTable qualityScoreTable = flatTables[1];
 
         final int nCovariates = covariates.size();
         final int nSpecialCovariates = covariates.numberOfSpecialCovariates();
@@ -262,18 +302,19 @@ public final class BaseRecalibrationEngine implements Serializable {
                     final EventType eventType = cachedEventTypes[idx];
                     final int[] keys = readCovariates.getKeySet(offset, eventType);
                     final int eventIndex = eventType.ordinal();
-                    final byte qual = recalInfo.getQual(eventType, offset);
                     final double isError = recalInfo.getErrorFraction(eventType, offset);
 
                     final int key0 = keys[0];
                     final int key1 = keys[1];
 
-                    RecalUtils.incrementDatumOrPutIfNecessary3keys(qualityScoreTable, qual, isError, key0, key1, eventIndex);
+                    // Note: the flat tables take the reported quality of each datum to be key1, the quality score covariate
+                    // key, which is always equal to recalInfo.getQual(eventType, offset)
+                    qualityScoreTable.increment(key0, key1, 0, eventIndex, isError);
 
                     for (int i = nSpecialCovariates; i < nCovariates; i++) {
                         final int keyi = keys[i];
                         if (keyi >= 0) {
-                            RecalUtils.incrementDatumOrPutIfNecessary4keys(recalTables.getTable(i), qual, isError, key0, key1, keyi, eventIndex);
+                            flatTables[i].increment(key0, key1, keyi, eventIndex, isError);
                         }
                     }
                 }
@@ -0,0 +1,161 @@
+package org.broadinstitute.hellbender.utils.recalibration;
+
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.collections.NestedIntegerArray;
+
+import java.io.Serializable;
+
+/**
+ * Accumulates recalibration observations for a single covariate table in flat primitive arrays, instead of in a
+ * {@link NestedIntegerArray} of {@link RecalDatum} objects.
+ *
+ * The table has the same dimensions as the corresponding {@link RecalibrationTables} table: read group x reported
+ * quality x covariate value x event type, where the covariate value dimension is absent for the quality score table.
+ * Storage is split into one block per (read group, reported quality) pair, allocated on first use. Each block holds
+ * the observation counts and the mismatch sums for all covariate values and event types in two parallel primitive
+ * arrays, so that counting an observation is an index computation and two array updates, with no pointer chasing
+ * and no per-cell objects.
+ *
+ * This class is only an accumulator: {@link #flushInto} transfers the accumulated counts into a regular
+ * {@link RecalDatum} table, which remains the representation used by {@link RecalibrationTables}, the recalibration
+ * report and the rest of BQSR. Mismatches are summed exactly as {@link RecalDatum#increment(long, double)} would sum
+ * them, so the flushed tables are identical to tables built by incrementing {@link RecalDatum}s directly.
+ *
+ * The reported quality of each cell is taken to be its quality score key, as it is for all tables built by
+ * {@link BaseRecalibrationEngine}.
+ *
+ * This trades memory for speed: every block is dense over all covariate values and event types, so it can take more
+ * space than the sparse {@link RecalDatum} table it is flushed into, and both exist while a table is being flushed.
+ * It makes counting cheaper, but does not lower the peak heap use of BQSR.
+ */
+public final class FlatRecalDatumTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int numDimensions;
+    private final int numReadGroups;
+    private final int numQuals;
+    private final int numCovariateValues;
+    private final int numEvents;
+
+    // One block per (read group, reported quality), indexed by readGroup * numQuals + qual. Each block is indexed by
+    // covariateValue * numEvents + event. Blocks are null until the first observation for their pair is added.
+    private final long[][] observations;
+    private final double[][] scaledMismatches;
+
+    /**
+     * Create an empty accumulator for a table with the given dimensions
+     *
+     * @param dimensions dimensions of the table to accumulate, as returned by {@link NestedIntegerArray#getDimensions}:
+     *                   either read group x quality x event (3 dimensions) or read group x quality x covariate x event (4 dimensions)
+     */
+    public FlatRecalDatumTable( final int[] dimensions ) {
+        Utils.nonNull(dimensions);
+        Utils.validateArg(dimensions.length == 3 || dimensions.length == 4, "Only tables with 3 or 4 dimensions are supported");
+
+        numDimensions = dimensions.length;
+        numReadGroups = dimensions[0];
+        numQuals = dimensions[1];
+        numCovariateValues = dimensions.length == 4 ? dimensions[2] : 1;
+        numEvents = dimensions[dimensions.length - 1];
+
+        observations = new long[numReadGroups * numQuals][];
+        scaledMismatches = new double[numReadGroups * numQuals][];
+    }
+
+    /**
+     * Count one observation in the table
+     *
+     * @param readGroup read group key
+     * @param qual reported quality key
+     * @param covariateValue covariate key (must be 0 for 3-dimensional tables)
+     * @param event event type index
+     * @param isError (possibly fractional) error weight of this observation
+     */
+    public void increment( final int readGroup, final int qual, final int covariateValue, final int event, final double isError ) {
+        // Keys are packed into flat indices, so an out-of-range key would silently be counted in another cell
+        checkKey(readGroup, numReadGroups, 0);
+        checkKey(qual, numQuals, 1);
+        checkKey(covariateValue, numCovariateValues, 2);
+        checkKey(event, numEvents, numDimensions - 1);
+
+        final int block = readGroup * numQuals + qual;
+        long[] blockObservations = observations[block];
+        if ( blockObservations == null ) {
+            blockObservations = observations[block] = new long[numCovariateValues * numEvents];
+            scaledMismatches[block] = new double[numCovariateValues * numEvents];
+        }
+
+        final int index = covariateValue * numEvents + event;
+        blockObservations[index]++;
+        scaledMismatches[block][index] += RecalDatum.scaleMismatches(isError);
+    }
+
+    private static void checkKey( final int key, final int dimension, final int dimensionIndex ) {
+        if ( key < 0 || key >= dimension ) {
+            throw new IllegalArgumentException("Key " + key + " is out of range for dimension " + dimensionIndex + " (max is " + (dimension - 1) + ")");
+        }
+    }
+
+    /**
+     * @return true if no observations have been added since this table was created or last flushed
+     */
+    public boolean isEmpty() {
+        for ( final long[] block : observations ) {
+            if ( block != null ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add all the observations accumulated so far to the given table, creating {@link RecalDatum}s as necessary,
+     * and reset this accumulator (releasing its storage).
+     *
+     * @param table table to add our observations to; must have the dimensions this accumulator was created with
+     */
+    public void flushInto( final NestedIntegerArray<RecalDatum> table ) {
+        Utils.nonNull(table);
+        final int[] dimensions = table.getDimensions();
+        Utils.validateArg(dimensions.length == numDimensions && dimensions[0] == numReadGroups && dimensions[1] == numQuals &&
+                        (numDimensions == 3 || dimensions[2] == numCovariateValues) && dimensions[numDimensions - 1] == numEvents,
+                "table dimensions do not match the dimensions of this accumulator");
+
+        for ( int readGroup = 0; readGroup < numReadGroups; readGroup++ ) {
+            for ( int qual = 0; qual < numQuals; qual++ ) {
+                final int block = readGroup * numQuals + qual;
+                if ( observations[block] == null ) {
+                    continue;
+                }
+                for ( int covariateValue = 0; covariateValue < numCovariateValues; covariateValue++ ) {
+                    for ( int event = 0; event < numEvents; event++ ) {
+                        final int index = covariateValue * numEvents + event;
+                        final long numObservations = observations[block][index];
+                        if ( numObservations > 0 ) {
+                            addToTable(table, readGroup, qual, covariateValue, event, numObservations, scaledMismatches[block][index]);
+                        }
+                    }
+                }
+                observations[block] = null;
+                scaledMismatches[block] = null;
+            }
+        }
+    }
+
+    private void addToTable( final NestedIntegerArray<RecalDatum> table, final int readGroup, final int qual, final int covariateValue, final int event,
+                             final long numObservations, final double scaledNumMismatches ) {
+        final boolean hasCovariate = numDimensions == 4;
+        final RecalDatum existingDatum = hasCovariate ? table.get4Keys(readGroup, qual, covariateValue, event) : table.get3Keys(readGroup, qual, event);
+
+        if ( existingDatum == null ) {
+            final RecalDatum datum = RecalDatum.fromScaledMismatches(numObservations, scaledNumMismatches, (byte)qual);
+            if ( hasCovariate ) {
+                table.put(datum, readGroup, qual, covariateValue, event);
+            } else {
+                table.put(datum, readGroup, qual, event);
+            }
+        } else {
+            existingDatum.incrementScaledMismatches(numObservations, scaledNumMismatches);
+        }
+    }
+}
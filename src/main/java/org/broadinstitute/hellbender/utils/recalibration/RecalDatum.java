@@ -73,6 +73,27 @@ public final class RecalDatum implements Serializable {
         empiricalQuality = UNINITIALIZED;
     }
 
+    /**
+     * Create a new RecalDatum from an observation count and a mismatch count that has already been scaled
+     * with {@link #scaleMismatches}, as accumulated by {@link FlatRecalDatumTable}.
+     *
+     * @param numObservations       observations
+     * @param scaledNumMismatches   mismatches, pre-scaled with {@link #scaleMismatches}
+     * @param reportedQuality       Qreported
+     */
+    static RecalDatum fromScaledMismatches(final long numObservations, final double scaledNumMismatches, final byte reportedQuality) {
+        final RecalDatum datum = new RecalDatum(numObservations, 0.0, reportedQuality);
+        datum.numMismatches = scaledNumMismatches;
+        return datum;
+    }
+
+    /**
+     * @return the given (possibly fractional) number of mismatches in the scaled form used to accumulate them internally
+     */
+    static double scaleMismatches(final double numMismatches) {
+        return numMismatches*MULTIPLIER;
+    }
+
     /**
      * Copy copy into this recal datum, overwriting all of this objects data
      * @param copy  RecalDatum to copy
@@ -91,12 +112,21 @@ public final class RecalDatum implements Serializable {
      * @param other  RecalDatum to combine
      */
     public void combine(final RecalDatum other) {
-        final double sumErrors = this.calcExpectedErrors() + other.calcExpectedErrors();
+        final double combinedQReported = combinedReportedQuality(getNumObservations(), estimatedQReported, other.getNumObservations(), other.estimatedQReported);
         increment(other.getNumObservations(), other.getNumMismatches());
-        estimatedQReported = -10 * Math.log10(sumErrors / getNumObservations());
+        estimatedQReported = combinedQReported;
         empiricalQuality = UNINITIALIZED;
     }
 
+    /**
+     * The reported quality of the combination of two datums, from the expected error rate implied by their reported qualities
+     * (see {@link #combine}).
+     */
+    static double combinedReportedQuality(final long numObservations1, final double qReported1, final long numObservations2, final double qReported2) {
+        final double sumErrors = calcExpectedErrors(numObservations1, qReported1) + calcExpectedErrors(numObservations2, qReported2);
+        return -10 * Math.log10(sumErrors / (numObservations1 + numObservations2));
+    }
+
     public void setEstimatedQReported(final double estimatedQReported) {
         if ( estimatedQReported < 0 ) throw new IllegalArgumentException("estimatedQReported < 0");
         if ( Double.isInfinite(estimatedQReported) ) throw new IllegalArgumentException("estimatedQReported is infinite");
@@ -193,6 +223,13 @@ public final class RecalDatum implements Serializable {
         return numMismatches/MULTIPLIER;
     }
 
+    /**
+     * @return the number of mismatches, scaled with {@link #scaleMismatches} as stored internally
+     */
+    final double getScaledNumMismatches() {
+        return numMismatches;
+    }
+
     public final void setNumMismatches(final double numMismatches) {
         if ( numMismatches < 0 ) throw new IllegalArgumentException("numMismatches < 0");
         this.numMismatches = (numMismatches*MULTIPLIER);
@@ -215,6 +252,15 @@ public final class RecalDatum implements Serializable {
         empiricalQuality = UNINITIALIZED;
     }
 
+    /**
+     * Same as {@link #increment(long, double)}, but for a mismatch count that has already been scaled with {@link #scaleMismatches}
+     */
+    final void incrementScaledMismatches(final long incObservations, final double incScaledMismatches) {
+        numObservations += incObservations;
+        numMismatches += incScaledMismatches;
+        empiricalQuality = UNINITIALIZED;
+    }
+
     public final void increment(final boolean isError) {
         increment(1, isError ? 1.0 : 0.0);
     }
@@ -227,12 +273,12 @@ public final class RecalDatum implements Serializable {
 
     /**
      * calculate the expected number of errors given the estimated Q reported and the number of observations
-     * in this datum.
+     * in a datum.
      *
      * @return a positive (potentially fractional) estimate of the number of errors
      */
-    private double calcExpectedErrors() {
-        return getNumObservations() * QualityUtils.qualToErrorProb(estimatedQReported);
+    private static double calcExpectedErrors(final long numObservations, final double estimatedQReported) {
+        return numObservations * QualityUtils.qualToErrorProb(estimatedQReported);
     }
 
     /**
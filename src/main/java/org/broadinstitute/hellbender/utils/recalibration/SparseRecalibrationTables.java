@@ -0,0 +1,230 @@
+package org.broadinstitute.hellbender.utils.recalibration;
+
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.collections.NestedIntegerArray;
+import org.broadinstitute.hellbender.utils.recalibration.covariates.StandardCovariateList;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The non-empty cells of a {@link RecalibrationTables}, stored in flat primitive arrays.
+ *
+ * This is the form in which BQSR on Spark ships partial tables from the executors to the driver and combines them
+ * (see {@code BaseRecalibratorSparkFn}). A {@link RecalibrationTables} is an object graph with one array per nested
+ * dimension and one {@link RecalDatum} per non-empty cell, most of it empty, which is slow to serialize and costly to
+ * hold in memory once per partition. Here each table is a list of cells sorted by their row-major index in the table,
+ * each with its observation count, scaled mismatch count and reported quality, so that two tables are combined by a
+ * linear merge and the whole thing serializes to a few primitive arrays (see {@code SparseRecalibrationTablesSerializer}).
+ *
+ * Cells are combined as {@link RecalDatum#combine} combines them, except that mismatch counts are added in their scaled
+ * form, without a round trip through {@link RecalDatum#getNumMismatches}.
+ */
+public final class SparseRecalibrationTables implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // per table: the table dimensions, and the row-major index, observations, scaled mismatches and reported quality of each non-empty cell
+    private final int[][] dimensions;
+    private final long[][] cells;
+    private final long[][] observations;
+    private final double[][] scaledMismatches;
+    private final double[][] reportedQualities;
+
+    /**
+     * Copies the non-empty cells of the given tables.
+     */
+    public SparseRecalibrationTables(final RecalibrationTables tables) {
+        Utils.nonNull(tables);
+        final int numTables = tables.numTables();
+        dimensions = new int[numTables][];
+        cells = new long[numTables][];
+        observations = new long[numTables][];
+        scaledMismatches = new double[numTables][];
+        reportedQualities = new double[numTables][];
+        for (int t = 0; t < numTables; t++) {
+            final NestedIntegerArray<RecalDatum> table = tables.getTable(t);
+            dimensions[t] = table.getDimensions().clone();
+            // leaves come in lexicographic key order, which is increasing row-major index order
+            final List<NestedIntegerArray.Leaf<RecalDatum>> leaves = table.getAllLeaves();
+            cells[t] = new long[leaves.size()];
+            observations[t] = new long[leaves.size()];
+            scaledMismatches[t] = new double[leaves.size()];
+            reportedQualities[t] = new double[leaves.size()];
+            for (int i = 0; i < leaves.size(); i++) {
+                final RecalDatum datum = leaves.get(i).value;
+                cells[t][i] = cellIndex(dimensions[t], leaves.get(i).keys);
+                observations[t][i] = datum.getNumObservations();
+                scaledMismatches[t][i] = datum.getScaledNumMismatches();
+                reportedQualities[t][i] = datum.getEstimatedQReported();
+            }
+        }
+    }
+
+    /**
+     * Recreates tables from their arrays, as returned by the getters. The arrays are not copied.
+     */
+    public SparseRecalibrationTables(final int[][] dimensions, final long[][] cells, final long[][] observations,
+                                     final double[][] scaledMismatches, final double[][] reportedQualities) {
+        Utils.nonNull(dimensions);
+        Utils.nonNull(cells);
+        Utils.nonNull(observations);
+        Utils.nonNull(scaledMismatches);
+        Utils.nonNull(reportedQualities);
+        Utils.validateArg(cells.length == dimensions.length && observations.length == dimensions.length &&
+                scaledMismatches.length == dimensions.length && reportedQualities.length == dimensions.length,
+                "there must be one array of each kind per table");
+        for (int t = 0; t < dimensions.length; t++) {
+            Utils.validateArg(observations[t].length == cells[t].length && scaledMismatches[t].length == cells[t].length &&
+                    reportedQualities[t].length == cells[t].length, "all the arrays of a table must have one entry per cell");
+        }
+        this.dimensions = dimensions;
+        this.cells = cells;
+        this.observations = observations;
+        this.scaledMismatches = scaledMismatches;
+        this.reportedQualities = reportedQualities;
+    }
+
+    public int numTables() {
+        return dimensions.length;
+    }
+
+    /**
+     * @return the total number of non-empty cells in all the tables
+     */
+    public int numCells() {
+        int numCells = 0;
+        for (final long[] tableCells : cells) {
+            numCells += tableCells.length;
+        }
+        return numCells;
+    }
+
+    public int[] getDimensions(final int table) {
+        return dimensions[table];
+    }
+
+    /**
+     * @return the row-major index of each non-empty cell of the table, in increasing order
+     */
+    public long[] getCells(final int table) {
+        return cells[table];
+    }
+
+    public long[] getObservations(final int table) {
+        return observations[table];
+    }
+
+    /**
+     * @return the mismatch count of each non-empty cell of the table, scaled as {@link RecalDatum} stores it internally
+     */
+    public double[] getScaledMismatches(final int table) {
+        return scaledMismatches[table];
+    }
+
+    public double[] getReportedQualities(final int table) {
+        return reportedQualities[table];
+    }
+
+    /**
+     * Combines two sets of tables into new tables, leaving both unchanged.
+     * Suitable as both functions of a Spark {@code treeAggregate}.
+     */
+    public static SparseRecalibrationTables combine(final SparseRecalibrationTables left, final SparseRecalibrationTables right) {
+        Utils.nonNull(left);
+        Utils.nonNull(right);
+        Utils.validateArg(left.numTables() == right.numTables(), "Attempting to combine SparseRecalibrationTables with different numbers of tables");
+        final int numTables = left.numTables();
+        final int[][] dimensions = new int[numTables][];
+        final long[][] cells = new long[numTables][];
+        final long[][] observations = new long[numTables][];
+        final double[][] scaledMismatches = new double[numTables][];
+        final double[][] reportedQualities = new double[numTables][];
+
+        for (int t = 0; t < numTables; t++) {
+            Utils.validateArg(Arrays.equals(left.dimensions[t], right.dimensions[t]),
+                    "Table " + t + " dimensions " + Arrays.toString(left.dimensions[t]) + " not equal to " + Arrays.toString(right.dimensions[t]));
+            final long[] leftCells = left.cells[t];
+            final long[] rightCells = right.cells[t];
+            final int maxCells = leftCells.length + rightCells.length;
+            final long[] mergedCells = new long[maxCells];
+            final long[] mergedObservations = new long[maxCells];
+            final double[] mergedMismatches = new double[maxCells];
+            final double[] mergedQualities = new double[maxCells];
+
+            int l = 0;
+            int r = 0;
+            int n = 0;
+            while (l < leftCells.length || r < rightCells.length) {
+                if (r == rightCells.length || (l < leftCells.length && leftCells[l] < rightCells[r])) {
+                    mergedCells[n] = leftCells[l];
+                    mergedObservations[n] = left.observations[t][l];
+                    mergedMismatches[n] = left.scaledMismatches[t][l];
+                    mergedQualities[n] = left.reportedQualities[t][l];
+                    l++;
+                } else if (l == leftCells.length || rightCells[r] < leftCells[l]) {
+                    mergedCells[n] = rightCells[r];
+                    mergedObservations[n] = right.observations[t][r];
+                    mergedMismatches[n] = right.scaledMismatches[t][r];
+                    mergedQualities[n] = right.reportedQualities[t][r];
+                    r++;
+                } else {
+                    mergedCells[n] = leftCells[l];
+                    mergedObservations[n] = left.observations[t][l] + right.observations[t][r];
+                    mergedMismatches[n] = left.scaledMismatches[t][l] + right.scaledMismatches[t][r];
+                    mergedQualities[n] = RecalDatum.combinedReportedQuality(left.observations[t][l], left.reportedQualities[t][l],
+                            right.observations[t][r], right.reportedQualities[t][r]);
+                    l++;
+                    r++;
+                }
+                n++;
+            }
+
+            dimensions[t] = left.dimensions[t];
+            cells[t] = Arrays.copyOf(mergedCells, n);
+            observations[t] = Arrays.copyOf(mergedObservations, n);
+            scaledMismatches[t] = Arrays.copyOf(mergedMismatches, n);
+            reportedQualities[t] = Arrays.copyOf(mergedQualities, n);
+        }
+        return new SparseRecalibrationTables(dimensions, cells, observations, scaledMismatches, reportedQualities);
+    }
+
+    /**
+     * Expands these tables into a {@link RecalibrationTables} for the given covariates.
+     *
+     * @param covariates the covariates the original tables were created with
+     */
+    public RecalibrationTables toRecalibrationTables(final StandardCovariateList covariates) {
+        Utils.nonNull(covariates);
+        Utils.validateArg(numTables() > 0, "there are no tables");
+        final RecalibrationTables tables = new RecalibrationTables(covariates, dimensions[0][0]);
+        Utils.validateArg(tables.numTables() == numTables(), "the covariates do not match the tables");
+        for (int t = 0; t < numTables(); t++) {
+            final NestedIntegerArray<RecalDatum> table = tables.getTable(t);
+            Utils.validateArg(Arrays.equals(table.getDimensions(), dimensions[t]), "the covariates do not match the dimensions of table " + t);
+            for (int i = 0; i < cells[t].length; i++) {
+                final RecalDatum datum = RecalDatum.fromScaledMismatches(observations[t][i], scaledMismatches[t][i], (byte)0);
+                datum.setEstimatedQReported(reportedQualities[t][i]);
+                table.put(datum, cellKeys(dimensions[t], cells[t][i]));
+            }
+        }
+        return tables;
+    }
+
+    private static long cellIndex(final int[] dimensions, final int[] keys) {
+        long index = 0;
+        for (int d = 0; d < dimensions.length; d++) {
+            index = index * dimensions[d] + keys[d];
+        }
+        return index;
+    }
+
+    private static int[] cellKeys(final int[] dimensions, long index) {
+        final int[] keys = new int[dimensions.length];
+        for (int d = dimensions.length - 1; d >= 0; d--) {
+            keys[d] = (int)(index % dimensions[d]);
+            index /= dimensions[d];
+        }
+        return keys;
+    }
+}
@@ -244,5 +244,32 @@ public final class CountingReadFilterUnitTest {
         Assert.assertEquals(badStartAndEnd.getFilteredCount(), startEndRejections);
         Assert.assertEquals(isRayOrEgon.getFilteredCount(), nameRejections);
     }
+
+    private static CountingReadFilter makeCompoundFilter() {
+        return new CountingReadFilter(startOk).and(new CountingReadFilter(endOk)).or(new CountingReadFilter(startOk).negate());
+    }
+
+    @Test
+    public void testAddFilteredCounts() {
+        final GATKRead[] reads = { goodRead, startBad, endBad, bothBad, endBad, goodRead };
+
+        final CountingReadFilter allReads = makeCompoundFilter();
+        Arrays.asList(reads).stream().filter(allReads).count(); // force the stream to be consumed
+
+        // the same reads, split between two copies of the filter
+        final CountingReadFilter firstHalf = makeCompoundFilter();
+        final CountingReadFilter secondHalf = makeCompoundFilter();
+        Arrays.asList(reads).subList(0, 3).stream().filter(firstHalf).count();
+        Arrays.asList(reads).subList(3, reads.length).stream().filter(secondHalf).count();
+        firstHalf.addFilteredCounts(secondHalf);
+
+        Assert.assertEquals(firstHalf.getFilteredCount(), allReads.getFilteredCount());
+        Assert.assertEquals(firstHalf.getSummaryLine(), allReads.getSummaryLine());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAddFilteredCountsOfDifferentFilter() {
+        makeCompoundFilter().addFilteredCounts(new CountingReadFilter(startOk));
+    }
 }
 
@@ -0,0 +1,90 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.engine.ContextShard;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AddContextDataToReadSparkOptimizedUnitTest extends BaseTest {
+    private static final String BAM = publicTestDir + "org/broadinstitute/hellbender/tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam";
+
+    @Test
+    public void testBalanceShardsSplitsDenseShards() {
+        final List<SimpleInterval> shards = Arrays.asList(
+                new SimpleInterval("1", 1, 1000), new SimpleInterval("1", 1001, 2000), new SimpleInterval("1", 2001, 3000));
+        final List<SimpleInterval> balanced = AddContextDataToReadSparkOptimized.balanceShards(shards, new long[]{100, 400, 100}, 100, 10);
+        Assert.assertEquals(balanced, Arrays.asList(
+                new SimpleInterval("1", 1, 1000),
+                new SimpleInterval("1", 1001, 1250), new SimpleInterval("1", 1251, 1500),
+                new SimpleInterval("1", 1501, 1750), new SimpleInterval("1", 1751, 2000),
+                new SimpleInterval("1", 2001, 3000)));
+    }
+
+    @Test
+    public void testBalanceShardsMergesSparseShards() {
+        final List<SimpleInterval> shards = Arrays.asList(
+                new SimpleInterval("1", 1, 1000), new SimpleInterval("1", 1001, 2000), new SimpleInterval("1", 2001, 3000),
+                new SimpleInterval("1", 3001, 4000), new SimpleInterval("2", 1, 1000), new SimpleInterval("2", 2001, 3000));
+        final List<SimpleInterval> balanced = AddContextDataToReadSparkOptimized.balanceShards(shards, new long[]{10, 0, 60, 50, 0, 0}, 100, 10);
+        // never across contigs or gaps between shards
+        Assert.assertEquals(balanced, Arrays.asList(
+                new SimpleInterval("1", 1, 3000), new SimpleInterval("1", 3001, 4000),
+                new SimpleInterval("2", 1, 1000), new SimpleInterval("2", 2001, 3000)));
+    }
+
+    @Test
+    public void testBalanceShardsRespectsMinimumLength() {
+        final List<SimpleInterval> shards = Collections.singletonList(new SimpleInterval("1", 1, 100));
+        final List<SimpleInterval> balanced = AddContextDataToReadSparkOptimized.balanceShards(shards, new long[]{1000}, 10, 40);
+        Assert.assertEquals(balanced, Arrays.asList(new SimpleInterval("1", 1, 50), new SimpleInterval("1", 51, 100)));
+    }
+
+    @Test
+    public void testEstimateShardSizes() {
+        final List<SimpleInterval> shards = Arrays.asList(
+                new SimpleInterval("20", 1_000_000, 1_001_000), new SimpleInterval("20", 30_000_000, 31_000_000));
+        final long[] sizes = AddContextDataToReadSparkOptimized.estimateShardSizes(BAM, null, shards);
+        Assert.assertNotNull(sizes);
+        Assert.assertTrue(sizes[0] > 0);
+        Assert.assertEquals(sizes[1], 0);
+    }
+
+    @Test
+    public void testEstimateShardSizesWithoutIndex() {
+        final List<SimpleInterval> shards = Collections.singletonList(new SimpleInterval("1", 1, 1000));
+        Assert.assertNull(AddContextDataToReadSparkOptimized.estimateShardSizes(publicTestDir + "org/broadinstitute/hellbender/engine/unindexed.bam", null, shards));
+    }
+
+    @Test(groups = "spark")
+    public void testShardMetrics() throws IOException {
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final ContextShardStatistics statistics = new ContextShardStatistics(ctx);
+        final List<SimpleInterval> intervals = Arrays.asList(new SimpleInterval("20", 999_000, 999_999), new SimpleInterval("20", 1_000_000, 1_001_000));
+        final List<ContextShard> shards = ctx.parallelize(AddContextDataToReadSparkOptimized.fillVariants(intervals, Collections.emptyList(), 1000), 2)
+                .flatMap(AddContextDataToReadSparkOptimized.subdivideAndFillReads(BAM, null, 100, 1000, null, statistics.getAccumulable()))
+                .collect();
+
+        final List<ContextShardMetrics> metrics = statistics.getMetrics();
+        Assert.assertEquals(metrics.size(), 2);
+        for (final ContextShardMetrics shardMetrics : metrics) {
+            Assert.assertTrue(intervals.contains(shardMetrics.getInterval()));
+            final List<ContextShard> subshards = shards.stream()
+                    .filter(shard -> shardMetrics.getInterval().contains(shard.interval))
+                    .collect(java.util.stream.Collectors.toList());
+            Assert.assertEquals(shardMetrics.SUBSHARDS, subshards.size());
+            Assert.assertEquals(shardMetrics.READS, subshards.stream().mapToLong(shard -> shard.reads.size()).sum());
+            Assert.assertTrue(shardMetrics.TOTAL_MILLIS >= shardMetrics.READ_MILLIS);
+            Assert.assertEquals(shardMetrics.ESTIMATED_BYTES, -1);
+        }
+        Assert.assertTrue(metrics.stream().mapToLong(shardMetrics -> shardMetrics.READS).sum() > 0);
+        // slowest first
+        Assert.assertTrue(metrics.get(0).TOTAL_MILLIS >= metrics.get(1).TOTAL_MILLIS);
+    }
+}
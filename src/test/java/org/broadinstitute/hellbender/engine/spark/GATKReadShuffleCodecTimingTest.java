@@ -0,0 +1,91 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Encoded size and CPU time of the Kryo read serializer versus GATKReadShuffleCodec variants.
+ *
+ * Usage: GATKReadShuffleCodecTimingTest [bam] (defaults to a small test BAM; pass a standard WGS BAM for real numbers).
+ */
+public final class GATKReadShuffleCodecTimingTest {
+
+    @FunctionalInterface
+    public interface Action {
+        long execute();
+    }
+
+    private static final int N_TRIALS = 5;
+
+    private static void report( final String name, final Action action ) {
+        long bytes = 0;
+        final long nanosecs = System.nanoTime();
+        for ( int trial = 0; trial != N_TRIALS; ++trial ) {
+            bytes = action.execute();
+        }
+        System.out.println(String.format("%-40s %12d bytes %8.3f s", name, bytes, (System.nanoTime() - nanosecs) / 1.E9 / N_TRIALS));
+    }
+
+    public static void main( final String[] args ) throws IOException {
+        final File bam = new File(args.length > 0 ? args[0] : "src/test/resources/org/broadinstitute/hellbender/tools/BQSR/CEUTrio.HiSeq.WGS.b37.NA12878.20.21.10m-10m100.bam");
+        final List<GATKRead> reads = new ArrayList<>();
+        final SAMFileHeader header;
+        try ( final SamReader reader = SamReaderFactory.makeDefault().open(bam) ) {
+            header = reader.getFileHeader();
+            for ( final SAMRecord record : reader ) {
+                reads.add(SAMRecordToGATKReadAdapter.headerlessReadAdapter(record));
+            }
+        }
+        System.out.println(reads.size() + " reads from " + bam);
+
+        final Kryo kryo = new Kryo();
+        kryo.register(SAMRecordToGATKReadAdapter.class, new SAMRecordToGATKReadAdapterSerializer());
+        report("Kryo SAMRecordToGATKReadAdapterSerializer", () -> {
+            final Output output = new Output(1 << 16, -1);
+            long total = 0;
+            for ( final GATKRead read : reads ) {
+                output.clear();
+                kryo.writeObject(output, read);
+                total += output.position();
+            }
+            return total;
+        });
+
+        final Map<String, GATKReadShuffleCodec> codecs = new LinkedHashMap<>();
+        codecs.put("codec", new GATKReadShuffleCodec(header));
+        codecs.put("codec, deflate", new GATKReadShuffleCodec(header, null, GATKReadShuffleCodec.Compression.DEFLATE));
+        codecs.put("codec, RG+MC only", new GATKReadShuffleCodec(header, Arrays.asList("RG", "MC"), GATKReadShuffleCodec.Compression.NONE));
+        codecs.put("codec, RG+MC only, deflate", new GATKReadShuffleCodec(header, Arrays.asList("RG", "MC"), GATKReadShuffleCodec.Compression.DEFLATE));
+        for ( final Map.Entry<String, GATKReadShuffleCodec> entry : codecs.entrySet() ) {
+            final GATKReadShuffleCodec codec = entry.getValue();
+            final List<byte[]> encoded = new ArrayList<>(reads.size());
+            report(entry.getKey() + " encode", () -> {
+                encoded.clear();
+                long total = 0;
+                for ( final GATKRead read : reads ) {
+                    final byte[] bytes = codec.encode(read);
+                    encoded.add(bytes);
+                    total += bytes.length;
+                }
+                return total;
+            });
+            report(entry.getKey() + " decode", () -> {
+                long total = 0;
+                for ( final byte[] bytes : encoded ) {
+                    total += codec.decode(bytes).getLength();
+                }
+                return total;
+            });
+        }
+    }
+}
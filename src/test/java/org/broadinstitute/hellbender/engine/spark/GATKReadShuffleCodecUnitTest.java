@@ -0,0 +1,122 @@
+package org.broadinstitute.hellbender.engine.spark;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.SAMRecordToGATKReadAdapter;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public final class GATKReadShuffleCodecUnitTest extends BaseTest {
+
+    private static final File BAM = new File(publicTestDir, "org/broadinstitute/hellbender/tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam");
+
+    @DataProvider(name = "compression")
+    public Object[][] compression() {
+        return Arrays.stream(GATKReadShuffleCodec.Compression.values()).map(c -> new Object[]{c}).toArray(Object[][]::new);
+    }
+
+    @Test(dataProvider = "compression")
+    public void testRoundTripOfRealReads(final GATKReadShuffleCodec.Compression compression) throws IOException {
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(BAM)) {
+            final SAMFileHeader header = reader.getFileHeader();
+            final GATKReadShuffleCodec codec = new GATKReadShuffleCodec(header, null, compression);
+            int count = 0;
+            for (final SAMRecord record : reader) {
+                final GATKRead read = new SAMRecordToGATKReadAdapter(record);
+                final String before = record.getSAMString();
+                final GATKRead decoded = codec.decode(codec.encode(read));
+                // the input read must not be modified, nor lose its header
+                Assert.assertEquals(record.getSAMString(), before);
+                Assert.assertSame(record.getHeader(), header);
+                assertSameRead(decoded.convertToSAMRecord(header), record, null);
+                count++;
+            }
+            Assert.assertTrue(count > 0);
+        }
+    }
+
+    @Test
+    public void testRoundTripOfArtificialReads() {
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(3, 1, 1000, 2);
+        final GATKReadShuffleCodec codec = new GATKReadShuffleCodec(header);
+
+        final GATKRead unmapped = ArtificialReadUtils.createArtificialUnmappedRead(header, new byte[]{'A', 'C'}, new byte[]{30, 30});
+        final GATKRead mapped = ArtificialReadUtils.createArtificialRead(header, "mapped", 1, 100, 50);
+        mapped.setReadGroup(header.getReadGroups().get(1).getId());
+        mapped.setMatePosition(header.getSequence(2).getSequenceName(), 500);
+        final GATKRead unknownReadGroup = ArtificialReadUtils.createArtificialRead(header, "unknownReadGroup", 0, 10, 20);
+        unknownReadGroup.setReadGroup("notInHeader");
+
+        for (final GATKRead read : Arrays.asList(unmapped, mapped, unknownReadGroup)) {
+            final SAMRecord expected = read.convertToSAMRecord(header);
+            assertSameRead(codec.decode(codec.encode(read)).convertToSAMRecord(header), expected, null);
+        }
+    }
+
+    @Test
+    public void testDropAttributes() throws IOException {
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(BAM)) {
+            final SAMFileHeader header = reader.getFileHeader();
+            final Set<String> keep = new HashSet<>(Arrays.asList("RG", "MC"));
+            final GATKReadShuffleCodec allAttributes = new GATKReadShuffleCodec(header);
+            final GATKReadShuffleCodec someAttributes = new GATKReadShuffleCodec(header, keep, GATKReadShuffleCodec.Compression.NONE);
+            long allBytes = 0;
+            long someBytes = 0;
+            for (final SAMRecord record : reader) {
+                final GATKRead read = new SAMRecordToGATKReadAdapter(record);
+                final byte[] all = allAttributes.encode(read);
+                final byte[] some = someAttributes.encode(read);
+                allBytes += all.length;
+                someBytes += some.length;
+                assertSameRead(someAttributes.decode(some).convertToSAMRecord(header), record, keep);
+            }
+            Assert.assertTrue(someBytes < allBytes);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testContigNotInHeader() {
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader(1, 1, 1000);
+        final GATKRead read = ArtificialReadUtils.createHeaderlessSamBackedRead("read1", "notInHeader", 100, 50);
+        new GATKReadShuffleCodec(header).encode(read);
+    }
+
+    private static void assertSameRead(final SAMRecord actual, final SAMRecord expected, final Set<String> keptAttributes) {
+        Assert.assertEquals(actual.getReadName(), expected.getReadName());
+        Assert.assertEquals(actual.getFlags(), expected.getFlags());
+        Assert.assertEquals(actual.getReferenceName(), expected.getReferenceName());
+        Assert.assertEquals(actual.getAlignmentStart(), expected.getAlignmentStart());
+        Assert.assertEquals(actual.getMappingQuality(), expected.getMappingQuality());
+        Assert.assertEquals(actual.getCigarString(), expected.getCigarString());
+        Assert.assertEquals(actual.getMateReferenceName(), expected.getMateReferenceName());
+        Assert.assertEquals(actual.getMateAlignmentStart(), expected.getMateAlignmentStart());
+        Assert.assertEquals(actual.getInferredInsertSize(), expected.getInferredInsertSize());
+        Assert.assertEquals(actual.getReadBases(), expected.getReadBases());
+        Assert.assertEquals(actual.getBaseQualities(), expected.getBaseQualities());
+
+        final Map<String, Object> expectedAttributes = new TreeMap<>();
+        for (final SAMRecord.SAMTagAndValue attribute : expected.getAttributes()) {
+            if (keptAttributes == null || keptAttributes.contains(attribute.tag)) {
+                expectedAttributes.put(attribute.tag, attribute.value);
+            }
+        }
+        final Map<String, Object> actualAttributes = new TreeMap<>();
+        for (final SAMRecord.SAMTagAndValue attribute : actual.getAttributes()) {
+            actualAttributes.put(attribute.tag, attribute.value);
+        }
+        Assert.assertEquals(actualAttributes.keySet(), expectedAttributes.keySet());
+        for (final String tag : expectedAttributes.keySet()) {
+            Assert.assertTrue(Objects.deepEquals(actualAttributes.get(tag), expectedAttributes.get(tag)), "attribute " + tag);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.seqdoop.hadoop_bam.SplittingBAMIndexer;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public final class IndexedBAMInputFormatUnitTest extends BaseTest {
+    private static final String BAM = publicTestDir + "org/broadinstitute/hellbender/tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam";
+
+    private static long virtualOffset(final long compressedOffset, final int uncompressedOffset) {
+        return compressedOffset << 16 | uncompressedOffset;
+    }
+
+    @Test
+    public void testMergeChunks() {
+        final Chunk a = new Chunk(virtualOffset(0, 10), virtualOffset(100, 5));
+        final Chunk overlapsA = new Chunk(virtualOffset(50, 0), virtualOffset(200, 0));
+        final Chunk nearA = new Chunk(virtualOffset(200 + IndexedBAMInputFormat.MERGE_GAP - 1, 0), virtualOffset(300000, 0));
+        final Chunk far = new Chunk(virtualOffset(300000 + IndexedBAMInputFormat.MERGE_GAP, 0), virtualOffset(400000, 0));
+        final List<Chunk> merged = IndexedBAMInputFormat.mergeChunks(Arrays.asList(far, nearA, a, overlapsA));
+        Assert.assertEquals(merged, Arrays.asList(new Chunk(a.getChunkStart(), nearA.getChunkEnd()), far));
+    }
+
+    @Test
+    public void testPartitionChunksPacksConsecutiveChunks() {
+        final List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final long start = i * 4 * IndexedBAMInputFormat.MERGE_GAP;
+            chunks.add(new Chunk(virtualOffset(start, 0), virtualOffset(start + 1000, 0)));
+        }
+        Collections.reverse(chunks);
+        final List<List<Chunk>> partitions = IndexedBAMInputFormat.partitionChunks(chunks, null, 2500);
+        Assert.assertEquals(partitions.size(), 5);
+        long previousEnd = -1;
+        for (final List<Chunk> partition : partitions) {
+            Assert.assertEquals(partition.size(), 2);
+            for (final Chunk chunk : partition) {
+                Assert.assertTrue(chunk.getChunkStart() > previousEnd);
+                previousEnd = chunk.getChunkEnd();
+            }
+        }
+    }
+
+    @Test
+    public void testPartitionChunksDoesNotCutWithoutSplittingIndex() {
+        final Chunk chunk = new Chunk(virtualOffset(0, 0), virtualOffset(1000000, 0));
+        Assert.assertEquals(IndexedBAMInputFormat.partitionChunks(Collections.singletonList(chunk), null, 1000),
+                Collections.singletonList(Collections.singletonList(chunk)));
+    }
+
+    @Test
+    public void testIntervalsRoundTrip() {
+        final Configuration conf = new Configuration(false);
+        final List<SimpleInterval> intervals = Arrays.asList(new SimpleInterval("20", 1, 100), new SimpleInterval("chrUn_gl000220", 5, 5));
+        IndexedBAMInputFormat.setIntervals(conf, intervals);
+        Assert.assertEquals(IndexedBAMInputFormat.getIntervals(conf), intervals);
+    }
+
+    @Test
+    public void testGetIndexPath() throws IOException {
+        final Configuration conf = new Configuration();
+        Assert.assertEquals(IndexedBAMInputFormat.getIndexPath(new Path(BAM), conf), new Path(BAM + ".bai"));
+        final String bamWithBai = publicTestDir + "org/broadinstitute/hellbender/tools/BQSR/CEUTrio.HiSeq.WGS.b37.NA12878.20.21.10m-10m100.bam";
+        Assert.assertEquals(IndexedBAMInputFormat.getIndexPath(new Path(bamWithBai), conf),
+                new Path(publicTestDir + "org/broadinstitute/hellbender/tools/BQSR/CEUTrio.HiSeq.WGS.b37.NA12878.20.21.10m-10m100.bai"));
+        Assert.assertNull(IndexedBAMInputFormat.getIndexPath(new Path(publicTestDir + "org/broadinstitute/hellbender/tools/BQSR/HiSeq.1mb.1RG.2k_lines.alternate.recalibrated.DIQ.sharded.bam"), conf));
+    }
+
+    @DataProvider(name = "splitSizes")
+    public Object[][] splitSizes() {
+        return new Object[][]{{0L, false}, {1000L, false}, {1000L, true}, {20000L, true}};
+    }
+
+    @Test(dataProvider = "splitSizes", groups = "spark")
+    public void testReadsMatchIndexQuery(final long splitSize, final boolean withSplittingIndex) throws IOException {
+        String bam = BAM;
+        if (withSplittingIndex) {
+            final File dir = createTempDir("indexedBam");
+            final File copy = new File(dir, "reads.bam");
+            Files.copy(new File(BAM).toPath(), copy.toPath());
+            Files.copy(new File(BAM + ".bai").toPath(), new File(dir, "reads.bam.bai").toPath());
+            try (final BufferedInputStream in = new BufferedInputStream(new FileInputStream(copy));
+                 final BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(copy.getPath() + SplittingBAMIndexer.OUTPUT_FILE_EXTENSION))) {
+                SplittingBAMIndexer.index(in, out, copy.length(), 10);
+            }
+            bam = copy.getAbsolutePath();
+        }
+
+        final JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final List<SimpleInterval> intervals = Arrays.asList(
+                new SimpleInterval("20", 1000010, 1000100), new SimpleInterval("20", 1000500, 1000510), new SimpleInterval("20", 1000900, 1000990));
+        final List<GATKRead> reads = new ReadsSparkSource(ctx).getParallelReads(bam, null, intervals, splitSize).collect();
+
+        final List<String> expected = new ArrayList<>();
+        try (final SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(new File(BAM))) {
+            final int contig = reader.getFileHeader().getSequenceIndex("20");
+            final QueryInterval[] queries = intervals.stream().map(i -> new QueryInterval(contig, i.getStart(), i.getEnd())).toArray(QueryInterval[]::new);
+            try (final SAMRecordIterator query = reader.query(queries, false)) {
+                while (query.hasNext()) {
+                    final SAMRecord record = query.next();
+                    record.setHeaderStrict(null);
+                    expected.add(record.getSAMString());
+                }
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(reads.stream().map(read -> read.convertToSAMRecord(null).getSAMString()).collect(Collectors.toList()), expected);
+    }
+}
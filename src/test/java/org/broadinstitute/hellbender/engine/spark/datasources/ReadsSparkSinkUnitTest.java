@@ -1,9 +1,15 @@
 package org.broadinstitute.hellbender.engine.spark.datasources;
 
 
+import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -13,12 +19,14 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
 import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
 import org.broadinstitute.hellbender.utils.gcs.BucketUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.read.ReadCoordinateComparator;
 import org.broadinstitute.hellbender.utils.read.ReadsWriteFormat;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
 import org.broadinstitute.hellbender.utils.test.MiniClusterUtils;
+import org.seqdoop.hadoop_bam.SplittingBAMIndexer;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -30,6 +38,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 
 public class ReadsSparkSinkUnitTest extends BaseTest {
@@ -163,6 +172,55 @@ public class ReadsSparkSinkUnitTest extends BaseTest {
         Assert.assertEquals(rddParallelReads.count(), rddParallelReads2.count());
     }
 
+    @Test(groups = "spark")
+    public void readsSinkIndexesTest() throws IOException {
+        final String inputBam = testDataDir + "tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam";
+        final File outputFile = createTempFile("ReadsSparkSinkUnitTest_Indexes", ".bam");
+        final File baiFile = new File(outputFile.getPath() + ".bai");
+        final File splittingBaiFile = new File(outputFile.getPath() + SplittingBAMIndexer.OUTPUT_FILE_EXTENSION);
+        baiFile.deleteOnExit();
+        splittingBaiFile.deleteOnExit();
+
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> rddParallelReads = readSource.getParallelReads(inputBam, null);
+        SAMFileHeader header = readSource.getHeader(inputBam, null, null);
+        // several parts, so the index is merged from several fragments
+        ReadsSparkSink.writeReads(ctx, outputFile.getAbsolutePath(), null, rddParallelReads, header, ReadsWriteFormat.SINGLE, 4, true, true);
+        Assert.assertTrue(baiFile.exists());
+        Assert.assertTrue(splittingBaiFile.exists());
+
+        // queries through the merged index find the same reads as through the index of the input
+        try (final SamReader expectedReader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(new File(inputBam));
+             final SamReader actualReader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT)
+                     .open(SamInputResource.of(outputFile).index(baiFile))) {
+            Assert.assertTrue(actualReader.hasIndex());
+            final int contig = header.getSequenceIndex("20");
+            for (final QueryInterval query : Arrays.asList(new QueryInterval(contig, 1000001, 1000001), new QueryInterval(contig, 1000100, 1000200),
+                    new QueryInterval(contig, 1000600, 1000601), new QueryInterval(contig, 1000990, 1001500))) {
+                final QueryInterval[] intervals = {query};
+                final List<String> expected = getSAMStrings(expectedReader.query(intervals, false));
+                Assert.assertFalse(expected.isEmpty());
+                Assert.assertEquals(getSAMStrings(actualReader.query(intervals, false)), expected);
+            }
+        }
+
+        // the output is read back through the merged index, and small splits are cut at the entries of the splitting index
+        final List<GATKRead> writtenReads = readSource.getParallelReads(outputFile.getAbsolutePath(), null, 10000).collect();
+        assertReadsAreSorted(header, writtenReads);
+        Assert.assertEquals(writtenReads.size(), rddParallelReads.count());
+    }
+
+    private static List<String> getSAMStrings(final SAMRecordIterator iterator) {
+        final List<String> strings = new ArrayList<>();
+        try (final SAMRecordIterator records = iterator) {
+            while (records.hasNext()) {
+                strings.add(records.next().getSAMString());
+            }
+        }
+        return strings;
+    }
+
     @Test(dataProvider = "loadReadsADAM", groups = "spark")
     public void readsSinkADAMTest(String inputBam, String outputDirectoryName) throws IOException {
         // Since the test requires that we not create the actual output directory in advance,
@@ -204,6 +262,101 @@ public class ReadsSparkSinkUnitTest extends BaseTest {
         }
     }
 
+    @DataProvider(name = "loadReadsParquet")
+    public Object[][] loadReadsParquet() {
+        return new Object[][]{
+                {testDataDir + "tools/BQSR/HiSeq.1mb.1RG.2k_lines.bam", "ReadsSparkSinkUnitTest1_Parquet"},
+                {testDataDir + "tools/BQSR/expected.HiSeq.1mb.1RG.2k_lines.alternate.recalibrated.DIQ.bam", "ReadsSparkSinkUnitTest2_Parquet"},
+                // has unmapped reads placed at the position of their mates
+                {testDataDir + "tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam", "ReadsSparkSinkUnitTest3_Parquet"},
+        };
+    }
+
+    @Test(dataProvider = "loadReadsParquet", groups = "spark")
+    public void readsSinkParquetTest(String inputBam, String outputDirectoryName) throws IOException {
+        final File outputDirectory = new File(createTempDir(outputDirectoryName + "_parent"), outputDirectoryName);
+
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> rddParallelReads = readSource.getParallelReads(inputBam, null);
+        SAMFileHeader header = readSource.getHeader(inputBam, null, null);
+
+        ReadsSparkSink.writeReads(ctx, outputDirectory.getAbsolutePath(), null, rddParallelReads, header, ReadsWriteFormat.PARQUET);
+
+        final SAMFileHeader header2 = readSource.getHeader(outputDirectory.getAbsolutePath(), null, null);
+        Assert.assertEquals(header2.getSequenceDictionary(), header.getSequenceDictionary());
+        Assert.assertEquals(header2.getReadGroups(), header.getReadGroups());
+
+        JavaRDD<GATKRead> rddParallelReads2 = readSource.getParquetReads(outputDirectory.getAbsolutePath(), null,
+                EnumSet.allOf(ReadsParquetSchema.Column.class));
+
+        // unlike ADAM, every field survives the round trip, unmapped reads included
+        final List<GATKRead> samList = rddParallelReads.collect();
+        final List<GATKRead> parquetList = rddParallelReads2.collect();
+        Assert.assertEquals(parquetList.size(), samList.size());
+        for (int i = 0; i < samList.size(); i++) {
+            Assert.assertEquals(parquetList.get(i).convertToSAMRecord(header).getSAMString(), samList.get(i).convertToSAMRecord(header).getSAMString());
+        }
+    }
+
+    @Test(groups = "spark")
+    public void readsSinkParquetProjectionTest() throws IOException {
+        final String inputBam = testDataDir + "tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam";
+        final File outputDirectory = new File(createTempDir("ReadsSparkSinkUnitTest_Projection_parent"), "ReadsSparkSinkUnitTest_Projection");
+
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> rddParallelReads = readSource.getParallelReads(inputBam, null);
+        SAMFileHeader header = readSource.getHeader(inputBam, null, null);
+        ReadsSparkSink.writeReads(ctx, outputDirectory.getAbsolutePath(), null, rddParallelReads, header, ReadsWriteFormat.PARQUET);
+
+        final List<GATKRead> samList = rddParallelReads.collect();
+        final List<GATKRead> flagsList = readSource.getParquetReads(outputDirectory.getAbsolutePath(), null,
+                EnumSet.of(ReadsParquetSchema.Column.FLAGS)).collect();
+        Assert.assertEquals(flagsList.size(), samList.size());
+        for (int i = 0; i < samList.size(); i++) {
+            final SAMRecord expected = samList.get(i).convertToSAMRecord(header);
+            final SAMRecord observed = flagsList.get(i).convertToSAMRecord(header);
+            Assert.assertEquals(observed.getFlags(), expected.getFlags());
+            Assert.assertNull(observed.getReadName());
+            Assert.assertEquals(observed.getReadLength(), 0);
+            Assert.assertEquals(observed.getReferenceName(), SAMRecord.NO_ALIGNMENT_REFERENCE_NAME);
+            Assert.assertTrue(observed.getAttributes().isEmpty());
+        }
+    }
+
+    @Test(groups = "spark")
+    public void readsSinkParquetIntervalsTest() throws IOException {
+        final String inputBam = testDataDir + "tools/BQSR/CEUTrio.HiSeq.WGS.b37.ch20.1m-1m1k.NA12878.bam";
+        final File outputDirectory = new File(createTempDir("ReadsSparkSinkUnitTest_Intervals_parent"), "ReadsSparkSinkUnitTest_Intervals");
+
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        JavaRDD<GATKRead> rddParallelReads = readSource.getParallelReads(inputBam, null);
+        SAMFileHeader header = readSource.getHeader(inputBam, null, null);
+        ReadsSparkSink.writeReads(ctx, outputDirectory.getAbsolutePath(), null, rddParallelReads, header, ReadsWriteFormat.PARQUET);
+
+        final List<SimpleInterval> intervals = Arrays.asList(new SimpleInterval("20", 1000100, 1000200), new SimpleInterval("20", 1000600, 1000601));
+        final List<String> expected = new ArrayList<>();
+        for (final GATKRead read : rddParallelReads.collect()) {
+            final SAMRecord sam = read.convertToSAMRecord(header);
+            final int end = sam.getReadUnmappedFlag() ? sam.getAlignmentStart() : sam.getAlignmentEnd();
+            if (intervals.stream().anyMatch(interval -> interval.getContig().equals(sam.getReferenceName()) &&
+                    sam.getAlignmentStart() <= interval.getEnd() && end >= interval.getStart())) {
+                expected.add(sam.getSAMString());
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+
+        final List<String> observed = new ArrayList<>();
+        for (final GATKRead read : readSource.getParquetReads(outputDirectory.getAbsolutePath(), intervals,
+                EnumSet.allOf(ReadsParquetSchema.Column.class)).collect()) {
+            observed.add(read.convertToSAMRecord(header).getSAMString());
+        }
+        Assert.assertEquals(observed, expected);
+    }
+
     @Test(groups = "spark")
     public void testGetBamFragments() throws IOException {
         final Path fragmentDir = new Path(getToolTestDataDir(), "fragments_test");
@@ -0,0 +1,102 @@
+package org.broadinstitute.hellbender.engine.spark.datasources;
+
+import com.google.cloud.dataflow.sdk.options.PipelineOptions;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceMultiSource;
+import org.broadinstitute.hellbender.engine.datasources.ReferenceWindowFunctions;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.reference.ReferenceBases;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class ReferenceMappedTwoBitSourceUnitTest extends BaseTest {
+    private static String twoBitRefURL = publicTestDir + "large/human_g1k_v37.20.21.2bit";
+
+    @DataProvider(name = "intervals")
+    public Object[][] intervals() {
+        final int chr20End = 63025520;
+        return new Object[][]{
+                {new SimpleInterval("20:2-10")},
+                {new SimpleInterval("20:59990-60010")}, // the end of the leading Ns
+                {new SimpleInterval("20:4,000-5,000")},
+                {new SimpleInterval("20:1,000,001-1,000,001")},
+                {new SimpleInterval("21:9,411,190-9,411,300")},
+                {new SimpleInterval("20", chr20End - 100, chr20End + 100)}, // cropped at the contig end
+        };
+    }
+
+    @Test(dataProvider = "intervals")
+    public void testBasesMatchTwoBitSource(final SimpleInterval interval) throws IOException {
+        final ReferenceBases expected = new ReferenceTwoBitSource(null, twoBitRefURL).getReferenceBases(null, interval);
+        final ReferenceBases actual = new ReferenceMappedTwoBitSource(twoBitRefURL).getReferenceBases(null, interval);
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testRandomIntervalsMatchTwoBitSource() throws IOException {
+        final ReferenceTwoBitSource twoBitSource = new ReferenceTwoBitSource(null, twoBitRefURL);
+        final ReferenceMappedTwoBitSource mappedSource = new ReferenceMappedTwoBitSource(twoBitRefURL);
+        final Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            final String contig = random.nextBoolean() ? "20" : "21";
+            final int start = 1 + random.nextInt(45000000);
+            final SimpleInterval interval = new SimpleInterval(contig, start, start + random.nextInt(1000));
+            Assert.assertEquals(mappedSource.getReferenceBases(null, interval), twoBitSource.getReferenceBases(null, interval), interval.toString());
+        }
+    }
+
+    @Test
+    public void testDictionaryMatchesTwoBitSource() throws IOException {
+        final Map<String, Integer> expected = new ReferenceTwoBitSource(null, twoBitRefURL).getReferenceSequenceDictionary(null)
+                .getSequences().stream().collect(Collectors.toMap(SAMSequenceRecord::getSequenceName, SAMSequenceRecord::getSequenceLength));
+        final Map<String, Integer> actual = new ReferenceMappedTwoBitSource(twoBitRefURL).getReferenceSequenceDictionary(null)
+                .getSequences().stream().collect(Collectors.toMap(SAMSequenceRecord::getSequenceName, SAMSequenceRecord::getSequenceLength));
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testSerializesAsPath() throws IOException, ClassNotFoundException {
+        final ReferenceMappedTwoBitSource source = new ReferenceMappedTwoBitSource(twoBitRefURL);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(source);
+        }
+        // the reference itself is not serialized
+        Assert.assertTrue(bytes.size() < 1000);
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final ReferenceMappedTwoBitSource copy = (ReferenceMappedTwoBitSource) in.readObject();
+            final SimpleInterval interval = new SimpleInterval("20:1,000,001-1,000,100");
+            Assert.assertEquals(copy.getReferenceBases(null, interval), source.getReferenceBases(null, interval));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRequiresTwoBit() {
+        new ReferenceMappedTwoBitSource(publicTestDir + "large/human_g1k_v37.20.21.fasta");
+    }
+
+    @Test
+    public void testMultiSourceMapsLocalTwoBit() {
+        Assert.assertTrue(ReferenceMultiSource.isLocalTwoBit(twoBitRefURL));
+        Assert.assertFalse(ReferenceMultiSource.isLocalTwoBit(publicTestDir + "large/human_g1k_v37.20.21.fasta"));
+        Assert.assertFalse(ReferenceMultiSource.isLocalTwoBit("gs://bucket/human_g1k_v37.20.21.2bit"));
+        Assert.assertFalse(ReferenceMultiSource.isLocalTwoBit("hdfs://namenode/human_g1k_v37.20.21.2bit"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMultiSourceRejectsMappingAFasta() {
+        new ReferenceMultiSource((PipelineOptions) null, publicTestDir + "large/human_g1k_v37.20.21.fasta",
+                ReferenceWindowFunctions.IDENTITY_FUNCTION, true);
+    }
+}
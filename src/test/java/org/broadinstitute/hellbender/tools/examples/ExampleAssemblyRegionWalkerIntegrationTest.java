@@ -0,0 +1,39 @@
+package org.broadinstitute.hellbender.tools.examples;
+
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
+import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ExampleAssemblyRegionWalkerIntegrationTest extends CommandLineProgramTest {
+
+    private File runWalker(final int readShardThreads) {
+        final File output = createTempFile("testExampleAssemblyRegionWalker." + readShardThreads, ".txt");
+        // small read shards, so that the interval is split across many shards
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.add("-L 17:69000-70000");
+        args.addReference(new File(v37_chr17_1Mb_Reference));
+        args.addInput(new File(NA12878_chr17_1k_BAM));
+        args.add("-readShardSize 300");
+        args.add("-readShardThreads " + readShardThreads);
+        args.addOutput(output);
+        runCommandLine(args);
+        return output;
+    }
+
+    @DataProvider(name = "readShardThreads")
+    public Object[][] readShardThreads() {
+        return new Object[][] { {2}, {3}, {8} };
+    }
+
+    @Test(dataProvider = "readShardThreads")
+    public void testParallelTraversalMatchesSerial( final int readShardThreads ) throws IOException {
+        final File serial = runWalker(1);
+        final File parallel = runWalker(readShardThreads);
+        IntegrationTestSpec.assertEqualTextFiles(parallel, serial);
+    }
+}
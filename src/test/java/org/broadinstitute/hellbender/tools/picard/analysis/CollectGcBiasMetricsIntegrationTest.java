@@ -0,0 +1,84 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class CollectGcBiasMetricsIntegrationTest extends CommandLineProgramTest {
+    private static final File INPUT = new File(getTestDataDir(), "picard/analysis/CollectInsertSizeMetrics/insert_size_metrics_test.bam");
+
+    /** runs the tool, returning the detail and summary metrics files */
+    private File[] run(final File input, final File outDir, final String name, final String... extraArgs) {
+        final File output = new File(outDir, name + ".gc_bias.txt");
+        final File summary = new File(outDir, name + ".gc_bias_summary.txt");
+        final List<String> args = new ArrayList<>(Arrays.asList(
+                "--input", input.getAbsolutePath(),
+                "--output", output.getAbsolutePath(),
+                "--CHART_OUTPUT", new File(outDir, name + ".gc_bias.pdf").getAbsolutePath(),
+                "--SUMMARY_OUTPUT", summary.getAbsolutePath(),
+                "--reference", new File(hg19_chr1_1M_Reference).getAbsolutePath()));
+        args.addAll(Arrays.asList(extraArgs));
+        runCommandLine(args);
+        return new File[]{output, summary};
+    }
+
+    private static void assertSameMetrics(final File[] actual, final File[] expected) throws IOException {
+        for (int i = 0; i < expected.length; i++) {
+            IntegrationTestSpec.assertEqualTextFiles(actual[i], expected[i], "#");
+        }
+    }
+
+    @Test
+    public void testGcIndexMatchesCalculation() throws IOException {
+        final File outDir = BaseTest.createTempDir("testCollectGcBiasMetricsIndex");
+        final File indexDir = new File(outDir, "gcIndexes");
+        final File[] calculated = run(INPUT, outDir, "calculated");
+
+        // the first run builds the index, and the second reads it
+        final File[] built = run(INPUT, outDir, "built", "--GC_INDEX_DIRECTORY", indexDir.getAbsolutePath());
+        final String[] indexes = indexDir.list();
+        Assert.assertEquals(indexes.length, 1);
+        final long lastModified = new File(indexDir, indexes[0]).lastModified();
+        final File[] read = run(INPUT, outDir, "read", "--GC_INDEX_DIRECTORY", indexDir.getAbsolutePath());
+        Assert.assertEquals(new File(indexDir, indexes[0]).lastModified(), lastModified);
+
+        assertSameMetrics(built, calculated);
+        assertSameMetrics(read, calculated);
+    }
+
+    @Test
+    public void testThreadsMatchesSerial() throws IOException {
+        // the parallel mode queries each contig, so it needs an indexed copy of the input
+        final File outDir = BaseTest.createTempDir("testCollectGcBiasMetricsThreads");
+        final File input = new File(outDir, INPUT.getName());
+        Files.copy(INPUT.toPath(), input.toPath());
+        try (final SamReader reader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(input)) {
+            BAMIndexer.createIndex(reader, new File(input.getPath() + ".bai"));
+        }
+
+        final File[] serial = run(input, outDir, "serial");
+        final File[] parallel = run(input, outDir, "parallel", "--THREADS", "2");
+        final File[] parallelWithIndex = run(input, outDir, "parallelWithIndex", "--THREADS", "2",
+                "--GC_INDEX_DIRECTORY", new File(outDir, "gcIndexes").getAbsolutePath());
+        assertSameMetrics(parallel, serial);
+        assertSameMetrics(parallelWithIndex, serial);
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testThreadsRequiresIndex() {
+        run(INPUT, BaseTest.createTempDir("testCollectGcBiasMetricsUnindexed"), "unindexed", "--THREADS", "2");
+    }
+}
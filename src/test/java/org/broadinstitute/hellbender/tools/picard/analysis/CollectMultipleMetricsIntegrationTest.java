@@ -19,6 +19,8 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -58,6 +60,25 @@ public final class CollectMultipleMetricsIntegrationTest extends CommandLineProg
         validateInsertSizeMetrics(outBase, expectedInsertSizeResults);
     }
 
+    @Test(dataProvider="metricsTestFiles")
+    public void testPipelined(
+            final String fileName,
+            final String referenceName,
+            final String expectedInsertSizeResults) throws IOException {
+
+        ArgumentsBuilder args = new ArgumentsBuilder();
+        String outBase = setupMultipleCollector(args, fileName, referenceName);
+
+        args.add("--PROGRAM");
+        args.add("CollectInsertSizeMetrics");
+        args.add("--PIPELINED");
+        args.add("true");
+
+        this.runCommandLine(args.getArgsArray());
+
+        validateInsertSizeMetrics(outBase, expectedInsertSizeResults);
+    }
+
     private String setupMultipleCollector(
             final ArgumentsBuilder args,
             final String fileName,
@@ -110,6 +131,34 @@ public final class CollectMultipleMetricsIntegrationTest extends CommandLineProg
         public void finish() {}
     }
 
+    // A collector that fails partway through, to test that failures in pipelined program threads are reported
+    @CommandLineProgramProperties(programGroup= TestSparkProgramGroup.class,
+            summary="test failing collector", oneLineSummary = "test failing collector")
+    public static class TestFailingCollector extends TestCustomCollector {
+        @Override
+        protected void acceptRead(final SAMRecord rec, final ReferenceSequence ref) {
+            if (++count == 10) {
+                throw new IllegalStateException("failing collector");
+            }
+        }
+    }
+
+    // A collector that keeps each record as text, to test that pipelined programs all see the same, intact records
+    @CommandLineProgramProperties(programGroup= TestSparkProgramGroup.class,
+            summary="test recording collector", oneLineSummary = "test recording collector")
+    public static class TestRecordingCollector extends TestCustomCollector {
+        final List<String> records = new ArrayList<>();
+        @Override
+        protected void acceptRead(final SAMRecord rec, final ReferenceSequence ref) {
+            super.acceptRead(rec, ref);
+            records.add(rec.getSAMString());
+        }
+    }
+
+    private static CollectMultipleMetrics.ProgramInterface provide(final SinglePassSamProgram collector) {
+        return outbase -> collector;
+    }
+
     @Test(dataProvider="metricsTestFiles")
     public void testCustomCollectorAPI(
             final String fileName,
@@ -138,4 +187,76 @@ public final class CollectMultipleMetricsIntegrationTest extends CommandLineProg
         }
     }
 
+    @Test(dataProvider="metricsTestFiles")
+    public void testPipelinedCustomCollectors(
+            final String fileName,
+            final String referenceName,
+            final String expectedInsertSizeResults) throws IOException {
+        final TestCustomCollector firstCollector = new TestCustomCollector();
+        final TestCustomCollector secondCollector = new TestCustomCollector();
+
+        ArgumentsBuilder args = new ArgumentsBuilder();
+        setupMultipleCollector(args, fileName, referenceName);
+        args.add("--PIPELINED");
+        args.add("true");
+
+        CollectMultipleMetrics multipleCollectorTool = new CollectMultipleMetrics();
+        multipleCollectorTool.setProgramsToRun(Arrays.asList(provide(firstCollector), provide(secondCollector)));
+        multipleCollectorTool.instanceMain(args.getArgsArray());
+
+        Assert.assertEquals(firstCollector.count, 52L);
+        Assert.assertEquals(secondCollector.count, 52L);
+    }
+
+    @Test(dataProvider="metricsTestFiles")
+    public void testPipelinedCollectorsShareIntactRecords(
+            final String fileName,
+            final String referenceName,
+            final String expectedInsertSizeResults) throws IOException {
+        final TestRecordingCollector serialCollector = new TestRecordingCollector();
+        ArgumentsBuilder args = new ArgumentsBuilder();
+        setupMultipleCollector(args, fileName, referenceName);
+        CollectMultipleMetrics multipleCollectorTool = new CollectMultipleMetrics();
+        multipleCollectorTool.setProgramsToRun(Collections.singletonList(provide(serialCollector)));
+        multipleCollectorTool.instanceMain(args.getArgsArray());
+
+        final TestRecordingCollector firstCollector = new TestRecordingCollector();
+        final TestRecordingCollector secondCollector = new TestRecordingCollector();
+        args = new ArgumentsBuilder();
+        setupMultipleCollector(args, fileName, referenceName);
+        args.add("--PIPELINED");
+        args.add("true");
+        multipleCollectorTool = new CollectMultipleMetrics();
+        multipleCollectorTool.setProgramsToRun(Arrays.asList(provide(firstCollector), provide(secondCollector)));
+        multipleCollectorTool.instanceMain(args.getArgsArray());
+
+        Assert.assertEquals(serialCollector.records.size(), 52);
+        Assert.assertEquals(firstCollector.records, serialCollector.records);
+        Assert.assertEquals(secondCollector.records, serialCollector.records);
+    }
+
+    @Test
+    public void testPipelinedNoCollectors() throws IOException {
+        ArgumentsBuilder args = new ArgumentsBuilder();
+        setupMultipleCollector(args, "insert_size_metrics_test.bam", null);
+        args.add("--PIPELINED");
+        args.add("true");
+
+        CollectMultipleMetrics multipleCollectorTool = new CollectMultipleMetrics();
+        multipleCollectorTool.setProgramsToRun(Collections.emptyList());
+        multipleCollectorTool.instanceMain(args.getArgsArray());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testPipelinedCollectorFailure() throws IOException {
+        ArgumentsBuilder args = new ArgumentsBuilder();
+        setupMultipleCollector(args, "insert_size_metrics_test.bam", null);
+        args.add("--PIPELINED");
+        args.add("true");
+
+        CollectMultipleMetrics multipleCollectorTool = new CollectMultipleMetrics();
+        multipleCollectorTool.setProgramsToRun(Arrays.asList(provide(new TestCustomCollector()), provide(new TestFailingCollector())));
+        multipleCollectorTool.instanceMain(args.getArgsArray());
+    }
+
 }
@@ -0,0 +1,134 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public final class GcWindowIndexUnitTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T', 'N'};
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            // runs of Ns now and then, so that some windows have too many
+            bases[i] = random.nextInt(50) == 0 ? (byte)'N' : BASES[random.nextInt(BASES.length)];
+        }
+        return bases;
+    }
+
+    @DataProvider(name = "windows")
+    public Object[][] windows() {
+        return new Object[][] {
+                // contig length, window size
+                {0, 100},
+                {101, 100},
+                {102, 100},
+                {1000, 100},
+                {1000, 7},
+                {5000, 250},
+        };
+    }
+
+    @Test(dataProvider = "windows")
+    public void testCalculateAllGcs(final int length, final int windowSize) {
+        final byte[] bases = randomBases(new Random(length + windowSize), length);
+        final int[] windowsByGc = new int[GcWindowIndex.GC_VALUES];
+        final byte[] gcs = GcWindowIndex.calculateAllGcs(bases, windowSize, windowsByGc);
+        Assert.assertEquals(gcs.length, length + 1);
+
+        // count each window from scratch
+        final int[] expectedWindowsByGc = new int[GcWindowIndex.GC_VALUES];
+        for (int start = 0; start < gcs.length; start++) {
+            int expectedGc = 0;
+            if (start >= 1 && start < length - windowSize) {
+                int gcCount = 0;
+                int nCount = 0;
+                for (int i = start; i < start + windowSize; i++) {
+                    if (bases[i] == 'G' || bases[i] == 'C') gcCount++;
+                    else if (bases[i] == 'N') nCount++;
+                }
+                expectedGc = nCount > 4 ? -1 : gcCount * 100 / windowSize;
+                if (expectedGc >= 0) {
+                    expectedWindowsByGc[expectedGc]++;
+                }
+            }
+            Assert.assertEquals(gcs[start], expectedGc, "window at " + start);
+        }
+        Assert.assertEquals(windowsByGc, expectedWindowsByGc);
+    }
+
+    @Test
+    public void testOpenOrBuild() throws FileNotFoundException {
+        final File dir = createTempDir("GcWindowIndexUnitTest");
+        final File fasta = new File(dir, "reference.fasta");
+        final Random random = new Random(17);
+        final List<byte[]> contigBases = new ArrayList<>();
+        final SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        try (final PrintWriter writer = new PrintWriter(fasta)) {
+            for (int contig = 0; contig < 3; contig++) {
+                final byte[] bases = randomBases(random, 500 + 300 * contig);
+                contigBases.add(bases);
+                dictionary.addSequence(new SAMSequenceRecord("contig" + contig, bases.length));
+                writer.println(">contig" + contig);
+                // lower case, which the index should ignore
+                writer.println(new String(bases).toLowerCase());
+            }
+        }
+
+        final File indexDir = new File(dir, "gcIndexes");
+        final File indexFile = new File(indexDir, GcWindowIndex.indexName(fasta, dictionary, 50));
+        try (final GcWindowIndex index = GcWindowIndex.openOrBuild(indexDir, fasta, dictionary, 50)) {
+            Assert.assertTrue(indexFile.exists());
+            Assert.assertEquals(index.getWindowSize(), 50);
+            Assert.assertEquals(index.getNumberOfContigs(), contigBases.size());
+            Assert.assertTrue(index.matches(dictionary));
+            for (int contig = 0; contig < contigBases.size(); contig++) {
+                final int[] expectedWindowsByGc = new int[GcWindowIndex.GC_VALUES];
+                final byte[] expectedGcs = GcWindowIndex.calculateAllGcs(contigBases.get(contig), 50, expectedWindowsByGc);
+                Assert.assertEquals(index.getContigName(contig), "contig" + contig);
+                Assert.assertEquals(index.getWindowsByGc(contig), expectedWindowsByGc);
+                final ByteBuffer gcs = index.getGcs(contig);
+                final byte[] actualGcs = new byte[gcs.remaining()];
+                gcs.get(actualGcs);
+                Assert.assertEquals(actualGcs, expectedGcs);
+            }
+        }
+
+        // a second run reuses the index, and a different window size gets an index of its own
+        final long lastModified = indexFile.lastModified();
+        try (final GcWindowIndex index = GcWindowIndex.openOrBuild(indexDir, fasta, dictionary, 50)) {
+            Assert.assertEquals(index.getWindowSize(), 50);
+        }
+        Assert.assertEquals(indexFile.lastModified(), lastModified);
+        try (final GcWindowIndex index = GcWindowIndex.openOrBuild(indexDir, fasta, dictionary, 20)) {
+            Assert.assertEquals(index.getWindowSize(), 20);
+        }
+        Assert.assertEquals(indexDir.list((d, name) -> name.endsWith(".gcwindows")).length, 2);
+    }
+
+    @Test
+    public void testIndexNameDependsOnMd5s() {
+        final File fasta = new File("reference.fasta");
+        final SAMSequenceRecord contig1 = new SAMSequenceRecord("1", 1000);
+        contig1.setAttribute(SAMSequenceRecord.MD5_TAG, "f6b4870ef0a68d56d0a063ec02e002dd");
+        final SAMSequenceRecord contig2 = new SAMSequenceRecord("1", 1000);
+        contig2.setAttribute(SAMSequenceRecord.MD5_TAG, "00000000000000000000000000000000");
+        final String name1 = GcWindowIndex.indexName(fasta, new SAMSequenceDictionary(Arrays.asList(contig1)), 100);
+        final String name2 = GcWindowIndex.indexName(fasta, new SAMSequenceDictionary(Arrays.asList(contig2)), 100);
+        Assert.assertNotEquals(name1, name2);
+        Assert.assertTrue(name1.endsWith(".w100.gcwindows"));
+        Assert.assertEquals(GcWindowIndex.indexName(fasta, new SAMSequenceDictionary(Arrays.asList(contig1)), 100), name1);
+    }
+}
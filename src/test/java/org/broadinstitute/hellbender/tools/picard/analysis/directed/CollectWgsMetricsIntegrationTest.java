@@ -1,13 +1,18 @@
 package org.broadinstitute.hellbender.tools.picard.analysis.directed;
 
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.util.SequenceUtil;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
 import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 
 public final class CollectWgsMetricsIntegrationTest extends CommandLineProgramTest {
     private static final File TEST_DATA_DIR = new File(getTestDataDir(), "picard/analysis/directed/CollectWgsMetrics");
@@ -30,6 +35,43 @@ public final class CollectWgsMetricsIntegrationTest extends CommandLineProgramTe
         IntegrationTestSpec.assertEqualTextFiles(outfile, expectedFile, "#");
     }
 
+    @Test
+    public void testThreadsMatchesSerial() throws IOException {
+        // the parallel mode queries each contig, so it needs an indexed copy of the input
+        final File outDir = BaseTest.createTempDir("testCollectWgsMetricsThreads");
+        final File input = new File(outDir, "insert_size_metrics_test.bam");
+        Files.copy(new File(getTestDataDir(), "picard/analysis/CollectInsertSizeMetrics/insert_size_metrics_test.bam").toPath(), input.toPath());
+        try (final SamReader reader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(input)) {
+            BAMIndexer.createIndex(reader, new File(input.getPath() + ".bai"));
+        }
+
+        final File serialOutput = new File(outDir, "serial.metrics");
+        final File parallelOutput = new File(outDir, "parallel.metrics");
+        for (final File output : new File[]{serialOutput, parallelOutput}) {
+            final String[] args = {
+                    "--input", input.getAbsolutePath(),
+                    "--output", output.getAbsolutePath(),
+                    "--reference", new File(hg19_chr1_1M_Reference).getAbsolutePath(),
+                    "--INCLUDE_BQ_HISTOGRAM", "TRUE",
+                    "--THREADS", output == serialOutput ? "1" : "2"
+            };
+            runCommandLine(args);
+        }
+        IntegrationTestSpec.assertEqualTextFiles(parallelOutput, serialOutput, "#");
+    }
+
+    @Test(expectedExceptions = UserException.BadInput.class)
+    public void testThreadsRequiresIndex() {
+        final File outfile = BaseTest.createTempFile("testCollectWgsMetrics.unindexed", ".metrics");
+        final String[] args = {
+                "--input", new File(getTestDataDir(), "picard/analysis/CollectInsertSizeMetrics/insert_size_metrics_test.bam").getAbsolutePath(),
+                "--output", outfile.getAbsolutePath(),
+                "--reference", new File(hg19_chr1_1M_Reference).getAbsolutePath(),
+                "--THREADS", "2"
+        };
+        runCommandLine(args);
+    }
+
     @Test(expectedExceptions = SequenceUtil.SequenceListsDifferException.class)  //regression test for https://github.com/broadinstitute/gatk/issues/918
     public void testDictionaryValidation() {
         final File input = new File(TEST_DATA_DIR, "exome-read-counts-NA12878.bam");
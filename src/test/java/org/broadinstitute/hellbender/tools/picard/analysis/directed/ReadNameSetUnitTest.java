@@ -0,0 +1,45 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public final class ReadNameSetUnitTest extends BaseTest {
+
+    @Test
+    public void testAddAndClear() {
+        final ReadNameSet names = new ReadNameSet();
+        Assert.assertTrue(names.add("read1"));
+        Assert.assertTrue(names.add("read2"));
+        Assert.assertFalse(names.add("read1"));
+        // equal names needn't be the same object
+        Assert.assertFalse(names.add(new String("read2")));
+        Assert.assertEquals(names.size(), 2);
+
+        names.clear();
+        Assert.assertEquals(names.size(), 0);
+        Assert.assertTrue(names.add("read1"));
+        Assert.assertEquals(names.size(), 1);
+    }
+
+    @Test
+    public void testAgainstHashSet() {
+        final Random random = new Random(17);
+        final ReadNameSet names = new ReadNameSet();
+        // pileups of many sizes, so that the table grows, with plenty of repeated names
+        for (int locus = 0; locus < 200; locus++) {
+            final Set<String> expected = new HashSet<>();
+            names.clear();
+            final int pileupSize = random.nextInt(locus + 1) * 5;
+            for (int i = 0; i < pileupSize; i++) {
+                final String name = "H0164ALXX140820:2:1101:" + random.nextInt(pileupSize / 2 + 1);
+                Assert.assertEquals(names.add(name), expected.add(name), name);
+            }
+            Assert.assertEquals(names.size(), expected.size());
+        }
+    }
+}
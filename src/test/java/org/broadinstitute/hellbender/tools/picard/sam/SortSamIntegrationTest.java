@@ -30,6 +30,30 @@ public class SortSamIntegrationTest extends CommandLineProgramTest {
             final String referenceFileName,
             final String outputExtension,
             final String sortOrderName) throws Exception
+    {
+        sortAndCompare(inputFileName, expectedOutputFileName, referenceFileName, outputExtension, sortOrderName, new String[0]);
+    }
+
+    @Test(dataProvider="sortbams")
+    public void testSortBAMsInParallel(
+            final String inputFileName,
+            final String expectedOutputFileName,
+            final String referenceFileName,
+            final String outputExtension,
+            final String sortOrderName) throws Exception
+    {
+        // keep few records in RAM, so that the sort spills many temporary files and merges them
+        sortAndCompare(inputFileName, expectedOutputFileName, referenceFileName, outputExtension, sortOrderName,
+                new String[]{"--MAX_RECORDS_IN_RAM", "3", "--SORTING_THREADS", "3"});
+    }
+
+    private void sortAndCompare(
+            final String inputFileName,
+            final String expectedOutputFileName,
+            final String referenceFileName,
+            final String outputExtension,
+            final String sortOrderName,
+            final String[] extraArgs) throws Exception
     {
         final File inputBam = new File(getTestDataDir(), inputFileName);
         final File expectedBam = new File(getTestDataDir(), expectedOutputFileName);
@@ -44,6 +68,9 @@ public class SortSamIntegrationTest extends CommandLineProgramTest {
         }
         args.add("--SORT_ORDER");
         args.add(sortOrderName);
+        for (final String arg : extraArgs) {
+            args.add(arg);
+        }
 
         this.runCommandLine(args.getArgsArray());
 
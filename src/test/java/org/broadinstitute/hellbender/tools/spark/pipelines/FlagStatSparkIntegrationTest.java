@@ -1,7 +1,12 @@
 package org.broadinstitute.hellbender.tools.spark.pipelines;
 
 import com.google.common.collect.Lists;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
 import org.broadinstitute.hellbender.utils.test.ArgumentsBuilder;
 import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
 import org.testng.Assert;
@@ -9,6 +14,8 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public final class FlagStatSparkIntegrationTest extends CommandLineProgramTest {
 
@@ -70,6 +77,37 @@ public final class FlagStatSparkIntegrationTest extends CommandLineProgramTest {
         IntegrationTestSpec.assertMatchingFiles(Lists.newArrayList(outputFile), Lists.newArrayList(getToolTestDataDir() +"/"+ "expectedStats.chr1_1.txt"), false, null);
     }
 
+    @Test(groups = "spark")
+    public void testMalformedBamReadsAreNotCounted() throws IOException {
+        // a read without a read group isn't well formed, so a BAM with one extra such read gives the same counts
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(1, 0, 1000, 1);
+        final List<GATKRead> wellformedReads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final GATKRead read = ArtificialReadUtils.createArtificialRead(header, "read" + i, 0, 100 + 10 * i, 50);
+            read.setReadGroup(header.getReadGroups().get(0).getId());
+            wellformedReads.add(read);
+        }
+        final List<GATKRead> allReads = new ArrayList<>(wellformedReads);
+        allReads.add(ArtificialReadUtils.createArtificialRead(header, "noReadGroup", 0, 200, 50));
+
+        final File wellformedStats = runOnBam(header, wellformedReads, "wellformed");
+        final File allStats = runOnBam(header, allReads, "all");
+        IntegrationTestSpec.assertEqualTextFiles(allStats, wellformedStats);
+    }
+
+    private File runOnBam(final SAMFileHeader header, final List<GATKRead> reads, final String name) {
+        final File bam = createTempFile("flagStatTest." + name, ".bam");
+        try (final SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(header, false, bam)) {
+            reads.forEach(read -> writer.addAlignment(read.convertToSAMRecord(header)));
+        }
+        final File outputFile = createTempFile("flagStatTest." + name, ".txt");
+        final ArgumentsBuilder args = new ArgumentsBuilder();
+        args.addInput(bam);
+        args.addOutput(outputFile);
+        this.runCommandLine(args.getArgsArray());
+        return outputFile;
+    }
+
     @Test(groups = "spark")
     public void testNoNPRWhenOutputIsUnspecified(){
         ArgumentsBuilder args = new ArgumentsBuilder();
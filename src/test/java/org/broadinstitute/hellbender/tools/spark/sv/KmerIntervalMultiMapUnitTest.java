@@ -0,0 +1,119 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.broadinstitute.hellbender.utils.BaseUtils;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+/**
+ * Unit tests for KmerIntervalMultiMap.
+ */
+public class KmerIntervalMultiMapUnitTest extends BaseTest {
+    private static final int K = 51;
+    private static final int N_KMERS = 5000;
+
+    private static SVKmer randomKmer( final Random random ) {
+        final StringBuilder sb = new StringBuilder(K);
+        for ( int idx = 0; idx != K; ++idx ) {
+            sb.append(BaseUtils.BASE_CHARS[random.nextInt(4)]);
+        }
+        return SVKmerizer.toKmer(sb.toString()).canonical(K);
+    }
+
+    /** some kmers in several intervals, to be compared with a map of sets */
+    private static Map<SVKmer, Set<Integer>> randomKmerIntervals( final Random random ) {
+        final Map<SVKmer, Set<Integer>> expected = new HashMap<>();
+        for ( int kmerNo = 0; kmerNo != N_KMERS; ++kmerNo ) {
+            final Set<Integer> intervalIds = new HashSet<>();
+            final int nIntervals = 1 + random.nextInt(3);
+            while ( intervalIds.size() < nIntervals ) intervalIds.add(random.nextInt(1000));
+            expected.put(randomKmer(random), intervalIds);
+        }
+        return expected;
+    }
+
+    private static void assertMapContents( final KmerIntervalMultiMap multiMap,
+                                           final Map<SVKmer, Set<Integer>> expected, final Random random ) {
+        int size = 0;
+        for ( final Map.Entry<SVKmer, Set<Integer>> entry : expected.entrySet() ) {
+            Assert.assertTrue(multiMap.containsKey(entry.getKey()));
+            final Set<Integer> actual = new HashSet<>();
+            for ( final int intervalId : multiMap.getIntervalIds(entry.getKey()) ) {
+                Assert.assertTrue(actual.add(intervalId));
+            }
+            Assert.assertEquals(actual, entry.getValue());
+            size += actual.size();
+        }
+        Assert.assertEquals(multiMap.size(), size);
+        for ( int idx = 0; idx != 100; ++idx ) {
+            final SVKmer kmer = randomKmer(random);
+            if ( !expected.containsKey(kmer) ) {
+                Assert.assertFalse(multiMap.containsKey(kmer));
+                Assert.assertEquals(multiMap.getIntervalIds(kmer).length, 0);
+            }
+        }
+    }
+
+    @Test
+    public void testAddAndFind() {
+        final Random random = new Random(1);
+        final Map<SVKmer, Set<Integer>> expected = randomKmerIntervals(random);
+        // start small to test resizing
+        final KmerIntervalMultiMap multiMap = new KmerIntervalMultiMap(10);
+        for ( final Map.Entry<SVKmer, Set<Integer>> entry : expected.entrySet() ) {
+            for ( final int intervalId : entry.getValue() ) {
+                Assert.assertTrue(multiMap.add(entry.getKey(), intervalId));
+                Assert.assertFalse(multiMap.add(new SVKmer(entry.getKey()), intervalId));
+            }
+        }
+        assertMapContents(multiMap, expected, random);
+    }
+
+    @Test
+    public void testFromKmerAndIntervals() {
+        final Random random = new Random(2);
+        final Map<SVKmer, Set<Integer>> expected = randomKmerIntervals(random);
+        final List<FindBreakpointEvidenceSpark.KmerAndInterval> kmerAndIntervals = new ArrayList<>();
+        for ( final Map.Entry<SVKmer, Set<Integer>> entry : expected.entrySet() ) {
+            for ( final int intervalId : entry.getValue() ) {
+                kmerAndIntervals.add(new FindBreakpointEvidenceSpark.KmerAndInterval(entry.getKey(), intervalId));
+            }
+        }
+        assertMapContents(new KmerIntervalMultiMap(kmerAndIntervals), expected, random);
+    }
+
+    @Test
+    public void testSerialization() {
+        final Random random = new Random(3);
+        final Map<SVKmer, Set<Integer>> expected = randomKmerIntervals(random);
+        final KmerIntervalMultiMap multiMap = new KmerIntervalMultiMap(expected.size());
+        for ( final Map.Entry<SVKmer, Set<Integer>> entry : expected.entrySet() ) {
+            entry.getValue().forEach(intervalId -> multiMap.add(entry.getKey(), intervalId));
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Output out = new Output(bos);
+        final Kryo kryo = new Kryo();
+        kryo.writeClassAndObject(out, multiMap);
+        out.flush();
+
+        // just the two longs and a one-byte varint interval ID per entry, or thereabouts
+        Assert.assertTrue(bos.size() < 20*multiMap.size() + 100);
+
+        final Input in = new Input(new ByteArrayInputStream(bos.toByteArray()));
+        final KmerIntervalMultiMap multiMap2 = (KmerIntervalMultiMap)kryo.readClassAndObject(in);
+        assertMapContents(multiMap2, expected, random);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeIntervalId() {
+        new KmerIntervalMultiMap(10).add(randomKmer(new Random(4)), -1);
+    }
+}
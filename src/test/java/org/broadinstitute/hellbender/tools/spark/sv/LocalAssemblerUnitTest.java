@@ -0,0 +1,150 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import org.broadinstitute.hellbender.utils.BaseUtils;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for LocalAssembler.
+ */
+public class LocalAssemblerUnitTest extends BaseTest {
+    private static final int K = 51;
+    private static final int READ_LENGTH = 150;
+
+    private static String randomSequence( final Random random, final int length ) {
+        final StringBuilder sb = new StringBuilder(length);
+        for ( int idx = 0; idx != length; ++idx ) {
+            sb.append(BaseUtils.BASE_CHARS[random.nextInt(4)]);
+        }
+        return sb.toString();
+    }
+
+    private static String reverseComplement( final String sequence ) {
+        return new String(BaseUtils.simpleReverseComplement(sequence.getBytes()));
+    }
+
+    /** reads tiling the sequence every step bases, in random orientations, a third of them with an error */
+    private static List<byte[]> tileFastqRecords( final Random random, final String sequence, final int step ) {
+        final List<byte[]> fastqRecords = new ArrayList<>();
+        for ( int start = 0; start + READ_LENGTH <= sequence.length(); start += step ) {
+            final char[] bases = sequence.substring(start, start + READ_LENGTH).toCharArray();
+            if ( random.nextInt(3) == 0 ) {
+                final int errorIdx = random.nextInt(READ_LENGTH);
+                bases[errorIdx] = bases[errorIdx] == 'A' ? 'C' : 'A';
+            }
+            String read = new String(bases);
+            if ( random.nextBoolean() ) read = reverseComplement(read);
+            final StringBuilder quals = new StringBuilder();
+            for ( int idx = 0; idx != READ_LENGTH; ++idx ) quals.append('I');
+            fastqRecords.add(("@read" + start + "\n" + read + "\n+\n" + quals + "\n").getBytes());
+        }
+        return fastqRecords;
+    }
+
+    private static List<String> getContigSequences( final LocalAssembler.AssemblyResult result ) {
+        Assert.assertNotNull(result.assembledContigs, result.runtimeInfo.toString());
+        Assert.assertEquals(result.runtimeInfo.returnStatus, ExternalCommandlineProgramModule.RuntimeInfo.ReturnStatus.SUCCESS);
+        final List<String> sequences = new ArrayList<>();
+        for ( final Tuple2<ContigsCollection.ContigID, ContigsCollection.ContigSequence> contig : result.assembledContigs.getContents() ) {
+            Assert.assertTrue(contig._1().toString().startsWith(">contig-"));
+            sequences.add(contig._2().toString());
+        }
+        return sequences;
+    }
+
+    @Test
+    public void testAssembleTiledReadsWithErrors() {
+        final Random random = new Random(1);
+        final String sequence = randomSequence(random, 2000);
+        final List<byte[]> fastqRecords = tileFastqRecords(random, sequence, 10);
+        Collections.shuffle(fastqRecords, random);
+
+        final List<String> contigs = getContigSequences(new LocalAssembler(K, 2, 150).assembleFastqRecords(fastqRecords));
+        // the first and last bases are only covered by a single read, so they're not in the assembly
+        Assert.assertEquals(contigs.size(), 1);
+        final String contig = contigs.get(0);
+        Assert.assertTrue(sequence.contains(contig) || sequence.contains(reverseComplement(contig)));
+        Assert.assertTrue(contig.length() > sequence.length() - 2 * READ_LENGTH / 10);
+    }
+
+    @Test
+    public void testAssembleBreaksAtRepeat() {
+        final Random random = new Random(2);
+        // a repeat longer than K makes a branch in the graph
+        final String repeat = randomSequence(random, 100);
+        final String left = randomSequence(random, 500);
+        final String middle = randomSequence(random, 500);
+        final String right = randomSequence(random, 500);
+        final String sequence = left + repeat + middle + repeat + right;
+
+        // with a single copy of the sequence only the kmers of the repeat are seen twice
+        final List<String> contigs = getContigSequences(new LocalAssembler(K, 2, 0).assemble(
+                Collections.singletonList(sequence.getBytes())));
+        Assert.assertEquals(contigs.size(), 1);
+        Assert.assertTrue(contigs.get(0).equals(repeat) || contigs.get(0).equals(reverseComplement(repeat)));
+
+        final List<byte[]> twoCopies = new ArrayList<>();
+        twoCopies.add(sequence.getBytes());
+        twoCopies.add(reverseComplement(sequence).getBytes());
+        final List<String> repeatContigs = getContigSequences(new LocalAssembler(K, 2, 0).assemble(twoCopies));
+        Assert.assertTrue(repeatContigs.size() > 1);
+        for ( final String contig : repeatContigs ) {
+            Assert.assertTrue(sequence.contains(contig) || sequence.contains(reverseComplement(contig)), contig);
+        }
+        Assert.assertTrue(repeatContigs.contains(repeat) || repeatContigs.contains(reverseComplement(repeat)));
+    }
+
+    @Test
+    public void testMinContigLength() {
+        final Random random = new Random(3);
+        final String sequence = randomSequence(random, 300);
+        final List<byte[]> twoCopies = new ArrayList<>();
+        twoCopies.add(sequence.getBytes());
+        twoCopies.add(sequence.getBytes());
+        Assert.assertEquals(getContigSequences(new LocalAssembler(K, 2, 300).assemble(twoCopies)).size(), 1);
+        Assert.assertTrue(getContigSequences(new LocalAssembler(K, 2, 301).assemble(twoCopies)).isEmpty());
+    }
+
+    @Test
+    public void testRuntimeInfo() {
+        final LocalAssembler.AssemblyResult result =
+                new LocalAssembler(K, 2, 0).assemble(Collections.singletonList("ACGT".getBytes()));
+        Assert.assertEquals(result.runtimeInfo.moduleName, LocalAssembler.MODULE_NAME);
+        Assert.assertTrue(result.runtimeInfo.stdoutMsg.contains(" ms"));
+    }
+
+    @Test
+    public void testMaxKmers() {
+        final Random random = new Random(4);
+        final String sequence = randomSequence(random, 300);
+        final List<byte[]> twoCopies = new ArrayList<>();
+        twoCopies.add(sequence.getBytes());
+        twoCopies.add(sequence.getBytes());
+        final int nKmers = 2 * (sequence.length() - K + 1);
+        Assert.assertEquals(getContigSequences(new LocalAssembler(K, 2, 0, nKmers).assemble(twoCopies)).size(), 1);
+
+        final LocalAssembler.AssemblyResult result = new LocalAssembler(K, 2, 0, nKmers - 1).assemble(twoCopies);
+        Assert.assertNull(result.assembledContigs);
+        Assert.assertEquals(result.runtimeInfo.returnStatus,
+                ExternalCommandlineProgramModule.RuntimeInfo.ReturnStatus.PGFAIL);
+        Assert.assertTrue(result.runtimeInfo.stderrMsg.contains("more than the limit"));
+    }
+
+    @Test
+    public void testGetSequence() {
+        Assert.assertEquals(new String(LocalAssembler.getSequence("@read/1\nACGTN\n+\nIIIII\n".getBytes())), "ACGTN");
+        Assert.assertEquals(new String(LocalAssembler.getSequence("@read".getBytes())), "");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEvenK() {
+        new LocalAssembler(50, 2, 0);
+    }
+}
@@ -0,0 +1,121 @@
+package org.broadinstitute.hellbender.tools.spark.sv;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+/**
+ * Unit tests for QNameIntervalMultiMap.
+ */
+public class QNameIntervalMultiMapUnitTest extends BaseTest {
+    private static final int N_QNAMES = 5000;
+
+    private static String randomQName( final Random random ) {
+        return "HWI-ST" + random.nextInt(1000) + ":8:" + random.nextInt(100) + ":" + random.nextInt(20000) +
+                ":" + random.nextInt(200000);
+    }
+
+    /** some names in several intervals, to be compared with a map of sets */
+    private static Map<String, Set<Integer>> randomQNameIntervals( final Random random ) {
+        final Map<String, Set<Integer>> expected = new HashMap<>();
+        for ( int qNameNo = 0; qNameNo != N_QNAMES; ++qNameNo ) {
+            final Set<Integer> intervalIds = new HashSet<>();
+            final int nIntervals = 1 + random.nextInt(3);
+            while ( intervalIds.size() < nIntervals ) intervalIds.add(random.nextInt(1000));
+            expected.put(randomQName(random), intervalIds);
+        }
+        return expected;
+    }
+
+    private static void assertMapContents( final QNameIntervalMultiMap multiMap,
+                                           final Map<String, Set<Integer>> expected, final Random random ) {
+        int size = 0;
+        for ( final Map.Entry<String, Set<Integer>> entry : expected.entrySet() ) {
+            final Set<Integer> actual = new HashSet<>();
+            for ( final int intervalId : multiMap.getIntervalIds(entry.getKey()) ) {
+                Assert.assertTrue(actual.add(intervalId));
+            }
+            Assert.assertEquals(actual, entry.getValue());
+            size += actual.size();
+        }
+        Assert.assertEquals(multiMap.size(), size);
+        for ( int idx = 0; idx != 100; ++idx ) {
+            final String qName = randomQName(random);
+            if ( !expected.containsKey(qName) ) Assert.assertEquals(multiMap.getIntervalIds(qName).length, 0);
+        }
+    }
+
+    @Test
+    public void testAddAndFind() {
+        final Random random = new Random(1);
+        final Map<String, Set<Integer>> expected = randomQNameIntervals(random);
+        // start small to test resizing, of both the table and the names
+        final QNameIntervalMultiMap multiMap = new QNameIntervalMultiMap(10);
+        for ( final Map.Entry<String, Set<Integer>> entry : expected.entrySet() ) {
+            for ( final int intervalId : entry.getValue() ) {
+                Assert.assertTrue(multiMap.add(entry.getKey(), intervalId));
+                Assert.assertFalse(multiMap.add(new String(entry.getKey()), intervalId));
+            }
+        }
+        assertMapContents(multiMap, expected, random);
+        Assert.assertEquals(multiMap.getIntervalIds("").length, 0);
+        Assert.assertEquals(multiMap.getIntervalIds("HWI-ST").length, 0);
+    }
+
+    @Test
+    public void testFromQNameAndIntervals() {
+        final Random random = new Random(2);
+        final Map<String, Set<Integer>> expected = randomQNameIntervals(random);
+        final List<FindBreakpointEvidenceSpark.QNameAndInterval> qNameAndIntervals = new ArrayList<>();
+        for ( final Map.Entry<String, Set<Integer>> entry : expected.entrySet() ) {
+            for ( final int intervalId : entry.getValue() ) {
+                qNameAndIntervals.add(new FindBreakpointEvidenceSpark.QNameAndInterval(entry.getKey(), intervalId));
+            }
+        }
+        assertMapContents(new QNameIntervalMultiMap(qNameAndIntervals), expected, random);
+    }
+
+    @Test
+    public void testSerialization() {
+        final Random random = new Random(3);
+        final Map<String, Set<Integer>> expected = randomQNameIntervals(random);
+        final QNameIntervalMultiMap multiMap = new QNameIntervalMultiMap(expected.size());
+        int qNamesLength = 0;
+        for ( final Map.Entry<String, Set<Integer>> entry : expected.entrySet() ) {
+            entry.getValue().forEach(intervalId -> multiMap.add(entry.getKey(), intervalId));
+            qNamesLength += entry.getKey().length() + 1;
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Output out = new Output(bos);
+        final Kryo kryo = new Kryo();
+        kryo.writeClassAndObject(out, multiMap);
+        out.flush();
+
+        // each name is written once, no matter how many intervals it's in
+        Assert.assertTrue(bos.size() < qNamesLength + 6*multiMap.size() + 100);
+
+        final Input in = new Input(new ByteArrayInputStream(bos.toByteArray()));
+        final QNameIntervalMultiMap multiMap2 = (QNameIntervalMultiMap)kryo.readClassAndObject(in);
+        assertMapContents(multiMap2, expected, random);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNonAsciiQName() {
+        new QNameIntervalMultiMap(10).add("read\u00e9", 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testLongQName() {
+        final char[] qName = new char[256];
+        Arrays.fill(qName, 'A');
+        new QNameIntervalMultiMap(10).add(new String(qName), 0);
+    }
+}
@@ -1,12 +1,16 @@
 package org.broadinstitute.hellbender.tools.spark.transforms.markduplicates;
 
 import htsjdk.samtools.SAMFileHeader;
+import org.apache.spark.SparkException;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.cmdline.argumentcollections.OpticalDuplicatesArgumentCollection;
 import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
 import org.broadinstitute.hellbender.engine.spark.datasources.ReadsSparkSource;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.read.ReadUtils;
 import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesScoringStrategy;
 import org.broadinstitute.hellbender.utils.read.markduplicates.OpticalDuplicateFinder;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
@@ -16,6 +20,9 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class MarkDuplicatesSparkUnitTest extends BaseTest {
     @DataProvider(name = "md")
@@ -48,4 +55,68 @@ public class MarkDuplicatesSparkUnitTest extends BaseTest {
         Assert.assertEquals(dupes.count(), dupsExpected);
     }
 
+    @Test(dataProvider = "md", groups = "spark")
+    public void markDupesWithMateCigarTest(final String input, final long totalExpected, final long dupsExpected) throws IOException {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+
+        ReadsSparkSource readSource = new ReadsSparkSource(ctx);
+        SAMFileHeader header = readSource.getHeader(input, null, null);
+        final List<GATKRead> reads = withMateCigars(readSource.getParallelReads(input, null).collect());
+        final OpticalDuplicateFinder finder = new OpticalDuplicateFinder();
+
+        // several partitions, so that flags are joined back across partitions
+        final List<GATKRead> expected = MarkDuplicatesSpark.mark(ctx.parallelize(copies(reads), 3), header,
+                MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, finder, 2).collect();
+        final List<GATKRead> actual = MarkDuplicatesSpark.mark(ctx.parallelize(copies(reads), 3), header,
+                MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, finder, 2, true).collect();
+
+        Assert.assertEquals(actual.size(), totalExpected);
+        Assert.assertEquals(actual.stream().filter(GATKRead::isDuplicate).count(), dupsExpected);
+        // the input order is kept
+        for (int i = 0; i < reads.size(); i++) {
+            Assert.assertEquals(actual.get(i).getName(), reads.get(i).getName());
+            Assert.assertEquals(actual.get(i).getStart(), reads.get(i).getStart());
+        }
+        Assert.assertEquals(duplicateStates(actual), duplicateStates(expected));
+    }
+
+    @Test(groups = "spark", expectedExceptions = UserException.MalformedRead.class)
+    public void markDupesWithMissingMateCigarTest() throws Throwable {
+        JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader();
+        final List<GATKRead> pair = ArtificialReadUtils.createPair(header, "N", 20, 100, 200, true, false);
+        try {
+            MarkDuplicatesSpark.mark(ctx.parallelize(pair, 1), header,
+                    MarkDuplicatesScoringStrategy.SUM_OF_BASE_QUALITIES, new OpticalDuplicateFinder(), 1, true).collect();
+        } catch (final SparkException e) {
+            throw e.getCause();
+        }
+    }
+
+    // adds the MC attribute to each read whose mate is among the reads
+    private static List<GATKRead> withMateCigars(final List<GATKRead> reads) {
+        final Map<String, List<GATKRead>> byName = reads.stream().collect(Collectors.groupingBy(GATKRead::getName));
+        for (final GATKRead read : reads) {
+            for (final GATKRead other : byName.get(read.getName())) {
+                if (other != read && !ReadUtils.isNonPrimary(other) && other.isFirstOfPair() != read.isFirstOfPair() && ReadUtils.readHasMappedMate(read)) {
+                    read.setAttribute("MC", other.getCigar().toString());
+                }
+            }
+        }
+        return reads;
+    }
+
+    private static List<GATKRead> copies(final List<GATKRead> reads) {
+        return reads.stream().map(GATKRead::copy).collect(Collectors.toList());
+    }
+
+    // read name, flags and optical duplicate count (absent counted as 0) of each read, in a canonical order
+    private static List<String> duplicateStates(final List<GATKRead> reads) {
+        return reads.stream()
+                .map(read -> read.getName() + " " + ReadUtils.getSAMFlagsForRead(read) + " " + read.getStart() + " " + read.isDuplicate() + " " +
+                        (read.hasAttribute(MarkDuplicatesSparkUtils.OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME) ?
+                                read.getAttributeAsInteger(MarkDuplicatesSparkUtils.OPTICAL_DUPLICATE_TOTAL_ATTRIBUTE_NAME) : 0))
+                .sorted()
+                .collect(Collectors.toList());
+    }
 }
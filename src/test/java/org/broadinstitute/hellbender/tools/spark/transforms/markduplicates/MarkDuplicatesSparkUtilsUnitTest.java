@@ -9,16 +9,19 @@ import org.apache.spark.api.java.JavaSparkContext;
 import org.broadinstitute.hellbender.engine.spark.SparkContextFactory;
 import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
 import org.broadinstitute.hellbender.utils.read.GATKRead;
-import org.broadinstitute.hellbender.utils.read.markduplicates.ReadsKey;
+import org.broadinstitute.hellbender.utils.read.markduplicates.BinaryReadsKey;
+import org.broadinstitute.hellbender.utils.read.markduplicates.PairedEnds;
 import org.broadinstitute.hellbender.utils.test.BaseTest;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import scala.Tuple2;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 public class MarkDuplicatesSparkUtilsUnitTest extends BaseTest {
     @Test(groups = "spark")
@@ -50,23 +53,145 @@ public class MarkDuplicatesSparkUtilsUnitTest extends BaseTest {
         GATKRead read4 = ArtificialReadUtils.createArtificialRead(header, "N", 0, 4, 20);
         read4.setReadGroup(getReadGroupId(header, 1));
 
-        String key1 = ReadsKey.keyForRead(header, read1);
-        String key2 = ReadsKey.keyForRead(header, read2);
-        String key3 = ReadsKey.keyForRead(header, read3);
-        String key4 = ReadsKey.keyForRead(header, read4);
+        BinaryReadsKey.Encoder keys = new BinaryReadsKey.Encoder(header);
+        BinaryReadsKey key1 = keys.keyForRead(read1);
+        BinaryReadsKey key2 = keys.keyForRead(read2);
 
-        Assert.assertEquals("ReadGroup0|N", key1);
-        Assert.assertEquals("ReadGroup1|N", key2);
-        Assert.assertEquals("ReadGroup0|N", key3);
-        Assert.assertEquals("ReadGroup1|N", key4);
+        Assert.assertEquals(keys.keyForRead(read3), key1);
+        Assert.assertEquals(keys.keyForRead(read4), key2);
+        Assert.assertNotEquals(key1, key2);
 
         JavaSparkContext ctx = SparkContextFactory.getTestSparkContext();
         JavaRDD<GATKRead> reads = ctx.parallelize(ImmutableList.of(read1, read2, read3, read4), 1);
-        JavaPairRDD<String, Iterable<GATKRead>> groupedReads = MarkDuplicatesSparkUtils.spanReadsByKey(header, reads);
+        JavaPairRDD<BinaryReadsKey, Iterable<GATKRead>> groupedReads = MarkDuplicatesSparkUtils.spanReadsByKey(header, reads);
         Assert.assertEquals(groupedReads.collect(),
                 ImmutableList.of(pairIterable(key1, read1, read3), pairIterable(key2, read2, read4)));
     }
 
+    @Test
+    public void testSplitByReadKey() {
+        SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(1, 1, 1000, 2);
+        GATKRead read1 = ArtificialReadUtils.createArtificialRead(header, "N", 0, 1, 20);
+        read1.setReadGroup(getReadGroupId(header, 0));
+        GATKRead read2 = ArtificialReadUtils.createArtificialRead(header, "M", 0, 2, 20);
+        read2.setReadGroup(getReadGroupId(header, 0));
+        GATKRead read3 = ArtificialReadUtils.createArtificialRead(header, "N", 0, 3, 20);
+        read3.setReadGroup(getReadGroupId(header, 0));
+        GATKRead read4 = ArtificialReadUtils.createArtificialRead(header, "N", 0, 4, 20);
+        read4.setReadGroup(getReadGroupId(header, 1));
+
+        Assert.assertEquals(MarkDuplicatesSparkUtils.splitByReadKey(Collections.emptyList()), Collections.emptyList());
+        final List<GATKRead> sameName = ImmutableList.of(read1, read3);
+        Assert.assertEquals(MarkDuplicatesSparkUtils.splitByReadKey(sameName), ImmutableList.of(sameName));
+        // as if the keys of different names or read groups had collided
+        Assert.assertEquals(MarkDuplicatesSparkUtils.splitByReadKey(ImmutableList.of(read1, read2, read3, read4)),
+                ImmutableList.of(ImmutableList.of(read1, read3), ImmutableList.of(read2), ImmutableList.of(read4)));
+    }
+
+    @Test
+    public void testBinaryReadsKeyPartitioner() {
+        SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(1, 1, 100000, 1);
+        final BinaryReadsKey.Encoder encoder = new BinaryReadsKey.Encoder(header);
+        final int numPartitions = 7;
+        final BinaryReadsKeyPartitioner partitioner = new BinaryReadsKeyPartitioner(numPartitions);
+        final int[] counts = new int[numPartitions];
+        for (int start = 1; start <= 7000; start++) {
+            final GATKRead read = ArtificialReadUtils.createArtificialRead(header, "N", 0, start, 20);
+            final BinaryReadsKey key = encoder.keyForFragment(read);
+            final int partition = partitioner.getPartition(key);
+            Assert.assertEquals(partitioner.getPartition(encoder.keyForFragment(read.copy())), partition);
+            counts[partition]++;
+        }
+        // keys differing only in position spread over all partitions
+        for (final int count : counts) {
+            Assert.assertTrue(count > 800 && count < 1200, Arrays.toString(counts));
+        }
+        Assert.assertEquals(partitioner, new BinaryReadsKeyPartitioner(numPartitions));
+    }
+
+    @Test
+    public void testMakeStub() {
+        SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(1, 1, 1000, 1);
+        GATKRead read = ArtificialReadUtils.createArtificialRead(header, "N", 0, 10, 20);
+        read.setReadGroup(getReadGroupId(header, 0));
+        read.setIsPaired(true);
+        read.setMatePosition(read.getContig(), 100);
+        read.setIsReverseStrand(true);
+        read.setIsDuplicate(true);
+        read.setAttribute("XX", "x");
+
+        final GATKRead stub = MarkDuplicatesSparkUtils.makeStub(read, 42);
+        Assert.assertEquals(stub.getName(), read.getName());
+        Assert.assertEquals(stub.getContig(), read.getContig());
+        Assert.assertEquals(stub.getStart(), read.getStart());
+        Assert.assertEquals(stub.getCigar(), read.getCigar());
+        Assert.assertEquals(stub.getMateContig(), read.getMateContig());
+        Assert.assertEquals(stub.getMateStart(), read.getMateStart());
+        Assert.assertEquals(stub.isReverseStrand(), read.isReverseStrand());
+        Assert.assertEquals(stub.getReadGroup(), read.getReadGroup());
+        Assert.assertFalse(stub.isDuplicate());
+        Assert.assertEquals(stub.getLength(), 0);
+        Assert.assertFalse(stub.hasAttribute("XX"));
+        Assert.assertEquals(stub.getAttributeAsInteger("ds").intValue(), 42);
+
+        // the read itself is untouched
+        Assert.assertTrue(read.isDuplicate());
+        Assert.assertEquals(read.getLength(), 20);
+        Assert.assertFalse(read.hasAttribute("ds"));
+    }
+
+    @Test
+    public void testKeyForPairedEndsFromMateCigar() {
+        SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(2, 1, 1000, 1);
+        final BinaryReadsKey.Encoder encoder = new BinaryReadsKey.Encoder(header);
+        final Random random = new Random(17);
+        final String[] cigars = {"20M", "5S15M", "15M5S", "2H18M", "3S10M2D7M4H"};
+        for (int i = 0; i < 500; i++) {
+            final GATKRead read1 = ArtificialReadUtils.createArtificialRead(header, cigars[random.nextInt(cigars.length)]);
+            final GATKRead read2 = ArtificialReadUtils.createArtificialRead(header, cigars[random.nextInt(cigars.length)]);
+            read1.setName("N" + i);
+            read2.setName("N" + i);
+            // few contigs and positions, so that many pairs tie on start
+            read1.setPosition(header.getSequence(random.nextInt(2)).getSequenceName(), 10 + random.nextInt(4));
+            read2.setPosition(header.getSequence(random.nextInt(2)).getSequenceName(), 10 + random.nextInt(4));
+            read1.setIsReverseStrand(random.nextBoolean());
+            read2.setIsReverseStrand(random.nextBoolean());
+            read1.setIsFirstOfPair();
+            read2.setIsSecondOfPair();
+            for (final GATKRead read : ImmutableList.of(read1, read2)) {
+                final GATKRead mate = read == read1 ? read2 : read1;
+                read.setIsPaired(true);
+                read.setMatePosition(mate.getContig(), mate.getStart());
+                read.setMateIsReverseStrand(mate.isReverseStrand());
+            }
+
+            final List<GATKRead> sorted = new ArrayList<>(ImmutableList.of(read1, read2));
+            sorted.sort(new MarkDuplicatesSparkUtils.GATKOrder(header));
+            final PairedEnds pair = PairedEnds.of(sorted.get(0)).and(sorted.get(1));
+            final BinaryReadsKey expected = encoder.keyForPairedEnds(pair.first(), pair.second());
+
+            Assert.assertEquals(encoder.keyForPairedEndsFromMateCigar(read1, read2.getCigar()), expected, read1 + " " + read2);
+            Assert.assertEquals(encoder.keyForPairedEndsFromMateCigar(read2, read1.getCigar()), expected, read1 + " " + read2);
+        }
+    }
+
+    @Test
+    public void testPairStubs() {
+        SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(1, 1, 1000, 1);
+        final List<GATKRead> pairA = ArtificialReadUtils.createPair(header, "A", 20, 100, 200, true, false);
+        final List<GATKRead> pairB = ArtificialReadUtils.createPair(header, "B", 20, 100, 200, true, false);
+        final GATKRead orphan = ArtificialReadUtils.createPair(header, "C", 20, 100, 200, true, false).get(1);
+
+        final List<PairedEnds> pairs = MarkDuplicatesSparkUtils.pairStubs(
+                ImmutableList.of(pairB.get(1), pairA.get(0), orphan, pairB.get(0), pairA.get(1)), header);
+        Assert.assertEquals(pairs.size(), 2);
+        for (final PairedEnds pair : pairs) {
+            final List<GATKRead> expected = pair.first().getName().equals("A") ? pairA : pairB;
+            Assert.assertSame(pair.first(), expected.get(0));
+            Assert.assertSame(pair.second(), expected.get(1));
+        }
+    }
+
     private String getReadGroupId(final SAMFileHeader header, final int index) {
         return header.getReadGroups().get(index).getReadGroupId();
     }
@@ -85,7 +210,7 @@ public class MarkDuplicatesSparkUtilsUnitTest extends BaseTest {
         return new Tuple2<>(i, ImmutableList.copyOf(s));
     }
 
-    private static Tuple2<String, Iterable<GATKRead>> pairIterable(String key, GATKRead... reads) {
+    private static Tuple2<BinaryReadsKey, Iterable<GATKRead>> pairIterable(BinaryReadsKey key, GATKRead... reads) {
         return new Tuple2<>(key, ImmutableList.copyOf(reads));
     }
 
@@ -1,18 +1,22 @@
 package org.broadinstitute.hellbender.tools.walkers.bqsr;
 
 import htsjdk.samtools.ValidationStringency;
+import org.apache.commons.lang3.math.NumberUtils;
 
 import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.test.IntegrationTestSpec;
 import org.broadinstitute.hellbender.utils.test.SamAssertionUtils;
 import org.broadinstitute.hellbender.utils.Utils;
+import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.List;
 
 public final class BaseRecalibratorIntegrationTest extends CommandLineProgramTest{
 
@@ -104,6 +108,65 @@ public final class BaseRecalibratorIntegrationTest extends CommandLineProgramTes
         spec.executeTest("testBQSR-" + params.args, this);
     }
 
+    @DataProvider(name = "BQSRMultithreadedTest")
+    public Object[][] createBQSRMultithreadedTestData() {
+        final String hg18Reference = publicTestDir + "human_g1k_v37.chr17_1Mb.fasta";
+        final String hiSeqBam_chr20 = getResourceDir() + WGS_B37_CH20_1M_1M1K_BAM;
+        final String HiSeqBam_chr17 = getResourceDir() + "NA12878.chr17_69k_70k.dictFix.bam";
+        final String dbSNPb37_chr17 =  getResourceDir() + "dbsnp_132.b37.excluding_sites_after_129.chr17_69k_70k.vcf";
+        final String dbSNPb37_chr20 = getResourceDir() + DBSNP_138_B37_CH20_1M_1M1K_VCF;
+        final String GRCh37Ref_chr2021 = "src/test/resources/large/human_g1k_v37.20.21.fasta";
+        final String more17Sites = getResourceDir() + "bqsr.fakeSitesForTesting.b37.chr17.vcf"; //for testing 2 input files
+
+        // the expected tables are those of the equivalent single-threaded runs in createBQSRTestData
+        return new Object[][]{
+                {new BQSRTest(GRCh37Ref_chr2021, hiSeqBam_chr20, dbSNPb37_chr20, "-indelBQSR -enableBAQ -recalibrationThreads 4", getResourceDir() + BQSRTestData.EXPECTED_WGS_B37_CH20_1M_1M1K_RECAL)},
+                {new BQSRTest(hg18Reference, HiSeqBam_chr17, dbSNPb37_chr17, "-indelBQSR -enableBAQ -recalibrationThreads 3 " +"-knownSites " + more17Sites, getResourceDir() + "expected.NA12878.chr17_69k_70k.2inputs.txt")},
+        };
+    }
+
+    @Test(dataProvider = "BQSRMultithreadedTest")
+    public void testBQSRMultithreaded(BQSRTest params) throws IOException {
+        final File firstRun = runBQSR(params, "firstRun");
+        final File secondRun = runBQSR(params, "secondRun");
+
+        // Reads are dealt to the threads in a fixed rotation and the tables are combined in a fixed order,
+        // so repeated runs must agree exactly
+        IntegrationTestSpec.assertEqualTextFiles(secondRun, firstRun);
+
+        // The BAQ-weighted error sums are added up in a different order than in a single-threaded run,
+        // so they may differ from it by a rounding step in the last printed decimal place
+        assertEqualRecalibrationReports(firstRun, new File(params.expectedFileName), 0.01);
+    }
+
+    private File runBQSR(final BQSRTest params, final String name) {
+        final File output = createTempFile("testBQSRMultithreaded." + name, ".table");
+        runCommandLine(Utils.escapeExpressions(String.format(params.getCommandLine(), output.getAbsolutePath())));
+        return output;
+    }
+
+    /**
+     * Compare two recalibration reports token by token, allowing decimal numbers to differ by up to the given tolerance.
+     */
+    private static void assertEqualRecalibrationReports(final File actual, final File expected, final double tolerance) throws IOException {
+        final List<String> actualLines = Files.readAllLines(actual.toPath());
+        final List<String> expectedLines = Files.readAllLines(expected.toPath());
+        Assert.assertEquals(actualLines.size(), expectedLines.size(), "number of lines in " + actual);
+        for ( int i = 0; i < expectedLines.size(); i++ ) {
+            final String[] actualTokens = actualLines.get(i).trim().split("\\s+");
+            final String[] expectedTokens = expectedLines.get(i).trim().split("\\s+");
+            Assert.assertEquals(actualTokens.length, expectedTokens.length, "line " + (i + 1));
+            for ( int j = 0; j < expectedTokens.length; j++ ) {
+                if ( expectedTokens[j].contains(".") && NumberUtils.isNumber(expectedTokens[j]) && NumberUtils.isNumber(actualTokens[j]) ) {
+                    Assert.assertEquals(Double.parseDouble(actualTokens[j]), Double.parseDouble(expectedTokens[j]), tolerance + 1e-9, "line " + (i + 1));
+                }
+                else {
+                    Assert.assertEquals(actualTokens[j], expectedTokens[j], "line " + (i + 1));
+                }
+            }
+        }
+    }
+
     @Test(description = "This is to test https://github.com/broadinstitute/hellbender/issues/322")
     public void testPlottingWorkflow() throws IOException {
         final String resourceDir = getTestDataDir() + "/" + "BQSR" + "/";
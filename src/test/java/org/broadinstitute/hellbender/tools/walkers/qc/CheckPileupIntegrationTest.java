@@ -37,6 +37,22 @@ public class CheckPileupIntegrationTest extends CommandLineProgramTest {
         testSpec.executeTest("testBasicPileup", this);
     }
 
+    @Test
+    public void testBasicPileupMultithreaded() throws IOException {
+        final File emptyTemp = createTempFile("empty", "txt");
+        emptyTemp.createNewFile();
+        // CheckPileup accepts loci in any order, so this exercises the unordered parallel traversal
+        IntegrationTestSpec testSpec = new IntegrationTestSpec(
+            " -R " + hg19MiniReference +
+            " -I " + TEST_DATA_DIRECTORY + "reads_data_source_test1.bam" +
+            " -pileup " +  TEST_OUTPUT_DIRECTORY + "reads_data_source_test1.samtools.pileup" +
+            " -locusShardThreads 3" +
+            " -locusShardSize 1000" +
+            " -O %s", Arrays.asList(emptyTemp.toString()));
+
+        testSpec.executeTest("testBasicPileupMultithreaded", this);
+    }
+
     /**
      * This test runs on a basic pileup obtained with samtools (version 1.3.1) and options --min-BQ 0
      * BAQ quality recalibration is activated and should be different
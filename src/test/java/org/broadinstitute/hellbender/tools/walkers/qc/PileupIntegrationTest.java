@@ -30,6 +30,22 @@ public class PileupIntegrationTest extends CommandLineProgramTest {
         testSpec.executeTest("testSimplePileup", this);
     }
 
+    @Test
+    public void testSimplePileupMultithreaded() throws IOException {
+        // small shards, so that the interval is split across several shards and threads
+        IntegrationTestSpec testSpec = new IntegrationTestSpec(
+            " -L 20:9999900-10000000" +
+                " -R " + b37_reference_20_21 +
+                " -I " + NA12878_20_21_WGS_bam +
+                " -locusShardThreads 4" +
+                " -locusShardSize 17" +
+                " -maxBufferedLoci 10" +
+                " -O %s",
+            Arrays.asList(TEST_OUTPUT_DIRECTORY + "expectedSimplePileup.txt")
+        );
+        testSpec.executeTest("testSimplePileupMultithreaded", this);
+    }
+
     @Test
     public void testVerbosePileup() throws IOException {
         // GATK 3.5 code have a the last line with a REDUCE RESULT that was removed in this implementation
@@ -86,5 +102,29 @@ public class PileupIntegrationTest extends CommandLineProgramTest {
         runCommandLine(args);
     }
 
+    @Test(expectedExceptions = UserException.BadArgumentValue.class)
+    public void testMaxBufferedLociBelowThreads() throws IOException {
+        final String[] args = new String[] {
+                "-L" , "20:9999900-10000000",
+                "-R" , b37_reference_20_21,
+                "-I" , NA12878_20_21_WGS_bam,
+                "-locusShardThreads", "4",
+                "-maxBufferedLoci", "3",
+                "-O" , createTempFile("testMaxBufferedLociBelowThreads", ".txt").getAbsolutePath()
+        };
+        runCommandLine(args);
+    }
+
+    @Test(expectedExceptions = UserException.BadArgumentValue.class)
+    public void testMultithreadedPileupRequiresIndex() throws IOException {
+        final String[] args = new String[] {
+                "-R" , hg19MiniReference,
+                "-I" , publicTestDir + "org/broadinstitute/hellbender/engine/unindexed.bam",
+                "-locusShardThreads", "2",
+                "-O" , createTempFile("testMultithreadedPileupRequiresIndex", ".txt").getAbsolutePath()
+        };
+        runCommandLine(args);
+    }
+
 
 }
@@ -0,0 +1,173 @@
+package org.broadinstitute.hellbender.utils.collections;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.SortingCollection;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public final class ParallelSortingCollectionUnitTest extends BaseTest {
+
+    /** a key to sort on, and the order in which it was added, to check that the sort is stable */
+    private static final class Item {
+        private final int key;
+        private final int order;
+
+        private Item(final int key, final int order) {
+            this.key = key;
+            this.order = order;
+        }
+    }
+
+    private static final Comparator<Item> BY_KEY = (item1, item2) -> Integer.compare(item1.key, item2.key);
+
+    private static final class ItemCodec implements SortingCollection.Codec<Item> {
+        private DataOutputStream out;
+        private DataInputStream in;
+
+        @Override
+        public void setOutputStream(final OutputStream os) { out = new DataOutputStream(os); }
+
+        @Override
+        public void setInputStream(final InputStream is) { in = new DataInputStream(is); }
+
+        @Override
+        public void encode(final Item item) {
+            try {
+                out.writeInt(item.key);
+                out.writeInt(item.order);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Item decode() {
+            try {
+                final int key;
+                try {
+                    key = in.readInt();
+                } catch (final EOFException e) {
+                    return null;
+                }
+                return new Item(key, in.readInt());
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public ItemCodec clone() { return new ItemCodec(); }
+    }
+
+    private static ParallelSortingCollection<Item> newCollection(final int maxRecordsInRam, final int sortThreads) {
+        return new ParallelSortingCollection<>(Item.class, new ItemCodec(), BY_KEY, maxRecordsInRam, sortThreads, 1,
+                Collections.singletonList(createTempDir("ParallelSortingCollectionUnitTest")));
+    }
+
+    private static List<Item> readAll(final ParallelSortingCollection<Item> sorter) {
+        final List<Item> items = new ArrayList<>();
+        try (final CloseableIterator<Item> iterator = sorter.iterator()) {
+            while (iterator.hasNext()) {
+                items.add(iterator.next());
+            }
+        }
+        return items;
+    }
+
+    @DataProvider(name = "sizes")
+    public Object[][] sizes() {
+        return new Object[][] {
+                // nItems, maxRecordsInRam, sortThreads
+                {0, 100, 1},
+                {0, 100, 4},
+                {50, 100, 1},
+                {50, 100, 4},
+                {10000, 10000, 2},
+                {10000, 999, 1},
+                {10000, 999, 2},
+                {10000, 999, 4},
+                {10000, 30, 3},
+        };
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testSortIsStable(final int nItems, final int maxRecordsInRam, final int sortThreads) {
+        final Random random = new Random(nItems + maxRecordsInRam + sortThreads);
+        final List<Item> items = new ArrayList<>(nItems);
+        // few distinct keys, so there are plenty of ties
+        for (int i = 0; i < nItems; i++) {
+            items.add(new Item(random.nextInt(100), i));
+        }
+
+        final ParallelSortingCollection<Item> sorter = newCollection(maxRecordsInRam, sortThreads);
+        items.forEach(sorter::add);
+
+        // a stable sort of the items as they were added
+        final List<Item> expected = new ArrayList<>(items);
+        expected.sort(BY_KEY);
+        for (int pass = 0; pass < 2; pass++) {
+            final List<Item> actual = readAll(sorter);
+            Assert.assertEquals(actual.size(), expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertEquals(actual.get(i).key, expected.get(i).key);
+                Assert.assertEquals(actual.get(i).order, expected.get(i).order);
+            }
+        }
+        sorter.cleanup();
+    }
+
+    @Test
+    public void testCleanupDeletesTemporaryFiles() {
+        final ParallelSortingCollection<Item> sorter = newCollection(10, 2);
+        for (int i = 0; i < 100; i++) {
+            sorter.add(new Item(100 - i, i));
+        }
+        sorter.doneAdding();
+        final List<File> spillFiles = new ArrayList<>(sorter.getSpillFiles());
+        Assert.assertFalse(spillFiles.isEmpty());
+        for (final File spillFile : spillFiles) {
+            Assert.assertTrue(spillFile.exists());
+        }
+        sorter.cleanup();
+        for (final File spillFile : spillFiles) {
+            Assert.assertFalse(spillFile.exists());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAddAfterDoneAdding() {
+        final ParallelSortingCollection<Item> sorter = newCollection(10, 1);
+        sorter.add(new Item(1, 0));
+        sorter.doneAdding();
+        sorter.add(new Item(2, 1));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testIterateAfterCleanup() {
+        final ParallelSortingCollection<Item> sorter = newCollection(10, 1);
+        sorter.add(new Item(1, 0));
+        sorter.cleanup();
+        sorter.iterator();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadThreads() {
+        newCollection(10, 0);
+    }
+}
@@ -0,0 +1,135 @@
+package org.broadinstitute.hellbender.utils.genotyper;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
+
+import java.util.*;
+
+/**
+ * Timing and footprint comparison of ReadLikelihoods and CompactReadLikelihoods on a large multi-sample region.
+ */
+public final class CompactReadLikelihoodsTimingTest {
+
+    @FunctionalInterface
+    public interface Action {
+        void execute();
+    }
+    private static double time( final Action action ) {
+        final long nanosecs = System.nanoTime();
+        action.execute();
+        return (System.nanoTime() - nanosecs)/1.E9;
+    }
+
+    private static final int N_SAMPLES = 50;
+    private static final int N_READS_PER_SAMPLE = 2000;
+    private static final int N_HAPLOTYPES = 64;
+    private static final int N_ALLELES = 3;
+    private static final int N_TRIALS = 5;
+
+    public static void main( final String[] args ) {
+        final Random rng = new Random(0xdeadbeef);
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeader(1, 0, 100000);
+        final String[] samples = new String[N_SAMPLES];
+        final Map<String, List<GATKRead>> reads = new LinkedHashMap<>();
+        for ( int s = 0; s != N_SAMPLES; ++s ) {
+            samples[s] = "sample" + s;
+            final List<GATKRead> sampleReads = new ArrayList<>(N_READS_PER_SAMPLE);
+            for ( int r = 0; r != N_READS_PER_SAMPLE; ++r ) {
+                sampleReads.add(ArtificialReadUtils.createArtificialRead(header, "read" + s + "_" + r, 0, 1 + rng.nextInt(1000), 100));
+            }
+            reads.put(samples[s], sampleReads);
+        }
+        final Allele[] haplotypes = new Allele[N_HAPLOTYPES];
+        final Map<Allele, List<Allele>> alleleMap = new LinkedHashMap<>();
+        final Allele[] alleles = { Allele.create("A", true), Allele.create("C"), Allele.create("G") };
+        for ( final Allele allele : alleles ) {
+            alleleMap.put(allele, new ArrayList<>());
+        }
+        for ( int h = 0; h != N_HAPLOTYPES; ++h ) {
+            final StringBuilder bases = new StringBuilder();
+            for ( int i = 0; i != 20; ++i ) {
+                bases.append("ACGT".charAt(rng.nextInt(4)));
+            }
+            haplotypes[h] = Allele.create(bases.toString(), h == 0);
+            alleleMap.get(alleles[h % N_ALLELES]).add(haplotypes[h]);
+        }
+        final IndexedSampleList sampleList = new IndexedSampleList(samples);
+        final IndexedAlleleList<Allele> haplotypeList = new IndexedAlleleList<>(haplotypes);
+
+        final List<ReadLikelihoods<Allele>> full = new ArrayList<>(N_TRIALS);
+        System.out.println("ReadLikelihoods fill: " + time(() -> {
+            for ( int t = 0; t != N_TRIALS; ++t ) {
+                final ReadLikelihoods<Allele> likelihoods = new ReadLikelihoods<>(sampleList, haplotypeList, reads);
+                fill(rng, sampleList, (s) -> likelihoods.sampleMatrix(s));
+                full.add(likelihoods);
+            }
+        }));
+        final List<CompactReadLikelihoods<Allele>> compact = new ArrayList<>(N_TRIALS);
+        System.out.println("CompactReadLikelihoods fill: " + time(() -> {
+            for ( int t = 0; t != N_TRIALS; ++t ) {
+                final CompactReadLikelihoods<Allele> likelihoods = new CompactReadLikelihoods<>(sampleList, haplotypeList, reads);
+                fill(rng, sampleList, (s) -> likelihoods.sampleMatrix(s));
+                compact.add(likelihoods);
+            }
+        }));
+        System.out.println("Likelihood bytes per collection: ReadLikelihoods " + (long) N_SAMPLES * N_READS_PER_SAMPLE * N_HAPLOTYPES * Double.BYTES
+                + ", CompactReadLikelihoods " + compact.get(0).likelihoodBytes());
+
+        final double[] sink = new double[1];
+        System.out.println("ReadLikelihoods marginalize + read: " + time(() -> {
+            for ( final ReadLikelihoods<Allele> likelihoods : full ) {
+                final ReadLikelihoods<Allele> marginal = likelihoods.marginalize(alleleMap);
+                sink[0] += sum(sampleList, (s) -> marginal.sampleMatrix(s));
+            }
+        }));
+        System.out.println("CompactReadLikelihoods marginalize + read: " + time(() -> {
+            for ( final CompactReadLikelihoods<Allele> likelihoods : compact ) {
+                final CompactReadLikelihoods<Allele> marginal = likelihoods.marginalize(alleleMap);
+                sink[0] += sum(sampleList, (s) -> marginal.sampleMatrix(s));
+            }
+        }));
+
+        System.out.println("ReadLikelihoods addNonReferenceAllele: " + time(() -> {
+            for ( final ReadLikelihoods<Allele> likelihoods : full ) {
+                likelihoods.addNonReferenceAllele(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+            }
+        }));
+        System.out.println("CompactReadLikelihoods addNonReferenceAllele: " + time(() -> {
+            for ( final CompactReadLikelihoods<Allele> likelihoods : compact ) {
+                likelihoods.addNonReferenceAllele(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+            }
+        }));
+        System.out.println("(checksum " + sink[0] + ")");
+    }
+
+    private interface MatrixSupplier {
+        LikelihoodMatrix<Allele> get(int sampleIndex);
+    }
+
+    private static void fill( final Random rng, final SampleList samples, final MatrixSupplier matrices ) {
+        for ( int s = 0; s != samples.numberOfSamples(); ++s ) {
+            final LikelihoodMatrix<Allele> matrix = matrices.get(s);
+            for ( int a = 0; a != matrix.numberOfAlleles(); ++a ) {
+                for ( int r = 0; r != matrix.numberOfReads(); ++r ) {
+                    matrix.set(a, r, -10 * rng.nextDouble());
+                }
+            }
+        }
+    }
+
+    private static double sum( final SampleList samples, final MatrixSupplier matrices ) {
+        double result = 0;
+        for ( int s = 0; s != samples.numberOfSamples(); ++s ) {
+            final LikelihoodMatrix<Allele> matrix = matrices.get(s);
+            for ( int a = 0; a != matrix.numberOfAlleles(); ++a ) {
+                for ( int r = 0; r != matrix.numberOfReads(); ++r ) {
+                    result += matrix.get(a, r);
+                }
+            }
+        }
+        return result;
+    }
+}
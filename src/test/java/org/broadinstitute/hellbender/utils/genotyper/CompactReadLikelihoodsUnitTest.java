@@ -0,0 +1,145 @@
+package org.broadinstitute.hellbender.utils.genotyper;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.broadinstitute.hellbender.utils.variant.GATKVCFConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Test code for {@link CompactReadLikelihoods}
+ */
+public final class CompactReadLikelihoodsUnitTest extends BaseTest {
+    // float precision on likelihoods of the magnitude used here
+    private static final double EPSILON = 1e-5;
+
+    private static final SAMFileHeader SAM_HEADER = ArtificialReadUtils.createArtificialSamHeader(10, 0, 1000);
+    private static final String[] SAMPLES = {"A", "B", "C"};
+    private static final Allele[] ALLELES = {Allele.create("A", true), Allele.create("T"), Allele.create("C"), Allele.create("G")};
+
+    @Test
+    public void testRoundTrip() {
+        final ReadLikelihoods<Allele> original = randomLikelihoods();
+        final CompactReadLikelihoods<Allele> compact = CompactReadLikelihoods.fromReadLikelihoods(original);
+        assertSameLikelihoods(compact, original);
+        assertSameLikelihoods(CompactReadLikelihoods.fromReadLikelihoods(compact.toReadLikelihoods()), original);
+        Assert.assertEquals(compact.samples(), original.samples());
+        Assert.assertEquals(compact.alleles(), original.alleles());
+
+        for (int s = 0; s < SAMPLES.length; s++) {
+            final LikelihoodMatrix<Allele> matrix = compact.sampleMatrix(s);
+            for (int r = 0; r < matrix.numberOfReads(); r++) {
+                Assert.assertEquals(matrix.indexOfRead(original.sampleReads(s).get(r)), r);
+            }
+        }
+    }
+
+    @Test
+    public void testMarginalizeMatchesReadLikelihoods() {
+        final ReadLikelihoods<Allele> original = randomLikelihoods();
+        final CompactReadLikelihoods<Allele> compact = CompactReadLikelihoods.fromReadLikelihoods(original);
+        final Map<Allele, List<Allele>> newToOld = new LinkedHashMap<>();
+        newToOld.put(Allele.create("A", true), Arrays.asList(ALLELES[0], ALLELES[2]));
+        newToOld.put(Allele.create("T"), Arrays.asList(ALLELES[1], ALLELES[3]));
+
+        assertSameLikelihoods(compact.marginalize(newToOld), original.marginalize(newToOld));
+
+        final SimpleInterval overlap = new SimpleInterval(SAM_HEADER.getSequence(0).getSequenceName(), 1, 10);
+        final CompactReadLikelihoods<Allele> compactOverlap = compact.marginalize(newToOld, overlap);
+        final ReadLikelihoods<Allele> expectedOverlap = original.marginalize(newToOld, overlap);
+        for (int s = 0; s < SAMPLES.length; s++) {
+            Assert.assertEquals(compactOverlap.sampleReads(s), expectedOverlap.sampleReads(s));
+        }
+        assertSameLikelihoods(compactOverlap, expectedOverlap);
+    }
+
+    @Test
+    public void testMarginalizeIsCopyOnWrite() {
+        final ReadLikelihoods<Allele> original = randomLikelihoods();
+        final CompactReadLikelihoods<Allele> compact = CompactReadLikelihoods.fromReadLikelihoods(original);
+        final Map<Allele, List<Allele>> identity = new LinkedHashMap<>();
+        for (final Allele allele : ALLELES) {
+            identity.put(allele, Collections.singletonList(allele));
+        }
+        final CompactReadLikelihoods<Allele> view = compact.marginalize(identity);
+        Assert.assertEquals(view.likelihoodBytes(), 0);
+
+        // writes on either side must not leak to the other
+        final int sample = 0;
+        Assert.assertTrue(compact.sampleReadCount(sample) > 0);
+        compact.sampleMatrix(sample).set(0, 0, -100);
+        Assert.assertEquals(view.sampleMatrix(sample).get(0, 0), original.sampleMatrix(sample).get(0, 0), EPSILON);
+        view.sampleMatrix(sample).set(1, 0, -200);
+        Assert.assertEquals(compact.sampleMatrix(sample).get(1, 0), original.sampleMatrix(sample).get(1, 0), EPSILON);
+        Assert.assertEquals(compact.sampleMatrix(sample).get(0, 0), -100, EPSILON);
+        Assert.assertEquals(view.sampleMatrix(sample).get(1, 0), -200, EPSILON);
+        Assert.assertEquals(view.sampleMatrix(sample).get(0, 0), original.sampleMatrix(sample).get(0, 0), EPSILON);
+    }
+
+    @Test
+    public void testAddNonReferenceAllele() {
+        final ReadLikelihoods<Allele> original = randomLikelihoods();
+        final CompactReadLikelihoods<Allele> compact = CompactReadLikelihoods.fromReadLikelihoods(original);
+        original.addNonReferenceAllele(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+        compact.addNonReferenceAllele(GATKVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+        Assert.assertEquals(compact.numberOfAlleles(), ALLELES.length + 1);
+        assertSameLikelihoods(compact, original);
+    }
+
+    @Test
+    public void testUsesLessMemory() {
+        final CompactReadLikelihoods<Allele> compact = CompactReadLikelihoods.fromReadLikelihoods(randomLikelihoods());
+        long doubles = 0;
+        for (int s = 0; s < SAMPLES.length; s++) {
+            doubles += (long) compact.sampleReadCount(s) * ALLELES.length * Double.BYTES;
+        }
+        Assert.assertEquals(compact.likelihoodBytes() * 2, doubles);
+    }
+
+    private static ReadLikelihoods<Allele> randomLikelihoods() {
+        final Random rnd = Utils.getRandomGenerator();
+        final Map<String, List<GATKRead>> reads = new LinkedHashMap<>();
+        for (final String sample : SAMPLES) {
+            final int readCount = 1 + rnd.nextInt(50);
+            final List<GATKRead> sampleReads = new ArrayList<>(readCount);
+            for (int r = 0; r < readCount; r++) {
+                sampleReads.add(ArtificialReadUtils.createArtificialRead(SAM_HEADER, "read" + sample + r, 0, (r & 1) == 0 ? 1 : 101,
+                        "AAAAA".getBytes(), new byte[]{30, 30, 30, 30, 30}, "5M"));
+            }
+            reads.put(sample, sampleReads);
+        }
+        final ReadLikelihoods<Allele> result = new ReadLikelihoods<>(new IndexedSampleList(SAMPLES), new IndexedAlleleList<>(ALLELES), reads);
+        for (int s = 0; s < SAMPLES.length; s++) {
+            final LikelihoodMatrix<Allele> matrix = result.sampleMatrix(s);
+            for (int a = 0; a < ALLELES.length; a++) {
+                for (int r = 0; r < matrix.numberOfReads(); r++) {
+                    matrix.set(a, r, -Math.abs(rnd.nextGaussian()));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void assertSameLikelihoods(final CompactReadLikelihoods<Allele> actual, final ReadLikelihoods<Allele> expected) {
+        Assert.assertEquals(actual.numberOfSamples(), expected.numberOfSamples());
+        Assert.assertEquals(actual.numberOfAlleles(), expected.numberOfAlleles());
+        for (int s = 0; s < expected.numberOfSamples(); s++) {
+            final LikelihoodMatrix<Allele> actualMatrix = actual.sampleMatrix(s);
+            final LikelihoodMatrix<Allele> expectedMatrix = expected.sampleMatrix(s);
+            Assert.assertEquals(actualMatrix.numberOfReads(), expectedMatrix.numberOfReads());
+            for (int a = 0; a < expected.numberOfAlleles(); a++) {
+                Assert.assertEquals(actual.getAllele(a), expected.getAllele(a));
+                for (int r = 0; r < expectedMatrix.numberOfReads(); r++) {
+                    Assert.assertEquals(actualMatrix.get(a, r), expectedMatrix.get(a, r), EPSILON);
+                }
+            }
+        }
+    }
+}
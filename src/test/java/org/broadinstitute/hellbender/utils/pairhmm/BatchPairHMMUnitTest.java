@@ -0,0 +1,175 @@
+package org.broadinstitute.hellbender.utils.pairhmm;
+
+import org.broadinstitute.hellbender.utils.genotyper.LikelihoodMatrix;
+import org.broadinstitute.hellbender.utils.haplotype.Haplotype;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public final class BatchPairHMMUnitTest extends BaseTest {
+
+    private static final String REFERENCE = "GATTTATCATCGAGTCTGCACGTAATGACGATTGCACATGGATCGTTATCAGCTATCTCGAGGGATTCACTTAACAGTTTTA";
+
+    @DataProvider(name = "threads")
+    public Object[][] threads() {
+        return new Object[][]{{1}, {3}};
+    }
+
+    @Test(dataProvider = "threads")
+    public void testBatchMatchesSequentialComputation(final int numThreads) {
+        final Random random = new Random(13);
+        final List<RecordingMatrix> expected = new ArrayList<>();
+        final List<RecordingMatrix> actual = new ArrayList<>();
+        final List<BatchPairHMM.WorkUnit> units = new ArrayList<>();
+
+        final PairHMM sequential = new LoglessPairHMM();
+        for (int u = 0; u < 12; u++) {
+            // vary the haplotype and read lengths so that the batch has to size its matrices for the largest unit
+            final int haplotypeLength = 20 + random.nextInt(REFERENCE.length() - 20);
+            final int numberOfHaplotypes = 1 + random.nextInt(4);
+            final int numberOfReads = random.nextInt(6);
+            final List<Haplotype> haplotypes = new ArrayList<>();
+            for (int h = 0; h < numberOfHaplotypes; h++) {
+                haplotypes.add(new Haplotype(mutate(REFERENCE.substring(0, haplotypeLength).getBytes(), random), h == 0));
+            }
+            final List<GATKRead> reads = new ArrayList<>();
+            for (int r = 0; r < numberOfReads; r++) {
+                final int readLength = 5 + random.nextInt(haplotypeLength - 5);
+                final int start = random.nextInt(haplotypeLength - readLength + 1);
+                final byte[] bases = mutate(Arrays.copyOfRange(haplotypes.get(0).getBases(), start, start + readLength), random);
+                final byte[] quals = new byte[readLength];
+                for (int i = 0; i < readLength; i++) {
+                    quals[i] = (byte) (10 + random.nextInt(30));
+                }
+                reads.add(ArtificialReadUtils.createArtificialRead(bases, quals, readLength + "M"));
+            }
+            final Map<GATKRead, byte[]> gcp = new LinkedHashMap<>();
+            for (final GATKRead read : reads) {
+                final byte[] penalties = new byte[read.getLength()];
+                Arrays.fill(penalties, (byte) 10);
+                gcp.put(read, penalties);
+            }
+
+            final RecordingMatrix sequentialMatrix = new RecordingMatrix(haplotypes, reads.size());
+            sequential.computeLog10Likelihoods(sequentialMatrix, reads, gcp);
+            expected.add(sequentialMatrix);
+
+            final RecordingMatrix batchMatrix = new RecordingMatrix(haplotypes, reads.size());
+            actual.add(batchMatrix);
+            units.add(new BatchPairHMM.WorkUnit(batchMatrix, reads, gcp));
+        }
+
+        try (final BatchPairHMM batch = new BatchPairHMM(PairHMM.Implementation.LOGLESS_CACHING, numThreads)) {
+            batch.computeLog10Likelihoods(units);
+            // a second batch reuses the already sized matrices
+            batch.computeLog10Likelihoods(units);
+        }
+
+        for (int u = 0; u < expected.size(); u++) {
+            final double[][] e = expected.get(u).values;
+            final double[][] a = actual.get(u).values;
+            for (int h = 0; h < e.length; h++) {
+                for (int r = 0; r < e[h].length; r++) {
+                    Assert.assertFalse(Double.isNaN(a[h][r]), "likelihood not computed for unit " + u);
+                    Assert.assertEquals(a[h][r], e[h][r], 1e-9, "unit " + u + " haplotype " + h + " read " + r);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        try (final BatchPairHMM batch = new BatchPairHMM(PairHMM.Implementation.LOGLESS_CACHING, 2)) {
+            batch.computeLog10Likelihoods(Collections.emptyList());
+            final RecordingMatrix matrix = new RecordingMatrix(Collections.singletonList(new Haplotype(REFERENCE.getBytes(), true)), 0);
+            batch.computeLog10Likelihoods(Collections.singletonList(new BatchPairHMM.WorkUnit(matrix, Collections.emptyList(), Collections.emptyMap())));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testZeroThreads() {
+        new BatchPairHMM(PairHMM.Implementation.LOGLESS_CACHING, 0);
+    }
+
+    private static byte[] mutate(final byte[] bases, final Random random) {
+        final byte[] result = bases.clone();
+        if (random.nextBoolean()) {
+            final int pos = random.nextInt(result.length);
+            result[pos] = result[pos] == 'A' ? (byte) 'C' : (byte) 'A';
+        }
+        return result;
+    }
+
+    private static final class RecordingMatrix implements LikelihoodMatrix<Haplotype> {
+        private final List<Haplotype> haplotypes;
+        private final double[][] values;
+
+        RecordingMatrix(final List<Haplotype> haplotypes, final int numberOfReads) {
+            this.haplotypes = haplotypes;
+            this.values = new double[haplotypes.size()][numberOfReads];
+            for (final double[] row : values) {
+                Arrays.fill(row, Double.NaN);
+            }
+        }
+
+        @Override
+        public List<GATKRead> reads() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Haplotype> alleles() {
+            return haplotypes;
+        }
+
+        @Override
+        public void set(final int alleleIndex, final int readIndex, final double value) {
+            values[alleleIndex][readIndex] = value;
+        }
+
+        @Override
+        public double get(final int alleleIndex, final int readIndex) {
+            return values[alleleIndex][readIndex];
+        }
+
+        @Override
+        public int indexOfAllele(final Haplotype allele) {
+            return haplotypes.indexOf(allele);
+        }
+
+        @Override
+        public int indexOfRead(final GATKRead read) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int numberOfAlleles() {
+            return haplotypes.size();
+        }
+
+        @Override
+        public int numberOfReads() {
+            return values.length == 0 ? 0 : values[0].length;
+        }
+
+        @Override
+        public Haplotype getAllele(final int alleleIndex) {
+            return haplotypes.get(alleleIndex);
+        }
+
+        @Override
+        public GATKRead getRead(final int readIndex) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void copyAlleleLikelihoods(final int alleleIndex, final double[] dest, final int offset) {
+            System.arraycopy(values[alleleIndex], 0, dest, offset, values[alleleIndex].length);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.broadinstitute.hellbender.utils.pairhmm;
+
+import org.broadinstitute.hellbender.utils.Utils;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public final class FloatLoglessPairHMMUnitTest extends BaseTest {
+
+    private static final String HAPLOTYPE = "GATTTATCATCGAGTCTGCACGTAATGACGATTGCACATGGATCGTTATCAGCTATCTCGAGGGATTCACTTAACAGTTTTA";
+
+    @DataProvider(name = "reads")
+    public Object[][] reads() {
+        final Random random = new Random(17);
+        final List<Object[]> tests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int readLength = 10 + random.nextInt(60);
+            final int start = random.nextInt(HAPLOTYPE.length() - readLength);
+            final byte[] read = HAPLOTYPE.substring(start, start + readLength).getBytes();
+            final int mismatches = random.nextInt(4);
+            for (int m = 0; m < mismatches; m++) {
+                read[random.nextInt(readLength)] = (byte) "ACGT".charAt(random.nextInt(4));
+            }
+            final byte[] quals = new byte[readLength];
+            for (int q = 0; q < readLength; q++) {
+                quals[q] = (byte) (10 + random.nextInt(30));
+            }
+            tests.add(new Object[]{read, quals});
+        }
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "reads")
+    public void testFloatMatchesDouble(final byte[] read, final byte[] quals) {
+        final byte[] haplotype = HAPLOTYPE.getBytes();
+        // second haplotype differs near the end, so the cached prefix of the first one is reused
+        final byte[] nextHaplotype = haplotype.clone();
+        nextHaplotype[nextHaplotype.length - 10] = (byte) (nextHaplotype[nextHaplotype.length - 10] == 'A' ? 'C' : 'A');
+
+        final LoglessPairHMM doubleHMM = new LoglessPairHMM();
+        final FloatLoglessPairHMM floatHMM = new FloatLoglessPairHMM();
+        doubleHMM.initialize(read.length, haplotype.length);
+        floatHMM.initialize(read.length, haplotype.length);
+
+        final byte[] insQuals = Utils.dupBytes((byte) 45, read.length);
+        final byte[] delQuals = Utils.dupBytes((byte) 45, read.length);
+        final byte[] gcp = Utils.dupBytes((byte) 10, read.length);
+
+        final double expected1 = doubleHMM.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, insQuals, delQuals, gcp, true, nextHaplotype);
+        final double expected2 = doubleHMM.computeReadLikelihoodGivenHaplotypeLog10(nextHaplotype, read, quals, insQuals, delQuals, gcp, false, null);
+        final double actual1 = floatHMM.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, insQuals, delQuals, gcp, true, nextHaplotype);
+        final double actual2 = floatHMM.computeReadLikelihoodGivenHaplotypeLog10(nextHaplotype, read, quals, insQuals, delQuals, gcp, false, null);
+
+        Assert.assertEquals(actual1, expected1, 1e-3);
+        Assert.assertEquals(actual2, expected2, 1e-3);
+        Assert.assertEquals(floatHMM.getDoublePrecisionFallbacks(), 0);
+    }
+
+    @Test
+    public void testUnderflowFallsBackToDouble() {
+        // every base mismatches at high quality: far too unlikely for float, but fine in double
+        final byte[] read = Utils.dupBytes((byte) 'A', 40);
+        final byte[] haplotype = Utils.dupBytes((byte) 'C', 60);
+        final byte[] goodHaplotype = Utils.dupBytes((byte) 'A', 60);
+        final byte[] quals = Utils.dupBytes((byte) 30, read.length);
+        final byte[] insQuals = Utils.dupBytes((byte) 45, read.length);
+        final byte[] delQuals = Utils.dupBytes((byte) 45, read.length);
+        final byte[] gcp = Utils.dupBytes((byte) 10, read.length);
+
+        final LoglessPairHMM doubleHMM = new LoglessPairHMM();
+        final FloatLoglessPairHMM floatHMM = new FloatLoglessPairHMM();
+        doubleHMM.initialize(read.length, haplotype.length);
+        floatHMM.initialize(read.length, haplotype.length);
+
+        for (final byte[] hap : Arrays.asList(goodHaplotype, haplotype, goodHaplotype)) {
+            final double expected = doubleHMM.computeReadLikelihoodGivenHaplotypeLog10(hap, read, quals, insQuals, delQuals, gcp, true, null);
+            final double actual = floatHMM.computeReadLikelihoodGivenHaplotypeLog10(hap, read, quals, insQuals, delQuals, gcp, true, null);
+            Assert.assertEquals(actual, expected, 1e-3);
+        }
+        Assert.assertEquals(floatHMM.getDoublePrecisionFallbacks(), 1);
+    }
+
+    @Test
+    public void testImplementation() {
+        Assert.assertTrue(PairHMM.Implementation.FLOAT_LOGLESS_CACHING.makeNewHMM() instanceof FloatLoglessPairHMM);
+    }
+}
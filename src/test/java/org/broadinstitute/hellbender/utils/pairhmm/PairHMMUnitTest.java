@@ -532,6 +532,57 @@ public final class PairHMMUnitTest extends BaseTest {
 
     }
 
+    @Test
+    public void testIdenticalReadsAreComputedOnce() {
+        final byte[] refBases = "GATTTATCATCGAGTCTGCACGTAATGACGATTGCACATGG".getBytes();
+        final List<Haplotype> haplotypes = Arrays.asList(new Haplotype(refBases, true), new Haplotype("GATTTATCATCGAGTCTGCACCTAATGACGATTGCACATGG".getBytes(), false));
+
+        final byte[] readBases = "CATCGAGTCTGCACGTAATG".getBytes();
+        final byte[] otherBases = "CATCGAGTCTGCACCTAATG".getBytes();
+        final byte[] quals = Utils.dupBytes((byte) 30, readBases.length);
+        final byte[] otherQuals = Utils.dupBytes((byte) 20, readBases.length);
+        final List<GATKRead> reads = Arrays.asList(
+                ArtificialReadUtils.createArtificialRead(readBases, quals, readBases.length + "M"),
+                ArtificialReadUtils.createArtificialRead(otherBases, quals, otherBases.length + "M"),
+                ArtificialReadUtils.createArtificialRead(readBases.clone(), quals.clone(), readBases.length + "M"),
+                ArtificialReadUtils.createArtificialRead(readBases, otherQuals, readBases.length + "M"),
+                ArtificialReadUtils.createArtificialRead(otherBases.clone(), quals.clone(), otherBases.length + "M"));
+        final Map<GATKRead, byte[]> gcps = buildGapContinuationPenalties(reads, (byte) 10);
+
+        final LoglessPairHMM uncached = new LoglessPairHMM(false);
+        uncached.computeLog10Likelihoods(matrix(haplotypes), reads, gcps);
+        final LoglessPairHMM cached = new LoglessPairHMM(true);
+        cached.computeLog10Likelihoods(matrix(haplotypes), reads, gcps);
+
+        Assert.assertEquals(cached.getLogLikelihoodArray(), uncached.getLogLikelihoodArray());
+        Assert.assertEquals(cached.getReadCacheMisses(), 3);
+        Assert.assertEquals(cached.getReadCacheHits(), 2);
+        Assert.assertEquals(uncached.getReadCacheMisses(), 0);
+        Assert.assertEquals(uncached.getReadCacheHits(), 0);
+    }
+
+    @Test
+    public void testIdenticalReadsImplementation() {
+        final byte[] refBases = "GATTTATCATCGAGTCTGCACGTAATGACGATTGCACATGG".getBytes();
+        final List<Haplotype> haplotypes = Arrays.asList(new Haplotype(refBases, true), new Haplotype("GATTTATCATCGAGTCTGCACCTAATGACGATTGCACATGG".getBytes(), false));
+
+        final byte[] readBases = "CATCGAGTCTGCACGTAATG".getBytes();
+        final byte[] quals = Utils.dupBytes((byte) 30, readBases.length);
+        final List<GATKRead> reads = Arrays.asList(
+                ArtificialReadUtils.createArtificialRead(readBases, quals, readBases.length + "M"),
+                ArtificialReadUtils.createArtificialRead("CATCGAGTCTGCACCTAATG".getBytes(), quals, readBases.length + "M"),
+                ArtificialReadUtils.createArtificialRead(readBases.clone(), quals.clone(), readBases.length + "M"));
+        final Map<GATKRead, byte[]> gcps = buildGapContinuationPenalties(reads, (byte) 10);
+
+        final PairHMM expected = PairHMM.Implementation.LOGLESS_CACHING.makeNewHMM();
+        expected.computeLog10Likelihoods(matrix(haplotypes), reads, gcps);
+        final PairHMM actual = PairHMM.Implementation.LOGLESS_CACHING_IDENTICAL_READS.makeNewHMM();
+        actual.computeLog10Likelihoods(matrix(haplotypes), reads, gcps);
+
+        Assert.assertEquals(actual.getLogLikelihoodArray(), expected.getLogLikelihoodArray());
+        Assert.assertEquals(((LoglessPairHMM) actual).getReadCacheHits(), 1);
+    }
+
     private LikelihoodMatrix<Haplotype> matrix(final List<Haplotype> haplotypes) {
         return new LikelihoodMatrix<Haplotype>() {
             @Override
@@ -0,0 +1,137 @@
+package org.broadinstitute.hellbender.utils.read.markduplicates;
+
+import com.esotericsoftware.kryo.Kryo;
+import htsjdk.samtools.SAMFileHeader;
+import org.apache.spark.SparkConf;
+import org.apache.spark.serializer.KryoRegistrator;
+import org.broadinstitute.hellbender.engine.spark.BinaryReadsKeySerializer;
+import org.broadinstitute.hellbender.utils.read.ArtificialReadUtils;
+import org.broadinstitute.hellbender.utils.read.GATKRead;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.broadinstitute.hellbender.utils.test.SparkTestUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class BinaryReadsKeyUnitTest extends BaseTest {
+
+    public static class TestGATKRegistrator implements KryoRegistrator {
+        @Override
+        public void registerClasses(Kryo kryo) {
+            kryo.register(BinaryReadsKey.class, new BinaryReadsKeySerializer());
+        }
+    }
+
+    private static SAMFileHeader makeHeader() {
+        final SAMFileHeader header = ArtificialReadUtils.createArtificialSamHeaderWithGroups(3, 1, 1000, 4);
+        // two read groups share a library, one has its own, and one has no library
+        header.getReadGroups().get(0).setLibrary("libA");
+        header.getReadGroups().get(1).setLibrary("libA");
+        header.getReadGroups().get(2).setLibrary("libB");
+        return header;
+    }
+
+    private static List<GATKRead> makeReads(final SAMFileHeader header) {
+        final Random random = new Random(13);
+        final String[] readGroups = {
+                header.getReadGroups().get(0).getId(), header.getReadGroups().get(1).getId(),
+                header.getReadGroups().get(2).getId(), header.getReadGroups().get(3).getId(),
+                "notInHeader", null};
+        final String[] cigars = {"20M", "5S15M", "15M5S", "2H18M"};
+        final List<GATKRead> reads = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            final GATKRead read = ArtificialReadUtils.createArtificialRead(header, cigars[random.nextInt(cigars.length)]);
+            read.setName("read" + random.nextInt(50));
+            read.setPosition(header.getSequence(random.nextInt(3)).getSequenceName(), 1 + random.nextInt(5));
+            read.setIsReverseStrand(random.nextBoolean());
+            read.setReadGroup(readGroups[random.nextInt(readGroups.length)]);
+            if (random.nextInt(10) == 0) {
+                read.setIsUnmapped();
+            }
+            reads.add(read);
+        }
+        return reads;
+    }
+
+    @Test
+    public void testFragmentKeysMatchStringKeys() {
+        final SAMFileHeader header = makeHeader();
+        final BinaryReadsKey.Encoder encoder = new BinaryReadsKey.Encoder(header);
+        final List<GATKRead> reads = makeReads(header);
+        for (final GATKRead a : reads) {
+            for (final GATKRead b : reads) {
+                final boolean stringEqual = ReadsKey.keyForFragment(header, a).equals(ReadsKey.keyForFragment(header, b));
+                Assert.assertEquals(encoder.keyForFragment(a).equals(encoder.keyForFragment(b)), stringEqual, a + " " + b);
+            }
+            Assert.assertTrue(encoder.keyForFragment(a).isFragment());
+        }
+    }
+
+    @Test
+    public void testPairedEndsKeysMatchStringKeys() {
+        final SAMFileHeader header = makeHeader();
+        final BinaryReadsKey.Encoder encoder = new BinaryReadsKey.Encoder(header);
+        final List<GATKRead> reads = makeReads(header).subList(0, 40);
+        final List<String> stringKeys = new ArrayList<>();
+        final List<BinaryReadsKey> binaryKeys = new ArrayList<>();
+        for (final GATKRead first : reads) {
+            stringKeys.add(ReadsKey.keyForPairedEnds(header, first, null));
+            binaryKeys.add(encoder.keyForPairedEnds(first, null));
+            for (final GATKRead second : reads) {
+                stringKeys.add(ReadsKey.keyForPairedEnds(header, first, second));
+                binaryKeys.add(encoder.keyForPairedEnds(first, second));
+            }
+        }
+        for (int i = 0; i < stringKeys.size(); i += 7) {
+            Assert.assertFalse(binaryKeys.get(i).isFragment());
+            for (int j = 0; j < stringKeys.size(); j++) {
+                Assert.assertEquals(binaryKeys.get(i).equals(binaryKeys.get(j)), stringKeys.get(i).equals(stringKeys.get(j)),
+                        stringKeys.get(i) + " " + stringKeys.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void testReadKeysMatchStringKeys() {
+        final SAMFileHeader header = makeHeader();
+        final BinaryReadsKey.Encoder encoder = new BinaryReadsKey.Encoder(header);
+        final List<GATKRead> reads = makeReads(header);
+        for (final GATKRead a : reads) {
+            Assert.assertTrue(encoder.keyForRead(a).isReadKey());
+            for (final GATKRead b : reads) {
+                // no name hash collisions among these few names
+                final boolean stringEqual = ReadsKey.keyForRead(header, a).equals(ReadsKey.keyForRead(header, b));
+                Assert.assertEquals(encoder.keyForRead(a).equals(encoder.keyForRead(b)), stringEqual);
+                Assert.assertEquals(BinaryReadsKey.sameReadKey(a, b), stringEqual);
+            }
+        }
+    }
+
+    @Test
+    public void testKeyKindsDiffer() {
+        final SAMFileHeader header = makeHeader();
+        final BinaryReadsKey.Encoder encoder = new BinaryReadsKey.Encoder(header);
+        final GATKRead read = makeReads(header).get(0);
+        Assert.assertNotEquals(encoder.keyForFragment(read), encoder.keyForPairedEnds(read, null));
+        Assert.assertNotEquals(encoder.keyForFragment(read), encoder.keyForRead(read));
+        Assert.assertNotEquals(encoder.keyForPairedEnds(read, null), encoder.keyForRead(read));
+    }
+
+    @Test
+    public void testKryoRoundTrip() {
+        final SparkConf conf = new SparkConf().set("spark.kryo.registrator",
+                "org.broadinstitute.hellbender.utils.read.markduplicates.BinaryReadsKeyUnitTest$TestGATKRegistrator");
+        final SAMFileHeader header = makeHeader();
+        final BinaryReadsKey.Encoder encoder = new BinaryReadsKey.Encoder(header);
+        for (final GATKRead read : makeReads(header).subList(0, 20)) {
+            for (final BinaryReadsKey key : new BinaryReadsKey[]{encoder.keyForFragment(read), encoder.keyForPairedEnds(read, read), encoder.keyForRead(read)}) {
+                final BinaryReadsKey roundTripped = SparkTestUtils.roundTripInKryo(key, BinaryReadsKey.class, conf);
+                Assert.assertEquals(roundTripped, key);
+                Assert.assertEquals(roundTripped.hashCode(), key.hashCode());
+            }
+        }
+    }
+}
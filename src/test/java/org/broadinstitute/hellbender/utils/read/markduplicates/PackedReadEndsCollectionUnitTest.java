@@ -0,0 +1,186 @@
+package org.broadinstitute.hellbender.utils.read.markduplicates;
+
+import htsjdk.samtools.util.CloseableIterator;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public final class PackedReadEndsCollectionUnitTest extends BaseTest {
+
+    /** the order in which MarkDuplicates needs read ends: by read1 position, then pair orientation, then read2 position */
+    private static final Comparator<ReadEndsForMarkDuplicates> MD_ORDER =
+            Comparator.<ReadEndsForMarkDuplicates>comparingInt(readEnds -> readEnds.libraryId)
+                    .thenComparingInt(readEnds -> readEnds.read1ReferenceIndex)
+                    .thenComparingInt(readEnds -> readEnds.read1Coordinate)
+                    .thenComparingInt(readEnds -> readEnds.orientation)
+                    .thenComparingInt(readEnds -> readEnds.read2ReferenceIndex)
+                    .thenComparingInt(readEnds -> readEnds.read2Coordinate)
+                    .thenComparingLong(readEnds -> readEnds.read1IndexInFile)
+                    .thenComparingLong(readEnds -> readEnds.read2IndexInFile);
+
+    private static ReadEndsForMarkDuplicates randomReadEnds(final Random random, final long index) {
+        final ReadEndsForMarkDuplicates readEnds = new ReadEndsForMarkDuplicates();
+        // small ranges, so there are plenty of ties on the leading fields
+        readEnds.libraryId = (short)random.nextInt(3);
+        readEnds.read1ReferenceIndex = random.nextInt(3);
+        readEnds.read1Coordinate = random.nextInt(20);
+        readEnds.orientation = (byte)random.nextInt(6);
+        if (random.nextBoolean()) {
+            readEnds.read2ReferenceIndex = random.nextInt(3);
+            readEnds.read2Coordinate = random.nextInt(20);
+            readEnds.read2IndexInFile = index + 1 + random.nextInt(100);
+        }
+        readEnds.read1IndexInFile = index;
+        readEnds.score = (short)random.nextInt(Short.MAX_VALUE);
+        readEnds.readGroup = (short)(random.nextInt(10) - 1);
+        readEnds.tile = (short)(random.nextInt(2000) - 1);
+        readEnds.x = (short)(random.nextInt(Short.MAX_VALUE) - 1);
+        readEnds.y = (short)(random.nextInt(Short.MAX_VALUE) - 1);
+        readEnds.orientationForOpticalDuplicates = (byte)(random.nextInt(7) - 1);
+        return readEnds;
+    }
+
+    private static void assertSameReadEnds(final ReadEndsForMarkDuplicates actual, final ReadEndsForMarkDuplicates expected) {
+        Assert.assertEquals(actual.libraryId, expected.libraryId);
+        Assert.assertEquals(actual.read1ReferenceIndex, expected.read1ReferenceIndex);
+        Assert.assertEquals(actual.read1Coordinate, expected.read1Coordinate);
+        Assert.assertEquals(actual.orientation, expected.orientation);
+        Assert.assertEquals(actual.read2ReferenceIndex, expected.read2ReferenceIndex);
+        Assert.assertEquals(actual.read2Coordinate, expected.read2Coordinate);
+        Assert.assertEquals(actual.read1IndexInFile, expected.read1IndexInFile);
+        Assert.assertEquals(actual.read2IndexInFile, expected.read2IndexInFile);
+        Assert.assertEquals(actual.score, expected.score);
+        Assert.assertEquals(actual.readGroup, expected.readGroup);
+        Assert.assertEquals(actual.tile, expected.tile);
+        Assert.assertEquals(actual.x, expected.x);
+        Assert.assertEquals(actual.y, expected.y);
+        Assert.assertEquals(actual.orientationForOpticalDuplicates, expected.orientationForOpticalDuplicates);
+    }
+
+    private static PackedReadEndsCollection newCollection(final int maxRecordsInRam, final int sortThreads) {
+        return new PackedReadEndsCollection(maxRecordsInRam, sortThreads, 1,
+                Collections.singletonList(createTempDir("PackedReadEndsCollectionUnitTest")));
+    }
+
+    @Test
+    public void testPackRoundTripsExtremeValues() {
+        final ReadEndsForMarkDuplicates min = new ReadEndsForMarkDuplicates();
+        min.libraryId = min.score = min.readGroup = min.tile = min.x = min.y = Short.MIN_VALUE;
+        min.orientation = min.orientationForOpticalDuplicates = Byte.MIN_VALUE;
+        min.read1ReferenceIndex = min.read1Coordinate = min.read2ReferenceIndex = min.read2Coordinate = Integer.MIN_VALUE;
+        min.read1IndexInFile = min.read2IndexInFile = Long.MIN_VALUE;
+        final ReadEndsForMarkDuplicates max = new ReadEndsForMarkDuplicates();
+        max.libraryId = max.score = max.readGroup = max.tile = max.x = max.y = Short.MAX_VALUE;
+        max.orientation = max.orientationForOpticalDuplicates = Byte.MAX_VALUE;
+        max.read1ReferenceIndex = max.read1Coordinate = max.read2ReferenceIndex = max.read2Coordinate = Integer.MAX_VALUE;
+        max.read1IndexInFile = max.read2IndexInFile = Long.MAX_VALUE;
+
+        final long[] words = new long[2 * PackedReadEndsCollection.WORDS_PER_RECORD];
+        PackedReadEndsCollection.pack(min, words, 0);
+        PackedReadEndsCollection.pack(max, words, PackedReadEndsCollection.WORDS_PER_RECORD);
+        assertSameReadEnds(PackedReadEndsCollection.unpack(words, 0), min);
+        assertSameReadEnds(PackedReadEndsCollection.unpack(words, PackedReadEndsCollection.WORDS_PER_RECORD), max);
+        Assert.assertTrue(PackedReadEndsCollection.compare(words, 0, words, PackedReadEndsCollection.WORDS_PER_RECORD) < 0);
+    }
+
+    @Test
+    public void testPackedOrderMatchesComparator() {
+        final Random random = new Random(42);
+        final int wordsPerRecord = PackedReadEndsCollection.WORDS_PER_RECORD;
+        final long[] words = new long[2 * wordsPerRecord];
+        for (int i = 0; i < 10000; i++) {
+            final ReadEndsForMarkDuplicates readEnds1 = randomReadEnds(random, random.nextInt(5));
+            final ReadEndsForMarkDuplicates readEnds2 = randomReadEnds(random, random.nextInt(5));
+            PackedReadEndsCollection.pack(readEnds1, words, 0);
+            PackedReadEndsCollection.pack(readEnds2, words, wordsPerRecord);
+            Assert.assertEquals(Integer.signum(PackedReadEndsCollection.compare(words, 0, words, wordsPerRecord)),
+                    Integer.signum(MD_ORDER.compare(readEnds1, readEnds2)));
+        }
+    }
+
+    @DataProvider(name = "sizes")
+    public Object[][] sizes() {
+        return new Object[][] {
+                // nReadEnds, maxRecordsInRam, sortThreads
+                {0, 100, 1},
+                {0, 100, 4},
+                {1, 100, 1},
+                {50, 100, 1},
+                {50, 100, 4},
+                {5000, 5000, 1},
+                {5000, 10000, 2},
+                {5000, 333, 1},
+                {5000, 333, 2},
+                {5000, 333, 4},
+                {5000, 30, 3},
+        };
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testSort(final int nReadEnds, final int maxRecordsInRam, final int sortThreads) {
+        final Random random = new Random(nReadEnds + maxRecordsInRam + sortThreads);
+        final List<ReadEndsForMarkDuplicates> readEnds = new ArrayList<>(nReadEnds);
+        for (int i = 0; i < nReadEnds; i++) {
+            readEnds.add(randomReadEnds(random, i));
+        }
+
+        final PackedReadEndsCollection sorter = newCollection(maxRecordsInRam, sortThreads);
+        readEnds.forEach(sorter::add);
+
+        final List<ReadEndsForMarkDuplicates> expected = new ArrayList<>(readEnds);
+        expected.sort(MD_ORDER);
+        for (int pass = 0; pass < 2; pass++) {
+            int count = 0;
+            try (final CloseableIterator<ReadEndsForMarkDuplicates> iterator = sorter.iterator()) {
+                while (iterator.hasNext()) {
+                    assertSameReadEnds(iterator.next(), expected.get(count++));
+                }
+            }
+            Assert.assertEquals(count, expected.size());
+        }
+        sorter.cleanup();
+    }
+
+    @Test
+    public void testCleanupDeletesTemporaryFiles() {
+        final PackedReadEndsCollection sorter = newCollection(10, 2);
+        final Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            sorter.add(randomReadEnds(random, i));
+        }
+        sorter.doneAdding();
+        final List<File> spillFiles = new ArrayList<>(sorter.getSpillFiles());
+        Assert.assertFalse(spillFiles.isEmpty());
+        for (final File spillFile : spillFiles) {
+            Assert.assertTrue(spillFile.exists());
+        }
+        sorter.cleanup();
+        for (final File spillFile : spillFiles) {
+            Assert.assertFalse(spillFile.exists());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAddAfterDoneAdding() {
+        final PackedReadEndsCollection sorter = newCollection(10, 1);
+        sorter.add(new ReadEndsForMarkDuplicates());
+        sorter.doneAdding();
+        sorter.add(new ReadEndsForMarkDuplicates());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testIterateAfterCleanup() {
+        final PackedReadEndsCollection sorter = newCollection(10, 1);
+        sorter.add(new ReadEndsForMarkDuplicates());
+        sorter.cleanup();
+        sorter.iterator();
+    }
+}
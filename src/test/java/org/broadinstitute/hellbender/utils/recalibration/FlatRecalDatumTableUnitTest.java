@@ -0,0 +1,93 @@
+package org.broadinstitute.hellbender.utils.recalibration;
+
+import org.broadinstitute.hellbender.utils.collections.NestedIntegerArray;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public final class FlatRecalDatumTableUnitTest extends BaseTest {
+
+    @DataProvider(name = "dimensions")
+    public Object[][] makeDimensions() {
+        return new Object[][] {
+                { new int[]{3, 50, EventType.values().length} },
+                { new int[]{3, 50, 20, EventType.values().length} },
+                { new int[]{1, 94, 1, EventType.values().length} },
+        };
+    }
+
+    @Test(dataProvider = "dimensions")
+    public void testFlushedTableMatchesDirectlyIncrementedTable( final int[] dimensions ) {
+        final NestedIntegerArray<RecalDatum> expected = new NestedIntegerArray<>(dimensions);
+        final NestedIntegerArray<RecalDatum> actual = new NestedIntegerArray<>(dimensions);
+        final FlatRecalDatumTable flatTable = new FlatRecalDatumTable(dimensions);
+        final boolean hasCovariate = dimensions.length == 4;
+
+        final Random random = new Random(17);
+        for ( int i = 0; i < 10000; i++ ) {
+            final int rg = random.nextInt(dimensions[0]);
+            final int qual = random.nextInt(dimensions[1]);
+            final int cov = hasCovariate ? random.nextInt(dimensions[2]) : 0;
+            final int event = random.nextInt(dimensions[dimensions.length - 1]);
+            final double isError = random.nextInt(4) == 0 ? random.nextDouble() : 0.0;
+
+            if ( hasCovariate ) {
+                RecalUtils.incrementDatumOrPutIfNecessary4keys(expected, (byte)qual, isError, rg, qual, cov, event);
+            } else {
+                RecalUtils.incrementDatumOrPutIfNecessary3keys(expected, (byte)qual, isError, rg, qual, event);
+            }
+            flatTable.increment(rg, qual, cov, event, isError);
+
+            // flush part-way through as well, to exercise merging into existing datums
+            if ( i == 5000 ) {
+                flatTable.flushInto(actual);
+                Assert.assertTrue(flatTable.isEmpty());
+            }
+        }
+        Assert.assertFalse(flatTable.isEmpty());
+        flatTable.flushInto(actual);
+        Assert.assertTrue(flatTable.isEmpty());
+
+        final List<NestedIntegerArray.Leaf<RecalDatum>> expectedLeaves = expected.getAllLeaves();
+        Assert.assertEquals(actual.getAllLeaves().size(), expectedLeaves.size());
+        for ( final NestedIntegerArray.Leaf<RecalDatum> leaf : expectedLeaves ) {
+            final RecalDatum actualDatum = actual.get(leaf.keys);
+            Assert.assertNotNull(actualDatum);
+            Assert.assertEquals(actualDatum.getNumObservations(), leaf.value.getNumObservations());
+            Assert.assertEquals(actualDatum.getNumMismatches(), leaf.value.getNumMismatches(), 1e-9);
+            Assert.assertEquals(actualDatum.getEstimatedQReported(), leaf.value.getEstimatedQReported());
+            Assert.assertEquals(actualDatum.getEmpiricalQuality(), leaf.value.getEmpiricalQuality(), 1e-9);
+        }
+    }
+
+    @DataProvider(name = "badKeys")
+    public Object[][] makeBadKeys() {
+        final int numEvents = EventType.values().length;
+        return new Object[][] {
+                { 2, 0, 0, 0 },
+                { 0, 10, 0, 0 },
+                { 0, -1, 0, 0 },
+                { 0, 0, 5, 0 },
+                { 0, 0, 0, numEvents },
+        };
+    }
+
+    @Test(dataProvider = "badKeys", expectedExceptions = IllegalArgumentException.class)
+    public void testBadKey( final int readGroup, final int qual, final int covariateValue, final int event ) {
+        new FlatRecalDatumTable(new int[]{2, 10, 5, EventType.values().length}).increment(readGroup, qual, covariateValue, event, 1.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testQualTooLarge() {
+        new FlatRecalDatumTable(new int[]{2, 10, EventType.values().length}).increment(0, 10, 0, 0, 1.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMismatchedDimensionsOnFlush() {
+        new FlatRecalDatumTable(new int[]{2, 10, EventType.values().length}).flushInto(new NestedIntegerArray<>(2, 10, 4, EventType.values().length));
+    }
+}
@@ -0,0 +1,120 @@
+package org.broadinstitute.hellbender.utils.recalibration;
+
+import com.esotericsoftware.kryo.Kryo;
+import org.apache.spark.SparkConf;
+import org.apache.spark.serializer.KryoRegistrator;
+import org.broadinstitute.hellbender.engine.spark.SparseRecalibrationTablesSerializer;
+import org.broadinstitute.hellbender.utils.collections.NestedIntegerArray;
+import org.broadinstitute.hellbender.utils.recalibration.covariates.StandardCovariateList;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.broadinstitute.hellbender.utils.test.SparkTestUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public final class SparseRecalibrationTablesUnitTest extends BaseTest {
+    private static final int NUM_READ_GROUPS = 4;
+
+    public static class TestGATKRegistrator implements KryoRegistrator {
+        @Override
+        public void registerClasses(Kryo kryo) {
+            kryo.register(SparseRecalibrationTables.class, new SparseRecalibrationTablesSerializer());
+        }
+    }
+
+    private static StandardCovariateList makeCovariates() {
+        final List<String> readGroups = IntStream.range(0, NUM_READ_GROUPS).mapToObj(i -> "readgroup" + i).collect(Collectors.toList());
+        return new StandardCovariateList(new RecalibrationArgumentCollection(), readGroups);
+    }
+
+    // sparse random tables, with reported qualities that differ from the quality key in the read group table
+    private static RecalibrationTables makeTables(final StandardCovariateList covariates, final Random random, final int numObservations) {
+        final RecalibrationTables tables = new RecalibrationTables(covariates, NUM_READ_GROUPS);
+        for ( int i = 0; i < numObservations; i++ ) {
+            final int rg = random.nextInt(NUM_READ_GROUPS);
+            final int qual = 10 + random.nextInt(30);
+            final int event = random.nextInt(EventType.values().length);
+            final double isError = random.nextInt(5) == 0 ? 1.0 : 0.0;
+            RecalUtils.incrementDatumOrPutIfNecessary2keys(tables.getReadGroupTable(), (byte)qual, isError, rg, event);
+            RecalUtils.incrementDatumOrPutIfNecessary3keys(tables.getQualityScoreTable(), (byte)qual, isError, rg, qual, event);
+            for ( int t = 2; t < tables.numTables(); t++ ) {
+                final int covariateValue = random.nextInt(Math.min(50, tables.getTable(t).getDimensions()[2]));
+                RecalUtils.incrementDatumOrPutIfNecessary4keys(tables.getTable(t), (byte)qual, isError, rg, qual, covariateValue, event);
+            }
+        }
+        return tables;
+    }
+
+    private static void assertTablesEqual(final RecalibrationTables actual, final RecalibrationTables expected) {
+        Assert.assertEquals(actual.numTables(), expected.numTables());
+        for ( int t = 0; t < expected.numTables(); t++ ) {
+            final NestedIntegerArray<RecalDatum> actualTable = actual.getTable(t);
+            final List<NestedIntegerArray.Leaf<RecalDatum>> expectedLeaves = expected.getTable(t).getAllLeaves();
+            Assert.assertEquals(actualTable.getDimensions(), expected.getTable(t).getDimensions());
+            Assert.assertEquals(actualTable.getAllLeaves().size(), expectedLeaves.size());
+            for ( final NestedIntegerArray.Leaf<RecalDatum> leaf : expectedLeaves ) {
+                final RecalDatum datum = actualTable.get(leaf.keys);
+                Assert.assertNotNull(datum);
+                Assert.assertEquals(datum.getNumObservations(), leaf.value.getNumObservations());
+                Assert.assertEquals(datum.getNumMismatches(), leaf.value.getNumMismatches(), 1e-9);
+                Assert.assertEquals(datum.getEstimatedQReported(), leaf.value.getEstimatedQReported(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final StandardCovariateList covariates = makeCovariates();
+        final RecalibrationTables tables = makeTables(covariates, new Random(11), 2000);
+        final SparseRecalibrationTables sparse = new SparseRecalibrationTables(tables);
+        Assert.assertEquals(sparse.numTables(), tables.numTables());
+        Assert.assertEquals(sparse.numCells(), tables.getTable(0).getAllLeaves().size() + tables.getTable(1).getAllLeaves().size() +
+                tables.getTable(2).getAllLeaves().size() + tables.getTable(3).getAllLeaves().size());
+        assertTablesEqual(sparse.toRecalibrationTables(covariates), tables);
+    }
+
+    @Test
+    public void testCombineMatchesRecalibrationTablesCombine() {
+        final StandardCovariateList covariates = makeCovariates();
+        final Random random = new Random(13);
+        final RecalibrationTables expected = new RecalibrationTables(covariates, NUM_READ_GROUPS);
+        SparseRecalibrationTables combined = new SparseRecalibrationTables(new RecalibrationTables(covariates, NUM_READ_GROUPS));
+        for ( int i = 0; i < 5; i++ ) {
+            // tables of very different sizes, so that both sides of the merge run out first
+            final RecalibrationTables tables = makeTables(covariates, random, i % 2 == 0 ? 50 : 3000);
+            combined = SparseRecalibrationTables.combine(new SparseRecalibrationTables(tables), combined);
+            expected.combine(tables);
+        }
+        assertTablesEqual(combined.toRecalibrationTables(covariates), expected);
+    }
+
+    @Test
+    public void testCombineDoesNotModifyInputs() {
+        final StandardCovariateList covariates = makeCovariates();
+        final RecalibrationTables tables = makeTables(covariates, new Random(17), 500);
+        final SparseRecalibrationTables sparse = new SparseRecalibrationTables(tables);
+        SparseRecalibrationTables.combine(sparse, sparse);
+        assertTablesEqual(sparse.toRecalibrationTables(covariates), tables);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCombineDifferentDimensions() {
+        final StandardCovariateList covariates = makeCovariates();
+        SparseRecalibrationTables.combine(new SparseRecalibrationTables(new RecalibrationTables(covariates, NUM_READ_GROUPS)),
+                new SparseRecalibrationTables(new RecalibrationTables(covariates, NUM_READ_GROUPS + 1)));
+    }
+
+    @Test
+    public void testKryoRoundTrip() {
+        final SparkConf conf = new SparkConf().set("spark.kryo.registrator",
+                "org.broadinstitute.hellbender.utils.recalibration.SparseRecalibrationTablesUnitTest$TestGATKRegistrator");
+        final StandardCovariateList covariates = makeCovariates();
+        final RecalibrationTables tables = makeTables(covariates, new Random(19), 1000);
+        final SparseRecalibrationTables roundTripped = SparkTestUtils.roundTripInKryo(new SparseRecalibrationTables(tables), SparseRecalibrationTables.class, conf);
+        assertTablesEqual(roundTripped.toRecalibrationTables(covariates), tables);
+    }
+}